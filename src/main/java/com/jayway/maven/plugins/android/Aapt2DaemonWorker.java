@@ -0,0 +1,277 @@
+package com.jayway.maven.plugins.android;
+
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs aapt2 <code>compile</code> and <code>link</code> commands in an <code>aapt2 daemon</code> process.
+ * <p>
+ * The daemon prints <code>Ready</code> when started. It then reads a command per invocation, one option per line and
+ * ended by an empty line, and prints the messages of the command to its standard error, followed by
+ * <code>Error</code> if the command failed and by <code>Done</code>. Anything the command prints on its standard
+ * output comes before that.
+ * </p>
+ */
+final class Aapt2DaemonWorker implements ToolWorkers.ToolWorker
+{
+    static final ToolWorkers.ToolWorkerProvider PROVIDER = new ToolWorkers.ToolWorkerProvider()
+    {
+        public boolean supports( String executable, List<String> commands )
+        {
+            final String name = new File( executable ).getName();
+            if ( ! "aapt2".equals( name ) && ! "aapt2.exe".equals( name ) )
+            {
+                return false;
+            }
+            if ( commands.isEmpty() || ! SUPPORTED_COMMANDS.contains( commands.get( 0 ) ) )
+            {
+                return false;
+            }
+            for ( String command : commands )
+            {
+                // an option is passed as a line, an empty line would end the command
+                if ( command.isEmpty() || command.indexOf( '\n' ) >= 0 || command.indexOf( '\r' ) >= 0 )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public ToolWorkers.ToolWorker start( String executable, File workingDirectory ) throws IOException
+        {
+            return new Aapt2DaemonWorker( Arrays.asList( executable, "daemon" ), workingDirectory );
+        }
+    };
+
+    /**
+     * The commands that only report through messages on the standard error, which the daemon ends with
+     * <code>Done</code>.
+     */
+    private static final List<String> SUPPORTED_COMMANDS = Arrays.asList( "compile", "link" );
+
+    private static final String READY = "Ready";
+    private static final String ERROR = "Error";
+    private static final String DONE = "Done";
+
+    /**
+     * The time to wait for more output of a running command when none is available.
+     */
+    private static final long POLL_MILLIS = 5;
+
+    private final Process process;
+    private final Writer input;
+    private final LineReader output;
+    private final LineReader errors;
+
+    /**
+     * @param daemonCommand    The command line starting the daemon.
+     * @param workingDirectory The working directory of the daemon, <code>null</code> for the current directory.
+     * @throws IOException if the daemon cannot be started.
+     */
+    Aapt2DaemonWorker( List<String> daemonCommand, File workingDirectory ) throws IOException
+    {
+        process = new ProcessBuilder( daemonCommand ).directory( workingDirectory ).start();
+        input = new OutputStreamWriter( process.getOutputStream(), "UTF-8" );
+        output = new LineReader( process.getInputStream() );
+        errors = new LineReader( process.getErrorStream() );
+        final String firstLine = output.readLine();
+        if ( ! READY.equals( firstLine ) )
+        {
+            process.destroy();
+            throw new IOException( "aapt2 daemon did not start: " + firstLine );
+        }
+    }
+
+    /**
+     * Runs a command and returns once the daemon printed <code>Done</code>. Both output streams are read while the
+     * command runs, so that neither of them fills up. The daemon writes its standard output before it ends the
+     * command on its standard error, so the output that is still unread then is drained before returning, and no
+     * line of the command is left for the next one.
+     */
+    public synchronized int execute( List<String> commands, StreamConsumer stdOut, StreamConsumer stdErr )
+            throws IOException
+    {
+        final StringBuilder request = new StringBuilder();
+        for ( String command : commands )
+        {
+            request.append( command ).append( '\n' );
+        }
+        request.append( '\n' );
+        input.write( request.toString() );
+        input.flush();
+
+        int result = 0;
+        while ( true )
+        {
+            boolean progressed = consume( output.readAvailable(), stdOut );
+            for ( String line : errors.readAvailable() )
+            {
+                progressed = true;
+                if ( DONE.equals( line ) )
+                {
+                    consume( output.readAvailable(), stdOut );
+                    final String lastLine = output.readPartialLine();
+                    if ( lastLine != null )
+                    {
+                        stdOut.consumeLine( lastLine );
+                    }
+                    return result;
+                }
+                if ( ERROR.equals( line ) )
+                {
+                    result = 1;
+                }
+                else
+                {
+                    stdErr.consumeLine( line );
+                }
+            }
+            if ( ! progressed )
+            {
+                if ( hasExited() )
+                {
+                    throw new IOException( "aapt2 daemon exited" );
+                }
+                pause();
+            }
+        }
+    }
+
+    private static boolean consume( List<String> lines, StreamConsumer consumer ) throws IOException
+    {
+        for ( String line : lines )
+        {
+            consumer.consumeLine( line );
+        }
+        return ! lines.isEmpty();
+    }
+
+    private boolean hasExited()
+    {
+        try
+        {
+            process.exitValue();
+            return true;
+        }
+        catch ( IllegalThreadStateException e )
+        {
+            return false;
+        }
+    }
+
+    private static void pause() throws IOException
+    {
+        try
+        {
+            Thread.sleep( POLL_MILLIS );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while waiting for the aapt2 daemon" );
+        }
+    }
+
+    public void close()
+    {
+        try
+        {
+            input.close();
+        }
+        catch ( IOException e )
+        {
+            // the daemon exited already
+        }
+        process.destroy();
+    }
+
+    /**
+     * Splits an output stream of the daemon into lines, reading only what is available so that it never blocks
+     * while a command runs.
+     */
+    private static final class LineReader
+    {
+        private final InputStream in;
+        private final byte[] buffer = new byte[ 8192 ];
+        private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+
+        private LineReader( InputStream in )
+        {
+            this.in = in;
+        }
+
+        /**
+         * @return The complete lines among the bytes that can be read without blocking.
+         */
+        List<String> readAvailable() throws IOException
+        {
+            final List<String> lines = new ArrayList<String>();
+            int available;
+            while ( ( available = in.available() ) > 0 )
+            {
+                final int count = in.read( buffer, 0, Math.min( available, buffer.length ) );
+                if ( count < 0 )
+                {
+                    break;
+                }
+                for ( int i = 0; i < count; i++ )
+                {
+                    append( buffer[ i ], lines );
+                }
+            }
+            return lines;
+        }
+
+        /**
+         * Reads a line, blocking until it is complete.
+         *
+         * @return The line, <code>null</code> if the stream ended first.
+         */
+        String readLine() throws IOException
+        {
+            final List<String> lines = new ArrayList<String>();
+            int b;
+            while ( lines.isEmpty() && ( b = in.read() ) >= 0 )
+            {
+                append( ( byte ) b, lines );
+            }
+            return lines.isEmpty() ? null : lines.get( 0 );
+        }
+
+        /**
+         * @return The text read after the last complete line, <code>null</code> if there is none.
+         */
+        String readPartialLine() throws IOException
+        {
+            if ( partialLine.size() == 0 )
+            {
+                return null;
+            }
+            final String line = partialLine.toString( "UTF-8" );
+            partialLine.reset();
+            return line;
+        }
+
+        private void append( byte b, List<String> lines ) throws IOException
+        {
+            if ( b != '\n' )
+            {
+                partialLine.write( b );
+                return;
+            }
+            final String line = partialLine.toString( "UTF-8" );
+            partialLine.reset();
+            lines.add( line.endsWith( "\r" ) ? line.substring( 0, line.length() - 1 ) : line );
+        }
+    }
+}
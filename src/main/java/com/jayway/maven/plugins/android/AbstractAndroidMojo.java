@@ -18,16 +18,17 @@ package com.jayway.maven.plugins.android;
 
 import com.android.builder.core.VariantConfiguration;
 import com.android.ddmlib.AndroidDebugBridge;
-import com.android.ddmlib.DdmPreferences;
 import com.android.ddmlib.IDevice;
 import com.android.ddmlib.InstallException;
 import com.jayway.maven.plugins.android.common.AaptCommandBuilder;
 import com.jayway.maven.plugins.android.common.AndroidExtension;
+import com.jayway.maven.plugins.android.common.ApkInstallCache;
 import com.jayway.maven.plugins.android.common.ArtifactResolverHelper;
 import com.jayway.maven.plugins.android.common.DependencyResolver;
 import com.jayway.maven.plugins.android.common.DeviceHelper;
 import com.jayway.maven.plugins.android.common.MavenToPlexusLogAdapter;
 import com.jayway.maven.plugins.android.common.NativeHelper;
+import com.jayway.maven.plugins.android.common.UnpackedLibCache;
 import com.jayway.maven.plugins.android.common.UnpackedLibHelper;
 import com.jayway.maven.plugins.android.config.ConfigPojo;
 import com.jayway.maven.plugins.android.configuration.Ndk;
@@ -61,13 +62,15 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.jayway.maven.plugins.android.common.AndroidExtension.APK;
 import static org.apache.commons.lang.StringUtils.isBlank;
@@ -346,6 +349,8 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
      * </pre>
      * <p>This parameter can also be configured from command-line with
      * parameter <code>-Dandroid.devices=usb,emulator</code>.</p>
+     * <p>If neither this nor <code>android.device</code> is set, goals run on the emulators started by the
+     * emulator-pool-start goal earlier in the session, or on all attached devices if there is no pool.</p>
      */
     @Parameter( property = "android.devices" )
     protected String[] devices;
@@ -503,6 +508,18 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
     @Parameter( property = "android.undeployBeforeDeploy", defaultValue = "false" )
     protected boolean undeployBeforeDeploy;
 
+    /**
+     * <p>Whether to skip deploying an apk to devices that already have exactly this apk installed. The installed apk
+     * is compared by its SHA-1 digest, computed on the device, or by a marker recorded on the device by the previous
+     * deploy when the device cannot compute digests.</p>
+     * <p>Devices that are skipped are also not undeployed from with <code>undeployBeforeDeploy</code>, so the data
+     * of the application is kept.</p>
+     * <p>This parameter can also be configured from command-line with
+     * parameter <code>-Dandroid.skipIdenticalDeploy=true</code>.</p>
+     */
+    @Parameter( property = "android.skipIdenticalDeploy", defaultValue = "false" )
+    protected boolean skipIdenticalDeploy;
+
     /**
      * <p>Whether to attach the normal .jar file to the build, so it can be depended on by for example integration-tests
      * which may then access {@code R.java} from this project.</p>
@@ -541,25 +558,68 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
     @Parameter( property = "android.adb.connectionTimeout", defaultValue = "5000" )
     protected int adbConnectionTimeout;
 
+    /**
+     * <p>The time in milliseconds all devices have to complete a goal in, such as deploying or running the tests.
+     * Devices that take longer are interrupted and reported as failed. The default of 0 waits as long as it
+     * takes.</p>
+     * <p>This parameter can also be configured from command-line with
+     * parameter <code>-Dandroid.deviceTimeout=600000</code>.</p>
+     */
+    @Parameter( property = "android.deviceTimeout", defaultValue = "0" )
+    protected long deviceTimeout;
+
+    /**
+     * <p>Whether to record the wall time, CPU time and result of the goals of the build, from the first goal of this
+     * plugin that uses the Android SDK on, and of the tools such as aapt, dx or ProGuard they run. The timings are
+     * written at the end of the build to <code>build-timings.json</code>, and to
+     * <code>build-timings.trace.json</code>, which can be opened at <code>chrome://tracing</code>.</p>
+     * <p>This parameter can also be configured from command-line with
+     * parameter <code>-Dandroid.timingReport=true</code>.</p>
+     */
+    @Parameter( property = "android.timingReport", defaultValue = "false" )
+    private boolean timingReport;
+
+    /**
+     * The directory to write the timings of <code>timingReport</code> to.
+     */
+    @Parameter( property = "android.timingReportDirectory",
+            defaultValue = "${session.executionRootDirectory}/target" )
+    private File timingReportDirectory;
+
     /**
      * Folder in which AAR library dependencies will be unpacked.
      */
     @Parameter( property = "unpackedLibsFolder", defaultValue = "target/unpacked-libs" )
     private File unpackedLibsFolder;
 
-    private UnpackedLibHelper unpackedLibHelper;
-    private ArtifactResolverHelper artifactResolverHelper;
-    private NativeHelper nativeHelper;
+    /**
+     * <p>Whether to take extracted AAR and APKLIB dependencies from a cache shared by all modules and builds of the
+     * current user. Each library is extracted into the cache only once (keyed by the checksum of the library file)
+     * and then copied into <code>unpackedLibsFolder</code>, where it is left alone as long as the library doesn't
+     * change.</p>
+     * <p>This parameter can also be configured from command-line with
+     * parameter <code>-Dandroid.unpackedLibsCache=true</code>.</p>
+     */
+    @Parameter( property = "android.unpackedLibsCache", defaultValue = "false" )
+    private boolean unpackedLibsCache;
 
     /**
-     *
+     * Folder holding the shared cache of extracted libraries, see <code>unpackedLibsCache</code>.
      */
-    private static final Object ADB_LOCK = new Object();
+    @Parameter( property = "android.unpackedLibsCacheDirectory",
+            defaultValue = "${user.home}/.m2/android-unpacked-libs" )
+    private File unpackedLibsCacheDirectory;
 
     /**
-     *
+     * Maximum size in megabytes of the shared cache of extracted libraries. Least recently used libraries are
+     * removed from the cache when it grows beyond this size.
      */
-    private static boolean adbInitialized = false;
+    @Parameter( property = "android.unpackedLibsCacheMaxSize", defaultValue = "2048" )
+    private int unpackedLibsCacheMaxSize;
+
+    private UnpackedLibHelper unpackedLibHelper;
+    private ArtifactResolverHelper artifactResolverHelper;
+    private NativeHelper nativeHelper;
 
     /**
      * Dependency graph builder component.
@@ -633,51 +693,13 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
     }
 
     /**
-     * Initialize the Android Debug Bridge and wait for it to start. Does not reinitialize it if it has
-     * already been initialized (that would through and IllegalStateException...). Synchronized sine
-     * the init call in the library is also synchronized .. just in case.
+     * Initialize the Android Debug Bridge and wait for it to start. The bridge is connected once per session and
+     * reused by the later goals and modules, see {@link AndroidDebugBridgeService}.
      */
     protected AndroidDebugBridge initAndroidDebugBridge() throws MojoExecutionException
     {
-        synchronized ( ADB_LOCK )
-        {
-            if ( ! adbInitialized )
-            {
-                DdmPreferences.setTimeOut( adbConnectionTimeout );
-                AndroidDebugBridge.init( false );
-                adbInitialized = true;
-            }
-            AndroidDebugBridge androidDebugBridge = AndroidDebugBridge
-                    .createBridge( getAndroidSdk().getAdbPath(), false );
-            waitUntilConnected( androidDebugBridge );
-            return androidDebugBridge;
-        }
-    }
-
-    /**
-     * Run a wait loop until adb is connected or trials run out. This method seems to work more reliably then using a
-     * listener.
-     */
-    private void waitUntilConnected( AndroidDebugBridge adb )
-    {
-        int trials = 10;
-        final int connectionWaitTime = 50;
-        while ( trials > 0 )
-        {
-            try
-            {
-                Thread.sleep( connectionWaitTime );
-            }
-            catch ( InterruptedException e )
-            {
-                e.printStackTrace();
-            }
-            if ( adb.isConnected() )
-            {
-                break;
-            }
-            trials--;
-        }
+        return AndroidDebugBridgeService.forSession( session )
+                .connect( getAndroidSdk().getAdbPath(), adbConnectionTimeout, getLog() );
     }
 
     /**
@@ -688,22 +710,18 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
         if ( ! androidDebugBridge.hasInitialDeviceList() )
         {
             getLog().info( "Waiting for initial device list from the Android Debug Bridge" );
-            long limitTime = System.currentTimeMillis() + ADB_TIMEOUT_MS;
-            while ( ! androidDebugBridge.hasInitialDeviceList() && ( System.currentTimeMillis() < limitTime ) )
+            try
             {
-                try
+                if ( ! AndroidDebugBridgeService.forSession( session ).waitForInitialDeviceList( androidDebugBridge,
+                        System.currentTimeMillis() + ADB_TIMEOUT_MS ) )
                 {
-                    Thread.sleep( 1000 );
-                }
-                catch ( InterruptedException e )
-                {
-                    throw new MojoExecutionException(
-                            "Interrupted waiting for initial device list from Android Debug Bridge" );
+                    getLog().error( "Did not receive initial device list from the Android Debug Bridge." );
                 }
             }
-            if ( ! androidDebugBridge.hasInitialDeviceList() )
+            catch ( InterruptedException e )
             {
-                getLog().error( "Did not receive initial device list from the Android Debug Bridge." );
+                throw new MojoExecutionException(
+                        "Interrupted waiting for initial device list from Android Debug Bridge" );
             }
         }
     }
@@ -716,35 +734,94 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
      */
     protected void deployApk( final File apkFile ) throws MojoExecutionException, MojoFailureException
     {
-        if ( undeployBeforeDeploy )
+        deployApks( Collections.singletonList( apkFile ) );
+    }
+
+    /**
+     * Deploys apk files to the connected emulators and usb devices. Each device installs the apks one after the other
+     * in the given order, independently of the other devices, so a slow device does not hold up the others.
+     *
+     * @param apkFiles the files to deploy
+     * @throws MojoExecutionException If there is a problem deploying an apk file.
+     */
+    protected void deployApks( final List<File> apkFiles ) throws MojoExecutionException, MojoFailureException
+    {
+        final Map<File, String> packageNames = new HashMap<File, String>();
+        if ( undeployBeforeDeploy || skipIdenticalDeploy )
         {
-            undeployApk( apkFile );
+            for ( File apkFile : apkFiles )
+            {
+                packageNames.put( apkFile, extractPackageNameFromApk( apkFile ) );
+            }
         }
+        final ApkInstallCache installCache = skipIdenticalDeploy ? new ApkInstallCache( getLog() ) : null;
+        final AtomicInteger installed = new AtomicInteger();
+        final AtomicInteger skipped = new AtomicInteger();
         doWithDevices( new DeviceCallback()
         {
             public void doWithDevice( final IDevice device ) throws MojoExecutionException
             {
                 String deviceLogLinePrefix = DeviceHelper.getDeviceLogLinePrefix( device );
-                try
+                int deviceInstalled = 0;
+                int deviceSkipped = 0;
+                for ( File apkFile : apkFiles )
                 {
-                    String result = device.installPackage( apkFile.getAbsolutePath(), true );
-                    // according to the docs for installPackage, not null response is error
-                    if ( result != null )
+                    final String packageName = packageNames.get( apkFile );
+                    if ( installCache != null && installCache.isInstalled( device, packageName, apkFile ) )
+                    {
+                        getLog().info( deviceLogLinePrefix + "Skipped " + apkFile.getAbsolutePath()
+                                + ", the identical apk is installed already" );
+                        deviceSkipped++;
+                        continue;
+                    }
+                    if ( undeployBeforeDeploy )
                     {
-                        throw new MojoExecutionException( deviceLogLinePrefix
-                                + "Install of " + apkFile.getAbsolutePath()
-                                + " failed - [" + result + "]" );
+                        undeployApkFromDevice( device, packageName );
                     }
-                    getLog().info( deviceLogLinePrefix + "Successfully installed " + apkFile.getAbsolutePath() );
-                    getLog().debug( " to " + DeviceHelper.getDescriptiveName( device ) );
+                    installApkOnDevice( device, apkFile );
+                    if ( installCache != null )
+                    {
+                        installCache.recordInstall( device, packageName, apkFile );
+                    }
+                    deviceInstalled++;
                 }
-                catch ( InstallException e )
+                if ( apkFiles.size() > 1 || installCache != null )
                 {
-                    throw new MojoExecutionException( deviceLogLinePrefix + "Install of " + apkFile.getAbsolutePath()
-                            + " failed.", e );
+                    getLog().info( deviceLogLinePrefix + "Installed " + deviceInstalled + " and skipped "
+                            + deviceSkipped + " of " + apkFiles.size() + " apks" );
                 }
+                installed.addAndGet( deviceInstalled );
+                skipped.addAndGet( deviceSkipped );
             }
         } );
+        if ( skipIdenticalDeploy )
+        {
+            getLog().info( "Installed " + installed.get() + " apks, skipped " + skipped.get()
+                    + " apks that were installed already" );
+        }
+    }
+
+    private void installApkOnDevice( IDevice device, File apkFile ) throws MojoExecutionException
+    {
+        String deviceLogLinePrefix = DeviceHelper.getDeviceLogLinePrefix( device );
+        try
+        {
+            String result = device.installPackage( apkFile.getAbsolutePath(), true );
+            // according to the docs for installPackage, not null response is error
+            if ( result != null )
+            {
+                throw new MojoExecutionException( deviceLogLinePrefix
+                        + "Install of " + apkFile.getAbsolutePath()
+                        + " failed - [" + result + "]" );
+            }
+            getLog().info( deviceLogLinePrefix + "Successfully installed " + apkFile.getAbsolutePath() );
+            getLog().debug( " to " + DeviceHelper.getDescriptiveName( device ) );
+        }
+        catch ( InstallException e )
+        {
+            throw new MojoExecutionException( deviceLogLinePrefix + "Install of " + apkFile.getAbsolutePath()
+                    + " failed.", e );
+        }
     }
 
     /**
@@ -754,6 +831,40 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
      */
     protected void deployDependencies() throws MojoExecutionException, MojoFailureException
     {
+        final List<File> apkFiles = getDependencyApks();
+        if ( ! apkFiles.isEmpty() )
+        {
+            deployApks( apkFiles );
+        }
+    }
+
+    /**
+     * Deploys the apk dependencies followed by the apk built with the current project, with a single pass over the
+     * devices in which each device installs all of them independently of the other devices.
+     *
+     * @throws MojoExecutionException
+     * @throws MojoFailureException
+     */
+    protected void deployDependenciesAndBuiltApk() throws MojoExecutionException, MojoFailureException
+    {
+        final List<File> apkFiles = getDependencyApks();
+        if ( project.getPackaging().equals( APK ) )
+        {
+            apkFiles.add( new File( targetDirectory, finalName + "." + APK ) );
+        }
+        else
+        {
+            getLog().info( "Project packaging is not apk, skipping deployment." );
+        }
+        if ( ! apkFiles.isEmpty() )
+        {
+            deployApks( apkFiles );
+        }
+    }
+
+    private List<File> getDependencyApks() throws MojoExecutionException
+    {
+        final List<File> apkFiles = new ArrayList<File>();
         Set<Artifact> directDependentArtifacts = project.getDependencyArtifacts();
         if ( directDependentArtifacts != null )
         {
@@ -764,11 +875,12 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
                 {
                     getLog().debug( "Detected apk dependency " + artifact + ". Will resolve and deploy to device..." );
                     final File targetApkFile = resolveArtifactToFile( artifact );
-                    getLog().debug( "Deploying " + targetApkFile + " to device..." );
-                    deployApk( targetApkFile );
+                    getLog().debug( "Queued " + targetApkFile + " to be installed on each device in order" );
+                    apkFiles.add( targetApkFile );
                 }
             }
         }
+        return apkFiles;
     }
 
     /**
@@ -832,8 +944,15 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
             getLog().info( "android.devicesThreads parameter set to " + getDeviceThreads() );
         }
 
+        final EmulatorPool emulatorPool = EmulatorPool.forSession( session );
         boolean shouldRunOnAllDevices = getDevices().size() == 0;
-        if ( shouldRunOnAllDevices )
+        final boolean shouldRunOnEmulatorPool = shouldRunOnAllDevices && ! emulatorPool.isEmpty();
+        if ( shouldRunOnEmulatorPool )
+        {
+            getLog().info( "android.devices parameter not set, using the emulator pool "
+                    + emulatorPool.getSerialNumbers() );
+        }
+        else if ( shouldRunOnAllDevices )
         {
             getLog().info( "android.devices parameter not set, using all attached devices" );
         }
@@ -842,8 +961,7 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
             getLog().info( "android.devices parameter set to " + getDevices().toString() );
         }
 
-        ArrayList<DoThread> doThreads = new ArrayList<DoThread>();
-        ExecutorService executor = Executors.newFixedThreadPool( threadCount );
+        final DeviceTaskRunner runner = new DeviceTaskRunner( threadCount, deviceTimeout, getLog() );
         for ( final IDevice idevice : devices )
         {
             if ( shouldRunOnAllDevices )
@@ -851,45 +969,58 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
                 String deviceType = idevice.isEmulator() ? "Emulator " : "Device ";
                 getLog().info( deviceType + DeviceHelper.getDescriptiveName( idevice ) + " found." );
             }
-            if ( shouldRunOnAllDevices || shouldDoWithThisDevice( idevice ) )
+            if ( isSelectedDevice( idevice, emulatorPool ) )
             {
-                DoThread deviceDoThread = new DoThread() {
-                    public void runDo() throws MojoFailureException, MojoExecutionException
-                    {
-                        deviceCallback.doWithDevice( idevice );
-                    }
-                };
-                doThreads.add( deviceDoThread );
-                executor.execute( deviceDoThread );
+                runner.submit( idevice, deviceCallback );
             }
         }
-        executor.shutdown();
-        while ( ! executor.isTerminated() )
+        runner.await();
+
+        if ( shouldRunOnEmulatorPool && runner.isEmpty() )
         {
-            // waiting for threads finish
+            throw new MojoExecutionException( "None of the emulator pool " + emulatorPool.getSerialNumbers()
+                    + " is attached." );
         }
-        throwAnyDoThreadErrors( doThreads );
-
-        if ( ! shouldRunOnAllDevices && doThreads.isEmpty() )
+        if ( ! shouldRunOnAllDevices && runner.isEmpty() )
         {
             throw new MojoExecutionException( "No device found for android.device=" + getDevices().toString() );
         }
     }
 
-    private void throwAnyDoThreadErrors( ArrayList<DoThread> doThreads ) throws MojoExecutionException,
-            MojoFailureException
+    /**
+     * Counts the attached devices {@link #doWithDevices(DeviceCallback)} performs its callback on, that is the devices
+     * matching the devices parameter, or else the emulator pool of the session, or else all attached devices.
+     *
+     * @return the number of devices that are used.
+     * @throws org.apache.maven.plugin.MojoExecutionException
+     *          in case there is a problem
+     * @throws org.apache.maven.plugin.MojoFailureException
+     *          in case there is a problem
+     */
+    protected int countSelectedDevices() throws MojoExecutionException, MojoFailureException
     {
-        for ( DoThread deviceDoThread : doThreads )
+        final AndroidDebugBridge androidDebugBridge = initAndroidDebugBridge();
+        waitForInitialDeviceList( androidDebugBridge );
+        final EmulatorPool emulatorPool = EmulatorPool.forSession( session );
+        int count = 0;
+        for ( IDevice idevice : androidDebugBridge.getDevices() )
         {
-            if ( deviceDoThread.failure != null )
+            if ( isSelectedDevice( idevice, emulatorPool ) )
             {
-                throw deviceDoThread.failure;
-            }
-            if ( deviceDoThread.execution != null )
-            {
-                throw deviceDoThread.execution;
+                count++;
             }
         }
+        return count;
+    }
+
+    private boolean isSelectedDevice( IDevice idevice, EmulatorPool emulatorPool )
+            throws MojoExecutionException, MojoFailureException
+    {
+        if ( getDevices().size() > 0 )
+        {
+            return shouldDoWithThisDevice( idevice );
+        }
+        return emulatorPool.isEmpty() || emulatorPool.contains( idevice.getSerialNumber() );
     }
 
     /**
@@ -964,19 +1095,15 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
         {
             public void doWithDevice( final IDevice device ) throws MojoExecutionException
             {
-                String deviceLogLinePrefix = DeviceHelper.getDeviceLogLinePrefix( device );
                 try
                 {
-                    device.uninstallPackage( packageName );
-                    getLog().info( deviceLogLinePrefix + "Successfully uninstalled " + packageName );
-                    getLog().debug( " from " + DeviceHelper.getDescriptiveName( device ) );
+                    undeployApkFromDevice( device, packageName );
                     result.set( true );
                 }
-                catch ( InstallException e )
+                catch ( MojoExecutionException e )
                 {
                     result.set( false );
-                    throw new MojoExecutionException( deviceLogLinePrefix + "Uninstall of " + packageName
-                            + " failed.", e );
+                    throw e;
                 }
             }
         } );
@@ -984,6 +1111,22 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
         return result.get();
     }
 
+    private void undeployApkFromDevice( IDevice device, String packageName ) throws MojoExecutionException
+    {
+        String deviceLogLinePrefix = DeviceHelper.getDeviceLogLinePrefix( device );
+        try
+        {
+            device.uninstallPackage( packageName );
+            getLog().info( deviceLogLinePrefix + "Successfully uninstalled " + packageName );
+            getLog().debug( " from " + DeviceHelper.getDescriptiveName( device ) );
+        }
+        catch ( InstallException e )
+        {
+            throw new MojoExecutionException( deviceLogLinePrefix + "Uninstall of " + packageName
+                    + " failed.", e );
+        }
+    }
+
     /**
      * Extracts the package name from an apk file.
      *
@@ -996,6 +1139,8 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
         executor.setLogger( this.getLog() );
         executor.setCaptureStdOut( true );
         executor.setCaptureStdErr( true );
+        // the package name is at the start of the dump, which must not be dropped for a large manifest
+        executor.setCaptureSpill( true );
 
         AaptCommandBuilder commandBuilder = AaptCommandBuilder
                 .dump( getLog() )
@@ -1007,6 +1152,11 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
         try
         {
             executor.executeCommand( getAndroidSdk().getAaptPath(), commandBuilder.build(), false );
+            if ( executor.isStdOutTruncated() )
+            {
+                throw new MojoExecutionException( "The manifest dump of " + apkFile
+                        + " could not be captured completely" );
+            }
             final String xmlTree = executor.getStandardOut();
             return extractPackageNameFromAndroidManifestXmlTree( xmlTree );
         }
@@ -1129,6 +1279,8 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
      * <p>This is where we collect all logic for how to lookup where it is, and which one to choose. The lookup is
      * based on available parameters. This method should be the only one you should need to look at to understand how
      * the Android SDK is chosen, and from where on disk.</p>
+     * <p>The parsed SDK is shared by all mojos of the session, see {@link AndroidSdkRegistry}.</p>
+     * <p>Starts recording the build timings if <code>timingReport</code> is set, see {@link BuildTimings}.</p>
      *
      * @return the Android SDK to use.
      * @throws org.apache.maven.plugin.MojoExecutionException
@@ -1136,6 +1288,11 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
      */
     protected AndroidSdk getAndroidSdk() throws MojoExecutionException
     {
+        if ( timingReport )
+        {
+            BuildTimings.start( session, project, execution, timingReportDirectory, getLog() );
+        }
+
         File chosenSdkPath;
         String chosenSdkPlatform;
 
@@ -1195,7 +1352,7 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
             chosenSdkPlatform = sdkPlatform;
         }
 
-        return new AndroidSdk( chosenSdkPath, chosenSdkPlatform );
+        return AndroidSdkRegistry.forSession( session ).getSdk( chosenSdkPath, chosenSdkPlatform, getLog() );
     }
 
     private String getAndroidHomeOrThrow() throws MojoExecutionException
@@ -1345,30 +1502,6 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
         return deviceThreads;
     }
 
-    private abstract class DoThread extends Thread
-    {
-        private MojoFailureException failure;
-        private MojoExecutionException execution;
-
-        public final void run()
-        {
-            try
-            {
-                runDo();
-            }
-            catch ( MojoFailureException e )
-            {
-                failure = e;
-            }
-            catch ( MojoExecutionException e )
-            {
-                execution = e;
-            }
-        }
-
-        protected abstract void runDo() throws MojoFailureException, MojoExecutionException;
-    }
-
     /**
      * @return True if this project constructs an APK as opposed to an AAR or APKLIB.
      */
@@ -1428,6 +1561,11 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
                 new MavenToPlexusLogAdapter( getLog() ),
                 unpackedLibsFolder
             );
+            if ( unpackedLibsCache )
+            {
+                unpackedLibHelper.setCache( new UnpackedLibCache( unpackedLibsCacheDirectory,
+                        unpackedLibsCacheMaxSize * FileUtils.ONE_MB, new MavenToPlexusLogAdapter( getLog() ) ) );
+            }
         }
         return unpackedLibHelper;
     }
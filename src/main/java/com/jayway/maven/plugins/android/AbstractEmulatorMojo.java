@@ -16,12 +16,10 @@
  */
 package com.jayway.maven.plugins.android;
 
-import com.android.ddmlib.AdbCommandRejectedException;
 import com.android.ddmlib.AndroidDebugBridge;
 import com.android.ddmlib.IDevice;
-import com.android.ddmlib.ShellCommandUnresponsiveException;
-import com.android.ddmlib.TimeoutException;
 import com.jayway.maven.plugins.android.common.DeviceHelper;
+import com.jayway.maven.plugins.android.config.ConfigPojo;
 import com.jayway.maven.plugins.android.configuration.Emulator;
 import org.apache.commons.lang.StringUtils;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -33,10 +31,18 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -60,32 +66,6 @@ public abstract class AbstractEmulatorMojo extends AbstractAndroidMojo
      * operating system name.
      */
     public static final String OS_NAME = System.getProperty( "os.name" ).toLowerCase( Locale.US );
-    private static final int MILLIS_TO_SLEEP_BETWEEN_DEVICE_ONLINE_CHECKS = 200;
-
-    /**
-     * Even if the device finished booting, there are usually still some things going on in the background,
-     * polling at a higher frequency (un-cached!) is most probably useless
-     */
-    private static final int MILLIS_TO_SLEEP_BETWEEN_SYS_BOOTED_CHECKS = 5000;
-
-    /**
-     * Names of device properties related to the boot state
-     */
-    private static final String[] BOOT_INDICATOR_PROP_NAMES
-            = { "dev.bootcomplete", "sys.boot_completed", "init.svc.bootanim" };
-
-    /**
-     * Target values for properties listed in {@link #BOOT_INDICATOR_PROP_NAMES}, which indicate 'boot completed'
-     */
-    private static final String[] BOOT_INDICATOR_PROP_TARGET_VALUES = { "1", "1", "stopped" };
-
-    /**
-     * Determines, which of the properties listed in {@link #BOOT_INDICATOR_PROP_NAMES} are required
-     * to reach the target value in {@link #BOOT_INDICATOR_PROP_TARGET_VALUES} in order to stop polling.
-     * Since one cannot be picky about what is used as a 'booted' indicator, any 'signalled' property will
-     * be used as an indicator in case of a timeout.
-     */
-    private static final boolean[] BOOT_INDICATOR_PROP_WAIT_FOR = { false, false, true };
 
     /**
      * Warning threshold for narrow timeout values
@@ -93,6 +73,11 @@ public abstract class AbstractEmulatorMojo extends AbstractAndroidMojo
      */
     private static final long START_TIMEOUT_REMAINING_TIME_WARNING_THRESHOLD = 5000; //[ms]
 
+    /**
+     * The last console port adb looks for emulators on.
+     */
+    private static final int MAX_EMULATOR_CONSOLE_PORT = 5584;
+
     /**
      * Configuration for the emulator goals. Either use the plugin configuration like this
      * <pre>
@@ -105,9 +90,11 @@ public abstract class AbstractEmulatorMojo extends AbstractAndroidMojo
      * </pre>
      * or configure as properties  on the command line as android.emulator.avd, android.emulator.wait,
      * android.emulator.options and android.emulator.executable or in pom or settings file as emulator.avd,
-     * emulator.wait and emulator.options.
+     * emulator.wait and emulator.options. The emulator-pool-start goal additionally reads poolAvds, poolSize and
+     * poolFirstPort.
      */
     @Parameter
+    @ConfigPojo
     private Emulator emulator;
 
     /**
@@ -212,15 +199,7 @@ public abstract class AbstractEmulatorMojo extends AbstractAndroidMojo
 
         try
         {
-            String filename;
-            if ( isWindows() )
-            {
-                filename = writeEmulatorStartScriptWindows();
-            }
-            else
-            {
-                filename = writeEmulatorStartScriptUnix();
-            }
+            String filename = writeEmulatorStartScript( "", parsedAvd, "" );
 
             final AndroidDebugBridge androidDebugBridge = initAndroidDebugBridge();
             if ( androidDebugBridge.isConnected() )
@@ -242,7 +221,7 @@ public abstract class AbstractEmulatorMojo extends AbstractAndroidMojo
                     if ( booted )
                     {
                         getLog().info( "Emulator is up and running." );
-                        unlockEmulator( androidDebugBridge );
+                        unlockEmulator( findExistingEmulator( Arrays.asList( androidDebugBridge.getDevices() ) ) );
                     }
                     else
                     {
@@ -263,16 +242,215 @@ public abstract class AbstractEmulatorMojo extends AbstractAndroidMojo
             throw new MojoExecutionException( "", e );
         }
     }
-    
+
+    /**
+     * Starts several emulators at once and waits for all of them to boot. Each emulator gets console and adb ports
+     * of its own. Emulators of the given AVDs that are running already are added to the pool instead of starting
+     * new ones. The emulators are added to the {@link EmulatorPool} of the session, which later device goals use.
+     *
+     * @param avds      The AVDs to start an emulator of, an AVD may be listed several times. If empty,
+     *                  <code>size</code> emulators of the configured AVD are started.
+     * @param size      The number of emulators to start if no AVDs are listed.
+     * @param firstPort The console port to start from, the adb port is the next one.
+     * @throws MojoExecutionException if an emulator cannot be started or does not boot in time.
+     */
+    protected void startAndroidEmulatorPool( String[] avds, int size, int firstPort ) throws MojoExecutionException
+    {
+        parseParameters();
+
+        final List<String> poolAvds = new ArrayList<String>();
+        if ( avds != null && avds.length > 0 )
+        {
+            poolAvds.addAll( Arrays.asList( avds ) );
+        }
+        else
+        {
+            for ( int i = 0; i < size; i++ )
+            {
+                poolAvds.add( parsedAvd );
+            }
+        }
+
+        final AndroidDebugBridge androidDebugBridge = initAndroidDebugBridge();
+        if ( ! androidDebugBridge.isConnected() )
+        {
+            throw new MojoExecutionException( "Android Debug Bridge is not connected." );
+        }
+        waitForInitialDeviceList( androidDebugBridge );
+        final List<IDevice> devices = Arrays.asList( androidDebugBridge.getDevices() );
+        final Set<String> usedSerialNumbers = new HashSet<String>();
+        for ( IDevice device : devices )
+        {
+            usedSerialNumbers.add( device.getSerialNumber() );
+        }
+
+        final EmulatorPool pool = EmulatorPool.forSession( session );
+        final long timeout = System.currentTimeMillis() + Long.parseLong( parsedWait );
+        final CommandExecutor executor = CommandExecutor.Factory.createDefaultCommmandExecutor();
+        executor.setLogger( this.getLog() );
+        final List<String> startedSerialNumbers = new ArrayList<String>();
+        final Set<String> adoptedSerialNumbers = new HashSet<String>();
+        int port = firstPort;
+        for ( String avd : poolAvds )
+        {
+            final IDevice running = findRunningEmulator( devices, avd, adoptedSerialNumbers );
+            if ( running != null )
+            {
+                getLog().info( String.format( "Emulator already running [Serial No: '%s', AVD Name '%s']. "
+                        + "Adding it to the pool.", running.getSerialNumber(), running.getAvdName() ) );
+                adoptedSerialNumbers.add( running.getSerialNumber() );
+                pool.add( running.getSerialNumber() );
+                continue;
+            }
+
+            port = findFreeEmulatorPort( port, usedSerialNumbers );
+            final String serialNumber = "emulator-" + port;
+            // an AVD can only run more than once if no instance writes to it
+            final String options = "-port " + port
+                    + ( Collections.frequency( poolAvds, avd ) > 1 ? " -read-only" : "" );
+            final String filename = writeEmulatorStartScript( "-" + port, avd, options );
+            getLog().info( START_EMULATOR_MSG + filename );
+            try
+            {
+                executor.executeCommand( filename, null );
+            }
+            catch ( ExecutionException e )
+            {
+                throw new MojoExecutionException( "Failed to start emulator of AVD " + avd, e );
+            }
+            usedSerialNumbers.add( serialNumber );
+            startedSerialNumbers.add( serialNumber );
+            port += 2;
+        }
+        if ( startedSerialNumbers.isEmpty() )
+        {
+            return;
+        }
+
+        getLog().info( START_EMULATOR_WAIT_MSG + parsedWait );
+        final ExecutorService waiters = Executors.newFixedThreadPool( startedSerialNumbers.size() );
+        try
+        {
+            final Map<String, Future<Boolean>> booted = new LinkedHashMap<String, Future<Boolean>>();
+            for ( final String serialNumber : startedSerialNumbers )
+            {
+                booted.put( serialNumber, waiters.submit( new Callable<Boolean>()
+                {
+                    public Boolean call() throws MojoExecutionException
+                    {
+                        return waitUntilDeviceIsBootedOrTimeout( androidDebugBridge, serialNumber, timeout );
+                    }
+                } ) );
+            }
+            final List<String> notBooted = new ArrayList<String>();
+            for ( Map.Entry<String, Future<Boolean>> entry : booted.entrySet() )
+            {
+                if ( entry.getValue().get() )
+                {
+                    getLog().info( entry.getKey() + " :   Emulator is up and running." );
+                    pool.add( entry.getKey() );
+                    unlockEmulator( findEmulator( Arrays.asList( androidDebugBridge.getDevices() ),
+                            entry.getKey() ) );
+                }
+                else
+                {
+                    notBooted.add( entry.getKey() );
+                }
+            }
+            if ( ! notBooted.isEmpty() )
+            {
+                throw new MojoExecutionException( "Timeout while waiting for emulators " + notBooted
+                        + " to startup." );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException( "Interrupted while waiting for the emulators to startup.", e );
+        }
+        catch ( java.util.concurrent.ExecutionException e )
+        {
+            if ( e.getCause() instanceof MojoExecutionException )
+            {
+                throw ( MojoExecutionException ) e.getCause();
+            }
+            throw new MojoExecutionException( "Failed while waiting for the emulators to startup.", e.getCause() );
+        }
+        finally
+        {
+            waiters.shutdownNow();
+        }
+    }
+
+    /**
+     * @return A running emulator of the AVD that is not among the given ones, <code>null</code> if there is none.
+     */
+    private IDevice findRunningEmulator( List<IDevice> devices, String avd, Set<String> excludedSerialNumbers )
+    {
+        for ( IDevice device : devices )
+        {
+            if ( device.isEmulator() && avd.equalsIgnoreCase( device.getAvdName() )
+                    && ! excludedSerialNumbers.contains( device.getSerialNumber() ) )
+            {
+                return device;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds an even console port from the given one on, whose adb port is the next one, that no attached emulator
+     * uses and that no other process listens on.
+     */
+    private int findFreeEmulatorPort( int from, Set<String> usedSerialNumbers ) throws MojoExecutionException
+    {
+        for ( int port = from + from % 2; port <= MAX_EMULATOR_CONSOLE_PORT; port += 2 )
+        {
+            if ( ! usedSerialNumbers.contains( "emulator-" + port ) && isPortFree( port ) && isPortFree( port + 1 ) )
+            {
+                return port;
+            }
+        }
+        throw new MojoExecutionException( "No free emulator ports left between " + from + " and "
+                + ( MAX_EMULATOR_CONSOLE_PORT + 1 ) );
+    }
+
+    private boolean isPortFree( int port )
+    {
+        ServerSocket socket = null;
+        try
+        {
+            socket = new ServerSocket( port, 1, InetAddress.getByName( "127.0.0.1" ) );
+            return true;
+        }
+        catch ( IOException e )
+        {
+            return false;
+        }
+        finally
+        {
+            if ( socket != null )
+            {
+                try
+                {
+                    socket.close();
+                }
+                catch ( IOException e )
+                {
+                    // the port was free
+                }
+            }
+        }
+    }
+
     /**
      * Unlocks the emulator.
-     * @param androidDebugBridge
+     * @param myEmulator the emulator to unlock
      */
-    void unlockEmulator( AndroidDebugBridge androidDebugBridge )
+    void unlockEmulator( IDevice myEmulator )
     {
         if ( emulatorUnlock )
         {
-            IDevice myEmulator = findExistingEmulator( Arrays.asList( androidDebugBridge.getDevices() ) );
             int devicePort = extractPortFromDevice( myEmulator );
             if ( devicePort == -1 )
             {
@@ -301,152 +479,67 @@ public abstract class AbstractEmulatorMojo extends AbstractAndroidMojo
     boolean waitUntilDeviceIsBootedOrTimeout( AndroidDebugBridge androidDebugBridge )
             throws MojoExecutionException
     {
-        final long timeout = System.currentTimeMillis() + Long.parseLong( parsedWait );
-        IDevice myEmulator;
-        boolean devOnline;
-        boolean sysBootCompleted = false;
-        long remainingTime = 0;
+        return waitUntilDeviceIsBootedOrTimeout( androidDebugBridge, null,
+                System.currentTimeMillis() + Long.parseLong( parsedWait ) );
+    }
 
-        //If necessary, wait until the device is online or the specified timeout is reached
-        boolean waitingForConnection = false;
-        do
+    /**
+     * @param serialNumber  The serial number of the emulator, <code>null</code> for the emulator of the AVD.
+     * @param timeout       The time to give up at, in milliseconds since the epoch.
+     */
+    private boolean waitUntilDeviceIsBootedOrTimeout( AndroidDebugBridge androidDebugBridge,
+                                                      final String serialNumber, long timeout )
+            throws MojoExecutionException
+    {
+        final String logPrefix = serialNumber == null ? "" : serialNumber + " :   ";
+        final EmulatorBootWatcher.DeviceMatcher matcher = new EmulatorBootWatcher.DeviceMatcher()
         {
-            myEmulator = findExistingEmulator( Arrays.asList( androidDebugBridge.getDevices() ) );
-            devOnline = ( myEmulator != null ) && ( myEmulator.isOnline() );
-            if ( devOnline )
-            {
-                break;
-            }
-            else
+            public boolean matches( IDevice device )
             {
-                myEmulator = null;
+                return findEmulator( Collections.singletonList( device ), serialNumber ) != null;
             }
-
-            if ( !waitingForConnection )
-            {
-                waitingForConnection = true;
-                getLog().info( "Waiting for the device to go online..." );
-            }
-            try
-            {
-                Thread.sleep( MILLIS_TO_SLEEP_BETWEEN_DEVICE_ONLINE_CHECKS );
-            }
-            catch ( InterruptedException e )
-            {
-                throw new MojoExecutionException( "Interrupted waiting for device to become ready" );
-            }
-
-            remainingTime = timeout - System.currentTimeMillis();
-        } while ( remainingTime > 0 );
-
-        if ( devOnline )
+        };
+        final boolean sysBootCompleted;
+        try
         {
-            boolean waitingForBootCompleted = false;
-            final String[] bootIndicatorPropValues = new String[ BOOT_INDICATOR_PROP_NAMES.length ];
-            boolean anyTargetStateReached = false;
-            boolean requiredTargetStatesReached = false;
-
-            // If necessary, wait until the device's system is booted or the specified timeout is reached
-            do
-            {
-                try
-                {
-                    // update state flags...
-                    anyTargetStateReached = false;
-                    requiredTargetStatesReached = true;
-
-                    for ( int indicatorProp = 0; indicatorProp < BOOT_INDICATOR_PROP_NAMES.length; ++indicatorProp )
-                    {
-                        // issue an un-cached property request
-                        boolean targetStateReached =
-                                (
-                                        bootIndicatorPropValues[indicatorProp] != null
-                                                &&  bootIndicatorPropValues[indicatorProp]
-                                                .equals( BOOT_INDICATOR_PROP_TARGET_VALUES[indicatorProp] )
-                                );
-                        if ( !targetStateReached )
-                        {
-                            // (re)query
-                            bootIndicatorPropValues[indicatorProp] =
-                                    myEmulator.getPropertySync( BOOT_INDICATOR_PROP_NAMES[indicatorProp] );
-                            targetStateReached =
-                                    (
-                                            bootIndicatorPropValues[indicatorProp] != null
-                                                    &&  bootIndicatorPropValues[indicatorProp]
-                                                    .equals( BOOT_INDICATOR_PROP_TARGET_VALUES[indicatorProp] )
-                                    );
-                        }
-                        anyTargetStateReached |= targetStateReached;
-                        requiredTargetStatesReached &=
-                                BOOT_INDICATOR_PROP_WAIT_FOR[indicatorProp] ? targetStateReached : true;
-
-                        getLog().debug( BOOT_INDICATOR_PROP_NAMES[indicatorProp]
-                                        + " : " +  bootIndicatorPropValues[indicatorProp]
-                                        + ( targetStateReached ? " == " : " != " )
-                                        + BOOT_INDICATOR_PROP_TARGET_VALUES[indicatorProp]
-                                        + " [" + ( targetStateReached ? "OK" : "PENDING" ) + ']'
-                        );
-                    }
-                }
-                catch ( TimeoutException e )
-                {
-                    // TODO Abort here? Not too problematic since timeouts are used
-                    // optimistically ignore this exception and continue...
-                }
-                catch ( AdbCommandRejectedException e )
-                {
-                    // TODO Abort here? Not too problematic since timeouts are used
-                    // optimistically ignore this exception and continue...
-                }
-                catch ( ShellCommandUnresponsiveException e )
-                {
-                    // TODO Abort here? Not too problematic since timeouts are used
-                    // optimistically ignore this exception and continue...
-                }
-                catch ( IOException e )
-                {
-                    throw new MojoExecutionException( "IO error during status request" , e );
-                }
-
-                remainingTime = timeout - System.currentTimeMillis();
-
-                if ( remainingTime > 0 )
-                {
-                    // consider the boot process to be finished, if all required states have been reached
-                    sysBootCompleted = requiredTargetStatesReached;
-                }
-                else
-                {
-                    // on timeout, use any indicator
-                    sysBootCompleted = anyTargetStateReached;
-                }
-
-                if ( remainingTime > 0 && !sysBootCompleted )
-                {
-                    if ( !waitingForBootCompleted )
-                    {
-                        waitingForBootCompleted = true;
-                        getLog().info( "Waiting for the device to finish booting..." );
-                    }
+            sysBootCompleted = new EmulatorBootWatcher( getLog(), logPrefix )
+                    .waitUntilBooted( androidDebugBridge, matcher, timeout );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException( "Interrupted waiting for device to become ready" );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "IO error during status request" , e );
+        }
+        final long remainingTime = timeout - System.currentTimeMillis();
+        if ( sysBootCompleted && remainingTime < START_TIMEOUT_REMAINING_TIME_WARNING_THRESHOLD )
+        {
+            getLog().warn( logPrefix
+                    + "Boot indicators have been signalled, but remaining time was " + remainingTime + " ms" );
+        }
+        return sysBootCompleted;
+    }
 
-                    try
-                    {
-                        Thread.sleep( MILLIS_TO_SLEEP_BETWEEN_SYS_BOOTED_CHECKS );
-                    }
-                    catch ( InterruptedException e )
-                    {
-                        throw new MojoExecutionException(
-                                "Interrupted while waiting for the device to finish booting" );
-                    }
-                }
-            } while ( !sysBootCompleted && remainingTime > 0 );
-            if ( sysBootCompleted && remainingTime < START_TIMEOUT_REMAINING_TIME_WARNING_THRESHOLD )
+    /**
+     * @param serialNumber  The serial number of the emulator, <code>null</code> for the emulator of the AVD.
+     */
+    private IDevice findEmulator( List<IDevice> devices, String serialNumber )
+    {
+        if ( serialNumber == null )
+        {
+            return findExistingEmulator( devices );
+        }
+        for ( IDevice device : devices )
+        {
+            if ( device.isEmulator() && serialNumber.equals( device.getSerialNumber() ) )
             {
-                getLog().warn(
-                        "Boot indicators have been signalled, but remaining time was " + remainingTime + " ms" );
+                return device;
             }
         }
-        return sysBootCompleted;
+        return null;
     }
 
     private IDevice findExistingEmulator( List<IDevice> devices )
@@ -480,6 +573,24 @@ public abstract class AbstractEmulatorMojo extends AbstractAndroidMojo
         return ( ( device.getAvdName() != null ) && ( device.getAvdName().equalsIgnoreCase( parsedAvd ) ) );
     }
 
+    /**
+     * Writes the script to start an emulator in the background.
+     *
+     * @param instance      Distinguishes the scripts of several emulators started at once, empty for a single one.
+     * @param avd           The AVD to start.
+     * @param extraOptions  Options added to the configured ones.
+     * @return absolute path name of start script
+     */
+    private String writeEmulatorStartScript( String instance, String avd, String extraOptions )
+            throws MojoExecutionException
+    {
+        if ( isWindows() )
+        {
+            return writeEmulatorStartScriptWindows( instance, avd, extraOptions );
+        }
+        return writeEmulatorStartScriptUnix( instance, avd, extraOptions );
+    }
+
     /**
      * Writes the script to start the emulator in the background for windows based environments.
      *
@@ -487,10 +598,11 @@ public abstract class AbstractEmulatorMojo extends AbstractAndroidMojo
      * @throws IOException
      * @throws MojoExecutionException
      */
-    private String writeEmulatorStartScriptWindows() throws MojoExecutionException
+    private String writeEmulatorStartScriptWindows( String instance, String avd, String extraOptions )
+            throws MojoExecutionException
     {
 
-        String filename = SCRIPT_FOLDER + "\\android-maven-plugin-emulator-start.vbs";
+        String filename = SCRIPT_FOLDER + "\\android-maven-plugin-emulator-start" + instance + ".vbs";
 
         File file = new File( filename );
         PrintWriter writer = null;
@@ -501,8 +613,8 @@ public abstract class AbstractEmulatorMojo extends AbstractAndroidMojo
 
             // command needs to be assembled before unique window title since it parses settings and sets up parsedAvd
             // and others.
-            String command = assembleStartCommandLine();
-            String uniqueWindowTitle = "AndroidMavenPlugin-AVD" + parsedAvd;
+            String command = assembleStartCommandLine( avd, extraOptions );
+            String uniqueWindowTitle = "AndroidMavenPlugin-AVD" + avd + instance;
             writer.println( "Dim oShell" );
             writer.println( "Set oShell = WScript.CreateObject(\"WScript.shell\")" );
             String cmdPath = System.getenv( "COMSPEC" );
@@ -536,9 +648,10 @@ public abstract class AbstractEmulatorMojo extends AbstractAndroidMojo
      * @throws IOException
      * @throws MojoExecutionException
      */
-    private String writeEmulatorStartScriptUnix() throws MojoExecutionException
+    private String writeEmulatorStartScriptUnix( String instance, String avd, String extraOptions )
+            throws MojoExecutionException
     {
-        String filename = SCRIPT_FOLDER + "/android-maven-plugin-emulator-start.sh";
+        String filename = SCRIPT_FOLDER + "/android-maven-plugin-emulator-start" + instance + ".sh";
 
         File sh;
         sh = new File( "/bin/bash" );
@@ -557,7 +670,7 @@ public abstract class AbstractEmulatorMojo extends AbstractAndroidMojo
         {
             writer = new PrintWriter( new FileWriter( file ) );
             writer.println( "#!" + sh.getAbsolutePath() );
-            writer.print( assembleStartCommandLine() );
+            writer.print( assembleStartCommandLine( avd, extraOptions ) );
             writer.print( " 1>/dev/null 2>&1 &" ); // redirect outputs and run as background task
         }
         catch ( IOException e )
@@ -764,15 +877,19 @@ public abstract class AbstractEmulatorMojo extends AbstractAndroidMojo
      * @throws MojoExecutionException
      * @see com.jayway.maven.plugins.android.configuration.Emulator
      */
-    private String assembleStartCommandLine() throws MojoExecutionException
+    private String assembleStartCommandLine( String avd, String extraOptions ) throws MojoExecutionException
     {
         String emulatorPath = new File ( getAndroidSdk().getToolsPath(), parsedExecutable ).getAbsolutePath();
         StringBuilder startCommandline = new StringBuilder( "\"\"" ).append( emulatorPath ).append( "\"\"" )
-                .append( " -avd " ).append( parsedAvd ).append( " " );
+                .append( " -avd " ).append( avd ).append( " " );
         if ( !StringUtils.isEmpty( parsedOptions ) )
         {
             startCommandline.append( parsedOptions );
         }
+        if ( !StringUtils.isEmpty( extraOptions ) )
+        {
+            startCommandline.append( " " ).append( extraOptions );
+        }
         getLog().info( "Android emulator command: " + startCommandline );
         return startCommandline.toString();
     }
@@ -25,14 +25,24 @@ import com.android.ddmlib.testrunner.RemoteAndroidTestRunner;
 import com.jayway.maven.plugins.android.asm.AndroidTestFinder;
 import com.jayway.maven.plugins.android.common.DeviceHelper;
 import com.jayway.maven.plugins.android.configuration.Test;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Parameter;
+import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * AbstractInstrumentationMojo implements running the instrumentation
@@ -43,6 +53,7 @@ import java.util.Map;
  */
 public abstract class AbstractInstrumentationMojo extends AbstractAndroidMojo
 {
+    private static final int SHARDS_PER_DEVICE = 4;
 
     /**
      * -Dmaven.test.skip is commonly used with Maven to skip tests. We honor it too.
@@ -86,6 +97,9 @@ public abstract class AbstractInstrumentationMojo extends AbstractAndroidMojo
      *   &lt;logOnly&gt;true|false&lt;/logOnly&gt;  avd
      *   &lt;testSize&gt;small|medium|large&lt;/testSize&gt;
      *   &lt;createReport&gt;true|false&lt;/createReport&gt;
+     *   &lt;shard&gt;true|false&lt;/shard&gt;
+     *   &lt;shardCount&gt;0&lt;/shardCount&gt;
+     *   &lt;shardDurationsFile&gt;&lt;/shardDurationsFile&gt;
      *   &lt;classes&gt;
      *     &lt;class&gt;your.package.name.YourTestClass&lt;/class&gt;
      *   &lt;/classes&gt;
@@ -245,6 +259,36 @@ public abstract class AbstractInstrumentationMojo extends AbstractAndroidMojo
     @Parameter( property = "android.test.instrumentationArgs" )
     protected List<String> testInstrumentationArgs;
 
+    /**
+     * <p>Whether to split the test classes over the devices instead of running all tests on every device. The test
+     * classes are divided into shards of about the same duration, based on the durations of earlier runs, and each
+     * device takes the next shard from a common queue when it is done with the previous one. The shard reports are
+     * merged into a single report when <code>createReport</code> is enabled.</p>
+     * <p>The test classes are taken from <code>classes</code> when set, otherwise they are found in the compiled
+     * classes of the project, limited to <code>packages</code> when set.</p>
+     * <p>This parameter can also be configured from command-line with
+     * parameter <code>-Dandroid.test.shard=true</code>.</p>
+     */
+    @Parameter( property = "android.test.shard", defaultValue = "false" )
+    protected Boolean testShard;
+
+    /**
+     * The number of shards to split the test classes into when <code>shard</code> is enabled. The default of 0
+     * uses four shards per device the tests run on, so that devices that are done early can take over work from
+     * slower ones.
+     */
+    @Parameter( property = "android.test.shardCount", defaultValue = "0" )
+    protected Integer testShardCount;
+
+    /**
+     * The file the durations of the test classes are kept in when <code>shard</code> is enabled, to balance the
+     * shards of the next run. Keep it outside of the build directory to keep it across clean builds. The durations
+     * are taken from the test reports, so they are only kept when <code>createReport</code> is enabled.
+     */
+    @Parameter( property = "android.test.shardDurationsFile",
+            defaultValue = "${project.build.directory}/android-test-durations.properties" )
+    protected File testShardDurationsFile;
+
     private boolean classesExists;
     private boolean packagesExists;
 
@@ -263,6 +307,9 @@ public abstract class AbstractInstrumentationMojo extends AbstractAndroidMojo
     private Boolean parsedDebug;
     private Boolean parsedLogOnly;
     private Boolean parsedCreateReport;
+    private Boolean parsedShard;
+    private Integer parsedShardCount;
+    private File parsedShardDurationsFile;
 
     private String packagesList;
 
@@ -301,6 +348,12 @@ public abstract class AbstractInstrumentationMojo extends AbstractAndroidMojo
                     + "http://developer.android.com/guide/developing/testing/testing_otheride.html" );
         }
 
+        if ( Boolean.TRUE.equals( parsedShard ) )
+        {
+            instrumentShards();
+            return;
+        }
+
         DeviceCallback instrumentationTestExecutor = new DeviceCallback()
         {
             public void doWithDevice( final IDevice device ) throws MojoExecutionException, MojoFailureException
@@ -327,83 +380,310 @@ public abstract class AbstractInstrumentationMojo extends AbstractAndroidMojo
                             + parsedClasses );
                 }
 
-                if ( parsedAnnotations != null )
-                {
-                    for ( String annotation : parsedAnnotations )
-                    {
-                        remoteAndroidTestRunner.addInstrumentationArg( "annotation", annotation );
-                    }
-                }
+                configureTestRunner( remoteAndroidTestRunner );
 
-                if ( parsedExcludeAnnotations != null )
-                {
-                    for ( String annotation : parsedExcludeAnnotations )
-                    {
-                        remoteAndroidTestRunner.addInstrumentationArg( "notAnnotation", annotation );
-                    }
+                getLog().info( deviceLogLinePrefix +  "Running instrumentation tests in " 
+                        + parsedInstrumentationPackage );
+                AndroidTestRunListener testRunListener = new AndroidTestRunListener( project, device, getLog(),
+                        parsedCreateReport, false, "", "", targetDirectory );
+                runTests( remoteAndroidTestRunner, testRunListener, deviceLogLinePrefix );
+            }
+        };
 
-                }
+        instrumentationTestExecutor = new ScreenshotServiceWrapper( instrumentationTestExecutor, project, getLog() );
 
-                remoteAndroidTestRunner.setDebug( parsedDebug );
-                remoteAndroidTestRunner.setCoverage( parsedCoverage );
-                if ( ! "".equals( parsedCoverageFile ) )
-                {
-                    remoteAndroidTestRunner.addInstrumentationArg( "coverageFile", parsedCoverageFile );
-                }
-                remoteAndroidTestRunner.setLogOnly( parsedLogOnly );
+        doWithDevices( instrumentationTestExecutor );
+    }
 
-                if ( StringUtils.isNotBlank( parsedTestSize ) )
-                {
-                    IRemoteAndroidTestRunner.TestSize validSize = IRemoteAndroidTestRunner.TestSize
-                            .getTestSize( parsedTestSize );
-                    remoteAndroidTestRunner.setTestSize( validSize );
-                }
+    /**
+     * Splits the test classes into shards and lets every device run shards from a common queue until none are left.
+     */
+    private void instrumentShards() throws MojoExecutionException, MojoFailureException
+    {
+        final List<String> testClasses = findTestClassesToShard();
+        if ( testClasses.isEmpty() )
+        {
+            getLog().info( "No test classes found to run." );
+            return;
+        }
 
-                addAllInstrumentationArgs( remoteAndroidTestRunner, parsedInstrumentationArgs );
+        Map<String, Long> durations;
+        try
+        {
+            durations = TestShards.readDurations( parsedShardDurationsFile );
+        }
+        catch ( IOException e )
+        {
+            getLog().warn( "Could not read test durations from " + parsedShardDurationsFile, e );
+            durations = new HashMap<String, Long>();
+        }
+        int shardCount = parsedShardCount != null ? parsedShardCount : 0;
+        if ( shardCount <= 0 )
+        {
+            shardCount = SHARDS_PER_DEVICE * Math.max( 1, countSelectedDevices() );
+        }
+        final List<List<String>> shards = TestShards.plan( testClasses, durations, shardCount );
+        getLog().info( "Running " + testClasses.size() + " test classes in " + shards.size() + " shards" );
 
-                getLog().info( deviceLogLinePrefix +  "Running instrumentation tests in " 
-                        + parsedInstrumentationPackage );
-                try
+        final Queue<Integer> pendingShards = new ConcurrentLinkedQueue<Integer>();
+        for ( int i = 0; i < shards.size(); i++ )
+        {
+            pendingShards.add( i );
+        }
+
+        final Set<Integer> completedShards = Collections.newSetFromMap( new ConcurrentHashMap<Integer, Boolean>() );
+
+        final File shardReportDirectory = new File( targetDirectory, "android-test-shards" );
+        if ( parsedCreateReport )
+        {
+            try
+            {
+                FileUtils.deleteDirectory( shardReportDirectory );
+            }
+            catch ( IOException e )
+            {
+                throw new MojoExecutionException( "Could not delete old shard reports in " + shardReportDirectory, e );
+            }
+        }
+
+        DeviceCallback shardExecutor = new DeviceCallback()
+        {
+            public void doWithDevice( final IDevice device ) throws MojoExecutionException, MojoFailureException
+            {
+                String deviceLogLinePrefix = DeviceHelper.getDeviceLogLinePrefix( device );
+                MojoFailureException firstFailure = null;
+                Integer shard;
+                while ( ( shard = pendingShards.poll() ) != null )
                 {
+                    final List<String> shardClasses = shards.get( shard );
+                    RemoteAndroidTestRunner remoteAndroidTestRunner = new RemoteAndroidTestRunner(
+                            parsedInstrumentationPackage, parsedInstrumentationRunner, device );
+                    remoteAndroidTestRunner.setClassNames( shardClasses.toArray( new String[ shardClasses.size() ] ) );
+                    configureTestRunner( remoteAndroidTestRunner );
+
+                    getLog().info( deviceLogLinePrefix + "Running shard " + ( shard + 1 ) + " of " + shards.size()
+                            + " with " + shardClasses.size() + " test classes" );
                     AndroidTestRunListener testRunListener = new AndroidTestRunListener( project, device, getLog(),
-                            parsedCreateReport, false, "", "", targetDirectory );
-                    remoteAndroidTestRunner.run( testRunListener );
-                    if ( testRunListener.hasFailuresOrErrors() )
+                            parsedCreateReport, false, "", "-shard" + ( shard + 1 ), shardReportDirectory );
+                    try
                     {
-                        throw new MojoFailureException( deviceLogLinePrefix +  "Tests failed on device." );
+                        runTests( remoteAndroidTestRunner, testRunListener, deviceLogLinePrefix );
+                        completedShards.add( shard );
                     }
-                    if ( testRunListener.testRunFailed() )
+                    catch ( MojoFailureException e )
                     {
-                        throw new MojoFailureException( deviceLogLinePrefix + "Test run failed to complete: " 
-                                + testRunListener.getTestRunFailureCause() );
+                        completedShards.add( shard );
+                        if ( firstFailure == null )
+                        {
+                            firstFailure = e;
+                        }
                     }
-                    if ( testRunListener.threwException() )
+                    catch ( MojoExecutionException e )
                     {
-                        throw new MojoFailureException( deviceLogLinePrefix +  testRunListener.getExceptionMessages() );
+                        // leave the shard to the other devices
+                        pendingShards.add( shard );
+                        throw e;
                     }
                 }
-                catch ( TimeoutException e )
-                {
-                    throw new MojoExecutionException( deviceLogLinePrefix + "timeout", e );
-                }
-                catch ( AdbCommandRejectedException e )
-                {
-                    throw new MojoExecutionException( deviceLogLinePrefix + "adb command rejected", e );
-                }
-                catch ( ShellCommandUnresponsiveException e )
+                if ( firstFailure != null )
                 {
-                    throw new MojoExecutionException( deviceLogLinePrefix + "shell command " + "unresponsive", e );
-                }
-                catch ( IOException e )
-                {
-                    throw new MojoExecutionException( deviceLogLinePrefix + "IO problem", e );
+                    throw firstFailure;
                 }
             }
         };
 
-        instrumentationTestExecutor = new ScreenshotServiceWrapper( instrumentationTestExecutor, project, getLog() );
+        shardExecutor = new ScreenshotServiceWrapper( shardExecutor, project, getLog() );
 
-        doWithDevices( instrumentationTestExecutor );
+        try
+        {
+            doWithDevices( shardExecutor );
+        }
+        catch ( MojoExecutionException e )
+        {
+            final List<Integer> unrunShards = getUnrunShards( shards.size(), completedShards );
+            if ( ! unrunShards.isEmpty() )
+            {
+                throw new MojoExecutionException( "Shards " + unrunShards + " of " + shards.size()
+                        + " never ran: " + e.getMessage(), e );
+            }
+            throw e;
+        }
+        finally
+        {
+            if ( parsedCreateReport )
+            {
+                mergeShardReports( new File( shardReportDirectory, "surefire-reports" ) );
+            }
+        }
+
+        final List<Integer> unrunShards = getUnrunShards( shards.size(), completedShards );
+        if ( ! unrunShards.isEmpty() )
+        {
+            throw new MojoExecutionException( "Shards " + unrunShards + " of " + shards.size() + " never ran." );
+        }
+    }
+
+    /**
+     * @return The numbers, starting at 1, of the shards that were not run to the end on any device.
+     */
+    private static List<Integer> getUnrunShards( int shardCount, Set<Integer> completedShards )
+    {
+        final List<Integer> unrunShards = new ArrayList<Integer>();
+        for ( int i = 0; i < shardCount; i++ )
+        {
+            if ( ! completedShards.contains( i ) )
+            {
+                unrunShards.add( i + 1 );
+            }
+        }
+        return unrunShards;
+    }
+
+    private List<String> findTestClassesToShard() throws MojoExecutionException
+    {
+        if ( classesExists )
+        {
+            return Arrays.asList( StringUtils.split( buildCommaSeparatedString( parsedClasses ), "," ) );
+        }
+        if ( ! projectOutputDirectory.isDirectory() )
+        {
+            return new ArrayList<String>();
+        }
+        final List<String> testClasses = new ArrayList<String>();
+        for ( String testClass : AndroidTestFinder.findTestClasses( projectOutputDirectory ) )
+        {
+            if ( ! packagesExists || isInPackages( testClass ) )
+            {
+                testClasses.add( testClass );
+            }
+        }
+        return testClasses;
+    }
+
+    private boolean isInPackages( String testClass )
+    {
+        for ( String testPackage : packagesList.split( "," ) )
+        {
+            if ( testClass.startsWith( testPackage + "." ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merges the shard reports into the surefire report of the project, and keeps the durations of the test classes
+     * for the next run.
+     */
+    private void mergeShardReports( File shardReportDirectory )
+    {
+        final File[] shardReports = shardReportDirectory.listFiles( new FilenameFilter()
+        {
+            public boolean accept( File dir, String name )
+            {
+                return name.startsWith( "TEST-" ) && name.endsWith( ".xml" );
+            }
+        } );
+        if ( shardReports == null || shardReports.length == 0 )
+        {
+            return;
+        }
+        Arrays.sort( shardReports );
+
+        final ShardedTestReport report = new ShardedTestReport();
+        for ( File shardReport : shardReports )
+        {
+            report.add( shardReport );
+        }
+        try
+        {
+            final File reportDirectory = new File( targetDirectory, "surefire-reports" );
+            FileUtils.forceMkdir( reportDirectory );
+            final File reportFile = new File( reportDirectory, "TEST-" + project.getArtifactId() + "-sharded.xml" );
+            report.write( reportFile, parsedInstrumentationPackage );
+            getLog().info( "Merged report of " + shardReports.length + " shards written to " + reportFile );
+            TestShards.updateDurations( parsedShardDurationsFile, report.getClassDurations() );
+        }
+        catch ( IOException e )
+        {
+            getLog().warn( "Could not merge the shard reports in " + shardReportDirectory, e );
+        }
+    }
+
+    private void configureTestRunner( RemoteAndroidTestRunner remoteAndroidTestRunner )
+    {
+        if ( parsedAnnotations != null )
+        {
+            for ( String annotation : parsedAnnotations )
+            {
+                remoteAndroidTestRunner.addInstrumentationArg( "annotation", annotation );
+            }
+        }
+
+        if ( parsedExcludeAnnotations != null )
+        {
+            for ( String annotation : parsedExcludeAnnotations )
+            {
+                remoteAndroidTestRunner.addInstrumentationArg( "notAnnotation", annotation );
+            }
+
+        }
+
+        remoteAndroidTestRunner.setDebug( parsedDebug );
+        remoteAndroidTestRunner.setCoverage( parsedCoverage );
+        if ( ! "".equals( parsedCoverageFile ) )
+        {
+            remoteAndroidTestRunner.addInstrumentationArg( "coverageFile", parsedCoverageFile );
+        }
+        remoteAndroidTestRunner.setLogOnly( parsedLogOnly );
+
+        if ( StringUtils.isNotBlank( parsedTestSize ) )
+        {
+            IRemoteAndroidTestRunner.TestSize validSize = IRemoteAndroidTestRunner.TestSize
+                    .getTestSize( parsedTestSize );
+            remoteAndroidTestRunner.setTestSize( validSize );
+        }
+
+        addAllInstrumentationArgs( remoteAndroidTestRunner, parsedInstrumentationArgs );
+    }
+
+    private void runTests( RemoteAndroidTestRunner remoteAndroidTestRunner, AndroidTestRunListener testRunListener,
+                           String deviceLogLinePrefix ) throws MojoExecutionException, MojoFailureException
+    {
+        try
+        {
+            remoteAndroidTestRunner.run( testRunListener );
+            if ( testRunListener.hasFailuresOrErrors() )
+            {
+                throw new MojoFailureException( deviceLogLinePrefix +  "Tests failed on device." );
+            }
+            if ( testRunListener.testRunFailed() )
+            {
+                throw new MojoFailureException( deviceLogLinePrefix + "Test run failed to complete: " 
+                        + testRunListener.getTestRunFailureCause() );
+            }
+            if ( testRunListener.threwException() )
+            {
+                throw new MojoFailureException( deviceLogLinePrefix +  testRunListener.getExceptionMessages() );
+            }
+        }
+        catch ( TimeoutException e )
+        {
+            throw new MojoExecutionException( deviceLogLinePrefix + "timeout", e );
+        }
+        catch ( AdbCommandRejectedException e )
+        {
+            throw new MojoExecutionException( deviceLogLinePrefix + "adb command rejected", e );
+        }
+        catch ( ShellCommandUnresponsiveException e )
+        {
+            throw new MojoExecutionException( deviceLogLinePrefix + "shell command " + "unresponsive", e );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( deviceLogLinePrefix + "IO problem", e );
+        }
     }
 
     private void addAllInstrumentationArgs(
@@ -526,6 +806,31 @@ public abstract class AbstractInstrumentationMojo extends AbstractAndroidMojo
                 parsedCreateReport = testCreateReport;
             }
 
+            if ( test.isShard() != null )
+            {
+                parsedShard = test.isShard();
+            }
+            else
+            {
+                parsedShard = testShard;
+            }
+            if ( test.getShardCount() != null )
+            {
+                parsedShardCount = test.getShardCount();
+            }
+            else
+            {
+                parsedShardCount = testShardCount;
+            }
+            if ( test.getShardDurationsFile() != null )
+            {
+                parsedShardDurationsFile = test.getShardDurationsFile();
+            }
+            else
+            {
+                parsedShardDurationsFile = testShardDurationsFile;
+            }
+
             parsedInstrumentationArgs = InstrumentationArgumentParser.parse( test.getInstrumentationArgs() );
         }
         // no pom, we take properties
@@ -544,6 +849,9 @@ public abstract class AbstractInstrumentationMojo extends AbstractAndroidMojo
             parsedDebug = testDebug;
             parsedLogOnly = testLogOnly;
             parsedCreateReport = testCreateReport;
+            parsedShard = testShard;
+            parsedShardCount = testShardCount;
+            parsedShardDurationsFile = testShardDurationsFile;
             parsedInstrumentationArgs = InstrumentationArgumentParser.parse( testInstrumentationArgs );
         }
     }
@@ -0,0 +1,205 @@
+package com.jayway.maven.plugins.android;
+
+import com.android.ddmlib.AndroidDebugBridge;
+import com.android.ddmlib.DdmPreferences;
+import com.android.ddmlib.IDevice;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * The connection to the Android Debug Bridge of a session.
+ * <p>
+ * The bridge is connected by the first mojo of the session that works with devices, and reused by the later goals
+ * and modules as long as it stays connected. The device list of the bridge is kept up to date by its device monitor
+ * in memory, so it is available right away. Waiting for the bridge is woken up by its device change events, instead
+ * of sleeping for fixed steps.
+ * </p>
+ */
+public final class AndroidDebugBridgeService
+{
+    /**
+     * One service per session.
+     */
+    private static final SessionScoped<AndroidDebugBridgeService> SERVICES
+            = new SessionScoped<AndroidDebugBridgeService>()
+    {
+        @Override
+        protected AndroidDebugBridgeService create()
+        {
+            return new AndroidDebugBridgeService();
+        }
+    };
+
+    /**
+     * Guards the initialization of the library, which can only be done once per JVM.
+     */
+    private static final Object ADB_LOCK = new Object();
+
+    private static boolean adbInitialized = false;
+
+    /**
+     * The time adb gets to accept the connection of a newly created bridge, as before.
+     */
+    private static final long CONNECTION_WAIT_MILLIS = 500;
+
+    /**
+     * The bridge answers some states without an event, e.g. being connected or having the initial device list. They
+     * are checked again after this time.
+     */
+    private static final long RECHECK_MILLIS = 50;
+
+    /**
+     * The device change listener of the JVM. The listeners of the library are static, so a single one is registered
+     * with it, that does not keep the services of past sessions alive.
+     */
+    private static final DeviceChangeSignal SIGNAL = new DeviceChangeSignal();
+
+    private AndroidDebugBridge bridge;
+    private String adbPath;
+
+    /**
+     * Returns the service of the given session, creating it on first use.
+     *
+     * @param session the current Maven session, may be <code>null</code> in which case a new, unshared service is
+     *                returned.
+     * @return the service shared by all mojos of the session.
+     */
+    public static AndroidDebugBridgeService forSession( MavenSession session )
+    {
+        return SERVICES.get( session );
+    }
+
+    /**
+     * Returns the connected bridge of the session, connecting it on first use or after it lost its connection.
+     *
+     * @param adbPath           The path of the adb executable.
+     * @param connectionTimeout The timeout of adb connections in milliseconds, applied on the first connection of
+     *                          the JVM.
+     * @param log               The log.
+     * @return The bridge, which may not be connected if adb did not accept the connection in time.
+     */
+    public synchronized AndroidDebugBridge connect( String adbPath, int connectionTimeout, Log log )
+    {
+        if ( bridge != null && bridge.isConnected() && adbPath.equals( this.adbPath ) )
+        {
+            log.debug( "Reusing the connection to the Android Debug Bridge" );
+            return bridge;
+        }
+        synchronized ( ADB_LOCK )
+        {
+            if ( ! adbInitialized )
+            {
+                DdmPreferences.setTimeOut( connectionTimeout );
+                AndroidDebugBridge.init( false );
+                AndroidDebugBridge.addDeviceChangeListener( SIGNAL );
+                adbInitialized = true;
+            }
+            bridge = AndroidDebugBridge.createBridge( adbPath, false );
+            this.adbPath = adbPath;
+        }
+        waitFor( new Condition()
+        {
+            public boolean isMet()
+            {
+                return bridge.isConnected();
+            }
+        }, System.currentTimeMillis() + CONNECTION_WAIT_MILLIS );
+        return bridge;
+    }
+
+    /**
+     * Waits until the bridge has its initial device list or the time runs out.
+     *
+     * @param androidDebugBridge The bridge to wait for.
+     * @param timeout            The time to give up at, in milliseconds since the epoch.
+     * @return true if the bridge has its initial device list.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean waitForInitialDeviceList( final AndroidDebugBridge androidDebugBridge, long timeout )
+            throws InterruptedException
+    {
+        return SIGNAL.waitForChange( new Condition()
+        {
+            public boolean isMet()
+            {
+                return androidDebugBridge.hasInitialDeviceList();
+            }
+        }, timeout );
+    }
+
+    private interface Condition
+    {
+        boolean isMet();
+    }
+
+    /**
+     * Like {@link DeviceChangeSignal#waitForChange(Condition, long)}, but only sets the interrupt status of the
+     * thread again, so that an interrupt ends the wait without failing the connection.
+     */
+    private void waitFor( Condition condition, long timeout )
+    {
+        try
+        {
+            SIGNAL.waitForChange( condition, timeout );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wakes up the waiting mojos when the device list changes.
+     */
+    private static final class DeviceChangeSignal implements AndroidDebugBridge.IDeviceChangeListener
+    {
+        private long changeCount;
+
+        /**
+         * Waits until the condition is met, checking it on each device change and at least every
+         * {@link AndroidDebugBridgeService#RECHECK_MILLIS}.
+         */
+        synchronized boolean waitForChange( Condition condition, long timeout ) throws InterruptedException
+        {
+            while ( ! condition.isMet() )
+            {
+                final long remainingTime = timeout - System.currentTimeMillis();
+                if ( remainingTime <= 0 )
+                {
+                    return false;
+                }
+                final long seenChanges = changeCount;
+                final long recheckTime = System.currentTimeMillis() + Math.min( remainingTime, RECHECK_MILLIS );
+                while ( changeCount == seenChanges && System.currentTimeMillis() < recheckTime )
+                {
+                    wait( Math.max( 1, recheckTime - System.currentTimeMillis() ) );
+                }
+            }
+            return true;
+        }
+
+        private synchronized void signalChange()
+        {
+            changeCount++;
+            notifyAll();
+        }
+
+        public void deviceConnected( IDevice device )
+        {
+            signalChange();
+        }
+
+        public void deviceDisconnected( IDevice device )
+        {
+            signalChange();
+        }
+
+        public void deviceChanged( IDevice device, int changeMask )
+        {
+            if ( ( changeMask & IDevice.CHANGE_STATE ) != 0 )
+            {
+                signalChange();
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.jayway.maven.plugins.android;
+
+import com.android.SdkConstants;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Session wide cache of parsed {@link AndroidSdk} instances.
+ * <p>
+ * Creating an {@link AndroidSdk} rescans the whole SDK folder (platforms, add-ons and build-tools), so the result
+ * is kept per (sdk path, platform) pair and shared by all mojos and modules of the same Maven session, including
+ * parallel (-T) builds. An entry is re-created when the fingerprint of the SDK folder changes, e.g. when a platform
+ * or build-tools version gets installed during the build.
+ * </p>
+ */
+public final class AndroidSdkRegistry
+{
+    /**
+     * One registry per session.
+     */
+    private static final SessionScoped<AndroidSdkRegistry> REGISTRIES = new SessionScoped<AndroidSdkRegistry>()
+    {
+        @Override
+        protected AndroidSdkRegistry create()
+        {
+            return new AndroidSdkRegistry();
+        }
+    };
+
+    /**
+     * SDK sub folders whose modification time changes when a package is installed or removed.
+     */
+    private static final String[] FINGERPRINT_PATHS = {
+        SdkConstants.FD_PLATFORMS,
+        SdkConstants.FD_ADDONS,
+        SdkConstants.FD_BUILD_TOOLS,
+        SdkConstants.FD_PLATFORM_TOOLS,
+        SdkConstants.FD_TOOLS + "/source.properties"
+    };
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Returns the registry for the given session, creating it on first use.
+     *
+     * @param session the current Maven session, may be <code>null</code> (e.g. in unit tests) in which case a
+     *                new, unshared registry is returned.
+     * @return the registry shared by all mojos of the session.
+     */
+    public static AndroidSdkRegistry forSession( MavenSession session )
+    {
+        return REGISTRIES.get( session );
+    }
+
+    /**
+     * Returns the SDK for the given path and platform, parsing it only if it is not known yet or if the SDK folder
+     * changed since it was last parsed.
+     *
+     * @param sdkPath  the SDK root folder.
+     * @param platform the platform or API level, may be <code>null</code> for the default.
+     * @param log      logger for the cache statistics, may be <code>null</code>.
+     * @return the parsed SDK, never <code>null</code>.
+     * @throws InvalidSdkException if the SDK or platform is invalid.
+     */
+    public AndroidSdk getSdk( File sdkPath, String platform, Log log )
+    {
+        final String key = sdkPath.getAbsolutePath() + File.pathSeparator + platform;
+        final String fingerprint = fingerprint( sdkPath );
+
+        Entry entry = entries.get( key );
+        if ( entry == null || !entry.fingerprint.equals( fingerprint ) )
+        {
+            synchronized ( this )
+            {
+                // double check, another module may have parsed the SDK while we were waiting
+                entry = entries.get( key );
+                if ( entry == null || !entry.fingerprint.equals( fingerprint ) )
+                {
+                    misses.incrementAndGet();
+                    entry = new Entry( new AndroidSdk( sdkPath, platform ), fingerprint );
+                    entries.put( key, entry );
+                    logStatistics( log, "miss", key );
+                    return entry.sdk;
+                }
+            }
+        }
+        hits.incrementAndGet();
+        logStatistics( log, "hit", key );
+        return entry.sdk;
+    }
+
+    /**
+     * @return the number of lookups answered from the cache.
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that had to parse the SDK.
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    private void logStatistics( Log log, String result, String key )
+    {
+        if ( log != null && log.isDebugEnabled() )
+        {
+            log.debug( "Android SDK registry " + result + " for " + key
+                    + " (hits=" + hits.get() + ", misses=" + misses.get() + ")" );
+        }
+    }
+
+    /**
+     * Cheap fingerprint of the installed SDK packages, based on the modification times of the package folders.
+     */
+    static String fingerprint( File sdkPath )
+    {
+        StringBuilder sb = new StringBuilder();
+        for ( String path : FINGERPRINT_PATHS )
+        {
+            sb.append( new File( sdkPath, path ).lastModified() ).append( ':' );
+        }
+        return sb.toString();
+    }
+
+    private static final class Entry
+    {
+        private final AndroidSdk sdk;
+        private final String fingerprint;
+
+        private Entry( AndroidSdk sdk, String fingerprint )
+        {
+            this.sdk = sdk;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -9,32 +9,14 @@ import com.android.ddmlib.testrunner.ITestRunListener;
 import com.android.ddmlib.testrunner.TestIdentifier;
 import com.jayway.maven.plugins.android.common.DeviceHelper;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
-import org.w3c.dom.Attr;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Result;
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -52,46 +34,6 @@ public class AndroidTestRunListener implements ITestRunListener
      */
     private static final String INDENT = "  ";
 
-    /**
-     * Junit report schema documentation is sparse. Here are some hints
-     *
-     * @see "http://mail-archives.apache.org/mod_mbox/ ant-dev/200902.mbox/%3
-     *      Cdffc72020902241548l4316d645w2e98caf5f0aac770
-     * @mail.gmail.com%3E"
-     * @see "http://junitpdfreport.sourceforge.net/managedcontent/PdfTranslation"
-     */
-    private static final String TAG_TESTSUITES = "testsuites";
-
-    private static final String TAG_TESTSUITE = "testsuite";
-    private static final String ATTR_TESTSUITE_ERRORS = "errors";
-    private static final String ATTR_TESTSUITE_FAILURES = "failures";
-    private static final String ATTR_TESTSUITE_IGNORED = "ignored";
-    private static final String ATTR_TESTSUITE_HOSTNAME = "hostname";
-    private static final String ATTR_TESTSUITE_NAME = "name";
-    private static final String ATTR_TESTSUITE_TESTS = "tests";
-    private static final String ATTR_TESTSUITE_TIME = "time";
-    private static final String ATTR_TESTSUITE_TIMESTAMP = "timestamp";
-
-    private static final String TAG_PROPERTIES = "properties";
-    private static final String TAG_PROPERTY = "property";
-    private static final String ATTR_PROPERTY_NAME = "name";
-    private static final String ATTR_PROPERTY_VALUE = "value";
-
-    private static final String TAG_TESTCASE = "testcase";
-    private static final String ATTR_TESTCASE_NAME = "name";
-    private static final String ATTR_TESTCASE_CLASSNAME = "classname";
-    private static final String ATTR_TESTCASE_TIME = "time";
-
-    private static final String TAG_ERROR = "error";
-    private static final String TAG_FAILURE = "failure";
-    private static final String ATTR_MESSAGE = "message";
-    private static final String ATTR_TYPE = "type";
-
-    /**
-     * time format for the output of milliseconds in seconds in the xml file *
-     */
-    private final NumberFormat timeFormatter = new DecimalFormat( "#0.0000" );
-
     private int testCount = 0;
     private int testRunCount = 0;
     private int testIgnoredCount = 0;
@@ -113,14 +55,10 @@ public class AndroidTestRunListener implements ITestRunListener
 
     private final String deviceLogLinePrefix;
 
-    // junit xml report related fields
-    private Document junitReport;
-    private Node testSuiteNode;
-
     /**
-     * node for the current test case for junit report
+     * the junit xml report, written while the tests run
      */
-    private Node currentTestCaseNode;
+    private JUnitReportWriter junitReport;
     /**
      * start time of current test case in millis, reset with each test start
      */
@@ -172,59 +110,22 @@ public class AndroidTestRunListener implements ITestRunListener
 
         if ( createReport )
         {
+            final Map<String, String> properties = new LinkedHashMap<String, String>();
+            for ( Map.Entry< Object, Object > systemProperty : System.getProperties().entrySet() )
+            {
+                properties.put( systemProperty.getKey().toString(), systemProperty.getValue().toString() );
+            }
+            properties.putAll( device.getProperties() );
             try
             {
-                DocumentBuilderFactory fact = DocumentBuilderFactory.newInstance();
-                DocumentBuilder parser = null;
-                parser = fact.newDocumentBuilder();
-                junitReport = parser.newDocument();
-                Node testSuitesNode = junitReport.createElement( TAG_TESTSUITES );
-                junitReport.appendChild( testSuitesNode );
-                testSuiteNode = junitReport.createElement( TAG_TESTSUITE );
-                NamedNodeMap testSuiteAttributes = testSuiteNode.getAttributes();
-                Attr nameAttr = junitReport.createAttribute( ATTR_TESTSUITE_NAME );
-                nameAttr.setValue( runName );
-                testSuiteAttributes.setNamedItem( nameAttr );
-                Attr hostnameAttr = junitReport.createAttribute( ATTR_TESTSUITE_HOSTNAME );
-                hostnameAttr.setValue( DeviceHelper.getDescriptiveName( device ) );
-                testSuiteAttributes.setNamedItem( hostnameAttr );
-                Node propertiesNode = junitReport.createElement( TAG_PROPERTIES );
-                Node propertyNode;
-                NamedNodeMap propertyAttributes;
-                Attr propNameAttr;
-                Attr propValueAttr;
-                for ( Map.Entry< Object, Object > systemProperty : System.getProperties().entrySet() )
-                {
-                    propertyNode = junitReport.createElement( TAG_PROPERTY );
-                    propertyAttributes = propertyNode.getAttributes();
-                    propNameAttr = junitReport.createAttribute( ATTR_PROPERTY_NAME );
-                    propNameAttr.setValue( systemProperty.getKey().toString() );
-                    propertyAttributes.setNamedItem( propNameAttr );
-                    propValueAttr = junitReport.createAttribute( ATTR_PROPERTY_VALUE );
-                    propValueAttr.setValue( systemProperty.getValue().toString() );
-                    propertyAttributes.setNamedItem( propValueAttr );
-                    propertiesNode.appendChild( propertyNode );
-                }
-                Map< String, String > deviceProperties = device.getProperties();
-                for ( Map.Entry< String, String > deviceProperty : deviceProperties.entrySet() )
-                {
-                    propertyNode = junitReport.createElement( TAG_PROPERTY );
-                    propertyAttributes = propertyNode.getAttributes();
-                    propNameAttr = junitReport.createAttribute( ATTR_PROPERTY_NAME );
-                    propNameAttr.setValue( deviceProperty.getKey() );
-                    propertyAttributes.setNamedItem( propNameAttr );
-                    propValueAttr = junitReport.createAttribute( ATTR_PROPERTY_VALUE );
-                    propValueAttr.setValue( deviceProperty.getValue() );
-                    propertyAttributes.setNamedItem( propValueAttr );
-                    propertiesNode.appendChild( propertyNode );
-                }
-                testSuiteNode.appendChild( propertiesNode );
-                testSuitesNode.appendChild( testSuiteNode );
+                junitReport = new JUnitReportWriter( getReportFile() );
+                junitReport.start( runName, DeviceHelper.getDescriptiveName( device ), properties );
             }
-            catch ( ParserConfigurationException e )
+            catch ( IOException e )
             {
+                junitReport = null;
                 threwException = true;
-                exceptionMessages.append( "Failed to create document" );
+                exceptionMessages.append( "Failed to write test report file" );
                 exceptionMessages.append( e.getMessage() );
             }
         }
@@ -248,17 +149,10 @@ public class AndroidTestRunListener implements ITestRunListener
                         + String.format( "%1$s%1$sStart [%2$d/%3$d]: %4$s", INDENT, testRunCount, testCount,
                         testIdentifier.toString() ) );
 
-        if ( createReport )
+        if ( junitReport != null )
         { // reset start time for each test run
             currentTestCaseStartTime = new Date().getTime();
-            currentTestCaseNode = junitReport.createElement( TAG_TESTCASE );
-            NamedNodeMap testCaseAttributes = currentTestCaseNode.getAttributes();
-            Attr classAttr = junitReport.createAttribute( ATTR_TESTCASE_CLASSNAME );
-            classAttr.setValue( testIdentifier.getClassName() );
-            testCaseAttributes.setNamedItem( classAttr );
-            Attr methodAttr = junitReport.createAttribute( ATTR_TESTCASE_NAME );
-            methodAttr.setValue( testIdentifier.getTestName() );
-            testCaseAttributes.setNamedItem( methodAttr );
+            junitReport.startTestCase( testIdentifier.getClassName(), testIdentifier.getTestName() );
         }
     }
 
@@ -279,22 +173,10 @@ public class AndroidTestRunListener implements ITestRunListener
         getLog().info( deviceLogLinePrefix + INDENT + INDENT + testIdentifier.toString() );
         getLog().info( deviceLogLinePrefix + INDENT + INDENT + trace );
 
-        if ( createReport )
+        if ( junitReport != null )
         {
-            Node errorFailureNode;
-            NamedNodeMap errorfailureAttributes;
-
-            errorFailureNode = junitReport.createElement( TAG_ERROR );
-            errorfailureAttributes = errorFailureNode.getAttributes();
-
-            errorFailureNode.setTextContent( trace );
-            Attr msgAttr = junitReport.createAttribute( ATTR_MESSAGE );
-            msgAttr.setValue( parseForMessage( trace ) );
-            errorfailureAttributes.setNamedItem( msgAttr );
-            Attr typeAttr = junitReport.createAttribute( ATTR_TYPE );
-            typeAttr.setValue( parseForException( trace ) );
-            errorfailureAttributes.setNamedItem( typeAttr );
-            currentTestCaseNode.appendChild( errorFailureNode );
+            junitReport.addProblem( JUnitReportWriter.TAG_ERROR, parseForMessage( trace ), parseForException( trace ),
+                    trace );
         }
     }
 
@@ -315,22 +197,10 @@ public class AndroidTestRunListener implements ITestRunListener
         getLog().info( deviceLogLinePrefix + INDENT + INDENT + testIdentifier.toString() );
         getLog().info( deviceLogLinePrefix + INDENT + INDENT + trace );
 
-        if ( createReport )
+        if ( junitReport != null )
         {
-            Node errorFailureNode;
-            NamedNodeMap errorfailureAttributes;
-
-            errorFailureNode = junitReport.createElement( TAG_FAILURE );
-            errorfailureAttributes = errorFailureNode.getAttributes();
-
-            errorFailureNode.setTextContent( trace );
-            Attr msgAttr = junitReport.createAttribute( ATTR_MESSAGE );
-            msgAttr.setValue( parseForMessage( trace ) );
-            errorfailureAttributes.setNamedItem( msgAttr );
-            Attr typeAttr = junitReport.createAttribute( ATTR_TYPE );
-            typeAttr.setValue( parseForException( trace ) );
-            errorfailureAttributes.setNamedItem( typeAttr );
-            currentTestCaseNode.appendChild( errorFailureNode );
+            junitReport.addProblem( JUnitReportWriter.TAG_FAILURE, parseForMessage( trace ), parseForException( trace ),
+                    trace );
         }
     }
 
@@ -384,15 +254,18 @@ public class AndroidTestRunListener implements ITestRunListener
                         testIdentifier.toString() ) );
         logMetrics( testMetrics );
 
-        if ( createReport )
+        if ( junitReport != null )
         {
-            testSuiteNode.appendChild( currentTestCaseNode );
-            NamedNodeMap testCaseAttributes = currentTestCaseNode.getAttributes();
-            Attr timeAttr = junitReport.createAttribute( ATTR_TESTCASE_TIME );
             long now = new Date().getTime();
             double seconds = ( now - currentTestCaseStartTime ) / 1000.0;
-            timeAttr.setValue( timeFormatter.format( seconds ) );
-            testCaseAttributes.setNamedItem( timeAttr );
+            try
+            {
+                junitReport.endTestCase( seconds );
+            }
+            catch ( IOException e )
+            {
+                failReport( "Failed to write test case to test report file", e );
+            }
         }
     }
 
@@ -410,34 +283,22 @@ public class AndroidTestRunListener implements ITestRunListener
                         + testFailureCount + ",  Errors: " + testErrorCount
                         + ",  Ignored: " + testIgnoredCount );
 
-        if ( createReport )
-        {
-            NamedNodeMap testSuiteAttributes = testSuiteNode.getAttributes();
-            Attr testCountAttr = junitReport.createAttribute( ATTR_TESTSUITE_TESTS );
-            testCountAttr.setValue( Integer.toString( testCount ) );
-            testSuiteAttributes.setNamedItem( testCountAttr );
-            Attr testFailuresAttr = junitReport.createAttribute( ATTR_TESTSUITE_FAILURES );
-            testFailuresAttr.setValue( Integer.toString( testFailureCount ) );
-            testSuiteAttributes.setNamedItem( testFailuresAttr );
-            Attr testErrorsAttr = junitReport.createAttribute( ATTR_TESTSUITE_ERRORS );
-            testErrorsAttr.setValue( Integer.toString( testErrorCount ) );
-            testSuiteAttributes.setNamedItem( testErrorsAttr );
-            Attr testIgnoredAttr = junitReport.createAttribute( ATTR_TESTSUITE_IGNORED );
-            testIgnoredAttr.setValue( Integer.toString( testIgnoredCount ) );
-            testSuiteAttributes.setNamedItem( testIgnoredAttr );
-            Attr timeAttr = junitReport.createAttribute( ATTR_TESTSUITE_TIME );
-            timeAttr.setValue( timeFormatter.format( elapsedTime / 1000.0 ) );
-            testSuiteAttributes.setNamedItem( timeAttr );
-            Attr timeStampAttr = junitReport.createAttribute( ATTR_TESTSUITE_TIMESTAMP );
-            timeStampAttr.setValue( new Date().toString() );
-            testSuiteAttributes.setNamedItem( timeStampAttr );
-        }
-
         logMetrics( runMetrics );
 
-        if ( createReport )
+        if ( junitReport != null )
         {
-            writeJunitReportToFile();
+            try
+            {
+                junitReport.end( testCount, testFailureCount, testErrorCount, testIgnoredCount,
+                        elapsedTime / 1000.0 );
+                getLog().info( deviceLogLinePrefix + "Report file written to "
+                        + junitReport.getReportFile().getAbsolutePath() );
+            }
+            catch ( IOException e )
+            {
+                failReport( "Failed to write test report file", e );
+            }
+            junitReport = null;
         }
     }
 
@@ -516,66 +377,39 @@ public class AndroidTestRunListener implements ITestRunListener
     }
 
     /**
-     * Write the junit report xml file.
+     * @return the junit report xml file, named after the device.
      */
-    private void writeJunitReportToFile()
+    private File getReportFile() throws IOException
     {
-        TransformerFactory xfactory = TransformerFactory.newInstance();
-        Transformer xformer = null;
-        try
-        {
-            xformer = xfactory.newTransformer();
-        }
-        catch ( TransformerConfigurationException e )
-        {
-            e.printStackTrace();
-        }
-        Source source = new DOMSource( junitReport );
-
-        FileWriter writer = null;
-        try
-        {
-            String directory = new StringBuilder().append( targetDirectory )
-                    .append( "/surefire-reports" ).toString();
+        String directory = new StringBuilder().append( targetDirectory )
+                .append( "/surefire-reports" ).toString();
 
-            FileUtils.forceMkdir( new File( directory ) );
+        FileUtils.forceMkdir( new File( directory ) );
 
-            StringBuilder sb = new StringBuilder();
+        StringBuilder sb = new StringBuilder();
 
-            sb.append( directory ).append( "/TEST-" )
-                    .append( DeviceHelper.getDescriptiveName( device ) );
-
-            if ( StringUtils.isNotBlank( reportSuffix ) )
-            {
-                //Safety first
-                sb.append( reportSuffix.replace( "/", "" ).replace( "\\", "" ) );
-            }
+        sb.append( directory ).append( "/TEST-" )
+                .append( DeviceHelper.getDescriptiveName( device ) );
 
-            String fileName = sb.append( ".xml" ).toString();
-
-            File reportFile = new File( fileName );
-            writer = new FileWriter( reportFile );
-            Result result = new StreamResult( writer );
-
-            xformer.transform( source, result );
-            getLog().info( deviceLogLinePrefix + "Report file written to " + reportFile.getAbsolutePath() );
-        }
-        catch ( IOException e )
-        {
-            threwException = true;
-            exceptionMessages.append( "Failed to write test report file" );
-            exceptionMessages.append( e.getMessage() );
-        }
-        catch ( TransformerException e )
-        {
-            threwException = true;
-            exceptionMessages.append( "Failed to transform document to write to test report file" );
-            exceptionMessages.append( e.getMessage() );
-        }
-        finally
+        if ( StringUtils.isNotBlank( reportSuffix ) )
         {
-            IOUtils.closeQuietly( writer );
+            //Safety first
+            sb.append( reportSuffix.replace( "/", "" ).replace( "\\", "" ) );
         }
+
+        return new File( sb.append( ".xml" ).toString() );
+    }
+
+    /**
+     * Stops writing the report after a problem, keeping what has been written so far.
+     */
+    private void failReport( String message, IOException e )
+    {
+        junitReport.close();
+        junitReport = null;
+        threwException = true;
+        exceptionMessages.append( message );
+        exceptionMessages.append( e.getMessage() );
     }
 
     /**
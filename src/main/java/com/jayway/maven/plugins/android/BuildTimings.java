@@ -0,0 +1,602 @@
+package com.jayway.maven.plugins.android;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records the wall time, CPU time and result of the goals of a build and of the tools run by
+ * {@link CommandExecutor}, and writes them at the end of the session as JSON and as a Chrome trace.
+ * <p>
+ * Recording starts with the first goal of this plugin that asks for the timing report. From then on all goals of
+ * the session are recorded, also those of other plugins, by an execution listener wrapped around the listener of
+ * the session. The tools are tagged with the module and goal running them, which is known in the thread of the goal
+ * and in the tasks the goal wraps with {@link #inCurrentGoal(Callable)}. The CPU time of a goal is that of the
+ * thread running it, the CPU time of a tool is the CPU time of the finished child processes of Maven during the
+ * tool. It is only available on Linux, and is left out (-1) when other tools ran at the same time, as their CPU
+ * time cannot be told apart, and when the tool ran in a worker process, which is not a finished child process.
+ * </p>
+ */
+public final class BuildTimings
+{
+    static final String REPORT_FILE = "build-timings.json";
+    static final String TRACE_FILE = "build-timings.trace.json";
+
+    /**
+     * Whether a session is recorded already. The recorder itself is kept by the execution listener of the session.
+     */
+    private static final SessionScoped<AtomicBoolean> RECORDED = new SessionScoped<AtomicBoolean>()
+    {
+        @Override
+        protected AtomicBoolean create()
+        {
+            return new AtomicBoolean();
+        }
+    };
+
+    /**
+     * The goal running in the thread. It is not inherited, as pooled threads would keep it after the goal, instead
+     * it is handed to the tasks of the goal by {@link #inCurrentGoal(Callable)}.
+     */
+    private static final ThreadLocal<Goal> CURRENT_GOAL = new ThreadLocal<Goal>();
+
+    /**
+     * The tools running in the JVM, to tell whether the CPU time of the child processes belongs to a single tool.
+     */
+    private static final List<ToolTimer> RUNNING_TOOLS = new ArrayList<ToolTimer>();
+
+    private static final File PROC_SELF_STAT = new File( "/proc/self/stat" );
+
+    /**
+     * The clock ticks per second of the CPU times in <code>/proc</code>, which is 100 on all common Linux builds.
+     */
+    private static final int CLOCK_TICKS_PER_SECOND = 100;
+
+    private final File directory;
+    private final Log log;
+    private final long sessionStart;
+    private final List<Record> records = new ArrayList<Record>();
+
+    BuildTimings( File directory, Log log, long sessionStart )
+    {
+        this.directory = directory;
+        this.log = log;
+        this.sessionStart = sessionStart;
+    }
+
+    /**
+     * Starts recording the session, unless it is recorded already.
+     *
+     * @param session   The session to record.
+     * @param project   The project of the running goal.
+     * @param execution The running goal, which is recorded from now on.
+     * @param directory The directory to write the reports to.
+     * @param log       The log.
+     */
+    public static void start( MavenSession session, MavenProject project, MojoExecution execution, File directory,
+                              Log log )
+    {
+        if ( session == null || session.getRequest() == null )
+        {
+            return;
+        }
+        if ( ! RECORDED.get( session ).compareAndSet( false, true ) )
+        {
+            return;
+        }
+        final MavenExecutionRequest request = session.getRequest();
+        final long sessionStart = request.getStartTime() != null
+                ? request.getStartTime().getTime() : System.currentTimeMillis();
+        final BuildTimings timings = new BuildTimings( directory, log, sessionStart );
+        request.setExecutionListener( new TimingListener( timings, request.getExecutionListener() ) );
+        timings.goalStarted( project, execution );
+        log.info( "Recording build timings to " + directory );
+    }
+
+    /**
+     * Starts timing a tool run by the goal of the current thread.
+     *
+     * @param executable The executable of the tool.
+     * @return The timer to stop when the tool finished, <code>null</code> if the build is not recorded.
+     */
+    static ToolTimer startTool( String executable )
+    {
+        final Goal goal = CURRENT_GOAL.get();
+        if ( goal == null )
+        {
+            return null;
+        }
+        return new ToolTimer( goal, new File( executable ).getName() );
+    }
+
+    /**
+     * Wraps a task of the goal of the current thread, so that the tools it runs in another thread are recorded for
+     * the goal.
+     *
+     * @param task The task.
+     * @return The wrapped task, or the task itself if the build is not recorded.
+     */
+    public static <T> Callable<T> inCurrentGoal( final Callable<T> task )
+    {
+        final Goal goal = CURRENT_GOAL.get();
+        if ( goal == null )
+        {
+            return task;
+        }
+        return new Callable<T>()
+        {
+            public T call() throws Exception
+            {
+                final Goal previousGoal = CURRENT_GOAL.get();
+                CURRENT_GOAL.set( goal );
+                try
+                {
+                    return task.call();
+                }
+                finally
+                {
+                    if ( previousGoal == null )
+                    {
+                        CURRENT_GOAL.remove();
+                    }
+                    else
+                    {
+                        CURRENT_GOAL.set( previousGoal );
+                    }
+                }
+            }
+        };
+    }
+
+    void goalStarted( MavenProject project, MojoExecution execution )
+    {
+        CURRENT_GOAL.set( new Goal( this, project == null ? "" : project.getArtifactId(), describe( execution ) ) );
+    }
+
+    void goalFinished( boolean succeeded )
+    {
+        final Goal goal = CURRENT_GOAL.get();
+        CURRENT_GOAL.remove();
+        if ( goal != null && goal.timings == this )
+        {
+            final long cpuTime = currentThreadCpuMillis();
+            add( new Record( "goal", goal.goal, goal.module, goal.goal, null, goal.start,
+                    System.currentTimeMillis() - goal.start, goal.cpuStart < 0 ? -1 : cpuTime - goal.cpuStart,
+                    succeeded ? 0 : 1, Thread.currentThread() ) );
+        }
+    }
+
+    synchronized void add( Record record )
+    {
+        records.add( record );
+    }
+
+    /**
+     * Writes the report and the trace of the recorded goals and tools.
+     */
+    void write() throws IOException
+    {
+        final List<Record> recorded;
+        synchronized ( this )
+        {
+            recorded = new ArrayList<Record>( records );
+        }
+
+        final StringBuilder report = new StringBuilder();
+        report.append( "{\n  \"sessionStart\": " ).append( sessionStart ).append( ",\n  \"records\": [" );
+        for ( int i = 0; i < recorded.size(); i++ )
+        {
+            final Record record = recorded.get( i );
+            report.append( i == 0 ? "\n    " : ",\n    " );
+            report.append( "{\"category\": " ).append( quote( record.category ) )
+                    .append( ", \"module\": " ).append( quote( record.module ) )
+                    .append( ", \"goal\": " ).append( quote( record.goal ) )
+                    .append( ", \"tool\": " ).append( quote( record.tool ) )
+                    .append( ", \"start\": " ).append( record.start )
+                    .append( ", \"wallMillis\": " ).append( record.wallMillis )
+                    .append( ", \"cpuMillis\": " ).append( record.cpuMillis )
+                    .append( ", \"exitCode\": " ).append( record.exitCode )
+                    .append( ", \"thread\": " ).append( quote( record.threadName ) ).append( "}" );
+        }
+        report.append( "\n  ]\n}\n" );
+
+        final Map<Long, String> threads = new LinkedHashMap<Long, String>();
+        final StringBuilder trace = new StringBuilder();
+        trace.append( "{\"displayTimeUnit\": \"ms\", \"traceEvents\": [" );
+        for ( int i = 0; i < recorded.size(); i++ )
+        {
+            final Record record = recorded.get( i );
+            threads.put( record.threadId, record.threadName );
+            trace.append( i == 0 ? "\n" : ",\n" );
+            trace.append( "{\"name\": " ).append( quote( record.name ) )
+                    .append( ", \"cat\": " ).append( quote( record.category ) )
+                    .append( ", \"ph\": \"X\", \"pid\": 1, \"tid\": " ).append( record.threadId )
+                    .append( ", \"ts\": " ).append( ( record.start - sessionStart ) * 1000 )
+                    .append( ", \"dur\": " ).append( record.wallMillis * 1000 )
+                    .append( ", \"args\": {\"module\": " ).append( quote( record.module ) )
+                    .append( ", \"goal\": " ).append( quote( record.goal ) )
+                    .append( ", \"cpuMillis\": " ).append( record.cpuMillis )
+                    .append( ", \"exitCode\": " ).append( record.exitCode ).append( "}}" );
+        }
+        for ( Map.Entry<Long, String> thread : threads.entrySet() )
+        {
+            trace.append( recorded.isEmpty() ? "\n" : ",\n" );
+            trace.append( "{\"name\": \"thread_name\", \"ph\": \"M\", \"pid\": 1, \"tid\": " )
+                    .append( thread.getKey() )
+                    .append( ", \"args\": {\"name\": " ).append( quote( thread.getValue() ) ).append( "}}" );
+        }
+        trace.append( "\n]}\n" );
+
+        FileUtils.writeStringToFile( new File( directory, REPORT_FILE ), report.toString(), "UTF-8" );
+        FileUtils.writeStringToFile( new File( directory, TRACE_FILE ), trace.toString(), "UTF-8" );
+    }
+
+    private void sessionEnded()
+    {
+        try
+        {
+            write();
+            log.info( "Build timings written to " + new File( directory, REPORT_FILE ) + " and "
+                    + new File( directory, TRACE_FILE ) );
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Cannot write the build timings to " + directory, e );
+        }
+    }
+
+    private static String describe( MojoExecution execution )
+    {
+        if ( execution == null )
+        {
+            return "";
+        }
+        return execution.getArtifactId() + ":" + execution.getGoal() + " (" + execution.getExecutionId() + ")";
+    }
+
+    static String quote( String value )
+    {
+        if ( value == null )
+        {
+            return "null";
+        }
+        final StringBuilder quoted = new StringBuilder( value.length() + 2 ).append( '"' );
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            final char c = value.charAt( i );
+            if ( c == '"' || c == '\\' )
+            {
+                quoted.append( '\\' ).append( c );
+            }
+            else if ( c < 0x20 )
+            {
+                quoted.append( String.format( "\\u%04x", ( int ) c ) );
+            }
+            else
+            {
+                quoted.append( c );
+            }
+        }
+        return quoted.append( '"' ).toString();
+    }
+
+    private static long currentThreadCpuMillis()
+    {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if ( ! threads.isCurrentThreadCpuTimeSupported() )
+        {
+            return -1;
+        }
+        return threads.getCurrentThreadCpuTime() / 1000000;
+    }
+
+    /**
+     * @return The CPU time of the finished child processes of this JVM, -1 if it is not known.
+     */
+    static long childProcessesCpuMillis()
+    {
+        if ( ! PROC_SELF_STAT.isFile() )
+        {
+            return -1;
+        }
+        try
+        {
+            final String stat = FileUtils.readFileToString( PROC_SELF_STAT );
+            // the fields after the command name in parentheses start with the third field, the state
+            final String[] fields = stat.substring( stat.lastIndexOf( ')' ) + 2 ).split( " " );
+            final long childrenUserTicks = Long.parseLong( fields[ 13 ] );
+            final long childrenSystemTicks = Long.parseLong( fields[ 14 ] );
+            return ( childrenUserTicks + childrenSystemTicks ) * 1000 / CLOCK_TICKS_PER_SECOND;
+        }
+        catch ( IOException e )
+        {
+            return -1;
+        }
+        catch ( RuntimeException e )
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * A goal running in a thread.
+     */
+    private static final class Goal
+    {
+        private final BuildTimings timings;
+        private final String module;
+        private final String goal;
+        private final long start = System.currentTimeMillis();
+        private final long cpuStart = currentThreadCpuMillis();
+
+        private Goal( BuildTimings timings, String module, String goal )
+        {
+            this.timings = timings;
+            this.module = module;
+            this.goal = goal;
+        }
+    }
+
+    /**
+     * Times a tool, see {@link BuildTimings#startTool(String)}.
+     */
+    static final class ToolTimer
+    {
+        private final Goal goal;
+        private final String tool;
+        private final long start = System.currentTimeMillis();
+        private final long cpuStart;
+        private boolean cpuTimeUnknown;
+
+        private ToolTimer( Goal goal, String tool )
+        {
+            this.goal = goal;
+            this.tool = tool;
+            synchronized ( RUNNING_TOOLS )
+            {
+                for ( ToolTimer runningTool : RUNNING_TOOLS )
+                {
+                    runningTool.cpuTimeUnknown = true;
+                    cpuTimeUnknown = true;
+                }
+                RUNNING_TOOLS.add( this );
+                cpuStart = childProcessesCpuMillis();
+            }
+        }
+
+        /**
+         * Leaves out the CPU time of the tool, which ran in a worker process of {@link ToolWorkers}.
+         */
+        void ranInWorker()
+        {
+            synchronized ( RUNNING_TOOLS )
+            {
+                cpuTimeUnknown = true;
+            }
+        }
+
+        /**
+         * @param exitCode The result of the tool, -1 if it could not be run.
+         */
+        void stop( int exitCode )
+        {
+            long cpuTime = -1;
+            synchronized ( RUNNING_TOOLS )
+            {
+                RUNNING_TOOLS.remove( this );
+                if ( cpuStart >= 0 && ! cpuTimeUnknown )
+                {
+                    cpuTime = childProcessesCpuMillis() - cpuStart;
+                }
+            }
+            goal.timings.add( new Record( "tool", tool, goal.module, goal.goal, tool, start,
+                    System.currentTimeMillis() - start, cpuTime, exitCode, Thread.currentThread() ) );
+        }
+    }
+
+    /**
+     * A finished goal or tool.
+     */
+    static final class Record
+    {
+        private final String category;
+        private final String name;
+        private final String module;
+        private final String goal;
+        private final String tool;
+        private final long start;
+        private final long wallMillis;
+        private final long cpuMillis;
+        private final int exitCode;
+        private final String threadName;
+        private final long threadId;
+
+        Record( String category, String name, String module, String goal, String tool, long start, long wallMillis,
+                long cpuMillis, int exitCode, Thread thread )
+        {
+            this.category = category;
+            this.name = name;
+            this.module = module;
+            this.goal = goal;
+            this.tool = tool;
+            this.start = start;
+            this.wallMillis = wallMillis;
+            this.cpuMillis = cpuMillis;
+            this.exitCode = exitCode;
+            this.threadName = thread.getName();
+            this.threadId = thread.getId();
+        }
+    }
+
+    /**
+     * Records the goals and writes the reports at the end of the session, and passes all events on to the listener
+     * of the session.
+     */
+    private static final class TimingListener implements ExecutionListener
+    {
+        private final BuildTimings timings;
+        private final ExecutionListener delegate;
+
+        private TimingListener( BuildTimings timings, ExecutionListener delegate )
+        {
+            this.timings = timings;
+            this.delegate = delegate;
+        }
+
+        public void projectDiscoveryStarted( ExecutionEvent event )
+        {
+            if ( delegate != null )
+            {
+                delegate.projectDiscoveryStarted( event );
+            }
+        }
+
+        public void sessionStarted( ExecutionEvent event )
+        {
+            if ( delegate != null )
+            {
+                delegate.sessionStarted( event );
+            }
+        }
+
+        public void sessionEnded( ExecutionEvent event )
+        {
+            timings.sessionEnded();
+            if ( delegate != null )
+            {
+                delegate.sessionEnded( event );
+            }
+        }
+
+        public void projectSkipped( ExecutionEvent event )
+        {
+            if ( delegate != null )
+            {
+                delegate.projectSkipped( event );
+            }
+        }
+
+        public void projectStarted( ExecutionEvent event )
+        {
+            if ( delegate != null )
+            {
+                delegate.projectStarted( event );
+            }
+        }
+
+        public void projectSucceeded( ExecutionEvent event )
+        {
+            if ( delegate != null )
+            {
+                delegate.projectSucceeded( event );
+            }
+        }
+
+        public void projectFailed( ExecutionEvent event )
+        {
+            if ( delegate != null )
+            {
+                delegate.projectFailed( event );
+            }
+        }
+
+        public void mojoSkipped( ExecutionEvent event )
+        {
+            if ( delegate != null )
+            {
+                delegate.mojoSkipped( event );
+            }
+        }
+
+        public void mojoStarted( ExecutionEvent event )
+        {
+            timings.goalStarted( event.getProject(), event.getMojoExecution() );
+            if ( delegate != null )
+            {
+                delegate.mojoStarted( event );
+            }
+        }
+
+        public void mojoSucceeded( ExecutionEvent event )
+        {
+            timings.goalFinished( true );
+            if ( delegate != null )
+            {
+                delegate.mojoSucceeded( event );
+            }
+        }
+
+        public void mojoFailed( ExecutionEvent event )
+        {
+            timings.goalFinished( false );
+            if ( delegate != null )
+            {
+                delegate.mojoFailed( event );
+            }
+        }
+
+        public void forkStarted( ExecutionEvent event )
+        {
+            if ( delegate != null )
+            {
+                delegate.forkStarted( event );
+            }
+        }
+
+        public void forkSucceeded( ExecutionEvent event )
+        {
+            if ( delegate != null )
+            {
+                delegate.forkSucceeded( event );
+            }
+        }
+
+        public void forkFailed( ExecutionEvent event )
+        {
+            if ( delegate != null )
+            {
+                delegate.forkFailed( event );
+            }
+        }
+
+        public void forkedProjectStarted( ExecutionEvent event )
+        {
+            if ( delegate != null )
+            {
+                delegate.forkedProjectStarted( event );
+            }
+        }
+
+        public void forkedProjectSucceeded( ExecutionEvent event )
+        {
+            if ( delegate != null )
+            {
+                delegate.forkedProjectSucceeded( event );
+            }
+        }
+
+        public void forkedProjectFailed( ExecutionEvent event )
+        {
+            if ( delegate != null )
+            {
+                delegate.forkedProjectFailed( event );
+            }
+        }
+    }
+}
@@ -17,11 +17,13 @@
 package com.jayway.maven.plugins.android;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.maven.plugin.logging.Log;
 import org.codehaus.plexus.util.cli.CommandLineException;
 import org.codehaus.plexus.util.cli.CommandLineUtils;
@@ -34,6 +36,11 @@ import org.codehaus.plexus.util.cli.shell.Shell;
  */
 public interface CommandExecutor
 {
+    /**
+     * The number of characters of each captured stream that are kept in memory by default.
+     */
+    int DEFAULT_CAPTURE_LIMIT = 1024 * 1024;
+
     /**
      * Sets the plexus logger.
      * 
@@ -117,6 +124,22 @@ public interface CommandExecutor
      */
     String getStandardError();
 
+    /**
+     * Tells whether lines of the captured standard out were dropped because it exceeded the capture limit, so that
+     * {@link #getStandardOut()} only returns its last lines.
+     *
+     * @return true if the captured standard out is incomplete.
+     */
+    boolean isStdOutTruncated();
+
+    /**
+     * Tells whether lines of the captured standard error were dropped because it exceeded the capture limit, so that
+     * {@link #getStandardError()} only returns its last lines.
+     *
+     * @return true if the captured standard error is incomplete.
+     */
+    boolean isStdErrTruncated();
+
     /**
      * Adds an environment variable with the specified name and value to the executor.
      */
@@ -129,6 +152,30 @@ public interface CommandExecutor
     void setCaptureStdOut( boolean captureStdOut );
     void setCaptureStdErr( boolean captureStdErr );
 
+    /**
+     * Sets the number of characters of each captured stream that are kept in memory, {@link #DEFAULT_CAPTURE_LIMIT}
+     * by default. Beyond that, the oldest lines are dropped, unless the output is spilled to a file.
+     *
+     * @param captureLimit the number of characters.
+     */
+    void setCaptureLimit( int captureLimit );
+
+    /**
+     * Sets whether captured output beyond the capture limit is spilled to a temporary file, so that the standard out
+     * and standard error contain all of it, instead of its last lines only.
+     */
+    void setCaptureSpill( boolean captureSpill );
+
+    /**
+     * Sets a listener that is told each line of the standard out as it is written, whether it is captured or not.
+     */
+    void setStdOutListener( LineListener stdOutListener );
+
+    /**
+     * Sets a listener that is told each line of the standard error as it is written, whether it is captured or not.
+     */
+    void setStdErrListener( LineListener stdErrListener );
+
     /**
      *
      */
@@ -137,6 +184,14 @@ public interface CommandExecutor
         boolean isError( String error );
     }
 
+    /**
+     * Receives the lines of an output stream of the command.
+     */
+    public interface LineListener
+    {
+        void onLine( String line );
+    }
+
     /**
      * Provides factory services for creating a default instance of the command executor.
      */
@@ -178,6 +233,12 @@ public interface CommandExecutor
 
             private boolean captureStdOut;
             private boolean captureStdErr;
+            private int captureLimit = DEFAULT_CAPTURE_LIMIT;
+            private boolean captureSpill;
+            private LineListener stdOutListener;
+            private LineListener stdErrListener;
+            private OutputCapture stdOutCapture;
+            private OutputCapture stdErrCapture;
 
             @Override
             public void setLogger( Log logger )
@@ -201,13 +262,45 @@ public interface CommandExecutor
             @Override
             public void executeCommand( String executable, List< String > commands, File workingDirectory,
                     boolean failsOnErrorOutput ) throws ExecutionException
+            {
+                final BuildTimings.ToolTimer timer = BuildTimings.startTool( executable );
+                result = -1;
+                try
+                {
+                    execute( executable, commands, workingDirectory, failsOnErrorOutput, timer );
+                }
+                finally
+                {
+                    if ( timer != null )
+                    {
+                        timer.stop( result );
+                    }
+                    warnIfTruncated( executable );
+                }
+            }
+
+            private void warnIfTruncated( String executable )
+            {
+                if ( logger != null && ( isStdOutTruncated() || isStdErrTruncated() ) )
+                {
+                    logger.warn( "The captured output of " + executable + " exceeded " + captureLimit
+                            + " characters, only its last lines were kept" );
+                }
+            }
+
+            private void execute( String executable, List< String > commands, File workingDirectory,
+                    boolean failsOnErrorOutput, BuildTimings.ToolTimer timer ) throws ExecutionException
             {
                 if ( commands == null )
                 {
                     commands = new ArrayList< String >();
                 }
-                stdOut = new StreamConsumerImpl( logger, captureStdOut );
-                stdErr = new ErrorStreamConsumer( logger, errorListener, captureStdErr );
+                if ( environment == null && customShell == null
+                        && executeInWorker( executable, commands, workingDirectory, failsOnErrorOutput, timer ) )
+                {
+                    return;
+                }
+                createStreamConsumers();
                 commandline = new Commandline();
                 if ( customShell != null )
                 {
@@ -257,6 +350,77 @@ public interface CommandExecutor
                 setPid( commandline.getPid() );
             }
 
+            /**
+             * Runs the command in a worker process of the tool, see {@link ToolWorkers}.
+             *
+             * @return false if there is no worker for the command, or if the worker failed.
+             */
+            private boolean executeInWorker( String executable, List< String > commands, File workingDirectory,
+                    boolean failsOnErrorOutput, BuildTimings.ToolTimer timer ) throws ExecutionException
+            {
+                final File directory = workingDirectory != null && workingDirectory.exists() ? workingDirectory : null;
+                final ToolWorkers.ToolWorker worker = ToolWorkers.acquire( executable, commands, directory );
+                if ( worker == null )
+                {
+                    return false;
+                }
+                createStreamConsumers();
+                final String command = executable + " " + StringUtils.join( commands, " " );
+                try
+                {
+                    if ( logger != null )
+                    {
+                        logger.debug( "ANDROID-040-000: Executing command in worker: Commandline = " + command );
+                    }
+                    result = worker.execute( commands, stdOut, stdErr );
+                }
+                catch ( IOException e )
+                {
+                    ToolWorkers.discard( worker );
+                    if ( logger != null )
+                    {
+                        logger.debug( "Worker failed, executing command in a new process: " + e.getMessage() );
+                    }
+                    return false;
+                }
+                ToolWorkers.release( worker );
+                if ( timer != null )
+                {
+                    timer.ranInWorker();
+                }
+                if ( logger != null )
+                {
+                    logger.debug( "ANDROID-040-000: Executed command in worker: Commandline = " + command
+                            + ", Result = " + result );
+                }
+                setPid( 0 );
+                if ( failsOnErrorOutput && stdErr.hasError() || result != 0 )
+                {
+                    throw new ExecutionException( "ANDROID-040-001: Could not execute: Command = " + command
+                            + ", Result = " + result );
+                }
+                return true;
+            }
+
+            /**
+             * Creates the consumers of the output streams, dropping the output captured by the previous command.
+             */
+            private void createStreamConsumers()
+            {
+                if ( stdOutCapture != null )
+                {
+                    stdOutCapture.close();
+                }
+                if ( stdErrCapture != null )
+                {
+                    stdErrCapture.close();
+                }
+                stdOutCapture = captureStdOut ? new OutputCapture( captureLimit, captureSpill ) : null;
+                stdErrCapture = captureStdErr ? new OutputCapture( captureLimit, captureSpill ) : null;
+                stdOut = new StreamConsumerImpl( logger, stdOutCapture, stdOutListener );
+                stdErr = new ErrorStreamConsumer( logger, errorListener, stdErrCapture, stdErrListener );
+            }
+
             @Override
             public int getResult()
             {
@@ -270,7 +434,7 @@ public interface CommandExecutor
                 {
                     throw new IllegalStateException( "Unable to provide StdOut since it was not captured" );
                 }
-                return stdOut.toString();
+                return stdOutCapture != null ? stdOutCapture.toString() : "";
             }
 
             @Override
@@ -280,7 +444,19 @@ public interface CommandExecutor
                 {
                     throw new IllegalStateException( "Unable to provide StdOut since it was not captured" );
                 }
-                return stdErr.toString();
+                return stdErrCapture != null ? stdErrCapture.toString() : "";
+            }
+
+            @Override
+            public boolean isStdOutTruncated()
+            {
+                return stdOutCapture != null && stdOutCapture.isTruncated();
+            }
+
+            @Override
+            public boolean isStdErrTruncated()
+            {
+                return stdErrCapture != null && stdErrCapture.isTruncated();
             }
 
             @Override
@@ -327,29 +503,58 @@ public interface CommandExecutor
             {
                 this.captureStdErr = captureStdErr;
             }
+
+            @Override
+            public void setCaptureLimit( int captureLimit )
+            {
+                this.captureLimit = captureLimit;
+            }
+
+            @Override
+            public void setCaptureSpill( boolean captureSpill )
+            {
+                this.captureSpill = captureSpill;
+            }
+
+            @Override
+            public void setStdOutListener( LineListener stdOutListener )
+            {
+                this.stdOutListener = stdOutListener;
+            }
+
+            @Override
+            public void setStdErrListener( LineListener stdErrListener )
+            {
+                this.stdErrListener = stdErrListener;
+            }
         }
 
         /**
-         * StreamConsumer instance that buffers the entire output
+         * StreamConsumer instance that logs the output, and captures it if requested
          */
         static class StreamConsumerImpl implements StreamConsumer
         {
-            private StringBuffer sb = new StringBuffer();
             private final Log logger;
-            private boolean captureStdOut;
+            private final OutputCapture capture;
+            private final LineListener lineListener;
 
-            public StreamConsumerImpl( Log logger, boolean captureStdOut )
+            public StreamConsumerImpl( Log logger, OutputCapture capture, LineListener lineListener )
             {
                 this.logger = logger;
-                this.captureStdOut = captureStdOut;
+                this.capture = capture;
+                this.lineListener = lineListener;
             }
 
             @Override
             public void consumeLine( String line )
             {
-                if ( captureStdOut )
+                if ( capture != null )
+                {
+                    capture.add( line );
+                }
+                if ( lineListener != null )
                 {
-                    sb.append( line );
+                    lineListener.onLine( line );
                 }
                 if ( logger != null )
                 {
@@ -365,7 +570,7 @@ public interface CommandExecutor
             @Override
             public String toString()
             {
-                return sb.toString();
+                return capture != null ? capture.toString() : "";
             }
         }
 
@@ -378,17 +583,19 @@ public interface CommandExecutor
         {
             /** Is true if there was anything consumed from the stream, otherwise false */
             private boolean error;
-            /** Buffer to store the stream */
-            private StringBuffer sbe = new StringBuffer();
+            /** Captures the stream, null if it is not captured */
+            private final OutputCapture capture;
             private final Log logger;
             private final ErrorListener errorListener;
-            private boolean captureStdErr;
+            private final LineListener lineListener;
 
-            public ErrorStreamConsumer( Log logger, ErrorListener errorListener, boolean captureStdErr )
+            public ErrorStreamConsumer( Log logger, ErrorListener errorListener, OutputCapture capture,
+                    LineListener lineListener )
             {
                 this.logger = logger;
                 this.errorListener = errorListener;
-                this.captureStdErr = captureStdErr;
+                this.capture = capture;
+                this.lineListener = lineListener;
 
                 if ( logger == null )
                 {
@@ -400,9 +607,13 @@ public interface CommandExecutor
             @Override
             public void consumeLine( String line )
             {
-                if ( captureStdErr )
+                if ( capture != null )
+                {
+                    capture.add( line );
+                }
+                if ( lineListener != null )
                 {
-                    sbe.append( line );
+                    lineListener.onLine( line );
                 }
                 if ( logger != null )
                 {
@@ -436,7 +647,7 @@ public interface CommandExecutor
             @Override
             public String toString()
             {
-                return sbe.toString();
+                return capture != null ? capture.toString() : "";
             }
         }
 
@@ -0,0 +1,163 @@
+package com.jayway.maven.plugins.android;
+
+import com.android.ddmlib.IDevice;
+import com.jayway.maven.plugins.android.common.DeviceHelper;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs {@link DeviceCallback}s on several devices at the same time and waits for all of them to complete.
+ * <p>
+ * Waiting blocks instead of polling, devices that do not complete within the timeout are interrupted, and the
+ * failures of all devices are reported rather than only the first one. The time each device took is logged.
+ * </p>
+ */
+public final class DeviceTaskRunner
+{
+    private final ExecutorService executor;
+    private final long timeout;
+    private final Log log;
+    private final Map<IDevice, Future<Long>> tasks = new LinkedHashMap<IDevice, Future<Long>>();
+
+    /**
+     * @param threads   The number of devices to work with at the same time.
+     * @param timeout   Time in milliseconds all devices have to complete in, 0 for no limit.
+     * @param log       Log for the durations and failures.
+     */
+    public DeviceTaskRunner( int threads, long timeout, Log log )
+    {
+        this.executor = Executors.newFixedThreadPool( Math.max( 1, threads ) );
+        this.timeout = timeout;
+        this.log = log;
+    }
+
+    /**
+     * Starts the callback for a device.
+     */
+    public void submit( final IDevice device, final DeviceCallback callback )
+    {
+        tasks.put( device, executor.submit( BuildTimings.inCurrentGoal( new Callable<Long>()
+        {
+            public Long call() throws MojoExecutionException, MojoFailureException
+            {
+                final long start = System.currentTimeMillis();
+                callback.doWithDevice( device );
+                return System.currentTimeMillis() - start;
+            }
+        } ) ) );
+    }
+
+    /**
+     * @return true if no callback has been submitted.
+     */
+    public boolean isEmpty()
+    {
+        return tasks.isEmpty();
+    }
+
+    /**
+     * Waits for all callbacks to complete and releases the threads.
+     *
+     * @throws MojoFailureException if a callback failed with a {@link MojoFailureException}.
+     * @throws MojoExecutionException if a callback failed otherwise or did not complete in time.
+     */
+    public void await() throws MojoExecutionException, MojoFailureException
+    {
+        executor.shutdown();
+        final long deadline = System.currentTimeMillis() + timeout;
+        final List<Exception> failures = new ArrayList<Exception>();
+        try
+        {
+            for ( Map.Entry<IDevice, Future<Long>> task : tasks.entrySet() )
+            {
+                final String deviceLogLinePrefix = DeviceHelper.getDeviceLogLinePrefix( task.getKey() );
+                final Future<Long> future = task.getValue();
+                try
+                {
+                    final long duration = timeout > 0
+                            ? future.get( Math.max( 0, deadline - System.currentTimeMillis() ), TimeUnit.MILLISECONDS )
+                            : future.get();
+                    log.info( deviceLogLinePrefix + "Completed in " + duration + " ms" );
+                }
+                catch ( TimeoutException e )
+                {
+                    future.cancel( true );
+                    failures.add( new MojoExecutionException( deviceLogLinePrefix + "Did not complete within "
+                            + timeout + " ms" ) );
+                }
+                catch ( java.util.concurrent.ExecutionException e )
+                {
+                    final Throwable cause = e.getCause();
+                    if ( cause instanceof MojoFailureException || cause instanceof MojoExecutionException )
+                    {
+                        failures.add( ( Exception ) cause );
+                    }
+                    else
+                    {
+                        failures.add( new MojoExecutionException( deviceLogLinePrefix + cause.getMessage(), cause ) );
+                    }
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException( "Interrupted while waiting for devices", e );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        throwFailures( failures );
+    }
+
+    private void throwFailures( List<Exception> failures ) throws MojoExecutionException, MojoFailureException
+    {
+        if ( failures.isEmpty() )
+        {
+            return;
+        }
+        if ( failures.size() == 1 )
+        {
+            throwFailure( failures.get( 0 ) );
+        }
+
+        MojoFailureException firstFailure = null;
+        final StringBuilder message = new StringBuilder( failures.size() + " devices failed:" );
+        for ( Exception failure : failures )
+        {
+            log.error( failure.getMessage() );
+            message.append( "\n  " ).append( failure.getMessage() );
+            if ( firstFailure == null && failure instanceof MojoFailureException )
+            {
+                firstFailure = ( MojoFailureException ) failure;
+            }
+        }
+        if ( firstFailure != null )
+        {
+            throw new MojoFailureException( message.toString(), firstFailure );
+        }
+        throw new MojoExecutionException( message.toString(), failures.get( 0 ) );
+    }
+
+    private static void throwFailure( Exception failure ) throws MojoExecutionException, MojoFailureException
+    {
+        if ( failure instanceof MojoFailureException )
+        {
+            throw ( MojoFailureException ) failure;
+        }
+        throw ( MojoExecutionException ) failure;
+    }
+}
@@ -0,0 +1,238 @@
+package com.jayway.maven.plugins.android;
+
+import com.android.ddmlib.AdbCommandRejectedException;
+import com.android.ddmlib.AndroidDebugBridge;
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.MultiLineReceiver;
+import com.android.ddmlib.ShellCommandUnresponsiveException;
+import com.android.ddmlib.TimeoutException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for an emulator to go online and to finish booting without polling adb.
+ * <p>
+ * The emulator going online is signalled by a device change listener of the Android Debug Bridge. The boot is then
+ * watched by a single shell command per emulator, which reads the boot properties on the emulator once a second and
+ * ends as soon as <code>sys.boot_completed</code> is set, or the boot animation stopped on images without it.
+ * </p>
+ */
+final class EmulatorBootWatcher
+{
+    /**
+     * Prints the boot properties as <code>boot:sys.boot_completed:dev.bootcomplete:init.svc.bootanim</code>, once a
+     * second until the boot completed. The output also keeps the command from being considered unresponsive.
+     */
+    static final String BOOT_WATCH_COMMAND = "while true; do "
+            + "b=$(getprop sys.boot_completed); d=$(getprop dev.bootcomplete); a=$(getprop init.svc.bootanim); "
+            + "echo \"boot:$b:$d:$a\"; "
+            + "if [ \"$b\" = 1 ] || [ \"$a\" = stopped ]; then break; fi; "
+            + "sleep 1; done";
+
+    private static final String BOOT_LINE_PREFIX = "boot:";
+
+    /**
+     * The device list of the bridge is held in memory, checking it costs no adb traffic. It is checked again
+     * after this time in case a device change was missed.
+     */
+    private static final long DEVICE_LIST_RECHECK_MILLIS = 200;
+
+    /**
+     * The time to wait before watching the boot again after adb failed to run the command.
+     */
+    private static final long RETRY_MILLIS = 1000;
+
+    /**
+     * Tells which device to wait for.
+     */
+    interface DeviceMatcher
+    {
+        boolean matches( IDevice device );
+    }
+
+    private final Log log;
+    private final String logPrefix;
+
+    EmulatorBootWatcher( Log log, String logPrefix )
+    {
+        this.log = log;
+        this.logPrefix = logPrefix;
+    }
+
+    /**
+     * @param timeout   The time to give up at, in milliseconds since the epoch.
+     * @return true if the device booted, or if any boot property was signalled when the time ran out.
+     * @throws IOException if the boot properties cannot be read.
+     */
+    boolean waitUntilBooted( AndroidDebugBridge androidDebugBridge, DeviceMatcher matcher, long timeout )
+            throws InterruptedException, IOException
+    {
+        final IDevice device = waitUntilOnline( androidDebugBridge, matcher, timeout );
+        if ( device == null )
+        {
+            return false;
+        }
+
+        final BootWatchReceiver receiver = new BootWatchReceiver( timeout );
+        Exception lastFailure = null;
+        boolean waitingForBootCompleted = false;
+        while ( ! receiver.isBooted() && System.currentTimeMillis() < timeout )
+        {
+            if ( ! waitingForBootCompleted )
+            {
+                waitingForBootCompleted = true;
+                log.info( logPrefix + "Waiting for the device to finish booting..." );
+            }
+            try
+            {
+                device.executeShellCommand( BOOT_WATCH_COMMAND, receiver );
+            }
+            catch ( TimeoutException e )
+            {
+                lastFailure = e;
+                log.debug( logPrefix + "Watching the boot failed, trying again: " + e );
+            }
+            catch ( AdbCommandRejectedException e )
+            {
+                lastFailure = e;
+                log.debug( logPrefix + "Watching the boot failed, trying again: " + e );
+            }
+            catch ( ShellCommandUnresponsiveException e )
+            {
+                lastFailure = e;
+                log.debug( logPrefix + "Watching the boot failed, trying again: " + e );
+            }
+            if ( ! receiver.isBooted() )
+            {
+                // the command ended early, e.g. because adb restarted
+                Thread.sleep( Math.max( 0, Math.min( RETRY_MILLIS, timeout - System.currentTimeMillis() ) ) );
+            }
+        }
+
+        if ( receiver.isBooted() )
+        {
+            return true;
+        }
+        log.warn( logPrefix + "Boot did not complete in time, last boot properties: " + receiver.getState()
+                + ( lastFailure != null ? ", last failure: " + lastFailure : "" ) );
+        // on timeout, use any indicator
+        return receiver.isAnyIndicatorSignalled();
+    }
+
+    /**
+     * @return The online device, <code>null</code> if it did not go online in time.
+     */
+    IDevice waitUntilOnline( AndroidDebugBridge androidDebugBridge, DeviceMatcher matcher, long timeout )
+            throws InterruptedException
+    {
+        final Semaphore changes = new Semaphore( 0 );
+        final AndroidDebugBridge.IDeviceChangeListener listener = new AndroidDebugBridge.IDeviceChangeListener()
+        {
+            public void deviceConnected( IDevice device )
+            {
+                changes.release();
+            }
+
+            public void deviceDisconnected( IDevice device )
+            {
+            }
+
+            public void deviceChanged( IDevice device, int changeMask )
+            {
+                if ( ( changeMask & IDevice.CHANGE_STATE ) != 0 )
+                {
+                    changes.release();
+                }
+            }
+        };
+        AndroidDebugBridge.addDeviceChangeListener( listener );
+        try
+        {
+            boolean waitingForConnection = false;
+            while ( true )
+            {
+                for ( IDevice device : androidDebugBridge.getDevices() )
+                {
+                    if ( matcher.matches( device ) && device.isOnline() )
+                    {
+                        return device;
+                    }
+                }
+                final long remainingTime = timeout - System.currentTimeMillis();
+                if ( remainingTime <= 0 )
+                {
+                    return null;
+                }
+                if ( ! waitingForConnection )
+                {
+                    waitingForConnection = true;
+                    log.info( logPrefix + "Waiting for the device to go online..." );
+                }
+                changes.tryAcquire( Math.min( remainingTime, DEVICE_LIST_RECHECK_MILLIS ), TimeUnit.MILLISECONDS );
+                changes.drainPermits();
+            }
+        }
+        finally
+        {
+            AndroidDebugBridge.removeDeviceChangeListener( listener );
+        }
+    }
+
+    /**
+     * Keeps the latest boot properties printed by {@link #BOOT_WATCH_COMMAND}, and ends the command at the timeout.
+     */
+    private static final class BootWatchReceiver extends MultiLineReceiver
+    {
+        private final long timeout;
+        private volatile String[] state = { "", "", "" };
+
+        private BootWatchReceiver( long timeout )
+        {
+            this.timeout = timeout;
+        }
+
+        @Override
+        public void processNewLines( String[] lines )
+        {
+            for ( String line : lines )
+            {
+                final String trimmed = line.trim();
+                if ( trimmed.startsWith( BOOT_LINE_PREFIX ) )
+                {
+                    final String[] values = trimmed.substring( BOOT_LINE_PREFIX.length() ).split( ":", -1 );
+                    if ( values.length == 3 )
+                    {
+                        state = values;
+                    }
+                }
+            }
+        }
+
+        public boolean isCancelled()
+        {
+            return System.currentTimeMillis() >= timeout || Thread.currentThread().isInterrupted();
+        }
+
+        boolean isBooted()
+        {
+            final String[] current = state;
+            return "1".equals( current[ 0 ] ) || "stopped".equals( current[ 2 ] );
+        }
+
+        boolean isAnyIndicatorSignalled()
+        {
+            final String[] current = state;
+            return isBooted() || "1".equals( current[ 1 ] );
+        }
+
+        String getState()
+        {
+            final String[] current = state;
+            return "sys.boot_completed=" + current[ 0 ] + ", dev.bootcomplete=" + current[ 1 ]
+                    + ", init.svc.bootanim=" + current[ 2 ];
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.jayway.maven.plugins.android;
+
+import org.apache.maven.execution.MavenSession;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The emulators started by the emulator-pool-start goal, by serial number.
+ * <p>
+ * The pool is kept per session, so that device goals of later modules and executions, which do not set
+ * <code>android.devices</code>, run on the emulators of the pool only.
+ * </p>
+ */
+public final class EmulatorPool
+{
+    /**
+     * One pool per session.
+     */
+    private static final SessionScoped<EmulatorPool> POOLS = new SessionScoped<EmulatorPool>()
+    {
+        @Override
+        protected EmulatorPool create()
+        {
+            return new EmulatorPool();
+        }
+    };
+
+    private final List<String> serialNumbers = new ArrayList<String>();
+
+    /**
+     * Returns the pool of the given session, creating it on first use.
+     *
+     * @param session the current Maven session, may be <code>null</code> in which case a new, unshared pool is
+     *                returned.
+     * @return the pool shared by all mojos of the session.
+     */
+    public static EmulatorPool forSession( MavenSession session )
+    {
+        return POOLS.get( session );
+    }
+
+    public synchronized void add( String serialNumber )
+    {
+        if ( ! serialNumbers.contains( serialNumber ) )
+        {
+            serialNumbers.add( serialNumber );
+        }
+    }
+
+    public synchronized boolean contains( String serialNumber )
+    {
+        return serialNumbers.contains( serialNumber );
+    }
+
+    public synchronized boolean isEmpty()
+    {
+        return serialNumbers.isEmpty();
+    }
+
+    /**
+     * @return the serial numbers of the emulators, in the order they were added.
+     */
+    public synchronized List<String> getSerialNumbers()
+    {
+        return new ArrayList<String>( serialNumbers );
+    }
+}
@@ -0,0 +1,331 @@
+package com.jayway.maven.plugins.android;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.lang.StringUtils;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a JUnit xml report while the tests run, instead of building it in memory and writing it at the end.
+ * <p>
+ * Every test case is written to the file as soon as it has ended, so only the current test case is kept in memory.
+ * The file is a complete report after every test case: the closing tags are written after each test case and
+ * overwritten by the next one, and the totals of the test suite are written into space reserved in its start tag.
+ * Until the run ends, the totals are those of the test cases written so far. When the run does not end, the report
+ * still contains the test cases that completed, and its totals count only those.
+ * </p>
+ */
+final class JUnitReportWriter
+{
+    /**
+     * Junit report schema documentation is sparse. Here are some hints
+     *
+     * @see "http://mail-archives.apache.org/mod_mbox/ ant-dev/200902.mbox/%3
+     *      Cdffc72020902241548l4316d645w2e98caf5f0aac770
+     * @mail.gmail.com%3E"
+     * @see "http://junitpdfreport.sourceforge.net/managedcontent/PdfTranslation"
+     */
+    private static final String TAG_TESTSUITES = "testsuites";
+
+    private static final String TAG_TESTSUITE = "testsuite";
+    private static final String ATTR_TESTSUITE_ERRORS = "errors";
+    private static final String ATTR_TESTSUITE_FAILURES = "failures";
+    private static final String ATTR_TESTSUITE_IGNORED = "ignored";
+    private static final String ATTR_TESTSUITE_HOSTNAME = "hostname";
+    private static final String ATTR_TESTSUITE_NAME = "name";
+    private static final String ATTR_TESTSUITE_TESTS = "tests";
+    private static final String ATTR_TESTSUITE_TIME = "time";
+    private static final String ATTR_TESTSUITE_TIMESTAMP = "timestamp";
+
+    private static final String TAG_PROPERTIES = "properties";
+    private static final String TAG_PROPERTY = "property";
+    private static final String ATTR_PROPERTY_NAME = "name";
+    private static final String ATTR_PROPERTY_VALUE = "value";
+
+    private static final String TAG_TESTCASE = "testcase";
+    private static final String ATTR_TESTCASE_NAME = "name";
+    private static final String ATTR_TESTCASE_CLASSNAME = "classname";
+    private static final String ATTR_TESTCASE_TIME = "time";
+
+    static final String TAG_ERROR = "error";
+    static final String TAG_FAILURE = "failure";
+    private static final String ATTR_MESSAGE = "message";
+    private static final String ATTR_TYPE = "type";
+
+    private static final String ENCODING = "UTF-8";
+    private static final String TRAILER = "</" + TAG_TESTSUITE + "></" + TAG_TESTSUITES + ">\n";
+
+    /**
+     * The space reserved in the start tag of the test suite for its totals, in bytes.
+     */
+    private static final int TOTALS_WIDTH = 256;
+
+    /**
+     * time format for the output of milliseconds in seconds in the xml file *
+     */
+    private final NumberFormat timeFormatter = new DecimalFormat( "#0.0000" );
+
+    private final File reportFile;
+    private FileOutputStream out;
+    private Writer writer;
+    private XMLStreamWriter xml;
+    private long totalsPosition;
+    private long trailerPosition;
+
+    private String testCaseClassName;
+    private String testCaseName;
+    private final List<String[]> testCaseProblems = new ArrayList<String[]>();
+
+    private int writtenTests;
+    private int writtenFailures;
+    private int writtenErrors;
+    private double writtenSeconds;
+
+    JUnitReportWriter( File reportFile )
+    {
+        this.reportFile = reportFile;
+    }
+
+    File getReportFile()
+    {
+        return reportFile;
+    }
+
+    /**
+     * Creates the report with the test suite and its properties.
+     *
+     * @param name          The name of the test suite.
+     * @param hostname      The device the tests run on.
+     * @param properties    The properties of the test run.
+     */
+    void start( String name, String hostname, Map<String, String> properties ) throws IOException
+    {
+        out = new FileOutputStream( reportFile );
+        writer = new BufferedWriter( new OutputStreamWriter( out, ENCODING ) );
+        try
+        {
+            writer.write( "<?xml version=\"1.0\" encoding=\"" + ENCODING + "\"?>" );
+            writer.write( "<" + TAG_TESTSUITES + "><" + TAG_TESTSUITE + " " + ATTR_TESTSUITE_NAME + "=\""
+                    + StringEscapeUtils.escapeXml( name ) + "\" " + ATTR_TESTSUITE_HOSTNAME + "=\""
+                    + StringEscapeUtils.escapeXml( hostname ) + "\"" );
+            writer.flush();
+            totalsPosition = out.getChannel().position();
+            writer.write( new String( totals( 0, 0, 0, 0, 0 ), ENCODING ) );
+            writer.write( ">" );
+
+            xml = XMLOutputFactory.newInstance().createXMLStreamWriter( writer );
+            xml.writeStartElement( TAG_PROPERTIES );
+            for ( Map.Entry<String, String> property : properties.entrySet() )
+            {
+                xml.writeEmptyElement( TAG_PROPERTY );
+                xml.writeAttribute( ATTR_PROPERTY_NAME, property.getKey() );
+                xml.writeAttribute( ATTR_PROPERTY_VALUE, property.getValue() );
+            }
+            xml.writeEndElement();
+            commit();
+        }
+        catch ( XMLStreamException e )
+        {
+            close();
+            throw new IOException( "Failed to write test report file " + reportFile, e );
+        }
+        catch ( IOException e )
+        {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts collecting a test case, which is written once it has ended.
+     */
+    void startTestCase( String className, String testName )
+    {
+        testCaseClassName = className;
+        testCaseName = testName;
+        testCaseProblems.clear();
+    }
+
+    /**
+     * Adds an error or failure to the current test case.
+     *
+     * @param tag       {@link #TAG_ERROR} or {@link #TAG_FAILURE}.
+     */
+    void addProblem( String tag, String message, String type, String trace )
+    {
+        testCaseProblems.add( new String[] { tag, message, type, StringUtils.defaultString( trace ) } );
+    }
+
+    /**
+     * Writes the current test case, and updates the totals of the test suite with it.
+     *
+     * @param seconds   The duration of the test case.
+     */
+    void endTestCase( double seconds ) throws IOException
+    {
+        if ( testCaseName == null )
+        {
+            return;
+        }
+        reopen();
+        try
+        {
+            xml.writeStartElement( TAG_TESTCASE );
+            xml.writeAttribute( ATTR_TESTCASE_CLASSNAME, testCaseClassName );
+            xml.writeAttribute( ATTR_TESTCASE_NAME, testCaseName );
+            xml.writeAttribute( ATTR_TESTCASE_TIME, timeFormatter.format( seconds ) );
+            for ( String[] problem : testCaseProblems )
+            {
+                xml.writeStartElement( problem[ 0 ] );
+                xml.writeAttribute( ATTR_MESSAGE, problem[ 1 ] );
+                xml.writeAttribute( ATTR_TYPE, problem[ 2 ] );
+                xml.writeCharacters( problem[ 3 ] );
+                xml.writeEndElement();
+            }
+            xml.writeEndElement();
+            countTestCase( seconds );
+        }
+        catch ( XMLStreamException e )
+        {
+            throw new IOException( "Failed to write test case to test report file " + reportFile, e );
+        }
+        finally
+        {
+            testCaseName = null;
+            testCaseProblems.clear();
+        }
+        commit();
+        writeTotals( writtenTests, writtenFailures, writtenErrors, 0, writtenSeconds );
+    }
+
+    /**
+     * Counts the current test case like the test run does: as an error if it has one, otherwise as a failure if it
+     * has one.
+     */
+    private void countTestCase( double seconds )
+    {
+        writtenTests++;
+        writtenSeconds += seconds;
+        boolean failed = false;
+        for ( String[] problem : testCaseProblems )
+        {
+            if ( TAG_ERROR.equals( problem[ 0 ] ) )
+            {
+                writtenErrors++;
+                return;
+            }
+            failed = true;
+        }
+        if ( failed )
+        {
+            writtenFailures++;
+        }
+    }
+
+    /**
+     * Writes the totals of the test suite and closes the report.
+     */
+    void end( int tests, int failures, int errors, int ignored, double seconds ) throws IOException
+    {
+        try
+        {
+            writeTotals( tests, failures, errors, ignored, seconds );
+        }
+        finally
+        {
+            close();
+        }
+    }
+
+    /**
+     * Closes the report as it is, if it has not been ended.
+     */
+    void close()
+    {
+        if ( xml != null )
+        {
+            try
+            {
+                xml.close();
+            }
+            catch ( XMLStreamException e )
+            {
+                // the underlying writer is closed below
+            }
+            xml = null;
+        }
+        IOUtils.closeQuietly( writer );
+        IOUtils.closeQuietly( out );
+    }
+
+    /**
+     * Writes everything so far to the file, followed by the closing tags.
+     */
+    private void commit() throws IOException
+    {
+        try
+        {
+            xml.flush();
+        }
+        catch ( XMLStreamException e )
+        {
+            throw new IOException( "Failed to write test report file " + reportFile, e );
+        }
+        writer.flush();
+        trailerPosition = out.getChannel().position();
+        out.write( TRAILER.getBytes( ENCODING ) );
+    }
+
+    /**
+     * Removes the closing tags, so that more can be written.
+     */
+    private void reopen() throws IOException
+    {
+        out.getChannel().truncate( trailerPosition );
+        out.getChannel().position( trailerPosition );
+    }
+
+    private void writeTotals( int tests, int failures, int errors, int ignored, double seconds ) throws IOException
+    {
+        final byte[] totals = totals( tests, failures, errors, ignored, seconds );
+        out.getChannel().write( ByteBuffer.wrap( totals ), totalsPosition );
+    }
+
+    private byte[] totals( int tests, int failures, int errors, int ignored, double seconds ) throws IOException
+    {
+        final String totals = " " + ATTR_TESTSUITE_TESTS + "=\"" + tests + "\" "
+                + ATTR_TESTSUITE_FAILURES + "=\"" + failures + "\" "
+                + ATTR_TESTSUITE_ERRORS + "=\"" + errors + "\" "
+                + ATTR_TESTSUITE_IGNORED + "=\"" + ignored + "\" "
+                + ATTR_TESTSUITE_TIME + "=\"" + timeFormatter.format( seconds ) + "\" "
+                + ATTR_TESTSUITE_TIMESTAMP + "=\"" + StringEscapeUtils.escapeXml( new Date().toString() ) + "\"";
+        final byte[] bytes = totals.getBytes( ENCODING );
+        if ( bytes.length > TOTALS_WIDTH )
+        {
+            throw new IOException( "Test suite totals do not fit in test report file " + reportFile );
+        }
+        final byte[] padded = new byte[ TOTALS_WIDTH ];
+        System.arraycopy( bytes, 0, padded, 0, bytes.length );
+        for ( int i = bytes.length; i < TOTALS_WIDTH; i++ )
+        {
+            padded[ i ] = ' ';
+        }
+        return padded;
+    }
+}
@@ -0,0 +1,146 @@
+package com.jayway.maven.plugins.android;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The captured lines of an output stream of a command, each followed by a newline.
+ * <p>
+ * At most <code>limit</code> characters are kept in memory. Beyond that, either the oldest lines are dropped, so that
+ * the end of the output is kept like in a ring buffer, or the lines are spilled to a temporary file, which is deleted
+ * by {@link #close()}.
+ * </p>
+ */
+final class OutputCapture
+{
+    private final int limit;
+    private final boolean spill;
+    private final Deque<String> lines = new ArrayDeque<String>();
+    private long length;
+    private boolean truncated;
+    private File spillFile;
+    private Writer spillWriter;
+
+    /**
+     * @param limit The number of characters to keep in memory.
+     * @param spill Whether to spill the output beyond the limit to a temporary file instead of dropping it.
+     */
+    OutputCapture( int limit, boolean spill )
+    {
+        this.limit = Math.max( 0, limit );
+        this.spill = spill;
+    }
+
+    synchronized void add( String line )
+    {
+        lines.addLast( line );
+        length += line.length() + 1;
+        if ( length <= limit )
+        {
+            return;
+        }
+        if ( spill && spillAll() )
+        {
+            return;
+        }
+        while ( length > limit && ! lines.isEmpty() )
+        {
+            length -= lines.removeFirst().length() + 1;
+            truncated = true;
+        }
+    }
+
+    /**
+     * Writes the lines in memory to the spill file.
+     *
+     * @return false if the spill file cannot be written, the spilled lines are then lost and the lines in memory
+     *         are dropped instead.
+     */
+    private boolean spillAll()
+    {
+        try
+        {
+            if ( spillWriter == null )
+            {
+                spillFile = File.createTempFile( "android-maven-plugin-output", ".txt" );
+                spillFile.deleteOnExit();
+                spillWriter = new OutputStreamWriter( FileUtils.openOutputStream( spillFile ), "UTF-8" );
+            }
+            for ( String line : lines )
+            {
+                spillWriter.write( line );
+                spillWriter.write( '\n' );
+            }
+            lines.clear();
+            length = 0;
+            return true;
+        }
+        catch ( IOException e )
+        {
+            // the lines spilled so far are deleted with the file, and the ones in memory are dropped by the caller
+            closeSpillFile();
+            truncated = true;
+            return false;
+        }
+    }
+
+    /**
+     * @return true if lines were dropped because the output exceeded the limit.
+     */
+    synchronized boolean isTruncated()
+    {
+        return truncated;
+    }
+
+    /**
+     * @return The captured output, read back from the spill file if it was spilled.
+     */
+    @Override
+    public synchronized String toString()
+    {
+        final StringBuilder output = new StringBuilder();
+        if ( spillWriter != null )
+        {
+            try
+            {
+                spillWriter.flush();
+                output.append( FileUtils.readFileToString( spillFile, "UTF-8" ) );
+            }
+            catch ( IOException e )
+            {
+                throw new IllegalStateException( "Cannot read the captured output from " + spillFile, e );
+            }
+        }
+        for ( String line : lines )
+        {
+            output.append( line ).append( '\n' );
+        }
+        return output.toString();
+    }
+
+    /**
+     * Deletes the spill file.
+     */
+    synchronized void close()
+    {
+        closeSpillFile();
+    }
+
+    private void closeSpillFile()
+    {
+        IOUtils.closeQuietly( spillWriter );
+        spillWriter = null;
+        if ( spillFile != null )
+        {
+            FileUtils.deleteQuietly( spillFile );
+            spillFile = null;
+        }
+    }
+}
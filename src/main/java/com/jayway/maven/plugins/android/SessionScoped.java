@@ -0,0 +1,52 @@
+package com.jayway.maven.plugins.android;
+
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Holds one instance of a class per Maven session, created on first use.
+ * <p>
+ * The instances are kept by the execution request, which is shared by the per module session clones of a parallel
+ * build. Weak keys let embedders (IDEs, daemons) running several sessions in one JVM drop the instances of old
+ * sessions.
+ * </p>
+ *
+ * @param <T> The type of the instances.
+ */
+public abstract class SessionScoped<T>
+{
+    private final Map<MavenExecutionRequest, T> instances = new WeakHashMap<MavenExecutionRequest, T>();
+
+    /**
+     * Returns the instance of the given session, creating it on first use.
+     *
+     * @param session the current Maven session, may be <code>null</code> (e.g. in unit tests) in which case a new,
+     *                unshared instance is returned.
+     * @return the instance shared by all mojos of the session.
+     */
+    public T get( MavenSession session )
+    {
+        if ( session == null || session.getRequest() == null )
+        {
+            return create();
+        }
+        synchronized ( instances )
+        {
+            T instance = instances.get( session.getRequest() );
+            if ( instance == null )
+            {
+                instance = create();
+                instances.put( session.getRequest(), instance );
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * @return a new instance for a session.
+     */
+    protected abstract T create();
+}
@@ -0,0 +1,265 @@
+package com.jayway.maven.plugins.android;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges the JUnit reports of the shards of a sharded instrumentation test run into a single report, and collects
+ * the durations of the test classes on the way.
+ * <p>
+ * The shard reports are streamed, not loaded, so merging a large test suite does not need much memory.
+ * </p>
+ */
+public final class ShardedTestReport
+{
+    private static final String TAG_TESTSUITES = "testsuites";
+    private static final String TAG_TESTSUITE = "testsuite";
+    private static final String TAG_PROPERTIES = "properties";
+    private static final String TAG_PROPERTY = "property";
+    private static final String TAG_TESTCASE = "testcase";
+    private static final String ATTR_CLASSNAME = "classname";
+    private static final String ATTR_HOSTNAME = "hostname";
+    private static final String ATTR_NAME = "name";
+    private static final String ATTR_TIME = "time";
+    private static final String ATTR_TIMESTAMP = "timestamp";
+    private static final String ATTR_VALUE = "value";
+    private static final String[] COUNT_ATTRIBUTES = { "tests", "failures", "errors", "ignored" };
+
+    private final NumberFormat timeFormatter = new DecimalFormat( "#0.0000", new DecimalFormatSymbols( Locale.US ) );
+    private final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+    private final XMLEventFactory eventFactory = XMLEventFactory.newInstance();
+
+    private final List<File> shardReports = new ArrayList<File>();
+    private final Map<String, Long> classDurations = new HashMap<String, Long>();
+
+    /**
+     * Adds the report of a shard.
+     */
+    public void add( File shardReport )
+    {
+        shardReports.add( shardReport );
+    }
+
+    /**
+     * Writes the merged report.
+     *
+     * @param report    The report file to write.
+     * @param suiteName The name of the merged test suite.
+     * @throws IOException if a shard report cannot be read or the report cannot be written.
+     */
+    public void write( File report, String suiteName ) throws IOException
+    {
+        final long[] counts = new long[ COUNT_ATTRIBUTES.length ];
+        double time = 0;
+        final Set<String> hostnames = new LinkedHashSet<String>();
+        for ( File shardReport : shardReports )
+        {
+            final StartElement testSuite = readTestSuite( shardReport );
+            if ( testSuite == null )
+            {
+                continue;
+            }
+            for ( int i = 0; i < COUNT_ATTRIBUTES.length; i++ )
+            {
+                counts[ i ] += ( long ) parseNumber( testSuite, COUNT_ATTRIBUTES[ i ] );
+            }
+            time += parseNumber( testSuite, ATTR_TIME );
+            final Attribute hostname = testSuite.getAttributeByName( new QName( ATTR_HOSTNAME ) );
+            if ( hostname != null )
+            {
+                hostnames.add( hostname.getValue() );
+            }
+        }
+
+        classDurations.clear();
+        final OutputStream out = new FileOutputStream( report );
+        try
+        {
+            final XMLEventWriter writer = XMLOutputFactory.newInstance().createXMLEventWriter( out, "UTF-8" );
+            writer.add( eventFactory.createStartDocument( "UTF-8" ) );
+            writer.add( eventFactory.createStartElement( "", "", TAG_TESTSUITES ) );
+            writer.add( eventFactory.createStartElement( "", "", TAG_TESTSUITE ) );
+            writer.add( eventFactory.createAttribute( ATTR_NAME, suiteName ) );
+            writer.add( eventFactory.createAttribute( ATTR_HOSTNAME, StringUtils.join( hostnames, "," ) ) );
+            for ( int i = 0; i < COUNT_ATTRIBUTES.length; i++ )
+            {
+                writer.add( eventFactory.createAttribute( COUNT_ATTRIBUTES[ i ], Long.toString( counts[ i ] ) ) );
+            }
+            writer.add( eventFactory.createAttribute( ATTR_TIME, timeFormatter.format( time ) ) );
+            writer.add( eventFactory.createAttribute( ATTR_TIMESTAMP, new Date().toString() ) );
+            writeSystemProperties( writer );
+            for ( File shardReport : shardReports )
+            {
+                copyTestCases( shardReport, writer );
+            }
+            writer.add( eventFactory.createEndElement( "", "", TAG_TESTSUITE ) );
+            writer.add( eventFactory.createEndElement( "", "", TAG_TESTSUITES ) );
+            writer.add( eventFactory.createEndDocument() );
+            writer.close();
+        }
+        catch ( XMLStreamException e )
+        {
+            throw new IOException( "Failed to write merged test report " + report, e );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * @return The total duration of each test class in milliseconds, as found by {@link #write(File, String)}.
+     */
+    public Map<String, Long> getClassDurations()
+    {
+        return classDurations;
+    }
+
+    private StartElement readTestSuite( File shardReport ) throws IOException
+    {
+        final InputStream in = new FileInputStream( shardReport );
+        try
+        {
+            final XMLEventReader reader = inputFactory.createXMLEventReader( in );
+            while ( reader.hasNext() )
+            {
+                final XMLEvent event = reader.nextEvent();
+                if ( event.isStartElement() && isElement( event.asStartElement(), TAG_TESTSUITE ) )
+                {
+                    return event.asStartElement();
+                }
+            }
+            return null;
+        }
+        catch ( XMLStreamException e )
+        {
+            throw new IOException( "Failed to read test report " + shardReport, e );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( in );
+        }
+    }
+
+    private void copyTestCases( File shardReport, XMLEventWriter writer ) throws IOException, XMLStreamException
+    {
+        final InputStream in = new FileInputStream( shardReport );
+        try
+        {
+            final XMLEventReader reader = inputFactory.createXMLEventReader( in );
+            int depth = 0;
+            while ( reader.hasNext() )
+            {
+                final XMLEvent event = reader.nextEvent();
+                if ( event.isStartElement() )
+                {
+                    if ( depth == 0 && isElement( event.asStartElement(), TAG_TESTCASE ) )
+                    {
+                        addDuration( event.asStartElement() );
+                        depth = 1;
+                        writer.add( event );
+                        continue;
+                    }
+                    if ( depth > 0 )
+                    {
+                        depth++;
+                    }
+                }
+                if ( depth > 0 )
+                {
+                    writer.add( event );
+                    if ( event.isEndElement() )
+                    {
+                        depth--;
+                    }
+                }
+            }
+        }
+        catch ( XMLStreamException e )
+        {
+            throw new IOException( "Failed to read test report " + shardReport, e );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( in );
+        }
+    }
+
+    private void addDuration( StartElement testCase )
+    {
+        final Attribute className = testCase.getAttributeByName( new QName( ATTR_CLASSNAME ) );
+        if ( className == null )
+        {
+            return;
+        }
+        final long millis = Math.round( parseNumber( testCase, ATTR_TIME ) * 1000 );
+        final Long previous = classDurations.get( className.getValue() );
+        classDurations.put( className.getValue(), previous == null ? millis : previous + millis );
+    }
+
+    private void writeSystemProperties( XMLEventWriter writer ) throws XMLStreamException
+    {
+        writer.add( eventFactory.createStartElement( "", "", TAG_PROPERTIES ) );
+        for ( Map.Entry<Object, Object> systemProperty : System.getProperties().entrySet() )
+        {
+            writer.add( eventFactory.createStartElement( "", "", TAG_PROPERTY ) );
+            writer.add( eventFactory.createAttribute( ATTR_NAME, systemProperty.getKey().toString() ) );
+            writer.add( eventFactory.createAttribute( ATTR_VALUE, systemProperty.getValue().toString() ) );
+            writer.add( eventFactory.createEndElement( "", "", TAG_PROPERTY ) );
+        }
+        writer.add( eventFactory.createEndElement( "", "", TAG_PROPERTIES ) );
+    }
+
+    private static boolean isElement( StartElement element, String name )
+    {
+        return name.equals( element.getName().getLocalPart() );
+    }
+
+    /**
+     * Reads a number attribute, also when it was formatted with a decimal comma.
+     */
+    private static double parseNumber( StartElement element, String attributeName )
+    {
+        final Attribute attribute = element.getAttributeByName( new QName( attributeName ) );
+        if ( attribute == null )
+        {
+            return 0;
+        }
+        try
+        {
+            return Double.parseDouble( attribute.getValue().trim().replace( ',', '.' ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            return 0;
+        }
+    }
+}
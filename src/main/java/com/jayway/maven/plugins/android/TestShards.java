@@ -0,0 +1,190 @@
+package com.jayway.maven.plugins.android;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Splits instrumentation test classes into shards of about the same duration, so that devices taking shards from a
+ * common queue finish at about the same time.
+ * <p>
+ * Durations are those of earlier runs, kept in a properties file of test class names to milliseconds. Classes
+ * without a known duration are assumed to take the average time of the known ones.
+ * </p>
+ */
+public final class TestShards
+{
+    private TestShards()
+    {
+    }
+
+    /**
+     * Distributes the test classes over the shards, always adding the longest remaining class to the shortest
+     * shard.
+     *
+     * @param testClasses   The test classes to run.
+     * @param durations     Known durations of test classes in milliseconds.
+     * @param shardCount    The maximum number of shards.
+     * @return The non empty shards, longest first.
+     */
+    public static List<List<String>> plan( List<String> testClasses, Map<String, Long> durations,
+                                           int shardCount )
+    {
+        final Map<String, Long> estimates = estimate( testClasses, durations );
+        final List<String> longestFirst = new ArrayList<String>( testClasses );
+        Collections.sort( longestFirst, new Comparator<String>()
+        {
+            public int compare( String a, String b )
+            {
+                final int byDuration = estimates.get( b ).compareTo( estimates.get( a ) );
+                return byDuration != 0 ? byDuration : a.compareTo( b );
+            }
+        } );
+
+        final int count = Math.max( 1, Math.min( shardCount, testClasses.size() ) );
+        final List<List<String>> shards = new ArrayList<List<String>>( count );
+        final long[] totals = new long[ count ];
+        for ( int i = 0; i < count; i++ )
+        {
+            shards.add( new ArrayList<String>() );
+        }
+        for ( String testClass : longestFirst )
+        {
+            int shortest = 0;
+            for ( int i = 1; i < count; i++ )
+            {
+                if ( totals[ i ] < totals[ shortest ] )
+                {
+                    shortest = i;
+                }
+            }
+            shards.get( shortest ).add( testClass );
+            totals[ shortest ] += estimates.get( testClass );
+        }
+
+        final List<Integer> longestShardsFirst = new ArrayList<Integer>();
+        for ( int i = 0; i < count; i++ )
+        {
+            if ( ! shards.get( i ).isEmpty() )
+            {
+                longestShardsFirst.add( i );
+            }
+        }
+        Collections.sort( longestShardsFirst, new Comparator<Integer>()
+        {
+            public int compare( Integer a, Integer b )
+            {
+                final int byDuration = Long.valueOf( totals[ b ] ).compareTo( totals[ a ] );
+                return byDuration != 0 ? byDuration : a.compareTo( b );
+            }
+        } );
+        final List<List<String>> result = new ArrayList<List<String>>( longestShardsFirst.size() );
+        for ( Integer shard : longestShardsFirst )
+        {
+            result.add( shards.get( shard ) );
+        }
+        return result;
+    }
+
+    private static Map<String, Long> estimate( List<String> testClasses, Map<String, Long> durations )
+    {
+        long known = 0;
+        long total = 0;
+        for ( String testClass : testClasses )
+        {
+            final Long duration = durations.get( testClass );
+            if ( duration != null )
+            {
+                known++;
+                total += duration;
+            }
+        }
+        final long average = known > 0 ? Math.max( 1, total / known ) : 1;
+
+        final Map<String, Long> estimates = new HashMap<String, Long>();
+        for ( String testClass : testClasses )
+        {
+            final Long duration = durations.get( testClass );
+            estimates.put( testClass, duration != null ? Math.max( 1, duration ) : average );
+        }
+        return estimates;
+    }
+
+    /**
+     * @param file  The durations file, may not exist yet.
+     * @return The durations of test classes in milliseconds.
+     * @throws IOException if the file exists but cannot be read.
+     */
+    public static Map<String, Long> readDurations( File file ) throws IOException
+    {
+        final Map<String, Long> durations = new HashMap<String, Long>();
+        if ( file == null || ! file.isFile() )
+        {
+            return durations;
+        }
+        final Properties properties = new Properties();
+        final InputStream in = new FileInputStream( file );
+        try
+        {
+            properties.load( in );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( in );
+        }
+        for ( String testClass : properties.stringPropertyNames() )
+        {
+            try
+            {
+                durations.put( testClass, Long.valueOf( properties.getProperty( testClass ).trim() ) );
+            }
+            catch ( NumberFormatException e )
+            {
+                // ignore the entry, the class is estimated like a new one
+            }
+        }
+        return durations;
+    }
+
+    /**
+     * Updates the durations file with the durations of the latest run, keeping those of classes that did not run.
+     *
+     * @param file      The durations file.
+     * @param durations The durations of test classes in milliseconds.
+     * @throws IOException if the file cannot be read or written.
+     */
+    public static void updateDurations( File file, Map<String, Long> durations ) throws IOException
+    {
+        final Map<String, Long> merged = new TreeMap<String, Long>( readDurations( file ) );
+        merged.putAll( durations );
+
+        final Properties properties = new Properties();
+        for ( Map.Entry<String, Long> entry : merged.entrySet() )
+        {
+            properties.setProperty( entry.getKey(), entry.getValue().toString() );
+        }
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        final OutputStream out = new FileOutputStream( file );
+        try
+        {
+            properties.store( out, "Durations of instrumentation test classes in milliseconds" );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.jayway.maven.plugins.android;
+
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Long-lived worker processes for tools that have a daemon mode, used by {@link CommandExecutor} instead of starting
+ * a new process for each command.
+ * <p>
+ * A {@link ToolWorkerProvider} tells which commands its workers can run and starts them. Workers are kept per
+ * executable and working directory, and reused by the following commands, so that consecutive commands of a build
+ * are run by the same process one after the other. At most {@link #MAX_WORKERS_PER_EXECUTABLE} workers run per
+ * executable; further commands wait for one of them, stopping an idle worker of another working directory to make
+ * room. Commands no provider supports, and commands whose worker fails, are run as a process of their own as before.
+ * Idle workers are stopped when the JVM exits.
+ * </p>
+ */
+public final class ToolWorkers
+{
+    /**
+     * A process running the commands of a tool.
+     */
+    public interface ToolWorker
+    {
+        /**
+         * Runs a command in the worker.
+         *
+         * @param commands The command options, as they would be passed to the executable.
+         * @param stdOut   Receives the standard output of the command.
+         * @param stdErr   Receives the standard error of the command.
+         * @return The result of the command, 0 on success.
+         * @throws IOException if the worker failed, the command is then run in a process of its own.
+         */
+        int execute( List<String> commands, StreamConsumer stdOut, StreamConsumer stdErr ) throws IOException;
+
+        /**
+         * Stops the worker.
+         */
+        void close();
+    }
+
+    /**
+     * Starts workers for the commands of a tool.
+     */
+    public interface ToolWorkerProvider
+    {
+        /**
+         * @return true if a worker of this provider can run the command.
+         */
+        boolean supports( String executable, List<String> commands );
+
+        /**
+         * @param executable       The executable of the tool.
+         * @param workingDirectory The working directory of the worker, <code>null</code> for the current directory.
+         * @return The started worker.
+         * @throws IOException if the worker cannot be started.
+         */
+        ToolWorker start( String executable, File workingDirectory ) throws IOException;
+    }
+
+    /**
+     * The number of workers per executable, which can run that many commands at the same time.
+     */
+    static final int MAX_WORKERS_PER_EXECUTABLE = Math.max( 1,
+            Math.min( 4, Runtime.getRuntime().availableProcessors() ) );
+
+    private static final List<ToolWorkerProvider> PROVIDERS = new CopyOnWriteArrayList<ToolWorkerProvider>();
+
+    private static final Map<String, LinkedList<ToolWorker>> IDLE_WORKERS
+            = new HashMap<String, LinkedList<ToolWorker>>();
+
+    /**
+     * The workers that could not be started, which are not tried again.
+     */
+    private static final Set<String> FAILED_WORKERS = new HashSet<String>();
+
+    private static final Map<ToolWorker, String> KEYS = new HashMap<ToolWorker, String>();
+
+    private static final Map<ToolWorker, String> EXECUTABLES = new HashMap<ToolWorker, String>();
+
+    /**
+     * The number of started workers per executable, idle or busy.
+     */
+    private static final Map<String, Integer> WORKER_COUNTS = new HashMap<String, Integer>();
+
+    static
+    {
+        PROVIDERS.add( Aapt2DaemonWorker.PROVIDER );
+        Runtime.getRuntime().addShutdownHook( new Thread( "tool-workers-shutdown" )
+        {
+            @Override
+            public void run()
+            {
+                closeIdleWorkers();
+            }
+        } );
+    }
+
+    private ToolWorkers()
+    {
+    }
+
+    /**
+     * Adds a provider, which is asked before the providers added earlier.
+     */
+    public static void register( ToolWorkerProvider provider )
+    {
+        PROVIDERS.add( 0, provider );
+    }
+
+    /**
+     * Returns a worker for the command, which has to be given back with {@link #release(ToolWorker)} or
+     * {@link #discard(ToolWorker)} after the command.
+     *
+     * @return An idle or newly started worker, <code>null</code> if the command has to be run in a process of its
+     *         own.
+     */
+    static ToolWorker acquire( String executable, List<String> commands, File workingDirectory )
+    {
+        for ( ToolWorkerProvider provider : PROVIDERS )
+        {
+            if ( provider.supports( executable, commands ) )
+            {
+                return acquire( provider, executable, workingDirectory );
+            }
+        }
+        return null;
+    }
+
+    private static ToolWorker acquire( ToolWorkerProvider provider, String executable, File workingDirectory )
+    {
+        final String key = executable + File.pathSeparator
+                + ( workingDirectory == null ? "" : workingDirectory.getAbsolutePath() );
+        ToolWorker evicted = null;
+        synchronized ( IDLE_WORKERS )
+        {
+            try
+            {
+                while ( true )
+                {
+                    if ( FAILED_WORKERS.contains( key ) )
+                    {
+                        return null;
+                    }
+                    final LinkedList<ToolWorker> idle = IDLE_WORKERS.get( key );
+                    if ( idle != null && ! idle.isEmpty() )
+                    {
+                        return idle.removeFirst();
+                    }
+                    if ( getWorkerCount( executable ) < MAX_WORKERS_PER_EXECUTABLE )
+                    {
+                        break;
+                    }
+                    evicted = removeIdleWorker( executable );
+                    if ( evicted != null )
+                    {
+                        break;
+                    }
+                    IDLE_WORKERS.wait();
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            // reserve the place of the new worker
+            WORKER_COUNTS.put( executable, getWorkerCount( executable ) + 1 );
+        }
+        if ( evicted != null )
+        {
+            evicted.close();
+        }
+        try
+        {
+            final ToolWorker worker = provider.start( executable, workingDirectory );
+            synchronized ( IDLE_WORKERS )
+            {
+                KEYS.put( worker, key );
+                EXECUTABLES.put( worker, executable );
+            }
+            return worker;
+        }
+        catch ( IOException e )
+        {
+            synchronized ( IDLE_WORKERS )
+            {
+                FAILED_WORKERS.add( key );
+                removeWorker( executable );
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Keeps the worker for the next command.
+     */
+    static void release( ToolWorker worker )
+    {
+        synchronized ( IDLE_WORKERS )
+        {
+            final String key = KEYS.get( worker );
+            LinkedList<ToolWorker> idle = IDLE_WORKERS.get( key );
+            if ( idle == null )
+            {
+                idle = new LinkedList<ToolWorker>();
+                IDLE_WORKERS.put( key, idle );
+            }
+            idle.addFirst( worker );
+            IDLE_WORKERS.notifyAll();
+        }
+    }
+
+    /**
+     * Stops a worker that failed.
+     */
+    static void discard( ToolWorker worker )
+    {
+        synchronized ( IDLE_WORKERS )
+        {
+            KEYS.remove( worker );
+            removeWorker( EXECUTABLES.remove( worker ) );
+        }
+        worker.close();
+    }
+
+    private static int getWorkerCount( String executable )
+    {
+        final Integer count = WORKER_COUNTS.get( executable );
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Gives up the place of a worker of the executable, and wakes up the commands waiting for one.
+     */
+    private static void removeWorker( String executable )
+    {
+        final int count = getWorkerCount( executable ) - 1;
+        if ( count > 0 )
+        {
+            WORKER_COUNTS.put( executable, count );
+        }
+        else
+        {
+            WORKER_COUNTS.remove( executable );
+        }
+        IDLE_WORKERS.notifyAll();
+    }
+
+    /**
+     * Takes an idle worker of the executable, whatever its working directory, to be stopped.
+     *
+     * @return The worker, <code>null</code> if all workers of the executable are busy.
+     */
+    private static ToolWorker removeIdleWorker( String executable )
+    {
+        for ( LinkedList<ToolWorker> idle : IDLE_WORKERS.values() )
+        {
+            for ( Iterator<ToolWorker> workers = idle.iterator(); workers.hasNext(); )
+            {
+                final ToolWorker worker = workers.next();
+                if ( executable.equals( EXECUTABLES.get( worker ) ) )
+                {
+                    workers.remove();
+                    KEYS.remove( worker );
+                    EXECUTABLES.remove( worker );
+                    removeWorker( executable );
+                    return worker;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void closeIdleWorkers()
+    {
+        final List<ToolWorker> workers = new ArrayList<ToolWorker>();
+        synchronized ( IDLE_WORKERS )
+        {
+            for ( LinkedList<ToolWorker> idle : IDLE_WORKERS.values() )
+            {
+                workers.addAll( idle );
+            }
+            IDLE_WORKERS.clear();
+            KEYS.clear();
+            EXECUTABLES.clear();
+            WORKER_COUNTS.clear();
+        }
+        for ( ToolWorker worker : workers )
+        {
+            worker.close();
+        }
+    }
+}
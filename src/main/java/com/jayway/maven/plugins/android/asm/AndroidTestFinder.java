@@ -20,6 +20,7 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.codehaus.plexus.util.DirectoryWalkListener;
 import org.codehaus.plexus.util.DirectoryWalker;
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -45,8 +46,34 @@ public class AndroidTestFinder
             throw new IllegalArgumentException( "classesBaseDirectory must be a valid directory!" );
         }
 
-        final List<File> classFiles = findEligebleClassFiles( classesBaseDirectory );
         final DescendantFinder descendantFinder = new DescendantFinder( TEST_PACKAGES );
+        visitClassFiles( classesBaseDirectory, descendantFinder );
+        return descendantFinder.isDescendantFound();
+    }
+
+    /**
+     * Finds the test classes the instrumentation test runner can run, so that they can be distributed over devices.
+     *
+     * @param classesBaseDirectory Directory of the compiled test classes.
+     * @return The fully qualified names of the test classes, sorted.
+     * @throws MojoExecutionException if a class file cannot be read.
+     */
+    public static List<String> findTestClasses( File classesBaseDirectory ) throws MojoExecutionException
+    {
+        if ( classesBaseDirectory == null || ! classesBaseDirectory.isDirectory() )
+        {
+            throw new IllegalArgumentException( "classesBaseDirectory must be a valid directory!" );
+        }
+
+        final TestClassCollector testClassCollector = new TestClassCollector( TEST_PACKAGES );
+        visitClassFiles( classesBaseDirectory, testClassCollector );
+        return testClassCollector.getTestClasses();
+    }
+
+    private static void visitClassFiles( File classesBaseDirectory, ClassVisitor classVisitor )
+            throws MojoExecutionException
+    {
+        final List<File> classFiles = findEligebleClassFiles( classesBaseDirectory );
 
         for ( File classFile : classFiles )
         {
@@ -57,7 +84,7 @@ public class AndroidTestFinder
                 inputStream = new FileInputStream( classFile );
                 classReader = new ClassReader( inputStream );
 
-                classReader.accept( descendantFinder, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES
+                classReader.accept( classVisitor, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES
                         | ClassReader.SKIP_CODE );
             }
             catch ( IOException e )
@@ -71,8 +98,6 @@ public class AndroidTestFinder
                 IOUtils.closeQuietly( inputStream );
             }
         }
-
-        return descendantFinder.isDescendantFound();
     }
 
     private static List<File> findEligebleClassFiles( File classesBaseDirectory )
@@ -0,0 +1,115 @@
+package com.jayway.maven.plugins.android.asm;
+
+import org.apache.commons.lang.StringUtils;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the classes that the instrumentation test runner can run: concrete public classes that extend a class
+ * from one of the parent packages, directly or through other visited classes, or that have JUnit 4
+ * <code>@Test</code> methods.
+ */
+class TestClassCollector extends ClassVisitor
+{
+    private static final String JUNIT4_TEST_ANNOTATION = "Lorg/junit/Test;";
+
+    private final String[] parentPackages;
+    private final Map<String, VisitedClass> classes = new HashMap<String, VisitedClass>();
+    private VisitedClass currentClass;
+
+    private static final class VisitedClass
+    {
+        private final String superName;
+        private final boolean concrete;
+        private boolean annotatedTests;
+
+        private VisitedClass( String superName, boolean concrete )
+        {
+            this.superName = superName;
+            this.concrete = concrete;
+        }
+    }
+
+    /**
+     * @param parentPackages Packages of the test base classes, formatted with <code>/</code> (slash) instead of
+     *                       <code>.</code> (dot). For example: <code>junit/framework/</code>
+     */
+    public TestClassCollector( String... parentPackages )
+    {
+        super( Opcodes.ASM4 );
+        this.parentPackages = parentPackages;
+    }
+
+    @Override
+    public void visit( int version, int access, String name, String signature, String superName, String[] interfaces )
+    {
+        final boolean concrete = ( access & Opcodes.ACC_PUBLIC ) != 0
+                && ( access & ( Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE ) ) == 0;
+        currentClass = new VisitedClass( superName, concrete );
+        classes.put( name, currentClass );
+    }
+
+    @Override
+    public MethodVisitor visitMethod( int access, String name, String desc, String signature, String[] exceptions )
+    {
+        final VisitedClass visitedClass = currentClass;
+        return new MethodVisitor( Opcodes.ASM4 )
+        {
+            @Override
+            public AnnotationVisitor visitAnnotation( String annotationDesc, boolean visible )
+            {
+                if ( JUNIT4_TEST_ANNOTATION.equals( annotationDesc ) )
+                {
+                    visitedClass.annotatedTests = true;
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * @return The fully qualified names of the test classes found, sorted.
+     */
+    public List<String> getTestClasses()
+    {
+        final List<String> testClasses = new ArrayList<String>();
+        for ( Map.Entry<String, VisitedClass> entry : classes.entrySet() )
+        {
+            if ( entry.getValue().concrete && isTestClass( entry.getKey() ) )
+            {
+                testClasses.add( entry.getKey().replace( '/', '.' ) );
+            }
+        }
+        Collections.sort( testClasses );
+        return testClasses;
+    }
+
+    private boolean isTestClass( String name )
+    {
+        VisitedClass visitedClass = classes.get( name );
+        while ( visitedClass != null )
+        {
+            if ( visitedClass.annotatedTests )
+            {
+                return true;
+            }
+            for ( String parentPackage : parentPackages )
+            {
+                if ( StringUtils.startsWith( visitedClass.superName, parentPackage ) )
+                {
+                    return true;
+                }
+            }
+            visitedClass = classes.get( visitedClass.superName );
+        }
+        return false;
+    }
+}
@@ -0,0 +1,117 @@
+package com.jayway.maven.plugins.android.common;
+
+import com.android.ddmlib.IDevice;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Tells whether a device already has exactly a given apk installed, so that installing it again can be skipped.
+ * <p>
+ * The installed apk is found with <code>pm path</code> and hashed on the device with <code>sha1sum</code>. On
+ * devices without <code>sha1sum</code>, the apk is compared with a marker that the last install recorded on the
+ * device, holding the digest of the apk and the path it was installed to.
+ * </p>
+ */
+public final class ApkInstallCache
+{
+    private static final String MARKER_DIRECTORY = "/data/local/tmp/android-maven-plugin";
+    private static final String PACKAGE_PREFIX = "package:";
+    private static final Pattern SHA1 = Pattern.compile( "[0-9a-fA-F]{40}" );
+
+    private final Log log;
+
+    public ApkInstallCache( Log log )
+    {
+        this.log = log;
+    }
+
+    /**
+     * @param device        The device to check.
+     * @param packageName   The package of the apk.
+     * @param apkFile       The apk to install.
+     * @return true if the device has this apk installed, false if it has not or that cannot be determined.
+     */
+    public boolean isInstalled( IDevice device, String packageName, File apkFile )
+    {
+        final String deviceLogLinePrefix = DeviceHelper.getDeviceLogLinePrefix( device );
+        try
+        {
+            final String installedPath = getInstalledPath( device, packageName );
+            if ( installedPath == null )
+            {
+                return false;
+            }
+            final String sha1 = ChecksumHelper.sha1( apkFile );
+            final String installedSha1 = firstToken(
+                    RemoteFiles.shell( device, "sha1sum " + RemoteFiles.quote( installedPath ) ) );
+            if ( SHA1.matcher( installedSha1 ).matches() )
+            {
+                return sha1.equalsIgnoreCase( installedSha1 );
+            }
+            final String marker =
+                    RemoteFiles.shell( device, "cat " + RemoteFiles.quote( getMarkerPath( packageName ) ) ).trim();
+            return marker.equals( sha1 + " " + installedPath );
+        }
+        catch ( IOException e )
+        {
+            log.debug( deviceLogLinePrefix + "Could not compare " + apkFile + " with the installed apk", e );
+            return false;
+        }
+    }
+
+    /**
+     * Records the install of an apk on the device, for devices that cannot hash the installed apk.
+     */
+    public void recordInstall( IDevice device, String packageName, File apkFile )
+    {
+        final String deviceLogLinePrefix = DeviceHelper.getDeviceLogLinePrefix( device );
+        try
+        {
+            final String installedPath = getInstalledPath( device, packageName );
+            if ( installedPath != null )
+            {
+                RemoteFiles.shell( device, "mkdir -p " + MARKER_DIRECTORY + " && echo "
+                        + RemoteFiles.quote( ChecksumHelper.sha1( apkFile ) + " " + installedPath ) + " > "
+                        + RemoteFiles.quote( getMarkerPath( packageName ) ) );
+            }
+        }
+        catch ( IOException e )
+        {
+            log.debug( deviceLogLinePrefix + "Could not record the install of " + apkFile, e );
+        }
+    }
+
+    /**
+     * @return The path of the installed apk, <code>null</code> if the package is not installed or split over
+     *         several apks.
+     */
+    private String getInstalledPath( IDevice device, String packageName ) throws IOException
+    {
+        final List<String> paths = new ArrayList<String>();
+        for ( String line : RemoteFiles.shell( device, "pm path " + packageName ).split( "\n" ) )
+        {
+            if ( line.trim().startsWith( PACKAGE_PREFIX ) )
+            {
+                paths.add( line.trim().substring( PACKAGE_PREFIX.length() ) );
+            }
+        }
+        return paths.size() == 1 ? paths.get( 0 ) : null;
+    }
+
+    private static String getMarkerPath( String packageName )
+    {
+        return MARKER_DIRECTORY + "/" + packageName + ".installed";
+    }
+
+    private static String firstToken( String output )
+    {
+        final String trimmed = output.trim();
+        final int end = trimmed.indexOf( ' ' );
+        return end < 0 ? trimmed : trimmed.substring( 0, end );
+    }
+}
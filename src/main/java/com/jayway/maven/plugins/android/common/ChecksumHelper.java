@@ -0,0 +1,58 @@
+package com.jayway.maven.plugins.android.common;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Computes content checksums of files, remembering the result for as long as the file's size and modification
+ * time don't change so that the same dependency is hashed only once per JVM.
+ */
+public final class ChecksumHelper
+{
+    private static final ConcurrentMap<String, Checksum> CHECKSUMS = new ConcurrentHashMap<String, Checksum>();
+
+    private ChecksumHelper()
+    {
+    }
+
+    /**
+     * @param file  File to hash.
+     * @return The lower case hex SHA-1 of the file content.
+     * @throws IOException if the file cannot be read.
+     */
+    public static String sha1( File file ) throws IOException
+    {
+        final String key = file.getAbsolutePath();
+        final long length = file.length();
+        final long lastModified = file.lastModified();
+
+        final Checksum known = CHECKSUMS.get( key );
+        if ( known != null && known.length == length && known.lastModified == lastModified )
+        {
+            return known.value;
+        }
+
+        final String value = Files.hash( file, Hashing.sha1() ).toString();
+        CHECKSUMS.put( key, new Checksum( length, lastModified, value ) );
+        return value;
+    }
+
+    private static final class Checksum
+    {
+        private final long length;
+        private final long lastModified;
+        private final String value;
+
+        private Checksum( long length, long lastModified, String value )
+        {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.jayway.maven.plugins.android.common;
+
+import com.android.ddmlib.AdbCommandRejectedException;
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.SyncException;
+import com.android.ddmlib.SyncService;
+import com.android.ddmlib.TimeoutException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Pulls only the remote files that differ from the local copies of an earlier pull.
+ * <p>
+ * A local file is up to date if it has the size and modification time of the remote file. Pulled files get the
+ * modification time of the remote file, so that the next pull can skip them. Files are pulled over several sync
+ * connections at once.
+ * </p>
+ */
+public final class IncrementalPull
+{
+    private final IDevice device;
+    private final Log log;
+    private final int streams;
+    private final String deviceLogLinePrefix;
+
+    /**
+     * @param device    The device to pull from.
+     * @param log       The log.
+     * @param streams   The number of sync connections to pull over at once.
+     */
+    public IncrementalPull( IDevice device, Log log, int streams )
+    {
+        this.device = device;
+        this.log = log;
+        this.streams = Math.max( 1, streams );
+        this.deviceLogLinePrefix = DeviceHelper.getDeviceLogLinePrefix( device );
+    }
+
+    /**
+     * @param remote        The remote files, as listed by {@link RemoteFiles#list(IDevice, String)}.
+     * @param remoteRoot    The remote file or directory that was listed.
+     * @param target        The local file or directory to pull it to.
+     * @return The number of files pulled.
+     */
+    public int pull( final Map<String, RemoteFiles.Entry> remote, String remoteRoot, File target ) throws IOException
+    {
+        final Map<String, File> changed = selectChanged( remote, remoteRoot, target );
+        log.info( deviceLogLinePrefix + ( remote.size() - changed.size() ) + " of " + remote.size()
+                + " files are up to date, pulling " + changed.size() );
+        if ( changed.isEmpty() )
+        {
+            return 0;
+        }
+
+        final Queue<Map.Entry<String, File>> work = new ConcurrentLinkedQueue<Map.Entry<String, File>>(
+                changed.entrySet() );
+        final int workerCount = Math.min( streams, changed.size() );
+        final ExecutorService executor = Executors.newFixedThreadPool( workerCount );
+        try
+        {
+            final List<Future<Void>> workers = new ArrayList<Future<Void>>();
+            for ( int i = 0; i < workerCount; i++ )
+            {
+                workers.add( executor.submit( new Callable<Void>()
+                {
+                    public Void call() throws IOException
+                    {
+                        pullFromQueue( work, remote );
+                        return null;
+                    }
+                } ) );
+            }
+            for ( Future<Void> worker : workers )
+            {
+                worker.get();
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while pulling from " + DeviceHelper.getDescriptiveName( device ), e );
+        }
+        catch ( java.util.concurrent.ExecutionException e )
+        {
+            if ( e.getCause() instanceof IOException )
+            {
+                throw ( IOException ) e.getCause();
+            }
+            throw new IOException( "Pull from " + DeviceHelper.getDescriptiveName( device ) + " failed",
+                    e.getCause() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        return changed.size();
+    }
+
+    /**
+     * @return The remote files that are missing locally or differ from the local copy, with their local file.
+     */
+    static Map<String, File> selectChanged( Map<String, RemoteFiles.Entry> remote, String remoteRoot, File target )
+    {
+        final String root = remoteRoot.endsWith( "/" ) && remoteRoot.length() > 1
+                ? remoteRoot.substring( 0, remoteRoot.length() - 1 ) : remoteRoot;
+        final Map<String, File> changed = new TreeMap<String, File>();
+        for ( Map.Entry<String, RemoteFiles.Entry> entry : remote.entrySet() )
+        {
+            final String path = entry.getKey();
+            if ( ! path.equals( root ) && ! path.startsWith( root + "/" ) )
+            {
+                continue;
+            }
+            final String relative = path.substring( root.length() );
+            final File local = relative.isEmpty()
+                    ? target : new File( target, relative.substring( 1 ).replace( '/', File.separatorChar ) );
+            if ( ! local.isFile() || ! entry.getValue().matches( local.length(), local.lastModified() ) )
+            {
+                changed.put( path, local );
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Pulls files from the queue over a sync connection of its own until the queue is empty.
+     */
+    private void pullFromQueue( Queue<Map.Entry<String, File>> work, Map<String, RemoteFiles.Entry> remote )
+            throws IOException
+    {
+        SyncService syncService = null;
+        try
+        {
+            syncService = device.getSyncService();
+            Map.Entry<String, File> file;
+            while ( ( file = work.poll() ) != null )
+            {
+                if ( Thread.currentThread().isInterrupted() )
+                {
+                    throw new IOException( "Interrupted while pulling from "
+                            + DeviceHelper.getDescriptiveName( device ) );
+                }
+                pullFile( syncService, file.getKey(), file.getValue(), remote.get( file.getKey() ) );
+            }
+        }
+        catch ( TimeoutException e )
+        {
+            throw new IOException( "Timeout connecting to " + DeviceHelper.getDescriptiveName( device ), e );
+        }
+        catch ( AdbCommandRejectedException e )
+        {
+            throw new IOException( "adb rejected connection to " + DeviceHelper.getDescriptiveName( device ), e );
+        }
+        finally
+        {
+            if ( syncService != null )
+            {
+                syncService.close();
+            }
+        }
+    }
+
+    private void pullFile( SyncService syncService, String source, File destination, RemoteFiles.Entry entry )
+            throws IOException
+    {
+        final File parent = destination.getAbsoluteFile().getParentFile();
+        if ( ! parent.isDirectory() && ! parent.mkdirs() && ! parent.isDirectory() )
+        {
+            throw new IOException( "Cannot create directory " + parent );
+        }
+        try
+        {
+            syncService.pullFile( source, destination.getAbsolutePath(), new LogSyncProgressMonitor( log ) );
+        }
+        catch ( SyncException e )
+        {
+            throw new IOException( "Pull of " + source + " to " + destination + " failed.", e );
+        }
+        catch ( TimeoutException e )
+        {
+            throw new IOException( "Pull of " + source + " to " + destination + " failed.", e );
+        }
+        destination.setLastModified( entry.getModified() * 1000 );
+        log.info( deviceLogLinePrefix + "Pull of " + source + " to " + destination + " successful." );
+    }
+}
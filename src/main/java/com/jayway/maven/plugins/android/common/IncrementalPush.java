@@ -0,0 +1,346 @@
+package com.jayway.maven.plugins.android.common;
+
+import com.android.ddmlib.AdbCommandRejectedException;
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.SyncException;
+import com.android.ddmlib.SyncService;
+import com.android.ddmlib.TimeoutException;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes only the files that differ from those on the device.
+ * <p>
+ * A file is unchanged if the device has a file of the same size and modification time at its destination, the sync
+ * service and <code>tar</code> both keep the modification time of pushed files. Optionally, files of the same size
+ * but another modification time are hashed on the device and kept if their content is the same.
+ * </p>
+ * <p>
+ * Small files are bundled into tar archives that are extracted on the device, so that each bundle costs a single
+ * transfer. If the device cannot extract them, the files of a bundle are pushed one by one. Bundles and large files
+ * are pushed over several sync connections at once.
+ * </p>
+ */
+public final class IncrementalPush
+{
+    /**
+     * Files up to this size are bundled.
+     */
+    static final long SMALL_FILE = 64 * 1024;
+
+    /**
+     * The maximum size of the files in a bundle.
+     */
+    static final long BUNDLE_SIZE = 8 * 1024 * 1024;
+
+    private static final String TEMP_DIRECTORY = "/data/local/tmp/android-maven-plugin";
+    private static final String EXIT_STATUS = "exit status ";
+
+    private final IDevice device;
+    private final Log log;
+    private final int streams;
+    private final boolean compareChecksums;
+    private final String deviceLogLinePrefix;
+
+    /**
+     * @param device            The device to push to.
+     * @param log               The log.
+     * @param streams           The number of sync connections to push over at once.
+     * @param compareChecksums  Whether to hash files on the device that differ in modification time only.
+     */
+    public IncrementalPush( IDevice device, Log log, int streams, boolean compareChecksums )
+    {
+        this.device = device;
+        this.log = log;
+        this.streams = Math.max( 1, streams );
+        this.compareChecksums = compareChecksums;
+        this.deviceLogLinePrefix = DeviceHelper.getDeviceLogLinePrefix( device );
+    }
+
+    /**
+     * @param sourceDestinationMap  Local files to their destination on the device.
+     * @param remoteRoot            The remote file or directory all destinations are in.
+     * @return The number of files pushed.
+     */
+    public int push( Map<String, String> sourceDestinationMap, String remoteRoot ) throws IOException
+    {
+        final Map<String, RemoteFiles.Entry> remote = RemoteFiles.list( device, remoteRoot );
+        final List<String> sameSize = new ArrayList<String>();
+        final Map<String, String> changed = selectChanged( sourceDestinationMap, remote,
+                compareChecksums ? sameSize : null );
+        if ( ! sameSize.isEmpty() )
+        {
+            final List<String> destinations = new ArrayList<String>();
+            for ( String source : sameSize )
+            {
+                destinations.add( sourceDestinationMap.get( source ) );
+            }
+            final Map<String, String> remoteDigests = RemoteFiles.sha1( device, destinations );
+            for ( String source : sameSize )
+            {
+                final String destination = sourceDestinationMap.get( source );
+                if ( ! ChecksumHelper.sha1( new File( source ) ).equalsIgnoreCase( remoteDigests.get( destination ) ) )
+                {
+                    changed.put( source, destination );
+                }
+            }
+        }
+
+        log.info( deviceLogLinePrefix + ( sourceDestinationMap.size() - changed.size() ) + " of "
+                + sourceDestinationMap.size() + " files are up to date, pushing " + changed.size() );
+        if ( changed.isEmpty() )
+        {
+            return 0;
+        }
+        final List<Map<String, String>> bundles = plan( changed );
+        if ( ! bundles.isEmpty() )
+        {
+            RemoteFiles.shell( device, "mkdir -p " + TEMP_DIRECTORY );
+        }
+        pushAll( changed, bundles );
+        return changed.size();
+    }
+
+    /**
+     * @param sameSize  Receives files that differ in modification time only, which are then not selected, may be
+     *                  <code>null</code> to select them.
+     * @return The files that are missing on the device or differ from it.
+     */
+    static Map<String, String> selectChanged( Map<String, String> sourceDestinationMap,
+                                              Map<String, RemoteFiles.Entry> remote, List<String> sameSize )
+    {
+        final Map<String, String> changed = new TreeMap<String, String>();
+        for ( Map.Entry<String, String> entry : sourceDestinationMap.entrySet() )
+        {
+            final File source = new File( entry.getKey() );
+            final RemoteFiles.Entry remoteFile = remote.get( entry.getValue() );
+            if ( remoteFile != null && remoteFile.matches( source.length(), source.lastModified() ) )
+            {
+                continue;
+            }
+            if ( remoteFile != null && sameSize != null && remoteFile.getSize() == source.length() )
+            {
+                sameSize.add( entry.getKey() );
+            }
+            else
+            {
+                changed.put( entry.getKey(), entry.getValue() );
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Bundles small files.
+     *
+     * @return The bundles, each of several files. Files not in a bundle are pushed on their own.
+     */
+    static List<Map<String, String>> plan( Map<String, String> changed )
+    {
+        final List<Map<String, String>> bundles = new ArrayList<Map<String, String>>();
+        Map<String, String> bundle = new TreeMap<String, String>();
+        long bundleSize = 0;
+        for ( Map.Entry<String, String> entry : changed.entrySet() )
+        {
+            final long size = new File( entry.getKey() ).length();
+            if ( size > SMALL_FILE || ! entry.getValue().startsWith( "/" )
+                    || ! TarWriter.canStore( entry.getValue().substring( 1 ) ) )
+            {
+                continue;
+            }
+            if ( bundleSize + size > BUNDLE_SIZE )
+            {
+                bundles.add( bundle );
+                bundle = new TreeMap<String, String>();
+                bundleSize = 0;
+            }
+            bundle.put( entry.getKey(), entry.getValue() );
+            bundleSize += size;
+        }
+        bundles.add( bundle );
+
+        final List<Map<String, String>> result = new ArrayList<Map<String, String>>();
+        for ( Map<String, String> candidate : bundles )
+        {
+            if ( candidate.size() > 1 )
+            {
+                result.add( candidate );
+            }
+        }
+        return result;
+    }
+
+    private void pushAll( Map<String, String> changed, List<Map<String, String>> bundles ) throws IOException
+    {
+        final Queue<Map<String, String>> work = new ConcurrentLinkedQueue<Map<String, String>>();
+        final Map<String, String> single = new TreeMap<String, String>( changed );
+        for ( Map<String, String> bundle : bundles )
+        {
+            work.add( bundle );
+            single.keySet().removeAll( bundle.keySet() );
+        }
+        for ( Map.Entry<String, String> entry : single.entrySet() )
+        {
+            final Map<String, String> file = new TreeMap<String, String>();
+            file.put( entry.getKey(), entry.getValue() );
+            work.add( file );
+        }
+
+        final AtomicInteger bundleCounter = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool( Math.min( streams, work.size() ) );
+        try
+        {
+            final List<Future<Void>> workers = new ArrayList<Future<Void>>();
+            for ( int i = 0; i < Math.min( streams, work.size() ); i++ )
+            {
+                workers.add( executor.submit( new Callable<Void>()
+                {
+                    public Void call() throws IOException
+                    {
+                        pushFromQueue( work, bundleCounter );
+                        return null;
+                    }
+                } ) );
+            }
+            for ( Future<Void> worker : workers )
+            {
+                worker.get();
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while pushing to " + DeviceHelper.getDescriptiveName( device ), e );
+        }
+        catch ( java.util.concurrent.ExecutionException e )
+        {
+            if ( e.getCause() instanceof IOException )
+            {
+                throw ( IOException ) e.getCause();
+            }
+            throw new IOException( "Push to " + DeviceHelper.getDescriptiveName( device ) + " failed", e.getCause() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Pushes bundles and files from the queue over a sync connection of its own until the queue is empty.
+     */
+    private void pushFromQueue( Queue<Map<String, String>> work, AtomicInteger bundleCounter ) throws IOException
+    {
+        SyncService syncService = null;
+        try
+        {
+            syncService = device.getSyncService();
+            Map<String, String> files;
+            while ( ( files = work.poll() ) != null )
+            {
+                if ( Thread.currentThread().isInterrupted() )
+                {
+                    throw new IOException( "Interrupted while pushing to "
+                            + DeviceHelper.getDescriptiveName( device ) );
+                }
+                if ( files.size() == 1 || ! pushBundle( syncService, files, bundleCounter.incrementAndGet() ) )
+                {
+                    for ( Map.Entry<String, String> file : files.entrySet() )
+                    {
+                        pushFile( syncService, file.getKey(), file.getValue() );
+                    }
+                }
+            }
+        }
+        catch ( TimeoutException e )
+        {
+            throw new IOException( "Timeout connecting to " + DeviceHelper.getDescriptiveName( device ), e );
+        }
+        catch ( AdbCommandRejectedException e )
+        {
+            throw new IOException( "adb rejected connection to " + DeviceHelper.getDescriptiveName( device ), e );
+        }
+        finally
+        {
+            if ( syncService != null )
+            {
+                syncService.close();
+            }
+        }
+    }
+
+    /**
+     * @return true if the bundle was extracted on the device, false if its files need to be pushed one by one.
+     */
+    private boolean pushBundle( SyncService syncService, Map<String, String> files, int number ) throws IOException
+    {
+        final File archive = File.createTempFile( "push", ".tar" );
+        final String remoteArchive = TEMP_DIRECTORY + "/push-" + System.currentTimeMillis() + "-" + number + ".tar";
+        try
+        {
+            final OutputStream out = new BufferedOutputStream( new FileOutputStream( archive ) );
+            try
+            {
+                final TarWriter tar = new TarWriter( out );
+                for ( Map.Entry<String, String> file : files.entrySet() )
+                {
+                    tar.add( new File( file.getKey() ), file.getValue().substring( 1 ) );
+                }
+                tar.finish();
+            }
+            finally
+            {
+                IOUtils.closeQuietly( out );
+            }
+            pushFile( syncService, archive.getAbsolutePath(), remoteArchive );
+            final String output = RemoteFiles.shell( device, "tar -xf " + RemoteFiles.quote( remoteArchive )
+                    + " -C / 2>&1; echo " + EXIT_STATUS + "$?; rm -f " + RemoteFiles.quote( remoteArchive ) );
+            if ( output.contains( EXIT_STATUS + "0" ) )
+            {
+                log.info( deviceLogLinePrefix + "Pushed " + files.size() + " files as one archive" );
+                return true;
+            }
+            log.debug( deviceLogLinePrefix + "Could not extract archive on the device, pushing its files one by one: "
+                    + output.trim() );
+            return false;
+        }
+        finally
+        {
+            archive.delete();
+        }
+    }
+
+    private void pushFile( SyncService syncService, String source, String destination ) throws IOException
+    {
+        try
+        {
+            syncService.pushFile( source, destination, new LogSyncProgressMonitor( log ) );
+            log.info( deviceLogLinePrefix + "Push of " + source + " to " + destination + " successful." );
+        }
+        catch ( SyncException e )
+        {
+            throw new IOException( "Push of " + source + " to " + destination + " failed.", e );
+        }
+        catch ( TimeoutException e )
+        {
+            throw new IOException( "Push of " + source + " to " + destination + " failed.", e );
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.jayway.maven.plugins.android.common;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Describes everything a build step reads, so the step can be skipped when none of it changed since the last run.
+ * <p>
+ * Files are recorded by content checksum and folders by the checksums of all files below them, so touching a file
+ * without changing it, or switching back and forth between branches, does not cause a rerun. The fingerprint is
+ * stored as a plain text manifest next to the output of the step, which also makes it easy to see why a step ran.
+ * </p>
+ */
+public final class InputFingerprint
+{
+    private final StringBuilder manifest = new StringBuilder();
+
+    /**
+     * Records a value, e.g. an option or the command line.
+     *
+     * @param name  Name of the value.
+     * @param value The value, may be <code>null</code>.
+     * @return this fingerprint.
+     */
+    public InputFingerprint addValue( String name, String value )
+    {
+        manifest.append( name ).append( '=' ).append( value ).append( '\n' );
+        return this;
+    }
+
+    /**
+     * Records the content of a file or of all files below a folder. Missing files are recorded as such.
+     *
+     * @param file  File or folder.
+     * @return this fingerprint.
+     * @throws IOException if a file cannot be read.
+     */
+    public InputFingerprint addFile( File file ) throws IOException
+    {
+        if ( file.isDirectory() )
+        {
+            final File[] children = file.listFiles();
+            if ( children != null )
+            {
+                Arrays.sort( children );
+                for ( File child : children )
+                {
+                    addFile( child );
+                }
+            }
+        }
+        else if ( file.isFile() )
+        {
+            addValue( file.getAbsolutePath(), ChecksumHelper.sha1( file ) );
+        }
+        else
+        {
+            addValue( file.getAbsolutePath(), "missing" );
+        }
+        return this;
+    }
+
+    /**
+     * @param manifestFile  A manifest written by {@link #write(File)}.
+     * @return true if the manifest exists and describes the same inputs.
+     */
+    public boolean matches( File manifestFile )
+    {
+        if ( !manifestFile.isFile() )
+        {
+            return false;
+        }
+        try
+        {
+            return FileUtils.readFileToString( manifestFile, "UTF-8" ).equals( manifest.toString() );
+        }
+        catch ( IOException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Stores the fingerprint, to be called once the step completed successfully.
+     *
+     * @param manifestFile  Where to store the manifest.
+     * @throws IOException if the manifest cannot be written.
+     */
+    public void write( File manifestFile ) throws IOException
+    {
+        FileUtils.writeStringToFile( manifestFile, manifest.toString(), "UTF-8" );
+    }
+
+    @Override
+    public String toString()
+    {
+        return manifest.toString();
+    }
+}
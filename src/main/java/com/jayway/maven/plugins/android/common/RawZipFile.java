@@ -0,0 +1,363 @@
+package com.jayway.maven.plugins.android.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Reads a zip file from its central directory and gives access to the compressed bytes of each entry, so entries
+ * can be copied to another archive with {@link RawZipOutputStream} without inflating and deflating them again.
+ * <p>
+ * Zip64 archives are not supported. Instances are not thread safe.
+ * </p>
+ */
+public final class RawZipFile implements Closeable
+{
+    static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    static final int LOCAL_HEADER_SIZE = 30;
+    static final int CENTRAL_HEADER_SIZE = 46;
+    static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+
+    /**
+     * An entry as described by the central directory.
+     */
+    public static final class Entry
+    {
+        private final byte[] nameBytes;
+        private final String name;
+        private final int flags;
+        private final int method;
+        private final int dosTime;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final byte[] extra;
+        private final long localHeaderOffset;
+
+        Entry( byte[] nameBytes, int flags, int method, int dosTime, long crc, long compressedSize, long size,
+               byte[] extra, long localHeaderOffset )
+        {
+            this.nameBytes = nameBytes;
+            this.name = decodeName( nameBytes, flags );
+            this.flags = flags;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.extra = extra;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        byte[] getNameBytes()
+        {
+            return nameBytes;
+        }
+
+        int getFlags()
+        {
+            return flags;
+        }
+
+        /**
+         * @return {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}.
+         */
+        public int getMethod()
+        {
+            return method;
+        }
+
+        /**
+         * @return The MS-DOS time (low 16 bits) and date (high 16 bits) of the entry.
+         */
+        public int getDosTime()
+        {
+            return dosTime;
+        }
+
+        public long getCrc()
+        {
+            return crc;
+        }
+
+        public long getCompressedSize()
+        {
+            return compressedSize;
+        }
+
+        public long getSize()
+        {
+            return size;
+        }
+
+        /**
+         * @return The extra field of the central directory record.
+         */
+        public byte[] getExtra()
+        {
+            return extra;
+        }
+
+        public boolean isDirectory()
+        {
+            return name.endsWith( "/" );
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+    }
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final List<Entry> entries;
+
+    /**
+     * @param file  The zip file to read.
+     * @throws IOException if the file cannot be read or is not a supported zip file.
+     */
+    public RawZipFile( File file ) throws IOException
+    {
+        this.file = file;
+        this.raf = new RandomAccessFile( file, "r" );
+        try
+        {
+            this.entries = Collections.unmodifiableList( readCentralDirectory() );
+        }
+        catch ( IOException e )
+        {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The entries in central directory order.
+     */
+    public List<Entry> getEntries()
+    {
+        return entries;
+    }
+
+    /**
+     * @return A stream over the compressed bytes of the entry.
+     */
+    public InputStream openRaw( Entry entry ) throws IOException
+    {
+        return new RangeInputStream( getDataOffset( entry ), entry.compressedSize );
+    }
+
+    /**
+     * @return The position of the entry data in the file, which depends on the local header.
+     */
+    public long getDataOffset( Entry entry ) throws IOException
+    {
+        raf.seek( entry.localHeaderOffset );
+        if ( readInt() != LOCAL_HEADER_SIGNATURE )
+        {
+            throw new IOException( "Invalid local header for " + entry.name + " in " + file );
+        }
+        raf.seek( entry.localHeaderOffset + 26 );
+        final int nameLength = readShort();
+        final int extraLength = readShort();
+        return entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    /**
+     * @return A stream over the uncompressed content of the entry.
+     */
+    public InputStream openInflated( Entry entry ) throws IOException
+    {
+        final InputStream raw = openRaw( entry );
+        if ( entry.method == ZipEntry.STORED )
+        {
+            return raw;
+        }
+        final Inflater inflater = new Inflater( true );
+        // Inflater needs an extra dummy byte at the end of nowrap input, like ZipFile provides
+        final InputStream input = new SequenceInputStream( raw, new ByteArrayInputStream( new byte[ 1 ] ) );
+        return new InflaterInputStream( input, inflater )
+        {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException
+            {
+                if ( !closed )
+                {
+                    closed = true;
+                    inflater.end();
+                    super.close();
+                }
+            }
+        };
+    }
+
+    public void close() throws IOException
+    {
+        raf.close();
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException
+    {
+        final long length = raf.length();
+        final int tailLength = ( int ) Math.min( length, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE );
+        final byte[] tail = new byte[ tailLength ];
+        raf.seek( length - tailLength );
+        raf.readFully( tail );
+
+        int position = tailLength - END_OF_CENTRAL_DIRECTORY_SIZE;
+        while ( position >= 0 && getInt( tail, position ) != END_OF_CENTRAL_DIRECTORY_SIGNATURE )
+        {
+            position--;
+        }
+        if ( position < 0 )
+        {
+            throw new IOException( "No zip end of central directory found in " + file );
+        }
+
+        final int count = getShort( tail, position + 10 );
+        final long centralDirectorySize = getInt( tail, position + 12 ) & 0xffffffffL;
+        final long centralDirectoryOffset = getInt( tail, position + 16 ) & 0xffffffffL;
+        if ( count == 0xffff || centralDirectoryOffset == 0xffffffffL )
+        {
+            throw new IOException( "Zip64 archives are not supported: " + file );
+        }
+
+        final byte[] centralDirectory = new byte[ ( int ) centralDirectorySize ];
+        raf.seek( centralDirectoryOffset );
+        raf.readFully( centralDirectory );
+
+        final List<Entry> result = new ArrayList<Entry>( count );
+        int offset = 0;
+        for ( int i = 0; i < count; i++ )
+        {
+            if ( getInt( centralDirectory, offset ) != CENTRAL_HEADER_SIGNATURE )
+            {
+                throw new IOException( "Invalid central directory in " + file );
+            }
+            final int flags = getShort( centralDirectory, offset + 8 );
+            final int method = getShort( centralDirectory, offset + 10 );
+            final int dosTime = getInt( centralDirectory, offset + 12 );
+            final long crc = getInt( centralDirectory, offset + 16 ) & 0xffffffffL;
+            final long compressedSize = getInt( centralDirectory, offset + 20 ) & 0xffffffffL;
+            final long size = getInt( centralDirectory, offset + 24 ) & 0xffffffffL;
+            final int nameLength = getShort( centralDirectory, offset + 28 );
+            final int extraLength = getShort( centralDirectory, offset + 30 );
+            final int commentLength = getShort( centralDirectory, offset + 32 );
+            final long localHeaderOffset = getInt( centralDirectory, offset + 42 ) & 0xffffffffL;
+
+            final byte[] nameBytes = new byte[ nameLength ];
+            System.arraycopy( centralDirectory, offset + CENTRAL_HEADER_SIZE, nameBytes, 0, nameLength );
+            final byte[] extra = new byte[ extraLength ];
+            System.arraycopy( centralDirectory, offset + CENTRAL_HEADER_SIZE + nameLength, extra, 0, extraLength );
+
+            result.add( new Entry( nameBytes, flags, method, dosTime, crc, compressedSize, size, extra,
+                    localHeaderOffset ) );
+            offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return result;
+    }
+
+    private int readInt() throws IOException
+    {
+        final byte[] buffer = new byte[ 4 ];
+        raf.readFully( buffer );
+        return getInt( buffer, 0 );
+    }
+
+    private int readShort() throws IOException
+    {
+        final byte[] buffer = new byte[ 2 ];
+        raf.readFully( buffer );
+        return getShort( buffer, 0 );
+    }
+
+    static int getShort( byte[] buffer, int offset )
+    {
+        return ( buffer[ offset ] & 0xff ) | ( ( buffer[ offset + 1 ] & 0xff ) << 8 );
+    }
+
+    static int getInt( byte[] buffer, int offset )
+    {
+        return getShort( buffer, offset ) | ( getShort( buffer, offset + 2 ) << 16 );
+    }
+
+    private static String decodeName( byte[] nameBytes, int flags )
+    {
+        try
+        {
+            // Bit 11 marks UTF-8 names, anything else is read as ISO-8859-1 to keep the bytes intact
+            return new String( nameBytes, ( flags & 0x800 ) != 0 ? "UTF-8" : "ISO-8859-1" );
+        }
+        catch ( java.io.UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * Reads a range of the underlying file.
+     */
+    private final class RangeInputStream extends InputStream
+    {
+        private long position;
+        private long remaining;
+
+        private RangeInputStream( long position, long length )
+        {
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            final byte[] single = new byte[ 1 ];
+            return read( single, 0, 1 ) == -1 ? -1 : single[ 0 ] & 0xff;
+        }
+
+        @Override
+        public int read( byte[] buffer, int offset, int length ) throws IOException
+        {
+            if ( remaining <= 0 )
+            {
+                return -1;
+            }
+            raf.seek( position );
+            final int read = raf.read( buffer, offset, ( int ) Math.min( length, remaining ) );
+            if ( read > 0 )
+            {
+                position += read;
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public int available()
+        {
+            return ( int ) Math.min( Integer.MAX_VALUE, remaining );
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.jayway.maven.plugins.android.common;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a zip file from already compressed entry data, e.g. the raw bytes of an entry of a {@link RawZipFile} or
+ * data deflated elsewhere. Nothing is compressed here, so copying an entry costs no more than copying its bytes.
+ * <p>
+ * Entries can optionally be aligned: the local header is then padded (with zeros in its extra field, like
+ * <code>zipalign</code> does) so that the entry data starts at a multiple of the alignment.
+ * </p>
+ */
+public final class RawZipOutputStream implements Closeable
+{
+    private static final int VERSION_STORED = 10;
+    private static final int VERSION_DEFLATED = 20;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x8;
+    private static final int FLAG_UTF8 = 0x800;
+    private static final byte[] NO_BYTES = new byte[ 0 ];
+
+    private final OutputStream out;
+    private final List<CentralRecord> records = new ArrayList<CentralRecord>();
+    private final Set<String> names = new HashSet<String>();
+    private final byte[] buffer = new byte[ 64 * 1024 ];
+    private long offset;
+
+    /**
+     * @param out   Stream receiving the archive, closed by {@link #close()}.
+     */
+    public RawZipOutputStream( OutputStream out )
+    {
+        this.out = new BufferedOutputStream( out, 64 * 1024 );
+    }
+
+    /**
+     * @return The number of bytes written so far.
+     */
+    public long getOffset()
+    {
+        return offset;
+    }
+
+    /**
+     * @return true if an entry with the name has been written.
+     */
+    public boolean hasEntry( String name )
+    {
+        return names.contains( name );
+    }
+
+    /**
+     * Copies an entry of another archive without recompressing it.
+     *
+     * @param source    The archive containing the entry.
+     * @param entry     The entry to copy.
+     * @param alignment The alignment of the entry data in bytes, 0 or 1 for none.
+     */
+    public void copyEntry( RawZipFile source, RawZipFile.Entry entry, int alignment ) throws IOException
+    {
+        final InputStream raw = source.openRaw( entry );
+        try
+        {
+            writeEntry( entry.getName(), entry.getNameBytes(), entry.getFlags() & ~FLAG_DATA_DESCRIPTOR,
+                    entry.getMethod(), entry.getDosTime(), entry.getCrc(), entry.getCompressedSize(),
+                    entry.getSize(), raw, alignment );
+        }
+        finally
+        {
+            raw.close();
+        }
+    }
+
+    /**
+     * Writes an entry from data compressed elsewhere.
+     *
+     * @param name              Entry name.
+     * @param method            {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}.
+     * @param dosTime           MS-DOS time and date, see {@link RawZipFile.Entry#getDosTime()}.
+     * @param crc               CRC-32 of the uncompressed data.
+     * @param compressedSize    Length of <code>data</code>.
+     * @param size              Length of the uncompressed data.
+     * @param data              The (raw deflated or stored) entry data.
+     * @param alignment         The alignment of the entry data in bytes, 0 or 1 for none.
+     */
+    public void writeEntry( String name, int method, int dosTime, long crc, long compressedSize, long size,
+                            InputStream data, int alignment ) throws IOException
+    {
+        final byte[] nameBytes = encodeName( name );
+        final int flags = nameBytes.length == name.length() ? 0 : FLAG_UTF8;
+        writeEntry( name, nameBytes, flags, method, dosTime, crc, compressedSize, size, data, alignment );
+    }
+
+    private void writeEntry( String name, byte[] nameBytes, int flags, int method, int dosTime, long crc,
+                             long compressedSize, long size, InputStream data, int alignment ) throws IOException
+    {
+        if ( !names.add( name ) )
+        {
+            throw new ZipException( "duplicate entry: " + name );
+        }
+        if ( method != ZipEntry.STORED && method != ZipEntry.DEFLATED )
+        {
+            throw new ZipException( "Unsupported compression method " + method + " for " + name );
+        }
+        if ( offset > 0xffffffffL || compressedSize > 0xffffffffL || size > 0xffffffffL )
+        {
+            throw new ZipException( "Zip64 archives are not supported, entry " + name );
+        }
+
+        byte[] extra = NO_BYTES;
+        if ( alignment > 1 )
+        {
+            final long dataStart = offset + RawZipFile.LOCAL_HEADER_SIZE + nameBytes.length;
+            final int padding = ( int ) ( ( alignment - dataStart % alignment ) % alignment );
+            extra = new byte[ padding ];
+        }
+
+        final CentralRecord record = new CentralRecord( nameBytes, flags, method, dosTime, crc, compressedSize,
+                size, offset );
+        records.add( record );
+
+        writeInt( RawZipFile.LOCAL_HEADER_SIGNATURE );
+        writeShort( record.versionNeeded() );
+        writeShort( flags );
+        writeShort( method );
+        writeInt( dosTime );
+        writeInt( ( int ) crc );
+        writeInt( ( int ) compressedSize );
+        writeInt( ( int ) size );
+        writeShort( nameBytes.length );
+        writeShort( extra.length );
+        write( nameBytes, nameBytes.length );
+        write( extra, extra.length );
+
+        long remaining = compressedSize;
+        while ( remaining > 0 )
+        {
+            final int read = data.read( buffer, 0, ( int ) Math.min( buffer.length, remaining ) );
+            if ( read < 0 )
+            {
+                throw new ZipException( "Unexpected end of data for " + name );
+            }
+            write( buffer, read );
+            remaining -= read;
+        }
+    }
+
+    /**
+     * Writes the central directory and closes the underlying stream.
+     */
+    public void close() throws IOException
+    {
+        try
+        {
+            final long centralDirectoryOffset = offset;
+            for ( CentralRecord record : records )
+            {
+                writeInt( RawZipFile.CENTRAL_HEADER_SIGNATURE );
+                writeShort( VERSION_DEFLATED );
+                writeShort( record.versionNeeded() );
+                writeShort( record.flags );
+                writeShort( record.method );
+                writeInt( record.dosTime );
+                writeInt( ( int ) record.crc );
+                writeInt( ( int ) record.compressedSize );
+                writeInt( ( int ) record.size );
+                writeShort( record.nameBytes.length );
+                writeShort( 0 );
+                writeShort( 0 );
+                writeShort( 0 );
+                writeShort( 0 );
+                writeInt( 0 );
+                writeInt( ( int ) record.localHeaderOffset );
+                write( record.nameBytes, record.nameBytes.length );
+            }
+            final long centralDirectorySize = offset - centralDirectoryOffset;
+            if ( records.size() > 0xffff || centralDirectoryOffset > 0xffffffffL )
+            {
+                throw new ZipException( "Zip64 archives are not supported" );
+            }
+
+            writeInt( RawZipFile.END_OF_CENTRAL_DIRECTORY_SIGNATURE );
+            writeShort( 0 );
+            writeShort( 0 );
+            writeShort( records.size() );
+            writeShort( records.size() );
+            writeInt( ( int ) centralDirectorySize );
+            writeInt( ( int ) centralDirectoryOffset );
+            writeShort( 0 );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private void writeShort( int value ) throws IOException
+    {
+        out.write( value & 0xff );
+        out.write( ( value >>> 8 ) & 0xff );
+        offset += 2;
+    }
+
+    private void writeInt( int value ) throws IOException
+    {
+        writeShort( value & 0xffff );
+        writeShort( ( value >>> 16 ) & 0xffff );
+    }
+
+    private void write( byte[] bytes, int length ) throws IOException
+    {
+        out.write( bytes, 0, length );
+        offset += length;
+    }
+
+    /**
+     * @param time  Java time in milliseconds.
+     * @return The MS-DOS time and date in the local time zone, as stored in zip headers.
+     */
+    public static int toDosTime( long time )
+    {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis( time );
+        final int year = calendar.get( Calendar.YEAR );
+        if ( year < 1980 )
+        {
+            return ( 1 << 21 ) | ( 1 << 16 );
+        }
+        return ( year - 1980 ) << 25
+                | ( calendar.get( Calendar.MONTH ) + 1 ) << 21
+                | calendar.get( Calendar.DAY_OF_MONTH ) << 16
+                | calendar.get( Calendar.HOUR_OF_DAY ) << 11
+                | calendar.get( Calendar.MINUTE ) << 5
+                | calendar.get( Calendar.SECOND ) >> 1;
+    }
+
+    private static byte[] encodeName( String name )
+    {
+        try
+        {
+            return name.getBytes( "UTF-8" );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private static final class CentralRecord
+    {
+        private final byte[] nameBytes;
+        private final int flags;
+        private final int method;
+        private final int dosTime;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        private CentralRecord( byte[] nameBytes, int flags, int method, int dosTime, long crc, long compressedSize,
+                               long size, long localHeaderOffset )
+        {
+            this.nameBytes = nameBytes;
+            this.flags = flags;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        private int versionNeeded()
+        {
+            return method == ZipEntry.STORED ? VERSION_STORED : VERSION_DEFLATED;
+        }
+    }
+}
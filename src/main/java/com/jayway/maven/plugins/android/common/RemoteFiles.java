@@ -0,0 +1,192 @@
+package com.jayway.maven.plugins.android.common;
+
+import com.android.ddmlib.AdbCommandRejectedException;
+import com.android.ddmlib.CollectingOutputReceiver;
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.ShellCommandUnresponsiveException;
+import com.android.ddmlib.TimeoutException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Looks at files on a device with shell commands, so that files can be compared with local ones without transferring
+ * them.
+ */
+public final class RemoteFiles
+{
+    private static final Pattern STAT_LINE = Pattern.compile( "(\\d+) (\\d+) (/.*)" );
+    private static final Pattern SHA1_LINE = Pattern.compile( "([0-9a-fA-F]{40})\\s+(/.*)" );
+
+    /**
+     * The number of paths hashed by a single shell command.
+     */
+    private static final int SHA1_BATCH = 50;
+
+    private RemoteFiles()
+    {
+    }
+
+    /**
+     * The size and modification time of a remote file.
+     */
+    public static final class Entry
+    {
+        private final long size;
+        private final long modified;
+
+        public Entry( long size, long modified )
+        {
+            this.size = size;
+            this.modified = modified;
+        }
+
+        public long getSize()
+        {
+            return size;
+        }
+
+        /**
+         * @return The modification time in seconds since the epoch.
+         */
+        public long getModified()
+        {
+            return modified;
+        }
+
+        /**
+         * @return true if the local file has the same size and, to the second, the same modification time.
+         */
+        public boolean matches( long localSize, long localModifiedMillis )
+        {
+            return size == localSize && modified == localModifiedMillis / 1000;
+        }
+    }
+
+    /**
+     * Lists the regular files below a remote path, or the path itself if it is a file, in a single shell command.
+     * A path that is a symbolic link, like <code>/sdcard</code>, is followed.
+     * <p>
+     * Unlike the <code>ls -l</code> listing of {@link com.android.ddmlib.FileListingService}, which has minutes,
+     * <code>stat</code> gives the modification time to the second, like the sync service sets it on push. Devices
+     * without <code>find</code> or <code>stat</code> give an empty listing.
+     * </p>
+     *
+     * @return Remote paths with their size and modification time.
+     */
+    public static Map<String, Entry> list( IDevice device, String root ) throws IOException
+    {
+        return parseListing( shell( device, "find -H " + quote( root ) + " -type f -exec stat -c '%s %Y %n' {} + "
+                + "2>/dev/null" ) );
+    }
+
+    static Map<String, Entry> parseListing( String output )
+    {
+        final Map<String, Entry> entries = new HashMap<String, Entry>();
+        for ( String line : output.split( "\n" ) )
+        {
+            final Matcher matcher = STAT_LINE.matcher( stripCarriageReturn( line ) );
+            if ( matcher.matches() )
+            {
+                entries.put( matcher.group( 3 ),
+                        new Entry( Long.parseLong( matcher.group( 1 ) ), Long.parseLong( matcher.group( 2 ) ) ) );
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Hashes remote files with <code>sha1sum</code>, several at a time.
+     *
+     * @return The lower case sha1 of each remote path that could be hashed.
+     */
+    public static Map<String, String> sha1( IDevice device, Collection<String> paths ) throws IOException
+    {
+        final Map<String, String> digests = new HashMap<String, String>();
+        final List<String> batch = new ArrayList<String>( SHA1_BATCH );
+        for ( String path : paths )
+        {
+            batch.add( path );
+            if ( batch.size() == SHA1_BATCH )
+            {
+                digests.putAll( parseSha1( shell( device, sha1Command( batch ) ) ) );
+                batch.clear();
+            }
+        }
+        if ( ! batch.isEmpty() )
+        {
+            digests.putAll( parseSha1( shell( device, sha1Command( batch ) ) ) );
+        }
+        return digests;
+    }
+
+    private static String sha1Command( List<String> paths )
+    {
+        final StringBuilder command = new StringBuilder( "sha1sum" );
+        for ( String path : paths )
+        {
+            command.append( ' ' ).append( quote( path ) );
+        }
+        return command.append( " 2>/dev/null" ).toString();
+    }
+
+    static Map<String, String> parseSha1( String output )
+    {
+        final Map<String, String> digests = new HashMap<String, String>();
+        for ( String line : output.split( "\n" ) )
+        {
+            final Matcher matcher = SHA1_LINE.matcher( stripCarriageReturn( line ) );
+            if ( matcher.matches() )
+            {
+                digests.put( matcher.group( 2 ), matcher.group( 1 ).toLowerCase() );
+            }
+        }
+        return digests;
+    }
+
+    /**
+     * Runs a shell command on the device.
+     *
+     * @return The output of the command.
+     */
+    public static String shell( IDevice device, String command ) throws IOException
+    {
+        final CollectingOutputReceiver output = new CollectingOutputReceiver();
+        try
+        {
+            device.executeShellCommand( command, output );
+        }
+        catch ( TimeoutException e )
+        {
+            throw new IOException( "Timeout running " + command, e );
+        }
+        catch ( AdbCommandRejectedException e )
+        {
+            throw new IOException( "adb rejected " + command, e );
+        }
+        catch ( ShellCommandUnresponsiveException e )
+        {
+            throw new IOException( "Unresponsive " + command, e );
+        }
+        return output.getOutput();
+    }
+
+    /**
+     * @return The argument quoted for the shell of the device.
+     */
+    public static String quote( String argument )
+    {
+        return "'" + argument.replace( "'", "'\\''" ) + "'";
+    }
+
+    private static String stripCarriageReturn( String line )
+    {
+        return line.endsWith( "\r" ) ? line.substring( 0, line.length() - 1 ) : line;
+    }
+}
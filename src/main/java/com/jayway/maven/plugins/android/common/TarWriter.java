@@ -0,0 +1,143 @@
+package com.jayway.maven.plugins.android.common;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Writes plain ustar archives of regular files, as extracted by the <code>tar</code> of the device.
+ */
+final class TarWriter
+{
+    private static final int BLOCK = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final int PREFIX_LENGTH = 155;
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    private final OutputStream out;
+
+    TarWriter( OutputStream out )
+    {
+        this.out = out;
+    }
+
+    /**
+     * @return true if the path fits into a ustar header.
+     */
+    static boolean canStore( String path )
+    {
+        return splitName( path.getBytes( UTF_8 ) ) >= 0;
+    }
+
+    /**
+     * Adds a file with its size and modification time.
+     *
+     * @param file  The file to add.
+     * @param path  The path in the archive, see {@link #canStore(String)}.
+     */
+    void add( File file, String path ) throws IOException
+    {
+        final long size = file.length();
+        out.write( header( path, size, file.lastModified() / 1000 ) );
+        FileUtils.copyFile( file, out );
+        final int padding = (int) ( ( BLOCK - size % BLOCK ) % BLOCK );
+        out.write( new byte[ padding ] );
+    }
+
+    /**
+     * Writes the end of the archive, the stream is left open.
+     */
+    void finish() throws IOException
+    {
+        out.write( new byte[ 2 * BLOCK ] );
+        out.flush();
+    }
+
+    static byte[] header( String path, long size, long modified ) throws IOException
+    {
+        final byte[] name = path.getBytes( UTF_8 );
+        final int split = splitName( name );
+        if ( split < 0 )
+        {
+            throw new IOException( "Path too long for a tar archive: " + path );
+        }
+        final byte[] header = new byte[ BLOCK ];
+        if ( split == 0 )
+        {
+            System.arraycopy( name, 0, header, 0, name.length );
+        }
+        else
+        {
+            System.arraycopy( name, split + 1, header, 0, name.length - split - 1 );
+            System.arraycopy( name, 0, header, 345, split );
+        }
+        octal( header, 100, 8, 0644 );
+        octal( header, 108, 8, 0 );
+        octal( header, 116, 8, 0 );
+        octal( header, 124, 12, size );
+        octal( header, 136, 12, modified );
+        header[ 156 ] = '0';
+        ascii( header, 257, "ustar" );
+        ascii( header, 263, "00" );
+        for ( int i = 148; i < 156; i++ )
+        {
+            header[ i ] = ' ';
+        }
+        long checksum = 0;
+        for ( byte b : header )
+        {
+            checksum += b & 0xff;
+        }
+        octal( header, 148, 7, checksum );
+        return header;
+    }
+
+    /**
+     * @return 0 if the name fits as it is, the position of the slash that splits it into prefix and name, or -1 if
+     *         it does not fit.
+     */
+    private static int splitName( byte[] name )
+    {
+        if ( name.length <= NAME_LENGTH )
+        {
+            return 0;
+        }
+        for ( int i = Math.min( PREFIX_LENGTH, name.length - 1 ); i > 0; i-- )
+        {
+            if ( name[ i ] == '/' )
+            {
+                return name.length - i - 1 <= NAME_LENGTH ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the value as zero padded octal number, followed by a NUL.
+     */
+    private static void octal( byte[] header, int offset, int length, long value ) throws IOException
+    {
+        final String digits = Long.toOctalString( value );
+        if ( digits.length() > length - 1 )
+        {
+            throw new IOException( "Value too large for a tar header: " + value );
+        }
+        for ( int i = 0; i < length - 1 - digits.length(); i++ )
+        {
+            header[ offset + i ] = '0';
+        }
+        ascii( header, offset + length - 1 - digits.length(), digits );
+        header[ offset + length - 1 ] = 0;
+    }
+
+    private static void ascii( byte[] header, int offset, String value )
+    {
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            header[ offset + i ] = (byte) value.charAt( i );
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.jayway.maven.plugins.android.common;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.plexus.logging.Logger;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * User level cache of extracted AAR and APKLIB dependencies, keyed by the checksum of the library file.
+ * <p>
+ * Each library is extracted once into a private temporary folder that is then renamed into place, so concurrent
+ * builds either see a complete entry or none at all. Modules copy the extracted tree into their own
+ * <code>unpacked-libs</code> folder (no inflating) and remember which checksum they copied, so unchanged libraries
+ * are not touched at all on the next build.
+ * </p>
+ * <p>
+ * The cache is kept below a configurable size by evicting the least recently used entries. Entries used within the
+ * last {@link #EVICTION_GRACE_MS} are never evicted so that concurrent builds don't lose an entry they are copying.
+ * </p>
+ */
+public final class UnpackedLibCache
+{
+    /**
+     * Extracts a library into a folder.
+     */
+    public interface Extractor
+    {
+        void extract( File archive, File targetFolder ) throws MojoExecutionException;
+    }
+
+    /**
+     * Name of the file in a module's unpacked lib folder recording the checksum of the library it was copied from.
+     */
+    static final String MARKER_FILE_NAME = ".unpacked-from";
+
+    private static final String LAST_USED_SUFFIX = ".lastused";
+    private static final String TEMP_PREFIX = "tmp-";
+    private static final long EVICTION_GRACE_MS = TimeUnit.HOURS.toMillis( 1 );
+
+    private final File cacheDirectory;
+    private final long maxSizeBytes;
+    private final Logger log;
+
+    /**
+     * @param cacheDirectory    Folder holding the cache entries.
+     * @param maxSizeBytes      Size above which least recently used entries are evicted.
+     * @param log               Logger.
+     */
+    public UnpackedLibCache( File cacheDirectory, long maxSizeBytes, Logger log )
+    {
+        this.cacheDirectory = cacheDirectory;
+        this.maxSizeBytes = maxSizeBytes;
+        this.log = log;
+    }
+
+    /**
+     * Makes sure that <code>targetFolder</code> contains the extracted <code>archive</code>, extracting it into the
+     * cache first if no other module or build has done so yet.
+     *
+     * @param archive       AAR or APKLIB file.
+     * @param targetFolder  The module's unpacked lib folder for the archive.
+     * @param extractor     Used to populate the cache entry.
+     * @throws MojoExecutionException if the archive could not be extracted or copied.
+     */
+    public void unpack( File archive, File targetFolder, Extractor extractor ) throws MojoExecutionException
+    {
+        final String checksum;
+        try
+        {
+            checksum = ChecksumHelper.sha1( archive );
+            final File marker = new File( targetFolder, MARKER_FILE_NAME );
+            if ( marker.exists() && checksum.equals( FileUtils.readFileToString( marker ).trim() ) )
+            {
+                log.debug( "Unpacked " + archive.getName() + " in " + targetFolder + " is up to date" );
+                touch( checksum );
+                return;
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not compute checksum of " + archive, e );
+        }
+
+        final File entry = getOrCreateEntry( archive, checksum, extractor );
+        try
+        {
+            log.debug( "Copying cached " + archive.getName() + " from " + entry + " to " + targetFolder );
+            targetFolder.mkdirs();
+            FileUtils.copyDirectory( entry, targetFolder );
+            FileUtils.writeStringToFile( new File( targetFolder, MARKER_FILE_NAME ), checksum );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not copy cached " + archive.getName() + " to " + targetFolder, e );
+        }
+        evict();
+    }
+
+    private File getOrCreateEntry( File archive, String checksum, Extractor extractor )
+            throws MojoExecutionException
+    {
+        final File entry = new File( cacheDirectory, checksum );
+        if ( entry.isDirectory() )
+        {
+            log.debug( "Unpacked lib cache hit for " + archive.getName() + " : " + entry );
+            touch( checksum );
+            return entry;
+        }
+
+        log.debug( "Unpacked lib cache miss for " + archive.getName() + ", extracting to " + entry );
+        final File tempFolder = new File( cacheDirectory, TEMP_PREFIX + UUID.randomUUID() );
+        tempFolder.mkdirs();
+        try
+        {
+            extractor.extract( archive, tempFolder );
+            final long size = FileUtils.sizeOfDirectory( tempFolder );
+            if ( !tempFolder.renameTo( entry ) && !entry.isDirectory() )
+            {
+                throw new MojoExecutionException( "Could not move " + tempFolder + " to " + entry );
+            }
+            // else either our rename succeeded or a concurrent build won the race, both are fine.
+            FileUtils.writeStringToFile( lastUsedFile( checksum ), String.valueOf( size ) );
+            return entry;
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not add " + archive.getName() + " to " + cacheDirectory, e );
+        }
+        finally
+        {
+            FileUtils.deleteQuietly( tempFolder );
+        }
+    }
+
+    private void touch( String checksum )
+    {
+        final File lastUsed = lastUsedFile( checksum );
+        if ( lastUsed.exists() && !lastUsed.setLastModified( System.currentTimeMillis() ) )
+        {
+            log.debug( "Could not update last use of " + lastUsed );
+        }
+    }
+
+    private File lastUsedFile( String checksum )
+    {
+        return new File( cacheDirectory, checksum + LAST_USED_SUFFIX );
+    }
+
+    /**
+     * Removes least recently used entries until the cache is below its maximum size.
+     */
+    void evict()
+    {
+        final File[] lastUsedFiles = cacheDirectory.listFiles( new FileFilter()
+        {
+            @Override
+            public boolean accept( File file )
+            {
+                return file.getName().endsWith( LAST_USED_SUFFIX );
+            }
+        } );
+        if ( lastUsedFiles == null )
+        {
+            return;
+        }
+
+        long totalSize = 0;
+        for ( File lastUsed : lastUsedFiles )
+        {
+            totalSize += readSize( lastUsed );
+        }
+        if ( totalSize <= maxSizeBytes )
+        {
+            return;
+        }
+
+        final List<File> candidates = new ArrayList<File>( Arrays.asList( lastUsedFiles ) );
+        Collections.sort( candidates, new Comparator<File>()
+        {
+            @Override
+            public int compare( File first, File second )
+            {
+                return Long.valueOf( first.lastModified() ).compareTo( second.lastModified() );
+            }
+        } );
+
+        final long evictBefore = System.currentTimeMillis() - EVICTION_GRACE_MS;
+        for ( File lastUsed : candidates )
+        {
+            if ( totalSize <= maxSizeBytes || lastUsed.lastModified() > evictBefore )
+            {
+                break;
+            }
+            final String name = lastUsed.getName();
+            final String checksum = name.substring( 0, name.length() - LAST_USED_SUFFIX.length() );
+            final File entry = new File( cacheDirectory, checksum );
+            final File trash = new File( cacheDirectory, TEMP_PREFIX + UUID.randomUUID() );
+            // Rename first so that other builds never see a partially deleted entry.
+            if ( entry.renameTo( trash ) )
+            {
+                log.debug( "Evicting " + entry + " from unpacked lib cache" );
+                FileUtils.deleteQuietly( trash );
+            }
+            else if ( entry.exists() )
+            {
+                // Keep the marker so that the entry still counts towards the size and a later build retries.
+                log.warn( "Could not evict " + entry + " from unpacked lib cache, it may be in use" );
+                continue;
+            }
+            totalSize -= readSize( lastUsed );
+            FileUtils.deleteQuietly( lastUsed );
+        }
+    }
+
+    private long readSize( File lastUsed )
+    {
+        try
+        {
+            return Long.parseLong( FileUtils.readFileToString( lastUsed ).trim() );
+        }
+        catch ( IOException e )
+        {
+            return 0;
+        }
+        catch ( NumberFormatException e )
+        {
+            return 0;
+        }
+    }
+}
@@ -42,6 +42,8 @@ public final class UnpackedLibHelper
     // ${project.build.directory}/unpacked-libs
     private final File unpackedLibsDirectory;
 
+    private UnpackedLibCache cache;
+
     public UnpackedLibHelper( ArtifactResolverHelper artifactResolverHelper, MavenProject project, Logger log,
                               File unpackedLibsFolder )
     {
@@ -63,6 +65,15 @@ public final class UnpackedLibHelper
         this.log = log;
     }
 
+    /**
+     * @param cache Shared cache to take extracted libraries from, or <code>null</code> to always extract them
+     *              into the unpacked libs folder.
+     */
+    public void setCache( UnpackedLibCache cache )
+    {
+        this.cache = cache;
+    }
+
     public void extractApklib( Artifact apklibArtifact ) throws MojoExecutionException
     {
         final File apkLibFile = artifactResolverHelper.resolveArtifactToFile( apklibArtifact );
@@ -73,27 +84,23 @@ public final class UnpackedLibHelper
             return;
         }
 
-        final UnArchiver unArchiver = new ZipUnArchiver( apkLibFile )
+        final File apklibDirectory = getUnpackedLibFolder( apklibArtifact );
+        final UnpackedLibCache.Extractor extractor = new UnpackedLibCache.Extractor()
         {
             @Override
-            protected Logger getLogger()
+            public void extract( File archive, File targetFolder ) throws MojoExecutionException
             {
-                return new ConsoleLogger( log.getThreshold(), "dependencies-unarchiver" );
+                log.debug( "Extracting APKLIB to " + targetFolder );
+                unpack( archive, targetFolder );
             }
         };
-
-        final File apklibDirectory = getUnpackedLibFolder( apklibArtifact );
-        apklibDirectory.mkdirs();
-        unArchiver.setDestDirectory( apklibDirectory );
-        log.debug( "Extracting APKLIB to " + apklibDirectory );
-        try
+        if ( cache != null )
         {
-            unArchiver.extract();
+            cache.unpack( apkLibFile, apklibDirectory, extractor );
         }
-        catch ( ArchiverException e )
+        else
         {
-            throw new MojoExecutionException( "ArchiverException while extracting " + apklibDirectory
-                    + ". Message: " + e.getLocalizedMessage(), e );
+            extractor.extract( apkLibFile, apklibDirectory );
         }
     }
 
@@ -107,7 +114,30 @@ public final class UnpackedLibHelper
             return;
         }
 
-        final UnArchiver unArchiver = new ZipUnArchiver( aarFile )
+        final File aarDirectory = getUnpackedLibFolder( aarArtifact );
+        final UnpackedLibCache.Extractor extractor = new UnpackedLibCache.Extractor()
+        {
+            @Override
+            public void extract( File archive, File targetFolder ) throws MojoExecutionException
+            {
+                log.debug( "Extracting AAR to " + targetFolder );
+                unpack( archive, targetFolder );
+                moveLegacyNativeLibraries( targetFolder );
+            }
+        };
+        if ( cache != null )
+        {
+            cache.unpack( aarFile, aarDirectory, extractor );
+        }
+        else
+        {
+            extractor.extract( aarFile, aarDirectory );
+        }
+    }
+
+    private void unpack( File archive, File targetFolder ) throws MojoExecutionException
+    {
+        final UnArchiver unArchiver = new ZipUnArchiver( archive )
         {
             @Override
             protected Logger getLogger()
@@ -116,22 +146,25 @@ public final class UnpackedLibHelper
             }
         };
 
-        final File aarDirectory = getUnpackedLibFolder( aarArtifact );
-        aarDirectory.mkdirs();
-        unArchiver.setDestDirectory( aarDirectory );
-        log.debug( "Extracting AAR to " + aarDirectory );
+        targetFolder.mkdirs();
+        unArchiver.setDestDirectory( targetFolder );
         try
         {
             unArchiver.extract();
         }
         catch ( ArchiverException e )
         {
-            throw new MojoExecutionException( "ArchiverException while extracting " + aarDirectory.getAbsolutePath()
+            throw new MojoExecutionException( "ArchiverException while extracting " + targetFolder.getAbsolutePath()
                     + ". Message: " + e.getLocalizedMessage(), e );
         }
+    }
 
-        // Move native libraries from libs to jni folder for legacy AARs.
-        // This ensures backward compatibility with older AARs where libs are in "libs" folder.
+    /**
+     * Move native libraries from libs to jni folder for legacy AARs.
+     * This ensures backward compatibility with older AARs where libs are in "libs" folder.
+     */
+    private void moveLegacyNativeLibraries( File aarDirectory ) throws MojoExecutionException
+    {
         final File jniFolder = new File( aarDirectory, AarMojo.NATIVE_LIBRARIES_FOLDER );
         final File libsFolder = new File( aarDirectory, ApklibMojo.NATIVE_LIBRARIES_FOLDER );
         if ( !jniFolder.exists() && libsFolder.isDirectory() && libsFolder.exists() )
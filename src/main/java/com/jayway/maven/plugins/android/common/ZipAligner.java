@@ -0,0 +1,144 @@
+package com.jayway.maven.plugins.android.common;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+
+/**
+ * Aligns the uncompressed entries of a zip file like the SDK <code>zipalign</code> tool does, so that they can be
+ * memory mapped once installed. Compressed entries are copied as they are.
+ * <p>
+ * Unlike <code>zipalign</code>, this runs in process and does not inflate or deflate anything, and an apk that is
+ * aligned already does not have to be written again at all.
+ * </p>
+ */
+public final class ZipAligner
+{
+    /**
+     * The alignment the platform expects.
+     */
+    public static final int DEFAULT_ALIGNMENT = 4;
+
+    /**
+     * The alignment of uncompressed shared libraries, like <code>zipalign -p</code>.
+     */
+    public static final int PAGE_ALIGNMENT = 4096;
+
+    private static final String SHARED_LIBRARY_SUFFIX = ".so";
+
+    private final int alignment;
+    private final boolean pageAlignSharedLibraries;
+
+    /**
+     * @param alignment                 Alignment of uncompressed entries in bytes.
+     * @param pageAlignSharedLibraries  Whether to align uncompressed shared libraries to {@link #PAGE_ALIGNMENT}.
+     */
+    public ZipAligner( int alignment, boolean pageAlignSharedLibraries )
+    {
+        this.alignment = alignment;
+        this.pageAlignSharedLibraries = pageAlignSharedLibraries;
+    }
+
+    /**
+     * @param name      Entry name.
+     * @param method    {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}.
+     * @return The alignment of the entry data, 0 for none.
+     */
+    public int getAlignment( String name, int method )
+    {
+        if ( method != ZipEntry.STORED )
+        {
+            return 0;
+        }
+        if ( pageAlignSharedLibraries && name.endsWith( SHARED_LIBRARY_SUFFIX ) )
+        {
+            return PAGE_ALIGNMENT;
+        }
+        return alignment;
+    }
+
+    /**
+     * @param zip   The zip file to check.
+     * @return true if all uncompressed entries are aligned.
+     * @throws IOException if the file cannot be read.
+     */
+    public boolean isAligned( File zip ) throws IOException
+    {
+        final RawZipFile source = new RawZipFile( zip );
+        try
+        {
+            for ( RawZipFile.Entry entry : source.getEntries() )
+            {
+                final int entryAlignment = getAlignment( entry.getName(), entry.getMethod() );
+                if ( entryAlignment > 1 && source.getDataOffset( entry ) % entryAlignment != 0 )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        finally
+        {
+            source.close();
+        }
+    }
+
+    /**
+     * Writes an aligned copy of a zip file.
+     *
+     * @param in    The zip file to align.
+     * @param out   The aligned copy, must not be the same file.
+     * @throws IOException if the file cannot be read or the copy cannot be written.
+     */
+    public void align( File in, File out ) throws IOException
+    {
+        final RawZipFile source = new RawZipFile( in );
+        try
+        {
+            final RawZipOutputStream target = new RawZipOutputStream( new FileOutputStream( out ) );
+            try
+            {
+                for ( RawZipFile.Entry entry : source.getEntries() )
+                {
+                    target.copyEntry( source, entry, getAlignment( entry.getName(), entry.getMethod() ) );
+                }
+            }
+            finally
+            {
+                target.close();
+            }
+        }
+        finally
+        {
+            source.close();
+        }
+    }
+
+    /**
+     * Aligns a zip file in place, unless it is aligned already.
+     *
+     * @param zip   The zip file.
+     * @return true if the file had to be rewritten.
+     * @throws IOException if the file cannot be read or written.
+     */
+    public boolean alignInPlace( File zip ) throws IOException
+    {
+        if ( isAligned( zip ) )
+        {
+            return false;
+        }
+        final File temporaryFile = new File( zip.getParentFile(), zip.getName() + ".aligning" );
+        align( zip, temporaryFile );
+        if ( !zip.delete() )
+        {
+            temporaryFile.delete();
+            throw new IOException( "Could not replace " + zip + " with its aligned copy" );
+        }
+        if ( !temporaryFile.renameTo( zip ) )
+        {
+            throw new IOException( "Could not move " + temporaryFile + " to " + zip );
+        }
+        return true;
+    }
+}
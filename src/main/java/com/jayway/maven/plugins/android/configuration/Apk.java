@@ -30,4 +30,29 @@ public class Apk
      * Mirror of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo#apkNativeToolchain}.
      */
     private String   nativeToolchain;
+
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo#apkParallelPackaging}.
+     */
+    private Boolean  parallelPackaging;
+
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo#apkPackagingThreads}.
+     */
+    private Integer  packagingThreads;
+
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo#apkIncremental}.
+     */
+    private Boolean  incremental;
+
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo#apkZipalign}.
+     */
+    private Boolean  zipalign;
+
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo#apkPageAlignSharedLibraries}.
+     */
+    private Boolean  pageAlignSharedLibraries;
 }
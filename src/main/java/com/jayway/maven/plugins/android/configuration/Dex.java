@@ -33,6 +33,10 @@ public class Dex
      * Mirror of {@link com.jayway.maven.plugins.android.phase08preparepackage.DexMojo#dexPreDexLibLocation}
      */
     private String preDexLibLocation;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase08preparepackage.DexMojo#dexPreDexThreads}
+     */
+    private Integer preDexThreads;
     /**
      * Mirror of {@link com.jayway.maven.plugins.android.phase08preparepackage.DexMojo#dexIncremental}
      */
@@ -55,6 +59,10 @@ public class Dex
     private Boolean minimalMainDex;
 
     private String dexArguments;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase08preparepackage.DexMojo#dexInProcess}
+     */
+    private Boolean inProcess;
 
 
     public String[] getJvmArguments()
@@ -87,6 +95,11 @@ public class Dex
       return preDexLibLocation;
     }
 
+    public Integer getPreDexThreads()
+    {
+        return preDexThreads;
+    }
+
     public Boolean isIncremental()
     {
         return incremental;
@@ -116,4 +129,9 @@ public class Dex
     {
         return dexArguments;
     }
+
+    public Boolean isInProcess()
+    {
+        return inProcess;
+    }
 }
@@ -28,6 +28,21 @@ public class Emulator
      */
     private String executable;
 
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.standalonemojos.EmulatorPoolStartMojo#emulatorPoolAvds}
+     */
+    private String[] poolAvds;
+
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.standalonemojos.EmulatorPoolStartMojo#emulatorPoolSize}
+     */
+    private Integer poolSize;
+
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.standalonemojos.EmulatorPoolStartMojo#emulatorPoolFirstPort}
+     */
+    private Integer poolFirstPort;
+
     public String getAvd()
     {
         return avd;
@@ -47,4 +62,19 @@ public class Emulator
     {
         return executable;
     }
+
+    public String[] getPoolAvds()
+    {
+        return poolAvds;
+    }
+
+    public Integer getPoolSize()
+    {
+        return poolSize;
+    }
+
+    public Integer getPoolFirstPort()
+    {
+        return poolFirstPort;
+    }
 }
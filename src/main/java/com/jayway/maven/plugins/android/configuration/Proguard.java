@@ -31,6 +31,10 @@ public class Proguard
     private Boolean includeJdkLibs;
     private String[] options;
     private Boolean attachMap;
+    private Boolean dump;
+    private Boolean printSeeds;
+    private Boolean printUsage;
+    private Boolean upToDateCheck;
 
     public Boolean isSkip()
     {
@@ -86,4 +90,24 @@ public class Proguard
     {
         return options;
     }
+
+    public Boolean isDump()
+    {
+        return dump;
+    }
+
+    public Boolean isPrintSeeds()
+    {
+        return printSeeds;
+    }
+
+    public Boolean isPrintUsage()
+    {
+        return printUsage;
+    }
+
+    public Boolean isUpToDateCheck()
+    {
+        return upToDateCheck;
+    }
 }
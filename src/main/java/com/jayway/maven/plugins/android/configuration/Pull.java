@@ -17,6 +17,18 @@ public class Pull
      * Mirror of {@link com.jayway.maven.plugins.android.standalonemojos.PullMojo#destination}
      */
     private String destination;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.standalonemojos.PullMojo#pullIncremental}
+     */
+    private Boolean incremental;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.standalonemojos.PullMojo#pullStreams}
+     */
+    private Integer streams;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.standalonemojos.PullMojo#pullPerDeviceDirectory}
+     */
+    private Boolean perDeviceDirectory;
 
     public String getSource()
     {
@@ -27,4 +39,19 @@ public class Pull
     {
         return destination;
     }
+
+    public Boolean isIncremental()
+    {
+        return incremental;
+    }
+
+    public Integer getStreams()
+    {
+        return streams;
+    }
+
+    public Boolean isPerDeviceDirectory()
+    {
+        return perDeviceDirectory;
+    }
 }
@@ -17,6 +17,18 @@ public class Push
      * Mirror of {@link com.jayway.maven.plugins.android.standalonemojos.PushMojo#destination}
      */
     private String destination;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.standalonemojos.PushMojo#pushIncremental}
+     */
+    private Boolean incremental;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.standalonemojos.PushMojo#pushStreams}
+     */
+    private Integer streams;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.standalonemojos.PushMojo#pushCompareChecksums}
+     */
+    private Boolean compareChecksums;
 
     public String getSource()
     {
@@ -27,4 +39,19 @@ public class Push
     {
         return destination;
     }
+
+    public Boolean isIncremental()
+    {
+        return incremental;
+    }
+
+    public Integer getStreams()
+    {
+        return streams;
+    }
+
+    public Boolean isCompareChecksums()
+    {
+        return compareChecksums;
+    }
 }
@@ -1,5 +1,6 @@
 package com.jayway.maven.plugins.android.configuration;
 
+import java.io.File;
 import java.util.List;
 
 /**
@@ -67,7 +68,18 @@ public class Test
      * Mirror of {@link com.jayway.maven.plugins.android.AbstractInstrumentationMojo#testInstrumentationArgs}
      */
     private List<String> instrumentationArgs;
-
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.AbstractInstrumentationMojo#testShard}
+     */
+    private Boolean shard;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.AbstractInstrumentationMojo#testShardCount}
+     */
+    private Integer shardCount;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.AbstractInstrumentationMojo#testShardDurationsFile}
+     */
+    private File shardDurationsFile;
     public String getSkip()
     {
         return skip;
@@ -137,4 +149,19 @@ public class Test
     {
         return instrumentationArgs;
     }
+
+    public Boolean isShard()
+    {
+        return shard;
+    }
+
+    public Integer getShardCount()
+    {
+        return shardCount;
+    }
+
+    public File getShardDurationsFile()
+    {
+        return shardDurationsFile;
+    }
 }
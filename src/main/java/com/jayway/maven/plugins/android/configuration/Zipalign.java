@@ -26,6 +26,14 @@ public class Zipalign
     private String outputApk;
     
     private String classifier;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.standalonemojos.ZipalignMojo#zipalignInProcess}
+     */
+    private Boolean inProcess;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.standalonemojos.ZipalignMojo#zipalignPageAlignSharedLibraries}
+     */
+    private Boolean pageAlignSharedLibraries;
 
 
     public Boolean isSkip()
@@ -52,5 +60,15 @@ public class Zipalign
     {
         return classifier;
     }
+
+    public Boolean isInProcess()
+    {
+        return inProcess;
+    }
+
+    public Boolean isPageAlignSharedLibraries()
+    {
+        return pageAlignSharedLibraries;
+    }
     
 }
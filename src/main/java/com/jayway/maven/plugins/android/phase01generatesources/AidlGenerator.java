@@ -0,0 +1,260 @@
+package com.jayway.maven.plugins.android.phase01generatesources;
+
+import com.jayway.maven.plugins.android.BuildTimings;
+import com.jayway.maven.plugins.android.CommandExecutor;
+import com.jayway.maven.plugins.android.ExecutionException;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the <code>aidl</code> compiler for a set of AIDL files on a bounded pool of worker threads.
+ * <p>
+ * Each invocation asks aidl to write a dependency file listing the AIDL file and all of its imports. On the next
+ * build a file is only compiled again if its generated java file is missing or older than any file in that list
+ * (or than the preprocessed <code>framework.aidl</code>).
+ * </p>
+ */
+final class AidlGenerator
+{
+    private final Log log;
+    private final String aidlPath;
+    private final File frameworkAidl;
+    private final List<String> baseCommands;
+    private final File workingDirectory;
+    private final File dependencyDirectory;
+    private final int threads;
+
+    /**
+     * @param log                   Logger.
+     * @param aidlPath              Path to the aidl executable.
+     * @param frameworkAidl         The preprocessed framework.aidl of the target platform.
+     * @param baseCommands          Arguments shared by all invocations (preprocessed and include folders).
+     * @param workingDirectory      Folder to run aidl in.
+     * @param dependencyDirectory   Folder receiving the dependency files used for the up to date checks.
+     * @param threads               Number of aidl processes to run at the same time.
+     */
+    AidlGenerator( Log log, String aidlPath, File frameworkAidl, List<String> baseCommands, File workingDirectory,
+                   File dependencyDirectory, int threads )
+    {
+        this.log = log;
+        this.aidlPath = aidlPath;
+        this.frameworkAidl = frameworkAidl;
+        this.baseCommands = baseCommands;
+        this.workingDirectory = workingDirectory;
+        this.dependencyDirectory = dependencyDirectory;
+        this.threads = Math.max( 1, threads );
+    }
+
+    /**
+     * A single AIDL file to compile.
+     */
+    static final class AidlFile
+    {
+        private final File source;
+        private final File target;
+        private final File dependencyFile;
+
+        AidlFile( File source, File target, File dependencyFile )
+        {
+            this.source = source;
+            this.target = target;
+            this.dependencyFile = dependencyFile;
+        }
+    }
+
+    /**
+     * @param sourceDirectory       Source folder containing the AIDL file.
+     * @param relativeAidlFileName  Path of the AIDL file relative to its source folder.
+     * @param genDirectory          Root folder for the generated java files.
+     * @return the file to compile.
+     */
+    AidlFile createAidlFile( File sourceDirectory, String relativeAidlFileName, File genDirectory )
+    {
+        final String relativeBaseName = relativeAidlFileName.substring( 0, relativeAidlFileName.lastIndexOf( "." ) );
+        return new AidlFile(
+                new File( sourceDirectory, relativeAidlFileName ),
+                new File( genDirectory, relativeBaseName + ".java" ),
+                new File( dependencyDirectory, relativeBaseName + ".d" ) );
+    }
+
+    /**
+     * Compiles all files that are not up to date.
+     *
+     * @param aidlFiles the files to compile.
+     * @throws MojoExecutionException if aidl fails for any of the files.
+     */
+    void generate( List<AidlFile> aidlFiles ) throws MojoExecutionException
+    {
+        final long start = System.nanoTime();
+        final List<AidlFile> staleFiles = new ArrayList<AidlFile>();
+        for ( AidlFile aidlFile : aidlFiles )
+        {
+            if ( isUpToDate( aidlFile ) )
+            {
+                log.debug( "AIDL file is up to date : " + aidlFile.source );
+            }
+            else
+            {
+                staleFiles.add( aidlFile );
+            }
+        }
+
+        if ( !staleFiles.isEmpty() )
+        {
+            compile( staleFiles );
+        }
+        log.info( "AIDL: compiled " + staleFiles.size() + " file(s), " + ( aidlFiles.size() - staleFiles.size() )
+                + " up to date, in " + TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) + " ms" );
+    }
+
+    private void compile( List<AidlFile> staleFiles ) throws MojoExecutionException
+    {
+        final int poolSize = Math.min( threads, staleFiles.size() );
+        log.debug( "Compiling " + staleFiles.size() + " AIDL file(s) using " + poolSize + " thread(s)" );
+
+        final ExecutorService executor = Executors.newFixedThreadPool( poolSize );
+        final AtomicInteger failures = new AtomicInteger();
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try
+        {
+            for ( final AidlFile aidlFile : staleFiles )
+            {
+                futures.add( executor.submit( BuildTimings.inCurrentGoal( new Callable<Void>()
+                {
+                    @Override
+                    public Void call() throws ExecutionException
+                    {
+                        // Stop scheduling new work once a file has failed.
+                        if ( failures.get() == 0 )
+                        {
+                            try
+                            {
+                                compile( aidlFile );
+                            }
+                            catch ( ExecutionException e )
+                            {
+                                failures.incrementAndGet();
+                                throw e;
+                            }
+                        }
+                        return null;
+                    }
+                } ) ) );
+            }
+
+            for ( Future<Void> future : futures )
+            {
+                future.get();
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException( "Interrupted while compiling AIDL files", e );
+        }
+        catch ( java.util.concurrent.ExecutionException e )
+        {
+            throw new MojoExecutionException( "", e.getCause() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private void compile( AidlFile aidlFile ) throws ExecutionException
+    {
+        final long start = System.nanoTime();
+        aidlFile.target.getParentFile().mkdirs();
+        aidlFile.dependencyFile.getParentFile().mkdirs();
+
+        final List<String> commands = new ArrayList<String>( baseCommands );
+        commands.add( "-d" + aidlFile.dependencyFile.getAbsolutePath() );
+        commands.add( aidlFile.source.getAbsolutePath() );
+        commands.add( aidlFile.target.getAbsolutePath() );
+
+        final CommandExecutor executor = CommandExecutor.Factory.createDefaultCommmandExecutor();
+        executor.setLogger( log );
+        executor.setCaptureStdOut( true );
+        executor.executeCommand( aidlPath, commands, workingDirectory, false );
+
+        log.debug( "Compiled " + aidlFile.source + " in "
+                + TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) + " ms" );
+    }
+
+    /**
+     * @return true if the generated java file is newer than the AIDL file and all of its imports.
+     */
+    private boolean isUpToDate( AidlFile aidlFile )
+    {
+        if ( !aidlFile.target.exists() || !aidlFile.dependencyFile.exists() )
+        {
+            return false;
+        }
+        final long generated = aidlFile.target.lastModified();
+        if ( frameworkAidl.lastModified() > generated )
+        {
+            return false;
+        }
+
+        final List<File> inputs;
+        try
+        {
+            inputs = readDependencies( aidlFile.dependencyFile );
+        }
+        catch ( IOException e )
+        {
+            log.debug( "Could not read " + aidlFile.dependencyFile + " : " + e.getMessage() );
+            return false;
+        }
+        if ( !inputs.contains( aidlFile.source.getAbsoluteFile() ) )
+        {
+            return false;
+        }
+        for ( File input : inputs )
+        {
+            if ( !input.exists() || input.lastModified() > generated )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the AIDL files listed in a make style dependency file written by <code>aidl -d</code>.
+     */
+    static List<File> readDependencies( File dependencyFile ) throws IOException
+    {
+        final String content = FileUtils.readFileToString( dependencyFile ).replace( "\\\n", " " );
+        final List<File> inputs = new ArrayList<File>();
+        for ( String token : content.split( "\\s+" ) )
+        {
+            if ( token.endsWith( ":" ) )
+            {
+                token = token.substring( 0, token.length() - 1 );
+            }
+            if ( token.endsWith( ".aidl" ) )
+            {
+                final File input = new File( token ).getAbsoluteFile();
+                if ( !inputs.contains( input ) )
+                {
+                    inputs.add( input );
+                }
+            }
+        }
+        return inputs;
+    }
+}
@@ -216,6 +216,14 @@ public class GenerateSourcesMojo extends AbstractAndroidMojo
     @Parameter( property = "android.aidlSourceDirectory", defaultValue = "${project.build.sourceDirectory}" )
     protected File aidlSourceDirectory;
 
+    /**
+     * <p>Number of aidl processes to run in parallel. Defaults to the number of available processors.</p>
+     * <p>AIDL files whose generated java file is newer than the AIDL file and all of its imports are not compiled
+     * again.</p>
+     */
+    @Parameter( property = "android.aidlThreads" )
+    protected int aidlThreads = Runtime.getRuntime().availableProcessors();
+
     /**
      * <p>Parameter designed to generate custom BuildConfig constants
      */
@@ -1240,7 +1248,7 @@ public class GenerateSourcesMojo extends AbstractAndroidMojo
     /**
      * Given a map of source directories to list of AIDL (relative) filenames within each,
      * runs the AIDL compiler for each, such that all source directories are available to
-     * the AIDL compiler.
+     * the AIDL compiler. Files are compiled in parallel and skipped if they are up to date.
      *
      * @param files Map of source directory File instances to the relative paths to all AIDL files within
      * @throws MojoExecutionException If the AIDL compiler fails
@@ -1248,8 +1256,9 @@ public class GenerateSourcesMojo extends AbstractAndroidMojo
     private void generateAidlFiles( Map<File /*sourceDirectory*/, String[] /*relativeAidlFileNames*/> files )
             throws MojoExecutionException
     {
+        final String frameworkAidl = getAndroidSdk().getPathForFrameworkAidl();
         List<String> protoCommands = new ArrayList<String>();
-        protoCommands.add( "-p" + getAndroidSdk().getPathForFrameworkAidl() );
+        protoCommands.add( "-p" + frameworkAidl );
 
         genDirectoryAidl.mkdirs();
         getLog().info( "Adding AIDL gen folder to compile classpath: " + genDirectoryAidl );
@@ -1259,35 +1268,19 @@ public class GenerateSourcesMojo extends AbstractAndroidMojo
         {
             protoCommands.add( "-I" + sourceDir );
         }
+
+        final AidlGenerator generator = new AidlGenerator( getLog(), getAndroidSdk().getAidlPath(),
+                new File( frameworkAidl ), protoCommands, project.getBasedir(),
+                new File( targetDirectory, "aidl-dependencies" ), aidlThreads );
+        final List<AidlGenerator.AidlFile> aidlFiles = new ArrayList<AidlGenerator.AidlFile>();
         for ( File sourceDir : sourceDirs )
         {
             for ( String relativeAidlFileName : files.get( sourceDir ) )
             {
-                File targetDirectory = new File( genDirectoryAidl, new File( relativeAidlFileName ).getParent() );
-                targetDirectory.mkdirs();
-
-                final String shortAidlFileName = new File( relativeAidlFileName ).getName();
-                final String shortJavaFileName = shortAidlFileName.substring( 0, shortAidlFileName.lastIndexOf( "." ) )
-                                                 + ".java";
-                final File aidlFileInSourceDirectory = new File( sourceDir, relativeAidlFileName );
-
-                List<String> commands = new ArrayList<String>( protoCommands );
-                commands.add( aidlFileInSourceDirectory.getAbsolutePath() );
-                commands.add( new File( targetDirectory, shortJavaFileName ).getAbsolutePath() );
-                try
-                {
-                    CommandExecutor executor = CommandExecutor.Factory.createDefaultCommmandExecutor();
-                    executor.setLogger( this.getLog() );
-                    executor.setCaptureStdOut( true );
-                    executor.executeCommand( getAndroidSdk().getAidlPath(), commands, project.getBasedir(),
-                            false );
-                }
-                catch ( ExecutionException e )
-                {
-                    throw new MojoExecutionException( "", e );
-                }
+                aidlFiles.add( generator.createAidlFile( sourceDir, relativeAidlFileName, genDirectoryAidl ) );
             }
         }
+        generator.generate( aidlFiles );
     }
 
     private String[] findRelativeAidlFileNames( File sourceDirectory )
@@ -4,10 +4,12 @@ package com.jayway.maven.plugins.android.phase04processclasses;
 import com.jayway.maven.plugins.android.AbstractAndroidMojo;
 import com.jayway.maven.plugins.android.CommandExecutor;
 import com.jayway.maven.plugins.android.ExecutionException;
+import com.jayway.maven.plugins.android.common.InputFingerprint;
 import com.jayway.maven.plugins.android.config.ConfigHandler;
 import com.jayway.maven.plugins.android.config.ConfigPojo;
 import com.jayway.maven.plugins.android.config.PullParameter;
 import com.jayway.maven.plugins.android.configuration.Proguard;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.SystemUtils;
@@ -67,6 +69,10 @@ public class ProguardMojo extends AbstractAndroidMojo
      *    &lt;filterMavenDescriptor&gt;true|false&lt;/filterMavenDescriptor&gt;
      *    &lt;filterManifest&gt;true|false&lt;/filterManifest&gt;
      *    &lt;customFilter&gt;filter1,filter2&lt;/customFilter&gt;
+     *    &lt;dump&gt;true|false&lt;/dump&gt;
+     *    &lt;printSeeds&gt;true|false&lt;/printSeeds&gt;
+     *    &lt;printUsage&gt;true|false&lt;/printUsage&gt;
+     *    &lt;upToDateCheck&gt;true|false&lt;/upToDateCheck&gt;
      *    &lt;jvmArguments&gt;
      *     &lt;jvmArgument&gt;-Xms256m&lt;/jvmArgument&gt;
      *     &lt;jvmArgument&gt;-Xmx512m&lt;/jvmArgument&gt;
@@ -228,6 +234,45 @@ public class ProguardMojo extends AbstractAndroidMojo
     @PullParameter( defaultValue = "false" )
     private Boolean parsedAttachMap;
 
+    /**
+     * If set to false, ProGuard does not write the (potentially very large) dump.txt. Defaults to true.
+     */
+    @Parameter( property = "android.proguard.dump" )
+    private Boolean proguardDump;
+
+    @PullParameter( defaultValue = "true" )
+    private Boolean parsedDump;
+
+    /**
+     * If set to false, ProGuard does not write seeds.txt. Defaults to true.
+     */
+    @Parameter( property = "android.proguard.printSeeds" )
+    private Boolean proguardPrintSeeds;
+
+    @PullParameter( defaultValue = "true" )
+    private Boolean parsedPrintSeeds;
+
+    /**
+     * If set to false, ProGuard does not write usage.txt. Defaults to true.
+     */
+    @Parameter( property = "android.proguard.printUsage" )
+    private Boolean proguardPrintUsage;
+
+    @PullParameter( defaultValue = "true" )
+    private Boolean parsedPrintUsage;
+
+    /**
+     * If set to true, ProGuard is only run if any of its inputs changed since the last run. The inputs are the
+     * program and library jars, the configuration files, the ProGuard jar and all options. Their checksums are
+     * stored in a <code>.inputs</code> file next to the obfuscated jar. Files included from a configuration file
+     * with <code>-include</code> are not tracked. Defaults to true.
+     */
+    @Parameter( property = "android.proguard.upToDateCheck" )
+    private Boolean proguardUpToDateCheck;
+
+    @PullParameter( defaultValue = "true" )
+    private Boolean parsedUpToDateCheck;
+
     /**
      * The plugin dependencies.
      */
@@ -367,7 +412,6 @@ public class ProguardMojo extends AbstractAndroidMojo
             }
         }
 
-        getLog().info( "Proguarding output" );
         CommandExecutor executor = CommandExecutor.Factory.createDefaultCommmandExecutor();
         executor.setLogger( this.getLog() );
         List< String > commands = new ArrayList< String >();
@@ -391,17 +435,26 @@ public class ProguardMojo extends AbstractAndroidMojo
             proguardCommands.add( "@" + proguardFile.getAbsolutePath() );
         }
 
-        collectInputFiles( proguardCommands );
+        final List< ProGuardInput > inputs = collectInputFiles( proguardCommands );
 
         proguardCommands.add( "-outjars" );
         proguardCommands.add( obfuscatedJar );
 
-        proguardCommands.add( "-dump" );
-        proguardCommands.add( proguardDir + File.separator + "dump.txt" );
-        proguardCommands.add( "-printseeds" );
-        proguardCommands.add( proguardDir + File.separator + "seeds.txt" );
-        proguardCommands.add( "-printusage" );
-        proguardCommands.add( proguardDir + File.separator + "usage.txt" );
+        if ( parsedDump )
+        {
+            proguardCommands.add( "-dump" );
+            proguardCommands.add( proguardDir + File.separator + "dump.txt" );
+        }
+        if ( parsedPrintSeeds )
+        {
+            proguardCommands.add( "-printseeds" );
+            proguardCommands.add( proguardDir + File.separator + "seeds.txt" );
+        }
+        if ( parsedPrintUsage )
+        {
+            proguardCommands.add( "-printusage" );
+            proguardCommands.add( proguardDir + File.separator + "usage.txt" );
+        }
 
         File mapFile = new File( proguardDir, "mapping.txt" );
 
@@ -412,6 +465,22 @@ public class ProguardMojo extends AbstractAndroidMojo
 
         final String javaExecutable = getJavaExecutable().getAbsolutePath();
 
+        final File inputsFile = new File( obfuscatedJar + ".inputs" );
+        InputFingerprint fingerprint = null;
+        if ( parsedUpToDateCheck )
+        {
+            fingerprint = createFingerprint( javaExecutable, commands, proguardCommands, inputs );
+            if ( fingerprint.matches( inputsFile ) && new File( obfuscatedJar ).isFile() && mapFile.isFile() )
+            {
+                getLog().info( "Proguard output is up to date, skipping" );
+                attachMap( mapFile );
+                return;
+            }
+        }
+        // Never leave a stale fingerprint behind if ProGuard fails
+        FileUtils.deleteQuietly( inputsFile );
+
+        getLog().info( "Proguarding output" );
         getLog().debug( javaExecutable + " " + commands.toString() + proguardCommands.toString() );
 
         FileOutputStream tempConfigFileOutputStream = null;
@@ -428,9 +497,12 @@ public class ProguardMojo extends AbstractAndroidMojo
             tempConfigFileOutputStream = new FileOutputStream( tempConfigFile );
             IOUtils.write( commandStringBuilder, tempConfigFileOutputStream );
 
-            executor.setCaptureStdOut( true );
             commands.add( "@\"" + tempConfigFile.getAbsolutePath() + "\"" );
             executor.executeCommand( javaExecutable, commands, project.getBasedir(), false );
+            if ( fingerprint != null )
+            {
+                fingerprint.write( inputsFile );
+            }
         }
         catch ( ExecutionException e )
         {
@@ -445,12 +517,61 @@ public class ProguardMojo extends AbstractAndroidMojo
             IOUtils.closeQuietly( tempConfigFileOutputStream );
         }
 
+        attachMap( mapFile );
+    }
+
+    private void attachMap( File mapFile )
+    {
         if ( parsedAttachMap )
         {
             projectHelper.attachArtifact( project, "map", mapFile );
         }
     }
 
+    /**
+     * Describes everything ProGuard reads, see {@link #parsedUpToDateCheck}.
+     */
+    private InputFingerprint createFingerprint( String javaExecutable, List< String > jvmCommands,
+                                                List< String > proguardCommands, List< ProGuardInput > inputs )
+            throws MojoExecutionException
+    {
+        final InputFingerprint fingerprint = new InputFingerprint();
+        fingerprint.addValue( "java", javaExecutable );
+        fingerprint.addValue( "jvm", jvmCommands.toString() );
+        fingerprint.addValue( "proguard", proguardCommands.toString() );
+        try
+        {
+            fingerprint.addFile( new File( parsedProguardJarPath ) );
+            fingerprint.addFile( resolveConfigFile( parsedConfig.getPath() ) );
+            for ( String config : parsedConfigs )
+            {
+                fingerprint.addFile( resolveConfigFile( config ) );
+            }
+            if ( proguardFile != null )
+            {
+                fingerprint.addFile( proguardFile );
+            }
+            for ( ProGuardInput input : inputs )
+            {
+                fingerprint.addFile( resolveConfigFile( input.path ) );
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Error while checking whether proguard inputs changed", e );
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Resolves a path the way ProGuard does, which runs in the project folder.
+     */
+    private File resolveConfigFile( String path )
+    {
+        final File file = new File( path );
+        return file.isAbsolute() ? file : new File( project.getBasedir(), path );
+    }
+
     /**
      * Convert the jvm arguments in parsedJvmArguments as populated by the config in format as needed by the java
      * command. Also preserve backwards compatibility in terms of dashes required or not..
@@ -473,7 +594,12 @@ public class ProguardMojo extends AbstractAndroidMojo
         }
     }
 
-    private void collectInputFiles( List< String > commands ) throws MojoExecutionException
+    /**
+     * Adds the program and library jars to the ProGuard commands.
+     *
+     * @return all inputs that were added.
+     */
+    private List< ProGuardInput > collectInputFiles( List< String > commands ) throws MojoExecutionException
     {
         // commons-logging breaks everything horribly, so we skip it from the program
         // dependencies and declare it to be a library dependency instead
@@ -494,6 +620,10 @@ public class ProguardMojo extends AbstractAndroidMojo
             commands.add( "-libraryjars" );
             commands.add( libraryjar.toPath() );
         }
+
+        final List< ProGuardInput > inputs = new ArrayList< ProGuardInput >( inJars );
+        inputs.addAll( libraryJars );
+        return inputs;
     }
 
     /**
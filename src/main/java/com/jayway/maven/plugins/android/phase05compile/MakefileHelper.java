@@ -201,7 +201,7 @@ public class MakefileHelper
 
                         final File includeDir = new File( System.getProperty( "java.io.tmpdir" ),
                                 "android_maven_plugin_native_includes" + System.currentTimeMillis() + "_"
-                                        + harArtifact.getArtifactId() );
+                                        + ndkArchitecture + "_" + harArtifact.getArtifactId() );
                         includeDir.deleteOnExit();
                         includeDirectories.add( includeDir );
 
@@ -14,6 +14,7 @@
 package com.jayway.maven.plugins.android.phase05compile;
 
 import com.jayway.maven.plugins.android.AbstractAndroidMojo;
+import com.jayway.maven.plugins.android.BuildTimings;
 import com.jayway.maven.plugins.android.CommandExecutor;
 import com.jayway.maven.plugins.android.ExecutionException;
 import com.jayway.maven.plugins.android.common.Const;
@@ -48,6 +49,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -293,6 +298,26 @@ public class NdkBuildMojo extends AbstractAndroidMojo
     @PullParameter( defaultValue = "false" )
     private Boolean maxJobs;
 
+    /**
+     * Flag indicating whether the architectures should be built concurrently rather than one after the other.
+     * Each architecture is then built in its own folder below <code>ndkBuildDirectory</code> (passed to ndk-build
+     * as <code>NDK_OUT</code> and <code>NDK_LIBS_OUT</code>, which requires NDK r9 or later) and the job budget
+     * defined by <code>ndkBuildJobs</code> is split evenly across the architectures. Packaging, stripping and
+     * attaching of the results still happens in architecture order once all builds have finished, so the output
+     * is the same as for a sequential build.
+     */
+    @Parameter( property = "android.ndk.build.parallel-architectures", defaultValue = "false" )
+    @PullParameter( defaultValue = "false" )
+    private Boolean parallelArchitectures;
+
+    /**
+     * Total number of make jobs shared by all architectures when <code>parallelArchitectures</code> is enabled.
+     * Defaults to the number of available processors.
+     */
+    @Parameter( property = "android.ndk.build.jobs" )
+    @PullParameter
+    private Integer ndkBuildJobs;
+
     /**
      * @throws MojoExecutionException
      * @throws MojoFailureException
@@ -309,27 +334,157 @@ public class NdkBuildMojo extends AbstractAndroidMojo
             ndkArchitecture != null ? ndkArchitecture : ndkArchitectures, applicationMakefile,
             project.getBasedir() );
 
-        for ( String architecture : resolvedNDKArchitectures )
+        try
+        {
+            if ( parallelArchitectures && resolvedNDKArchitectures.length > 1 )
+            {
+                compileArchitecturesConcurrently( resolvedNDKArchitectures );
+            }
+            else
+            {
+                for ( String architecture : resolvedNDKArchitectures )
+                {
+                    final ArchitectureBuild build = prepareBuild( architecture, false, 0 );
+                    build.run();
+                    completeBuild( build );
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            getLog().error( "Error while executing: " + e.getMessage() );
+            throw new MojoExecutionException( e.getMessage(), e );
+        }
+        catch ( ExecutionException e )
+        {
+            getLog().error( "Error while executing: " + e.getMessage() );
+            throw new MojoExecutionException( e.getMessage(), e );
+        }
+    }
+
+    /**
+     * Runs ndk-build for all architectures at the same time. Everything that touches the project (artifact
+     * resolution, attaching artifacts, the header archive) is done on the calling thread.
+     */
+    private void compileArchitecturesConcurrently( String[] architectures )
+        throws MojoExecutionException, IOException, ExecutionException
+    {
+        final int budget = ndkBuildJobs != null ? ndkBuildJobs : Runtime.getRuntime().availableProcessors();
+        final int jobsPerArchitecture = Math.max( 1, budget / architectures.length );
+        getLog().info( "Building " + architectures.length + " NDK architectures concurrently with "
+                + jobsPerArchitecture + " job(s) each" );
+
+        final List<ArchitectureBuild> builds = new ArrayList<ArchitectureBuild>();
+        for ( String architecture : architectures )
+        {
+            builds.add( prepareBuild( architecture, true, jobsPerArchitecture ) );
+        }
+
+        final ExecutorService executorService = Executors.newFixedThreadPool( builds.size() );
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try
         {
-            try
+            for ( final ArchitectureBuild build : builds )
+            {
+                futures.add( executorService.submit( BuildTimings.inCurrentGoal( new Callable<Void>()
+                {
+                    @Override
+                    public Void call() throws ExecutionException
+                    {
+                        build.run();
+                        return null;
+                    }
+                } ) ) );
+            }
+
+            // Wait for all builds, even after a failure, so no make process is left running behind our back.
+            Throwable failure = null;
+            for ( Future<Void> future : futures )
             {
-                compileForArchitecture( architecture );
+                try
+                {
+                    future.get();
+                }
+                catch ( java.util.concurrent.ExecutionException e )
+                {
+                    if ( failure == null )
+                    {
+                        failure = e.getCause();
+                    }
+                }
             }
-            catch ( IOException e )
+            if ( failure instanceof ExecutionException )
             {
-                getLog().error( "Error while executing: " + e.getMessage() );
-                throw new MojoExecutionException( e.getMessage(), e );
+                throw ( ExecutionException ) failure;
             }
-            catch ( ExecutionException e )
+            else if ( failure != null )
             {
-                getLog().error( "Error while executing: " + e.getMessage() );
-                throw new MojoExecutionException( e.getMessage(), e );
+                throw new MojoExecutionException( "Error while executing NDK build", failure );
             }
         }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException( "Interrupted while executing NDK build", e );
+        }
+        finally
+        {
+            executorService.shutdownNow();
+        }
+
+        for ( ArchitectureBuild build : builds )
+        {
+            completeBuild( build );
+        }
     }
 
-    private void compileForArchitecture( String architecture )
-        throws MojoExecutionException, IOException, ExecutionException
+    /**
+     * Everything needed to run ndk-build for a single architecture and to process its output afterwards.
+     */
+    private final class ArchitectureBuild
+    {
+        private final String architecture;
+        private final CommandExecutor executor;
+        private final String ndkBuildPath;
+        private final List<String> commands;
+        private final File workingDirectory;
+        private final File nativeLibOutputDirectory;
+        private final File makefileCaptureFile;
+        private final MakefileHelper.MakefileHolder makefileHolder;
+
+        private ArchitectureBuild( String architecture, CommandExecutor executor, String ndkBuildPath,
+                                   List<String> commands, File workingDirectory, File nativeLibOutputDirectory,
+                                   File makefileCaptureFile, MakefileHelper.MakefileHolder makefileHolder )
+        {
+            this.architecture = architecture;
+            this.executor = executor;
+            this.ndkBuildPath = ndkBuildPath;
+            this.commands = commands;
+            this.workingDirectory = workingDirectory;
+            this.nativeLibOutputDirectory = nativeLibOutputDirectory;
+            this.makefileCaptureFile = makefileCaptureFile;
+            this.makefileHolder = makefileHolder;
+        }
+
+        private void run() throws ExecutionException
+        {
+            getLog().debug( ndkBuildPath + " " + commands.toString() );
+            getLog().info( "Executing NDK " + architecture + " make at : " + workingDirectory );
+
+            executor.executeCommand( ndkBuildPath, commands, workingDirectory, true );
+            getLog().debug( "Executed NDK " + architecture + " make at : " + workingDirectory );
+        }
+    }
+
+    /**
+     * Generates the makefile and assembles the ndk-build command line for an architecture.
+     *
+     * @param architecture  The architecture to build.
+     * @param isolated      If true, the build uses its own output folders below the architecture's build folder.
+     * @param jobs          Number of make jobs to pass when <code>isolated</code>.
+     */
+    private ArchitectureBuild prepareBuild( String architecture, boolean isolated, int jobs )
+        throws MojoExecutionException, IOException
     {
         getLog().debug( "Resolving for NDK architecture : " + architecture );
 
@@ -415,7 +570,25 @@ public class NdkBuildMojo extends AbstractAndroidMojo
         }
 
         configureApplicationMakefile( commands );
-        configureMaxJobs( commands );
+        final File workingDirectory;
+        final File nativeLibOutputDirectory;
+        if ( isolated )
+        {
+            // Keep the objects and installed libraries of concurrent builds apart
+            final File objFolder = new File( buildFolder, "obj" );
+            commands.add( "-j" );
+            commands.add( String.valueOf( jobs ) );
+            commands.add( "NDK_OUT=" + objFolder.getAbsolutePath() );
+            commands.add( "NDK_LIBS_OUT=" + new File( buildFolder, "libs" ).getAbsolutePath() );
+            workingDirectory = buildFolder;
+            nativeLibOutputDirectory = new File( objFolder, "local/" + architecture );
+        }
+        else
+        {
+            configureMaxJobs( commands );
+            workingDirectory = ndkBuildDirectory;
+            nativeLibOutputDirectory = new File( nativeLibrariesOutputDirectory, architecture );
+        }
         configureNdkToolchain( architecture, commands );
         configureAdditionalCommands( commands );
 
@@ -429,16 +602,19 @@ public class NdkBuildMojo extends AbstractAndroidMojo
             commands.add( project.getArtifactId() );
         }
 
-        final String ndkBuildPath = resolveNdkBuildExecutable();
-        getLog().debug( ndkBuildPath + " " + commands.toString() );
-        getLog().info( "Executing NDK " + architecture + " make at : " + ndkBuildDirectory );
+        return new ArchitectureBuild( architecture, executor, resolveNdkBuildExecutable(), commands,
+                workingDirectory, nativeLibOutputDirectory, makefileCaptureFile, makefileHolder );
+    }
 
-        executor.setCaptureStdOut( true );
-        executor.executeCommand( ndkBuildPath, commands, ndkBuildDirectory, true );
-        getLog().debug( "Executed NDK " + architecture + " make at : " + ndkBuildDirectory );
+    /**
+     * Moves the built libraries into the packaging folder and attaches the native library and header archive.
+     */
+    private void completeBuild( ArchitectureBuild build ) throws MojoExecutionException, IOException
+    {
+        final String architecture = build.architecture;
 
         // Where the NDK build creates the libs.
-        final File nativeLibOutputDirectory = new File( nativeLibrariesOutputDirectory, architecture );
+        final File nativeLibOutputDirectory = build.nativeLibOutputDirectory;
         nativeLibOutputDirectory.mkdirs();
 
         // Move the built native libs into the packaging folder.
@@ -458,13 +634,13 @@ public class NdkBuildMojo extends AbstractAndroidMojo
         // Process conditionally any of the headers to include into the header archive file
         if ( attachHeaderFiles )
         {
-            attachHeaderFiles( makefileCaptureFile, architecture );
+            attachHeaderFiles( build.makefileCaptureFile, architecture );
         }
 
         // If we created a makefile for the build we should be polite and remove any extracted include
         // directories after we're done
         getLog().info( "Cleaning up extracted include directories used for build" );
-        MakefileHelper.cleanupAfterBuild( makefileHolder );
+        MakefileHelper.cleanupAfterBuild( build.makefileHolder );
     }
 
     private void configureAdditionalCommands( final List<String> commands )
@@ -718,7 +894,6 @@ public class NdkBuildMojo extends AbstractAndroidMojo
                 }
             } );
             stripCommandExecutor.setLogger( getLog() );
-            stripCommandExecutor.setCaptureStdOut( true );
             stripCommandExecutor.executeCommand( resolveNdkStripper( file ).getAbsolutePath(),
                                                  Arrays.asList( file.getAbsolutePath() ) );
         }
@@ -17,6 +17,7 @@
 package com.jayway.maven.plugins.android.phase08preparepackage;
 
 import com.jayway.maven.plugins.android.AbstractAndroidMojo;
+import com.jayway.maven.plugins.android.BuildTimings;
 import com.jayway.maven.plugins.android.CommandExecutor;
 import com.jayway.maven.plugins.android.ExecutionException;
 import com.jayway.maven.plugins.android.common.Const;
@@ -40,8 +41,16 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.jayway.maven.plugins.android.common.AndroidExtension.AAR;
 import static com.jayway.maven.plugins.android.common.AndroidExtension.APK;
@@ -75,6 +84,8 @@ public class DexMojo extends AbstractAndroidMojo
      *   &lt;optimize&gt;true|false&lt;/optimize&gt;
      *   &lt;preDex&gt;true|false&lt;/preDex&gt;
      *   &lt;preDexLibLocation&gt;path to predexed libraries, defaults to target/dexedLibs&lt;/preDexLibLocation&gt;
+     *   &lt;preDexThreads&gt;number of jars to pre-dex at the same time&lt;/preDexThreads&gt;
+     *   &lt;inProcess&gt;true|false&lt;/inProcess&gt;
      *   &lt;incremental&gt;true|false&lt;/incremental&gt;
      *   &lt;multiDex&gt;true|false&lt;/multiDex&gt;
      *   &lt;mainDexList&gt;path to class list file&lt;/mainDexList&gt;
@@ -89,10 +100,21 @@ public class DexMojo extends AbstractAndroidMojo
 
     /**
      * Extra JVM Arguments. Using these you can e.g. increase memory for the jvm running the build.
+     * When dx runs in process these are ignored, except that an <code>-Xmx</code> larger than the maximum heap of
+     * the Maven JVM makes dx fall back to a forked JVM.
      */
     @Parameter( property = "android.dex.jvmArguments", defaultValue = "-Xmx1024M" )
     private String[] dexJvmArguments;
 
+    /**
+     * Decides whether to run dx inside the Maven JVM instead of forking a new JVM for every invocation. dx.jar is
+     * loaded into an isolated class loader that is reused by all dx invocations of the session. Falls back to
+     * forking if the dx.jar of the build tools cannot be run in process or if the Maven JVM has less heap than
+     * requested by <code>-Xmx</code> in the jvm arguments.
+     */
+    @Parameter( property = "android.dex.inProcess", defaultValue = "false" )
+    private boolean dexInProcess;
+
     /**
      * Decides whether to pass the --core-library flag to dx.
      */
@@ -124,7 +146,8 @@ public class DexMojo extends AbstractAndroidMojo
     private boolean dexForceJumbo;
 
     /**
-     * Path to predexed libraries.
+     * Path to predexed libraries. Pre-dexed jars are named after the checksum of the jar, dx.jar and the dx flags,
+     * so this can point to a folder shared by several modules or checkouts.
      */
     @Parameter(
             property = "android.dex.dexPreDexLibLocation",
@@ -132,6 +155,12 @@ public class DexMojo extends AbstractAndroidMojo
     )
     private String dexPreDexLibLocation;
 
+    /**
+     * Number of jars to pre-dex at the same time. Defaults to the number of available processors.
+     */
+    @Parameter( property = "android.dex.preDexThreads" )
+    private int dexPreDexThreads = Runtime.getRuntime().availableProcessors();
+
     /**
      * Decides whether to pass the --incremental flag to dx.
      */
@@ -175,11 +204,13 @@ public class DexMojo extends AbstractAndroidMojo
     private boolean parsedPreDex;
     private boolean parsedForceJumbo;
     private String parsedPreDexLibLocation;
+    private int parsedPreDexThreads;
     private boolean parsedIncremental;
     private boolean parsedMultiDex;
     private String parsedMainDexList;
     private boolean parsedMinimalMainDex;
     private String parsedDexArguments;
+    private boolean parsedInProcess;
 
     /**
      * @throws MojoExecutionException
@@ -189,9 +220,6 @@ public class DexMojo extends AbstractAndroidMojo
     public void execute() throws MojoExecutionException, MojoFailureException
     {
 
-        CommandExecutor executor = CommandExecutor.Factory.createDefaultCommmandExecutor();
-        executor.setLogger( this.getLog() );
-
         parseConfiguration();
         File outputFile;
         if ( parsedMultiDex )
@@ -204,7 +232,7 @@ public class DexMojo extends AbstractAndroidMojo
         }
         if ( generateApk )
         {
-            runDex( executor, outputFile );
+            runDex( outputFile );
         }
 
         if ( attachJar )
@@ -340,6 +368,14 @@ public class DexMojo extends AbstractAndroidMojo
             {
                 parsedPreDexLibLocation = dex.getPreDexLibLocation();
             }
+            if ( dex.getPreDexThreads() == null )
+            {
+                parsedPreDexThreads = dexPreDexThreads;
+            }
+            else
+            {
+                parsedPreDexThreads = dex.getPreDexThreads();
+            }
             if ( dex.isIncremental() == null )
             {
                 parsedIncremental = dexIncremental;
@@ -388,6 +424,14 @@ public class DexMojo extends AbstractAndroidMojo
             {
                 parsedDexArguments = dex.getDexArguments();
             }
+            if ( dex.isInProcess() == null )
+            {
+                parsedInProcess = dexInProcess;
+            }
+            else
+            {
+                parsedInProcess = dex.isInProcess();
+            }
 
         }
         else
@@ -398,66 +442,298 @@ public class DexMojo extends AbstractAndroidMojo
             parsedOptimize = dexOptimize;
             parsedPreDex = dexPreDex;
             parsedPreDexLibLocation = dexPreDexLibLocation;
+            parsedPreDexThreads = dexPreDexThreads;
             parsedIncremental = dexIncremental;
             parsedForceJumbo = dexForceJumbo;
             parsedMultiDex = dexMultiDex;
             parsedMainDexList = dexMainDexList;
             parsedMinimalMainDex = dexMinimalMainDex;
             parsedDexArguments = dexArguments;
+            parsedInProcess = dexInProcess;
+        }
+        if ( parsedInProcess && !hasEnoughHeapForInProcessDex() )
+        {
+            parsedInProcess = false;
         }
     }
 
-    private Set< File > preDex( CommandExecutor executor, Set< File > inputFiles ) throws MojoExecutionException
+    private Set< File > preDex( Set< File > inputFiles ) throws MojoExecutionException
     {
         Set< File > filtered = new HashSet< File >();
         getLog().info( "Pre dex-ing libraries for faster dex-ing of the final application." );
 
-        for ( File inputFile : inputFiles )
+        final long start = System.nanoTime();
+        final List< String > flags = dexFlags();
+        final PreDexCache cache;
+        final Map< File, File > staleJars = new LinkedHashMap< File, File >();
+        int cachedJars = 0;
+        try
         {
-            if ( inputFile.getName().matches( ".*\\.jar$" ) )
+            cache = new PreDexCache( new File( parsedPreDexLibLocation.trim() ),
+                    new File( getAndroidSdk().getDxJarPath() ), flags );
+            for ( File inputFile : inputFiles )
             {
-                List< String > commands = dexDefaultCommands();
-
-                File predexJar = predexJarPath( inputFile );
-                commands.add( "--output=" + predexJar.getAbsolutePath() );
-                commands.add( inputFile.getAbsolutePath() );
-                filtered.add( predexJar );
-
-                if ( !predexJar.isFile() || predexJar.lastModified() < inputFile.lastModified() )
+                if ( inputFile.getName().matches( ".*\\.jar$" ) )
                 {
-                    getLog().info( "Pre-dex ing jar: " + inputFile.getAbsolutePath() );
-
-                    final String javaExecutable = getJavaExecutable().getAbsolutePath();
-                    getLog().debug( javaExecutable + " " + commands.toString() );
-                    try
+                    final File predexJar = cache.getEntry( inputFile );
+                    filtered.add( predexJar );
+                    if ( predexJar.isFile() )
                     {
-                        executor.setCaptureStdOut( true );
-                        executor.executeCommand( javaExecutable, commands, project.getBasedir(), false );
+                        getLog().debug( "Using pre-dexed " + predexJar + " for " + inputFile );
+                        cachedJars++;
                     }
-                    catch ( ExecutionException e )
+                    else
                     {
-                        throw new MojoExecutionException( "", e );
+                        staleJars.put( inputFile, predexJar );
                     }
                 }
+                else
+                {
+                    filtered.add( inputFile );
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not look up pre-dexed libraries", e );
+        }
+
+        if ( !staleJars.isEmpty() )
+        {
+            preDexJars( cache, flags, staleJars );
+        }
+        getLog().info( "Pre-dexed " + staleJars.size() + " jar(s), reused " + cachedJars
+                + " pre-dexed jar(s), in " + TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) + " ms" );
 
+        return filtered;
+    }
+
+    /**
+     * Pre-dexes the given jars on up to {@link #parsedPreDexThreads} dx processes at the same time.
+     *
+     * @param staleJars the jars to pre-dex, mapped to their location in the cache.
+     */
+    private void preDexJars( final PreDexCache cache, final List< String > flags, Map< File, File > staleJars )
+            throws MojoExecutionException
+    {
+        final File dxJar = new File( getAndroidSdk().getDxJarPath() );
+        final int poolSize = Math.max( 1, Math.min( parsedPreDexThreads, staleJars.size() ) );
+        getLog().debug( "Pre-dexing " + staleJars.size() + " jar(s) using " + poolSize + " thread(s)" );
+
+        final ExecutorService executorService = Executors.newFixedThreadPool( poolSize );
+        final AtomicInteger failures = new AtomicInteger();
+        final List< Future< Void > > futures = new ArrayList< Future< Void > >();
+        try
+        {
+            for ( final Map.Entry< File, File > staleJar : staleJars.entrySet() )
+            {
+                futures.add( executorService.submit( BuildTimings.inCurrentGoal( new Callable< Void >()
+                {
+                    @Override
+                    public Void call() throws ExecutionException, IOException
+                    {
+                        // Stop scheduling new work once a jar has failed.
+                        if ( failures.get() == 0 )
+                        {
+                            try
+                            {
+                                preDexJar( cache, dxJar, flags, staleJar.getKey(), staleJar.getValue() );
+                            }
+                            catch ( ExecutionException e )
+                            {
+                                failures.incrementAndGet();
+                                throw e;
+                            }
+                            catch ( IOException e )
+                            {
+                                failures.incrementAndGet();
+                                throw e;
+                            }
+                        }
+                        return null;
+                    }
+                } ) ) );
             }
-            else
+
+            for ( Future< Void > future : futures )
             {
-                filtered.add( inputFile );
+                future.get();
             }
         }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException( "Interrupted while pre-dexing libraries", e );
+        }
+        catch ( java.util.concurrent.ExecutionException e )
+        {
+            throw new MojoExecutionException( "", e.getCause() );
+        }
+        finally
+        {
+            executorService.shutdownNow();
+        }
+    }
 
-        return filtered;
+    private void preDexJar( PreDexCache cache, File dxJar, List< String > flags, File inputFile, File predexJar )
+            throws ExecutionException, IOException
+    {
+        getLog().info( "Pre-dex ing jar: " + inputFile.getAbsolutePath() );
+        final File temporaryJar = cache.newTemporaryFile();
+        try
+        {
+            final List< String > arguments = new ArrayList< String >( flags );
+            arguments.add( "--output=" + temporaryJar.getAbsolutePath() );
+            arguments.add( inputFile.getAbsolutePath() );
+
+            executeDx( dxJar, arguments );
+            cache.commit( temporaryJar, predexJar );
+        }
+        finally
+        {
+            FileUtils.deleteQuietly( temporaryJar );
+        }
     }
 
-    private File predexJarPath( File inputFile )
+    /**
+     * @return The dx flags that affect the generated code of every input, used for pre-dexing as well.
+     */
+    private List< String > dexFlags()
     {
-        final File predexLibsDirectory = new File( parsedPreDexLibLocation.trim() );
-        predexLibsDirectory.mkdirs();
-        return new File( predexLibsDirectory, inputFile.getName() );
+        final List< String > flags = new ArrayList< String >();
+        if ( !parsedOptimize )
+        {
+            flags.add( "--no-optimize" );
+        }
+        if ( parsedCoreLibrary )
+        {
+            flags.add( "--core-library" );
+        }
+        if ( parsedNoLocals )
+        {
+            flags.add( "--no-locals" );
+        }
+        if ( parsedForceJumbo )
+        {
+            flags.add( "--force-jumbo" );
+        }
+        return flags;
+    }
+
+    /**
+     * Runs <code>dx --dex</code>, either in process or in a forked JVM.
+     *
+     * @param dxJar     The dx.jar to run.
+     * @param arguments The arguments following <code>--dex</code>.
+     * @throws ExecutionException if dx fails.
+     */
+    private void executeDx( File dxJar, List< String > arguments ) throws ExecutionException
+    {
+        if ( parsedInProcess )
+        {
+            getLog().debug( "dx (in process) " + arguments.toString() );
+            try
+            {
+                final int result = InProcessDexer.forSession( session ).dex( dxJar, arguments );
+                if ( result != 0 )
+                {
+                    throw new ExecutionException( "dx failed with exit code " + result );
+                }
+                return;
+            }
+            catch ( InProcessDexer.DexerUnavailableException e )
+            {
+                getLog().warn( e.getMessage() + ", running dx in a separate JVM instead" );
+            }
+            catch ( ExecutionException e )
+            {
+                throw e;
+            }
+            catch ( Exception e )
+            {
+                throw new ExecutionException( "dx failed: " + e.getMessage(), e );
+            }
+        }
+
+        final List< String > commands = dexDefaultCommands( dxJar );
+        commands.addAll( arguments );
+        final String javaExecutable = getJavaExecutable().getAbsolutePath();
+        getLog().debug( javaExecutable + " " + commands.toString() );
+
+        final CommandExecutor executor = CommandExecutor.Factory.createDefaultCommmandExecutor();
+        executor.setLogger( getLog() );
+        executor.executeCommand( javaExecutable, commands, project.getBasedir(), false );
+    }
+
+    /**
+     * @return false if the jvm arguments ask for more heap than the Maven JVM can provide to an in process dx.
+     */
+    private boolean hasEnoughHeapForInProcessDex()
+    {
+        final long requestedHeap = parseMaxHeap( parsedJvmArguments );
+        final long maxHeap = Runtime.getRuntime().maxMemory();
+        if ( requestedHeap > maxHeap )
+        {
+            getLog().warn( "dx was configured with " + ( requestedHeap / FileUtils.ONE_MB ) + " MB heap but Maven only "
+                    + "has " + ( maxHeap / FileUtils.ONE_MB ) + " MB, running dx in a separate JVM. Increase the heap "
+                    + "in MAVEN_OPTS to run dx in process." );
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the heap size in bytes requested by an <code>-Xmx</code> argument, or 0 if there is none.
+     */
+    static long parseMaxHeap( String[] jvmArguments )
+    {
+        long maxHeap = 0;
+        if ( jvmArguments != null )
+        {
+            for ( String jvmArgument : jvmArguments )
+            {
+                final String argument = jvmArgument.startsWith( "-" ) ? jvmArgument.substring( 1 ) : jvmArgument;
+                if ( argument.length() > 3 && argument.startsWith( "Xmx" ) )
+                {
+                    maxHeap = parseMemorySize( argument.substring( 3 ) );
+                }
+            }
+        }
+        return maxHeap;
+    }
+
+    private static long parseMemorySize( String size )
+    {
+        final char unit = Character.toLowerCase( size.charAt( size.length() - 1 ) );
+        final long multiplier;
+        if ( unit == 'k' )
+        {
+            multiplier = FileUtils.ONE_KB;
+        }
+        else if ( unit == 'm' )
+        {
+            multiplier = FileUtils.ONE_MB;
+        }
+        else if ( unit == 'g' )
+        {
+            multiplier = FileUtils.ONE_GB;
+        }
+        else
+        {
+            multiplier = 1;
+        }
+        final String digits = multiplier == 1 ? size : size.substring( 0, size.length() - 1 );
+        try
+        {
+            return Long.parseLong( digits ) * multiplier;
+        }
+        catch ( NumberFormatException e )
+        {
+            return 0;
+        }
     }
 
-    private List< String > dexDefaultCommands() throws MojoExecutionException
+    private List< String > dexDefaultCommands( File dxJar )
     {
 
         List< String > commands = new ArrayList< String >();
@@ -478,43 +754,28 @@ public class DexMojo extends AbstractAndroidMojo
             }
         }
         commands.add( "-jar" );
-        commands.add( getAndroidSdk().getDxJarPath() );
+        commands.add( dxJar.getAbsolutePath() );
         commands.add( "--dex" );
 
         return commands;
 
     }
 
-    private void runDex( CommandExecutor executor, File outputFile )
+    private void runDex( File outputFile )
             throws MojoExecutionException
     {
-        final List< String > commands = dexDefaultCommands();
+        final List< String > commands = new ArrayList< String >();
         final Set< File > inputFiles = getDexInputFiles();
         Set< File > filteredFiles = inputFiles;
         if ( parsedPreDex )
         {
-            filteredFiles = preDex( executor, inputFiles );
-        }
-        if ( !parsedOptimize )
-        {
-            commands.add( "--no-optimize" );
-        }
-        if ( parsedCoreLibrary )
-        {
-            commands.add( "--core-library" );
+            filteredFiles = preDex( inputFiles );
         }
+        commands.addAll( dexFlags() );
         if ( parsedIncremental )
         {
             commands.add( "--incremental" );
         }
-        if ( parsedNoLocals )
-        {
-            commands.add( "--no-locals" );
-        }
-        if ( parsedForceJumbo )
-        {
-            commands.add( "--force-jumbo" );
-        }
         if ( parsedMultiDex )
         {
             commands.add( "--multi-dex" );
@@ -543,13 +804,10 @@ public class DexMojo extends AbstractAndroidMojo
             commands.add( inputFile.getAbsolutePath() );
         }
 
-        final String javaExecutable = getJavaExecutable().getAbsolutePath();
-        getLog().debug( javaExecutable + " " + commands.toString() );
         getLog().info( "Convert classes to Dex : " + outputFile );
         try
         {
-            executor.setCaptureStdOut( true );
-            executor.executeCommand( javaExecutable, commands, project.getBasedir(), false );
+            executeDx( new File( getAndroidSdk().getDxJarPath() ), commands );
         }
         catch ( ExecutionException e )
         {
@@ -0,0 +1,200 @@
+package com.jayway.maven.plugins.android.phase08preparepackage;
+
+import com.jayway.maven.plugins.android.SessionScoped;
+import org.apache.maven.execution.MavenSession;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs dx inside the Maven JVM instead of forking a new JVM for every invocation.
+ * <p>
+ * dx.jar is loaded into its own class loader, isolated from the plugin class path. dx keeps its state in static
+ * fields, so a class loader only ever runs one invocation at a time. Idle class loaders are kept per dx.jar for
+ * the whole session, so later invocations in any module reuse already loaded and JIT compiled code.
+ * </p>
+ */
+final class InProcessDexer
+{
+    private static final String DEXER_MAIN = "com.android.dx.command.dexer.Main";
+    private static final String DEXER_ARGUMENTS = DEXER_MAIN + "$Arguments";
+
+    /**
+     * One dexer per session.
+     */
+    private static final SessionScoped<InProcessDexer> DEXERS = new SessionScoped<InProcessDexer>()
+    {
+        @Override
+        protected InProcessDexer create()
+        {
+            return new InProcessDexer();
+        }
+    };
+
+    private final Map<String, LinkedList<Dx>> idleInstances = new HashMap<String, LinkedList<Dx>>();
+    private final DxLoader loader;
+
+    InProcessDexer()
+    {
+        this( new DxLoader()
+        {
+            public Dx load( File dxJar ) throws DexerUnavailableException
+            {
+                return new JarDx( dxJar );
+            }
+        } );
+    }
+
+    InProcessDexer( DxLoader loader )
+    {
+        this.loader = loader;
+    }
+
+    /**
+     * @param session the current Maven session, may be <code>null</code> in which case a new, unshared dexer is
+     *                returned.
+     * @return the dexer shared by all mojos of the session.
+     */
+    static InProcessDexer forSession( MavenSession session )
+    {
+        return DEXERS.get( session );
+    }
+
+    /**
+     * Runs <code>dx --dex</code> with the given arguments.
+     *
+     * @param dxJar     The dx.jar of the build tools to use.
+     * @param arguments The arguments following <code>--dex</code> on the command line.
+     * @return The dx exit code, 0 on success.
+     * @throws DexerUnavailableException if dx.jar cannot be run in process, callers should fork instead.
+     * @throws Exception                 if dx failed with an exception.
+     */
+    int dex( File dxJar, List<String> arguments ) throws Exception
+    {
+        final Dx dx = acquire( dxJar );
+        final int result = dx.run( arguments.toArray( new String[ arguments.size() ] ) );
+        // Only reuse instances that completed normally, a failed run may leave dx's static state inconsistent, so
+        // the instance is dropped on a non-zero result or an exception
+        if ( result == 0 )
+        {
+            release( dxJar, dx );
+        }
+        return result;
+    }
+
+    private Dx acquire( File dxJar ) throws DexerUnavailableException
+    {
+        synchronized ( idleInstances )
+        {
+            final LinkedList<Dx> idle = idleInstances.get( dxJar.getAbsolutePath() );
+            if ( idle != null && !idle.isEmpty() )
+            {
+                return idle.removeFirst();
+            }
+        }
+        return loader.load( dxJar );
+    }
+
+    private void release( File dxJar, Dx dx )
+    {
+        synchronized ( idleInstances )
+        {
+            LinkedList<Dx> idle = idleInstances.get( dxJar.getAbsolutePath() );
+            if ( idle == null )
+            {
+                idle = new LinkedList<Dx>();
+                idleInstances.put( dxJar.getAbsolutePath(), idle );
+            }
+            idle.addFirst( dx );
+        }
+    }
+
+    /**
+     * Thrown when dx.jar does not provide the expected entry points.
+     */
+    static final class DexerUnavailableException extends Exception
+    {
+        DexerUnavailableException( String message, Throwable cause )
+        {
+            super( message, cause );
+        }
+    }
+
+    /**
+     * A loaded dx, running one invocation at a time.
+     */
+    interface Dx
+    {
+        int run( String[] arguments ) throws Exception;
+    }
+
+    /**
+     * Loads a new dx from dx.jar.
+     */
+    interface DxLoader
+    {
+        Dx load( File dxJar ) throws DexerUnavailableException;
+    }
+
+    /**
+     * dx.jar loaded in its own class loader.
+     */
+    private static final class JarDx implements Dx
+    {
+        private final Class<?> argumentsClass;
+        private final Method parse;
+        private final Method run;
+
+        private JarDx( File dxJar ) throws DexerUnavailableException
+        {
+            try
+            {
+                // Parent is the bootstrap class loader, so nothing of the plugin class path leaks into dx
+                final ClassLoader classLoader = new URLClassLoader( new URL[] { dxJar.toURI().toURL() }, null );
+                final Class<?> mainClass = classLoader.loadClass( DEXER_MAIN );
+                argumentsClass = classLoader.loadClass( DEXER_ARGUMENTS );
+                parse = argumentsClass.getDeclaredMethod( "parse", String[].class );
+                parse.setAccessible( true );
+                run = mainClass.getMethod( "run", argumentsClass );
+            }
+            catch ( MalformedURLException e )
+            {
+                throw new DexerUnavailableException( "Invalid dx.jar location " + dxJar, e );
+            }
+            catch ( ClassNotFoundException e )
+            {
+                throw new DexerUnavailableException( "Unsupported dx.jar " + dxJar, e );
+            }
+            catch ( NoSuchMethodException e )
+            {
+                throw new DexerUnavailableException( "Unsupported dx.jar " + dxJar, e );
+            }
+        }
+
+        public int run( String[] arguments ) throws Exception
+        {
+            try
+            {
+                final Object parsedArguments = argumentsClass.newInstance();
+                parse.invoke( parsedArguments, new Object[] { arguments } );
+                return ( Integer ) run.invoke( null, parsedArguments );
+            }
+            catch ( InvocationTargetException e )
+            {
+                if ( e.getCause() instanceof Exception )
+                {
+                    throw ( Exception ) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+}
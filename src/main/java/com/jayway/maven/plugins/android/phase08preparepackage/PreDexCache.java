@@ -0,0 +1,91 @@
+package com.jayway.maven.plugins.android.phase08preparepackage;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.jayway.maven.plugins.android.common.ChecksumHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Store of pre-dexed jars, keyed by the checksum of the jar, the checksum of dx.jar and the dx flags.
+ * <p>
+ * Entries only depend on their inputs, so the store can be shared by several modules, branches or checkouts by
+ * pointing <code>preDexLibLocation</code> at the same folder. Entries are written to a temporary file first and
+ * renamed into place, so a concurrent build never picks up a partially written jar.
+ * </p>
+ */
+final class PreDexCache
+{
+    private static final String TEMP_PREFIX = "tmp-";
+
+    private final File directory;
+    private final String dxChecksum;
+    private final List<String> dxFlags;
+
+    /**
+     * @param directory Folder holding the pre-dexed jars.
+     * @param dxJar     The dx.jar used for pre-dexing.
+     * @param dxFlags   The dx flags used for pre-dexing.
+     * @throws IOException if dx.jar cannot be read.
+     */
+    PreDexCache( File directory, File dxJar, List<String> dxFlags ) throws IOException
+    {
+        this.directory = directory;
+        this.dxChecksum = ChecksumHelper.sha1( dxJar );
+        this.dxFlags = dxFlags;
+        directory.mkdirs();
+    }
+
+    /**
+     * @param jar   A jar to pre-dex.
+     * @return The location of the pre-dexed jar, which exists if the jar has been pre-dexed before.
+     * @throws IOException if the jar cannot be read.
+     */
+    File getEntry( File jar ) throws IOException
+    {
+        return new File( directory, key( ChecksumHelper.sha1( jar ), dxChecksum, dxFlags ) + ".jar" );
+    }
+
+    /**
+     * @return A fresh file for dx to write to before it is moved into place with {@link #commit(File, File)}.
+     */
+    File newTemporaryFile()
+    {
+        return new File( directory, TEMP_PREFIX + UUID.randomUUID() + ".jar" );
+    }
+
+    /**
+     * Moves a pre-dexed jar into place.
+     *
+     * @throws IOException if the jar could not be moved and no concurrent build stored the entry in the meantime.
+     */
+    void commit( File temporaryFile, File entry ) throws IOException
+    {
+        if ( !temporaryFile.renameTo( entry ) )
+        {
+            // Another build may have won the race, which is fine
+            final boolean stored = entry.isFile();
+            temporaryFile.delete();
+            if ( !stored )
+            {
+                throw new IOException( "Could not move " + temporaryFile + " to " + entry );
+            }
+        }
+    }
+
+    static String key( String jarChecksum, String dxChecksum, List<String> dxFlags )
+    {
+        final Hasher hasher = Hashing.sha1().newHasher();
+        hasher.putString( jarChecksum, Charsets.UTF_8 );
+        hasher.putString( dxChecksum, Charsets.UTF_8 );
+        for ( String flag : dxFlags )
+        {
+            hasher.putString( "\n" + flag, Charsets.UTF_8 );
+        }
+        return hasher.hash().toString();
+    }
+}
@@ -27,6 +27,9 @@ import com.jayway.maven.plugins.android.CommandExecutor;
 import com.jayway.maven.plugins.android.ExecutionException;
 import com.jayway.maven.plugins.android.common.AaptCommandBuilder;
 import com.jayway.maven.plugins.android.common.NativeHelper;
+import com.jayway.maven.plugins.android.common.RawZipFile;
+import com.jayway.maven.plugins.android.common.RawZipOutputStream;
+import com.jayway.maven.plugins.android.common.ZipAligner;
 import com.jayway.maven.plugins.android.config.ConfigHandler;
 import com.jayway.maven.plugins.android.config.ConfigPojo;
 import com.jayway.maven.plugins.android.config.PullParameter;
@@ -48,18 +51,21 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 
 import java.io.File;
 import java.io.FileFilter;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -219,6 +225,50 @@ public class ApkMojo extends AbstractAndroidMojo
     @PullParameter( defaultValue = "arm-linux-androideabi-4.4.3" )
     private String apkNativeToolchain;
 
+    /**
+     * Packages the apk with a built in packager instead of the SDK's ApkBuilder. It packages the same entries, but
+     * compresses them on several threads and copies the entries of the resource package and of jars without
+     * compressing them again. Duplicates found by {@link #extractDuplicates} are left out while packaging.
+     */
+    @Parameter( property = "android.apk.parallelPackaging" )
+    @PullParameter( defaultValue = "false" )
+    private Boolean apkParallelPackaging;
+
+    /**
+     * Packages the apk incrementally with the packager of {@link #apkParallelPackaging}, which this implies. Loose
+     * files like classes.dex that did not change since the previous build are copied from the previous apk instead
+     * of being compressed again, and the digests of unchanged entries are reused when signing. The previous apk is
+     * described by a <code>.entries</code> file next to it; any other change to the apk leads to a full build.
+     */
+    @Parameter( property = "android.apk.incremental" )
+    @PullParameter( defaultValue = "false" )
+    private Boolean apkIncremental;
+
+    /**
+     * Number of threads compressing entries with {@link #apkParallelPackaging}. Defaults to the number of
+     * processors.
+     */
+    @Parameter( property = "android.apk.packagingThreads" )
+    @PullParameter( defaultValueGetterMethod = "getDefaultPackagingThreads" )
+    private Integer apkPackagingThreads;
+
+    /**
+     * Aligns the uncompressed entries of the apk to 4 bytes, like zipalign does. With
+     * {@link #apkParallelPackaging} the entries are aligned while packaging, otherwise the apk is aligned in process
+     * afterwards, without compressing anything again. Either way, a later zipalign goal finds nothing to do.
+     */
+    @Parameter( property = "android.apk.zipalign" )
+    @PullParameter( defaultValue = "false" )
+    private Boolean apkZipalign;
+
+    /**
+     * Aligns uncompressed shared libraries to 4096 bytes instead, like <code>zipalign -p</code>, when
+     * {@link #apkZipalign} is enabled.
+     */
+    @Parameter( property = "android.apk.pageAlignSharedLibraries" )
+    @PullParameter( defaultValue = "false" )
+    private Boolean apkPageAlignSharedLibraries;
+
     /**
      * Specifies the final name of the library output by the build (this allows
      */
@@ -301,7 +351,15 @@ public class ApkMojo extends AbstractAndroidMojo
             final File unsignedOutputFile = new File( targetDirectory,
                     finalName + "-unsigned." + APK );
             getLog().info( "Creating additional unsigned apk file " + unsignedOutputFile );
-            createApkFile( unsignedOutputFile, false );
+            try
+            {
+                // The unsigned apk only lacks the signature, so copy the entries instead of packaging again
+                copyWithoutDebugSignature( outputFile, unsignedOutputFile, apkZipalign ? getZipAligner() : null );
+            }
+            catch ( IOException e )
+            {
+                throw new MojoExecutionException( "Could not create unsigned apk " + unsignedOutputFile, e );
+            }
             projectHelper.attachArtifact( project, unsignedOutputFile,
                     classifier == null ? "unsigned" : classifier + "_unsigned" );
         }
@@ -344,8 +402,16 @@ public class ApkMojo extends AbstractAndroidMojo
         final Collection<File> nativeFolders = getNativeLibraryFolders();
         getLog().info( "Adding native libraries : " + nativeFolders );
 
-        doAPKWithAPKBuilder( outputFile, dexFile, zipArchive, sourceFolders, jarFiles, nativeFolders,
+        if ( apkParallelPackaging || apkIncremental )
+        {
+            doAPKWithParallelBuilder( outputFile, dexFile, zipArchive, sourceFolders, jarFiles, nativeFolders,
                     signWithDebugKeyStore );
+        }
+        else
+        {
+            doAPKWithAPKBuilder( outputFile, dexFile, zipArchive, sourceFolders, jarFiles, nativeFolders,
+                    signWithDebugKeyStore );
+        }
 
         if ( this.apkMetaInf != null )
         {
@@ -358,6 +424,71 @@ public class ApkMojo extends AbstractAndroidMojo
                 throw new MojoExecutionException( "Could not add META-INF resources.", e );
             }
         }
+
+        if ( apkZipalign )
+        {
+            try
+            {
+                if ( getZipAligner().alignInPlace( outputFile ) )
+                {
+                    getLog().debug( "Aligned " + outputFile );
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new MojoExecutionException( "Could not align " + outputFile, e );
+            }
+        }
+    }
+
+    private ZipAligner getZipAligner()
+    {
+        return new ZipAligner( ZipAligner.DEFAULT_ALIGNMENT, apkPageAlignSharedLibraries );
+    }
+
+    /**
+     * Copies all entries of a debug signed apk, except the signature files, without recompressing them. The result
+     * is identical to the apk that ApkBuilder creates without a key.
+     *
+     * @param signedApk     Apk signed by ApkBuilder with the debug key.
+     * @param unsignedApk   The unsigned apk to create.
+     * @param aligner       Aligns the copied entries, may be <code>null</code>.
+     */
+    static void copyWithoutDebugSignature( File signedApk, File unsignedApk, ZipAligner aligner )
+            throws IOException
+    {
+        final RawZipFile source = new RawZipFile( signedApk );
+        try
+        {
+            final RawZipOutputStream target = new RawZipOutputStream( new FileOutputStream( unsignedApk ) );
+            try
+            {
+                for ( RawZipFile.Entry entry : source.getEntries() )
+                {
+                    if ( !isDebugSignatureFile( entry.getName() ) )
+                    {
+                        target.copyEntry( source, entry,
+                                aligner == null ? 0 : aligner.getAlignment( entry.getName(), entry.getMethod() ) );
+                    }
+                }
+            }
+            finally
+            {
+                target.close();
+            }
+        }
+        finally
+        {
+            source.close();
+        }
+    }
+
+    /**
+     * @return true for the files written by ApkBuilder when signing.
+     */
+    private static boolean isDebugSignatureFile( String name )
+    {
+        return name.equals( "META-INF/MANIFEST.MF" ) || name.startsWith( "META-INF/CERT." );
     }
 
     private void addMetaInf( File outputFile, ArrayList<File> jarFiles ) throws IOException
@@ -441,26 +572,59 @@ public class ApkMojo extends AbstractAndroidMojo
         zin.close();
     }
 
-    private Map<String, List<File>> jars = new HashMap<String, List<File>>();
-
-    private void computeDuplicateFiles( File jar ) throws IOException
+    /**
+     * Finds the files that more than one of the embedded jars contains. A file is kept in the first jar and has to
+     * be left out of all later ones.
+     *
+     * @param jarFiles  The embedded jars, in packaging order.
+     * @param index     Index of the jar entries.
+     * @return The entries to leave out, by jar. Jars without duplicates are not included.
+     */
+    private Map<File, Set<String>> findDuplicateFiles( List<File> jarFiles, JarEntryIndex index )
     {
-        ZipFile file = new ZipFile( jar );
-        Enumeration<? extends ZipEntry> list = file.entries();
-        while ( list.hasMoreElements() )
-        {
-            ZipEntry ze = list.nextElement();
-            if ( ! ( ze.getName().contains( "META-INF/" ) || ze.isDirectory() ) )
-            { // Exclude META-INF and Directories
-                List<File> l = jars.get( ze.getName() );
-                if ( l == null )
+        final Map<String, File> owners = new HashMap<String, File>();
+        final Map<File, Set<String>> duplicates = new LinkedHashMap<File, Set<String>>();
+        for ( File jar : jarFiles )
+        {
+            if ( ! jar.isFile() )
+            {
+                continue;
+            }
+            final List<String> entries;
+            try
+            {
+                entries = index.getEntries( jar );
+            }
+            catch ( IOException e )
+            {
+                getLog().warn( "Cannot compute duplicates files from " + jar.getAbsolutePath(), e );
+                continue;
+            }
+            for ( String entry : entries )
+            {
+                if ( entry.contains( "META-INF/" ) )
                 {
-                    l = new ArrayList<File>();
-                    jars.put( ze.getName(), l );
+                    continue;
+                }
+                final File owner = owners.get( entry );
+                if ( owner == null )
+                {
+                    owners.put( entry, jar );
+                }
+                else if ( ! owner.equals( jar ) )
+                {
+                    getLog().warn( "Duplicate file " + entry + " : [" + owner + ", " + jar + "]" );
+                    Set<String> excluded = duplicates.get( jar );
+                    if ( excluded == null )
+                    {
+                        excluded = new HashSet<String>();
+                        duplicates.put( jar, excluded );
+                    }
+                    excluded.add( entry );
                 }
-                l.add( jar );
             }
         }
+        return duplicates;
     }
 
     /**
@@ -482,56 +646,19 @@ public class ApkMojo extends AbstractAndroidMojo
         getLog().debug( "Building APK with internal APKBuilder" );
         sourceFolders.add( projectOutputDirectory );
 
-        for ( Artifact artifact : getRelevantCompileArtifacts() )
+        for ( Map.Entry<File, Set<String>> duplicates : collectEmbeddedJars( jarFiles ).entrySet() )
         {
-            getLog().debug( "Found artifact for APK :" + artifact );
-            if ( extractDuplicates )
-            {
-                try
-                {
-                    computeDuplicateFiles( artifact.getFile() );
-                }
-                catch ( Exception e )
-                {
-                    getLog().warn( "Cannot compute duplicates files from " + artifact.getFile().getAbsolutePath(), e );
-                }
-            }
-            jarFiles.add( artifact.getFile() );
-        }
-
-        // Check duplicates.
-        if ( extractDuplicates )
-        {
-            getLog().debug( "Extracting duplicates" );
-            List<String> duplicates = new ArrayList<String>();
-            List<File> jarToModify = new ArrayList<File>();
-            for ( String s : jars.keySet() )
+            final File file = duplicates.getKey();
+            try
             {
-                List<File> l = jars.get( s );
-                if ( l.size() > 1 )
-                {
-                    getLog().warn( "Duplicate file " + s + " : " + l );
-                    duplicates.add( s );
-                    for ( int i = 1; i < l.size(); i++ )
-                    {
-                        if ( ! jarToModify.contains( l.get( i ) ) )
-                        {
-                            jarToModify.add( l.get( i ) );
-                        }
-                    }
-                }
+                // ApkBuilder cannot filter entries of a jar, so it gets a copy without the duplicates
+                final File newJar = jarEntryIndex().getJarWithout( file, duplicates.getValue() );
+                getLog().debug( "Removed duplicates from " + newJar );
+                jarFiles.set( jarFiles.indexOf( file ), newJar );
             }
-
-            // Rebuild jars.
-            for ( File file : jarToModify )
+            catch ( IOException e )
             {
-                final File newJar = removeDuplicatesFromJar( file, duplicates );
-                getLog().debug( "Removed duplicates from " + newJar );
-                if ( newJar != null )
-                {
-                    final int index = jarFiles.indexOf( file );
-                    jarFiles.set( index, newJar );
-                }
+                getLog().error( "Cannot remove duplicates from " + file + " : " + e.getMessage() );
             }
         }
 
@@ -552,55 +679,10 @@ public class ApkMojo extends AbstractAndroidMojo
 
             for ( File jarFile : jarFiles )
             {
-                boolean excluded = false;
-
-                if ( excludeJarResourcesPatterns != null )
-                {
-                    final String name = jarFile.getName();
-                    getLog().debug( "Checking " + name + " against patterns" );
-                    for ( Pattern pattern : excludeJarResourcesPatterns )
-                    {
-                        final Matcher matcher = pattern.matcher( name );
-                        if ( matcher.matches() )
-                        {
-                            getLog().debug( "Jar " + name + " excluded by pattern " + pattern );
-                            excluded = true;
-                            break;
-                        }
-                        else
-                        {
-                            getLog().debug( "Jar " + name + " not excluded by pattern " + pattern );
-                        }
-                    }
-                }
-
-                if ( excluded )
-                {
-                    continue;
-                }
-
-                if ( jarFile.isDirectory() )
+                for ( File packagedJar : getPackagedJars( jarFile ) )
                 {
-                    getLog().debug( "Adding resources from jar folder : " + jarFile );
-                    final String[] filenames = jarFile.list( new FilenameFilter()
-                    {
-                        public boolean accept( File dir, String name )
-                        {
-                            return PATTERN_JAR_EXT.matcher( name ).matches();
-                        }
-                    } );
-
-                    for ( String filename : filenames )
-                    {
-                        final File innerJar = new File( jarFile, filename );
-                        getLog().debug( "Adding resources from innerJar : " + innerJar );
-                        apkBuilder.addResourcesFromJar( innerJar );
-                    }
-                }
-                else
-                {
-                    getLog().debug( "Adding resources from : " + jarFile );
-                    apkBuilder.addResourcesFromJar( jarFile );
+                    getLog().debug( "Adding resources from : " + packagedJar );
+                    apkBuilder.addResourcesFromJar( packagedJar );
                 }
             }
 
@@ -629,106 +711,198 @@ public class ApkMojo extends AbstractAndroidMojo
         }
     }
 
-    private void addSecondaryDexes( File dexFile, ApkBuilder apkBuilder ) throws ApkCreationException,
-            SealedApkException, DuplicateFileException
-    {
-        int dexNumber = 2;
-        String dexFileName = getNextDexFileName( dexNumber );
-        File secondDexFile = createNextDexFile( dexFile, dexFileName );
-        while ( secondDexFile.exists() )
-        {
-            apkBuilder.addFile( secondDexFile, dexFileName );
-            dexNumber++;
-            dexFileName = getNextDexFileName( dexNumber );
-            secondDexFile = createNextDexFile( dexFile, dexFileName );
-        }
-    }
-
-    private File createNextDexFile( File dexFile, String dexFileName )
-    {
-        return new File( dexFile.getParentFile(), dexFileName );
-    }
-
-    private String getNextDexFileName( int dexNumber )
-    {
-        return CLASSES + dexNumber + DEX_SUFFIX;
-    }
-
-    private File removeDuplicatesFromJar( File in, List<String> duplicates )
+    /**
+     * Creates the APK file using {@link ParallelApkBuilder}.
+     *
+     * @param outputFile            the output file
+     * @param dexFile               the dex file
+     * @param zipArchive            the classes folder
+     * @param sourceFolders         the resources
+     * @param jarFiles              the embedded java files
+     * @param nativeFolders         the native folders
+     * @param signWithDebugKeyStore enables the signature of the APK using the debug key
+     * @throws MojoExecutionException if the APK cannot be created.
+     */
+    private void doAPKWithParallelBuilder( File outputFile, File dexFile, File zipArchive,
+                                           Collection<File> sourceFolders, List<File> jarFiles,
+                                           Collection<File> nativeFolders, boolean signWithDebugKeyStore )
+            throws MojoExecutionException
     {
-        String target = projectOutputDirectory.getAbsolutePath();
-        File tmp = new File( target, "unpacked-embedded-jars" );
-        tmp.mkdirs();
-        File out = new File( tmp, in.getName() );
+        getLog().debug( "Building APK with " + apkPackagingThreads + " thread(s)" );
+        sourceFolders.add( projectOutputDirectory );
+        final Map<File, Set<String>> duplicates = collectEmbeddedJars( jarFiles );
 
-        if ( out.exists() )
-        {
-            return out;
-        }
-        else
+        try
         {
+            PrivateKey key = null;
+            X509Certificate certificate = null;
+            if ( signWithDebugKeyStore )
+            {
+                final ApkBuilder.SigningInfo signingInfo = ApkBuilder.getDebugKey( ApkBuilder.getDebugKeystore(),
+                        null );
+                key = signingInfo.key;
+                certificate = signingInfo.certificate;
+            }
+            final ParallelApkBuilder apkBuilder = new ParallelApkBuilder( outputFile, zipArchive, dexFile, key,
+                    certificate, apkDebug, apkPackagingThreads );
             try
             {
-                out.createNewFile();
+                if ( apkZipalign )
+                {
+                    apkBuilder.setAligner( getZipAligner() );
+                }
+                apkBuilder.setIncremental( apkIncremental );
+                for ( File sourceFolder : sourceFolders )
+                {
+                    getLog().debug( "Adding source folder : " + sourceFolder );
+                    apkBuilder.addSourceFolder( sourceFolder );
+                }
+
+                for ( File jarFile : jarFiles )
+                {
+                    for ( File packagedJar : getPackagedJars( jarFile ) )
+                    {
+                        getLog().debug( "Adding resources from : " + packagedJar );
+                        final Set<String> excluded = duplicates.get( packagedJar );
+                        apkBuilder.addResourcesFromJar( packagedJar,
+                                excluded == null ? Collections.<String>emptySet() : excluded );
+                    }
+                }
+
+                int dexNumber = 2;
+                String dexFileName = getNextDexFileName( dexNumber );
+                File secondDexFile = createNextDexFile( dexFile, dexFileName );
+                while ( secondDexFile.exists() )
+                {
+                    apkBuilder.addFile( secondDexFile, dexFileName );
+                    dexNumber++;
+                    dexFileName = getNextDexFileName( dexNumber );
+                    secondDexFile = createNextDexFile( dexFile, dexFileName );
+                }
+
+                for ( File nativeFolder : nativeFolders )
+                {
+                    getLog().debug( "Adding native library : " + nativeFolder );
+                    apkBuilder.addNativeLibraries( nativeFolder );
+                }
+                apkBuilder.sealApk();
+                if ( apkIncremental )
+                {
+                    getLog().info( "Reused " + apkBuilder.getReusedEntries() + " unchanged entries of " + outputFile );
+                }
             }
-            catch ( IOException e )
+            finally
             {
-                e.printStackTrace();
+                apkBuilder.close();
             }
         }
+        catch ( ApkCreationException e )
+        {
+            throw new MojoExecutionException( e.getMessage() );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( e.getMessage(), e );
+        }
+    }
 
-        // Create a new Jar file
-        final FileOutputStream fos;
-        final ZipOutputStream jos;
-        try
+    /**
+     * Adds the embedded jars to the given list and finds the duplicate files between them if
+     * {@link #extractDuplicates} is set.
+     *
+     * @param jarFiles  the list to add the embedded jars to
+     * @return The entries to leave out, by jar.
+     */
+    private Map<File, Set<String>> collectEmbeddedJars( List<File> jarFiles )
+    {
+        for ( Artifact artifact : getRelevantCompileArtifacts() )
         {
-            fos = new FileOutputStream( out );
-            jos = new ZipOutputStream( fos );
+            getLog().debug( "Found artifact for APK :" + artifact );
+            jarFiles.add( artifact.getFile() );
         }
-        catch ( FileNotFoundException e1 )
+
+        if ( extractDuplicates )
         {
-            getLog().error( "Cannot remove duplicates : the output file " + out.getAbsolutePath() + " does not found" );
-            return null;
+            getLog().debug( "Extracting duplicates" );
+            return findDuplicateFiles( jarFiles, jarEntryIndex() );
         }
+        return Collections.emptyMap();
+    }
 
-        final ZipFile inZip;
-        try
+    private JarEntryIndex jarEntryIndex()
+    {
+        return new JarEntryIndex( new File( targetDirectory, "jar-entry-index" ) );
+    }
+
+    /**
+     * @param jarFile   an embedded jar, or a folder of jars
+     * @return The jars to take resources from, none if the jar is excluded by {@link #excludeJarResources}.
+     */
+    private List<File> getPackagedJars( File jarFile )
+    {
+        if ( excludeJarResourcesPatterns != null )
         {
-            inZip = new ZipFile( in );
-            Enumeration<? extends ZipEntry> entries = inZip.entries();
-            while ( entries.hasMoreElements() )
+            final String name = jarFile.getName();
+            getLog().debug( "Checking " + name + " against patterns" );
+            for ( Pattern pattern : excludeJarResourcesPatterns )
             {
-                ZipEntry entry = entries.nextElement();
-                // If the entry is not a duplicate, copy.
-                if ( ! duplicates.contains( entry.getName() ) )
+                final Matcher matcher = pattern.matcher( name );
+                if ( matcher.matches() )
+                {
+                    getLog().debug( "Jar " + name + " excluded by pattern " + pattern );
+                    return Collections.emptyList();
+                }
+                else
                 {
-                    // copy the entry header to jos
-                    jos.putNextEntry( entry );
-                    InputStream currIn = inZip.getInputStream( entry );
-                    copyStreamWithoutClosing( currIn, jos );
-                    currIn.close();
-                    jos.closeEntry();
+                    getLog().debug( "Jar " + name + " not excluded by pattern " + pattern );
                 }
             }
         }
-        catch ( IOException e )
-        {
-            getLog().error( "Cannot removing duplicates : " + e.getMessage() );
-            return null;
-        }
 
-        try
+        if ( jarFile.isDirectory() )
         {
-            inZip.close();
-            jos.close();
-            fos.close();
+            getLog().debug( "Adding resources from jar folder : " + jarFile );
+            final String[] filenames = jarFile.list( new FilenameFilter()
+            {
+                public boolean accept( File dir, String name )
+                {
+                    return PATTERN_JAR_EXT.matcher( name ).matches();
+                }
+            } );
+
+            final List<File> innerJars = new ArrayList<File>();
+            for ( String filename : filenames )
+            {
+                innerJars.add( new File( jarFile, filename ) );
+            }
+            return innerJars;
         }
-        catch ( IOException e )
+        return Collections.singletonList( jarFile );
+    }
+
+    private void addSecondaryDexes( File dexFile, ApkBuilder apkBuilder ) throws ApkCreationException,
+            SealedApkException, DuplicateFileException
+    {
+        int dexNumber = 2;
+        String dexFileName = getNextDexFileName( dexNumber );
+        File secondDexFile = createNextDexFile( dexFile, dexFileName );
+        while ( secondDexFile.exists() )
         {
-            // ignore it.
+            apkBuilder.addFile( secondDexFile, dexFileName );
+            dexNumber++;
+            dexFileName = getNextDexFileName( dexNumber );
+            secondDexFile = createNextDexFile( dexFile, dexFileName );
         }
-        getLog().info( in.getName() + " rewritten without duplicates : " + out.getAbsolutePath() );
-        return out;
+    }
+
+    private File createNextDexFile( File dexFile, String dexFileName )
+    {
+        return new File( dexFile.getParentFile(), dexFileName );
+    }
+
+    private String getNextDexFileName( int dexNumber )
+    {
+        return CLASSES + dexNumber + DEX_SUFFIX;
     }
 
     /**
@@ -970,6 +1144,14 @@ public class ApkMojo extends AbstractAndroidMojo
         }
     }
 
+    /**
+     * Used to populated the {@link #apkPackagingThreads} attribute via reflection.
+     */
+    private Integer getDefaultPackagingThreads()
+    {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
     /**
      * Used to populated the {@link #apkMetaInf} attribute via reflection.
      */
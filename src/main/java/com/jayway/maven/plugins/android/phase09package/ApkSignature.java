@@ -0,0 +1,240 @@
+package com.jayway.maven.plugins.android.phase09package;
+
+import com.google.common.io.BaseEncoding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+
+/**
+ * The jar signature files of an apk, as written by ApkBuilder when signing: a manifest with the SHA-1 digest of
+ * every entry, a signature file with the digests of the manifest, of its main attributes and of each of its
+ * sections, and a PKCS#7 block signing the signature file.
+ * <p>
+ * Unlike ApkBuilder, the entry digests are passed in, so they can be computed while the entries are compressed.
+ * </p>
+ */
+final class ApkSignature
+{
+    static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+    static final String SIGNATURE_FILE_NAME = "META-INF/CERT.SF";
+
+    private static final String CREATED_BY = "Created-By: 1.0 (Android)";
+    private static final int MAX_LINE_LENGTH = 72;
+
+    private static final byte[] OID_SIGNED_DATA = { 0x06, 0x09, 0x2a, ( byte ) 0x86, 0x48, ( byte ) 0x86, ( byte ) 0xf7,
+            0x0d, 0x01, 0x07, 0x02 };
+    private static final byte[] OID_DATA = { 0x06, 0x09, 0x2a, ( byte ) 0x86, 0x48, ( byte ) 0x86, ( byte ) 0xf7,
+            0x0d, 0x01, 0x07, 0x01 };
+    private static final byte[] OID_SHA1 = { 0x06, 0x05, 0x2b, 0x0e, 0x03, 0x02, 0x1a };
+    private static final byte[] OID_RSA = { 0x06, 0x09, 0x2a, ( byte ) 0x86, 0x48, ( byte ) 0x86, ( byte ) 0xf7, 0x0d,
+            0x01, 0x01, 0x01 };
+    private static final byte[] OID_DSA = { 0x06, 0x07, 0x2a, ( byte ) 0x86, 0x48, ( byte ) 0xce, 0x38, 0x04, 0x01 };
+    private static final byte[] NULL = { 0x05, 0x00 };
+    private static final byte[] VERSION_1 = { 0x02, 0x01, 0x01 };
+
+    private static final int SEQUENCE = 0x30;
+    private static final int SET = 0x31;
+    private static final int INTEGER = 0x02;
+    private static final int OCTET_STRING = 0x04;
+    private static final int CONTEXT_0 = 0xa0;
+
+    private final PrivateKey key;
+    private final X509Certificate certificate;
+    private final byte[] manifestMainAttributes = section( "Manifest-Version: 1.0", CREATED_BY );
+    private final ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream signatureFileEntries = new ByteArrayOutputStream();
+
+    /**
+     * @param key           RSA or DSA key to sign with.
+     * @param certificate   Certificate of the key.
+     */
+    ApkSignature( PrivateKey key, X509Certificate certificate ) throws GeneralSecurityException
+    {
+        if ( !"RSA".equals( key.getAlgorithm() ) && !"DSA".equals( key.getAlgorithm() ) )
+        {
+            throw new GeneralSecurityException( "Unsupported key algorithm " + key.getAlgorithm() );
+        }
+        this.key = key;
+        this.certificate = certificate;
+        write( manifest, manifestMainAttributes );
+    }
+
+    /**
+     * Adds an entry of the apk to the manifest.
+     *
+     * @param name  Entry name.
+     * @param sha1  SHA-1 digest of the uncompressed entry.
+     */
+    void addEntry( String name, byte[] sha1 )
+    {
+        final byte[] section = section( "Name: " + name, "SHA1-Digest: " + base64( sha1 ) );
+        write( manifest, section );
+        write( signatureFileEntries, section( "Name: " + name, "SHA1-Digest: " + base64( sha1( section ) ) ) );
+    }
+
+    byte[] getManifest()
+    {
+        return manifest.toByteArray();
+    }
+
+    String getSignatureBlockName()
+    {
+        return "META-INF/CERT." + key.getAlgorithm();
+    }
+
+    /**
+     * @return The signature file, to be called once all entries have been added.
+     */
+    byte[] getSignatureFile()
+    {
+        final ByteArrayOutputStream signatureFile = new ByteArrayOutputStream();
+        write( signatureFile, section( "Signature-Version: 1.0", CREATED_BY,
+                "SHA1-Digest-Manifest: " + base64( sha1( getManifest() ) ),
+                "SHA1-Digest-Manifest-Main-Attributes: " + base64( sha1( manifestMainAttributes ) ) ) );
+        write( signatureFile, signatureFileEntries.toByteArray() );
+        return signatureFile.toByteArray();
+    }
+
+    /**
+     * @param signatureFile The result of {@link #getSignatureFile()}.
+     * @return The DER encoded PKCS#7 signed data block.
+     * @throws GeneralSecurityException if the signature file cannot be signed.
+     */
+    byte[] getSignatureBlock( byte[] signatureFile ) throws GeneralSecurityException
+    {
+        final Signature signature = Signature.getInstance( "SHA1with" + key.getAlgorithm() );
+        signature.initSign( key );
+        signature.update( signatureFile );
+
+        final byte[] digestAlgorithm = der( SEQUENCE, OID_SHA1, NULL );
+        final byte[] encryptionAlgorithm = "RSA".equals( key.getAlgorithm() )
+                ? der( SEQUENCE, OID_RSA, NULL ) : der( SEQUENCE, OID_DSA );
+        final byte[] signerInfo = der( SEQUENCE,
+                VERSION_1,
+                der( SEQUENCE, certificate.getIssuerX500Principal().getEncoded(),
+                        der( INTEGER, certificate.getSerialNumber().toByteArray() ) ),
+                digestAlgorithm,
+                encryptionAlgorithm,
+                der( OCTET_STRING, signature.sign() ) );
+        final byte[] signedData = der( SEQUENCE,
+                VERSION_1,
+                der( SET, digestAlgorithm ),
+                der( SEQUENCE, OID_DATA ),
+                der( CONTEXT_0, certificate.getEncoded() ),
+                der( SET, signerInfo ) );
+        return der( SEQUENCE, OID_SIGNED_DATA, der( CONTEXT_0, signedData ) );
+    }
+
+    static byte[] sha1( byte[] data )
+    {
+        return newSha1().digest( data );
+    }
+
+    static MessageDigest newSha1()
+    {
+        try
+        {
+            return MessageDigest.getInstance( "SHA1" );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * Formats a manifest section, wrapping lines at 72 bytes like {@link java.util.jar.Manifest} does.
+     */
+    static byte[] section( String... lines )
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for ( String line : lines )
+        {
+            final byte[] bytes = utf8( line );
+            int start = 0;
+            int maxLength = MAX_LINE_LENGTH;
+            while ( bytes.length - start > maxLength )
+            {
+                int end = start + maxLength;
+                // Do not split multi byte characters
+                while ( ( bytes[ end ] & 0xc0 ) == 0x80 )
+                {
+                    end--;
+                }
+                out.write( bytes, start, end - start );
+                out.write( '\r' );
+                out.write( '\n' );
+                out.write( ' ' );
+                start = end;
+                maxLength = MAX_LINE_LENGTH - 1;
+            }
+            out.write( bytes, start, bytes.length - start );
+            out.write( '\r' );
+            out.write( '\n' );
+        }
+        out.write( '\r' );
+        out.write( '\n' );
+        return out.toByteArray();
+    }
+
+    private static byte[] der( int tag, byte[]... contents )
+    {
+        int length = 0;
+        for ( byte[] content : contents )
+        {
+            length += content.length;
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream( length + 6 );
+        out.write( tag );
+        if ( length < 0x80 )
+        {
+            out.write( length );
+        }
+        else
+        {
+            int lengthBytes = 1;
+            while ( ( length >>> ( 8 * lengthBytes ) ) != 0 )
+            {
+                lengthBytes++;
+            }
+            out.write( 0x80 | lengthBytes );
+            for ( int i = lengthBytes - 1; i >= 0; i-- )
+            {
+                out.write( ( length >>> ( 8 * i ) ) & 0xff );
+            }
+        }
+        for ( byte[] content : contents )
+        {
+            write( out, content );
+        }
+        return out.toByteArray();
+    }
+
+    private static void write( ByteArrayOutputStream out, byte[] bytes )
+    {
+        out.write( bytes, 0, bytes.length );
+    }
+
+    private static String base64( byte[] bytes )
+    {
+        return BaseEncoding.base64().encode( bytes );
+    }
+
+    private static byte[] utf8( String value )
+    {
+        try
+        {
+            return value.getBytes( "UTF-8" );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+}
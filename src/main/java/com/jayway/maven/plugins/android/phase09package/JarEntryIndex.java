@@ -0,0 +1,152 @@
+package com.jayway.maven.plugins.android.phase09package;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.jayway.maven.plugins.android.common.ChecksumHelper;
+import com.jayway.maven.plugins.android.common.RawZipFile;
+import com.jayway.maven.plugins.android.common.RawZipOutputStream;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Persistent index of the entries of embedded jars, used to find duplicate files between them.
+ * <p>
+ * The entry names of a jar are read from its central directory once and stored under the checksum of the jar, so
+ * later builds only need the (memoized) checksum. Jars without some of their entries are stored the same way, keyed
+ * by the jar checksum and the removed entries, and are only written when one of those changes.
+ * </p>
+ */
+final class JarEntryIndex
+{
+    private static final String TEMP_PREFIX = "tmp-";
+
+    private final File directory;
+
+    /**
+     * @param directory Folder holding the index.
+     */
+    JarEntryIndex( File directory )
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * @param jar   An embedded jar.
+     * @return The names of the files in the jar, in central directory order, without folders.
+     * @throws IOException if the jar or the index cannot be read.
+     */
+    List<String> getEntries( File jar ) throws IOException
+    {
+        final File indexFile = new File( directory, ChecksumHelper.sha1( jar ) + ".entries" );
+        if ( indexFile.isFile() )
+        {
+            return Files.readLines( indexFile, Charsets.UTF_8 );
+        }
+
+        final List<String> names = new ArrayList<String>();
+        final RawZipFile zip = new RawZipFile( jar );
+        try
+        {
+            for ( RawZipFile.Entry entry : zip.getEntries() )
+            {
+                if ( !entry.isDirectory() )
+                {
+                    names.add( entry.getName() );
+                }
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        final StringBuilder content = new StringBuilder();
+        for ( String name : names )
+        {
+            content.append( name ).append( '\n' );
+        }
+        final File temporaryFile = newTemporaryFile();
+        Files.write( content, temporaryFile, Charsets.UTF_8 );
+        commit( temporaryFile, indexFile );
+        return names;
+    }
+
+    /**
+     * @param jar       An embedded jar.
+     * @param excluded  Names of the entries to leave out.
+     * @return A copy of the jar without the excluded entries, created by copying the remaining entries as they are.
+     * @throws IOException if the jar cannot be read or the copy cannot be written.
+     */
+    File getJarWithout( File jar, Set<String> excluded ) throws IOException
+    {
+        final Hasher hasher = Hashing.sha1().newHasher();
+        hasher.putString( ChecksumHelper.sha1( jar ), Charsets.UTF_8 );
+        for ( String name : new TreeSet<String>( excluded ) )
+        {
+            hasher.putString( "\n" + name, Charsets.UTF_8 );
+        }
+        // Keep the original name, ApkBuilder reports duplicates by jar name
+        final File filteredJar = new File( new File( directory, hasher.hash().toString() ), jar.getName() );
+        if ( filteredJar.isFile() )
+        {
+            return filteredJar;
+        }
+
+        final File temporaryFile = newTemporaryFile();
+        final RawZipFile source = new RawZipFile( jar );
+        try
+        {
+            final RawZipOutputStream target = new RawZipOutputStream( new FileOutputStream( temporaryFile ) );
+            try
+            {
+                for ( RawZipFile.Entry entry : source.getEntries() )
+                {
+                    if ( !excluded.contains( entry.getName() ) )
+                    {
+                        target.copyEntry( source, entry, 0 );
+                    }
+                }
+            }
+            finally
+            {
+                target.close();
+            }
+        }
+        finally
+        {
+            source.close();
+        }
+        filteredJar.getParentFile().mkdirs();
+        commit( temporaryFile, filteredJar );
+        return filteredJar;
+    }
+
+    private File newTemporaryFile()
+    {
+        directory.mkdirs();
+        return new File( directory, TEMP_PREFIX + UUID.randomUUID() );
+    }
+
+    private static void commit( File temporaryFile, File file ) throws IOException
+    {
+        if ( !temporaryFile.renameTo( file ) )
+        {
+            // A concurrent build may have stored the same content in the meantime
+            final boolean stored = file.isFile();
+            temporaryFile.delete();
+            if ( !stored )
+            {
+                throw new IOException( "Could not move " + temporaryFile + " to " + file );
+            }
+        }
+    }
+}
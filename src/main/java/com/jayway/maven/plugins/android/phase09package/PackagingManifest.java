@@ -0,0 +1,123 @@
+package com.jayway.maven.plugins.android.phase09package;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the source of every entry of an apk written by {@link ParallelApkBuilder}, and the digest of its content
+ * when the apk is signed, so the next incremental build can copy unchanged entries from the previous apk.
+ * <p>
+ * The manifest is only valid for the exact apk it was written for; once anything else rewrites the apk, the next
+ * build is a full one.
+ * </p>
+ */
+final class PackagingManifest
+{
+    private static final String NO_DIGEST = "-";
+
+    private final Map<String, Record> records = new HashMap<String, Record>();
+
+    /**
+     * Where an entry came from.
+     */
+    static final class Record
+    {
+        private final String sourceKey;
+        private final byte[] sha1;
+
+        private Record( String sourceKey, byte[] sha1 )
+        {
+            this.sourceKey = sourceKey;
+            this.sha1 = sha1;
+        }
+
+        /**
+         * @return The SHA-1 digest of the entry content, <code>null</code> if the apk was not signed.
+         */
+        byte[] getSha1()
+        {
+            return sha1;
+        }
+
+        /**
+         * @param sourceKey Describes the current source of the entry.
+         * @param digest    Whether the digest is needed.
+         * @return true if the entry of the previous apk can be used as it is.
+         */
+        boolean matches( String sourceKey, boolean digest )
+        {
+            return this.sourceKey.equals( sourceKey ) && ( !digest || sha1 != null );
+        }
+    }
+
+    /**
+     * @param manifestFile  The manifest of the previous build.
+     * @param apk           The apk of the previous build.
+     * @return The manifest, <code>null</code> if there is none or it does not describe the apk.
+     */
+    static PackagingManifest read( File manifestFile, File apk ) throws IOException
+    {
+        if ( !manifestFile.isFile() || !apk.isFile() )
+        {
+            return null;
+        }
+        final List<String> lines = Files.readLines( manifestFile, Charsets.UTF_8 );
+        if ( lines.isEmpty() || !lines.get( 0 ).equals( describe( apk ) ) )
+        {
+            return null;
+        }
+        final PackagingManifest manifest = new PackagingManifest();
+        for ( String line : lines.subList( 1, lines.size() ) )
+        {
+            final String[] fields = line.split( "\t", 3 );
+            if ( fields.length != 3 )
+            {
+                return null;
+            }
+            final byte[] sha1 = NO_DIGEST.equals( fields[ 1 ] ) ? null : BaseEncoding.base16().decode( fields[ 1 ] );
+            manifest.records.put( fields[ 2 ], new Record( fields[ 0 ], sha1 ) );
+        }
+        return manifest;
+    }
+
+    /**
+     * @return The record of an entry, <code>null</code> if the entry is new.
+     */
+    Record get( String name )
+    {
+        return records.get( name );
+    }
+
+    void put( String name, String sourceKey, byte[] sha1 )
+    {
+        records.put( name, new Record( sourceKey, sha1 ) );
+    }
+
+    /**
+     * Stores the manifest for an apk that has been written completely.
+     */
+    void write( File manifestFile, File apk ) throws IOException
+    {
+        final StringBuilder content = new StringBuilder( describe( apk ) ).append( '\n' );
+        for ( Map.Entry<String, Record> entry : records.entrySet() )
+        {
+            final byte[] sha1 = entry.getValue().sha1;
+            content.append( entry.getValue().sourceKey ).append( '\t' )
+                    .append( sha1 == null ? NO_DIGEST : BaseEncoding.base16().encode( sha1 ) ).append( '\t' )
+                    .append( entry.getKey() ).append( '\n' );
+        }
+        Files.write( content, manifestFile, Charsets.UTF_8 );
+    }
+
+    private static String describe( File apk )
+    {
+        return "apk " + apk.length() + " " + apk.lastModified();
+    }
+}
@@ -0,0 +1,619 @@
+package com.jayway.maven.plugins.android.phase09package;
+
+import com.google.common.io.Files;
+import com.jayway.maven.plugins.android.common.ChecksumHelper;
+import com.jayway.maven.plugins.android.common.RawZipFile;
+import com.jayway.maven.plugins.android.common.RawZipOutputStream;
+import com.jayway.maven.plugins.android.common.ZipAligner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Packages an apk from the same inputs and with the same filtering as {@link com.android.sdklib.build.ApkBuilder},
+ * but compresses the entries on a thread pool.
+ * <p>
+ * Entries are written in the order they were added, so the output does not depend on the scheduling. Entries of
+ * the resource package and of jars are copied as they are, without inflating and deflating them again; loose files
+ * are deflated at the level ApkBuilder uses. When signing, the entry digests are computed by the same tasks.
+ * </p>
+ * <p>
+ * In incremental mode a {@link PackagingManifest} is kept next to the apk. Loose files that did not change since
+ * the previous build are then copied from the previous apk instead of being deflated again, and known digests are
+ * reused.
+ * </p>
+ */
+final class ParallelApkBuilder
+{
+    private static final Pattern NATIVE_LIBRARY = Pattern.compile( "^.+\\.so$", Pattern.CASE_INSENSITIVE );
+    private static final String GDBSERVER = "gdbserver";
+    private static final String DEX_NAME = "classes.dex";
+    private static final String MANIFEST_SUFFIX = ".entries";
+    private static final List<String> EXCLUDED_EXTENSIONS = Arrays.asList( "aidl", "rs", "fs", "rsh", "d", "java",
+            "scala", "class", "scc", "swp" );
+    private static final List<String> EXCLUDED_FILES = Arrays.asList( "thumbs.db", "picasa.ini", "package.html",
+            "overview.html" );
+    private static final List<String> EXCLUDED_FOLDERS = Arrays.asList( "cvs", ".svn", "sccs", "meta-inf" );
+
+    private final File outputFile;
+    private final boolean debugMode;
+    private final int threads;
+    private final List<PendingEntry> entries = new ArrayList<PendingEntry>();
+    private final Map<String, File> origins = new HashMap<String, File>();
+    private final List<Closeable> inputs = new ArrayList<Closeable>();
+    private final PrivateKey key;
+    private final X509Certificate certificate;
+    private ZipAligner aligner;
+    private boolean incremental;
+    private PackagingManifest previous;
+    private RawZipFile previousApk;
+    private final Map<String, RawZipFile.Entry> previousEntries = new HashMap<String, RawZipFile.Entry>();
+    private int reusedEntries;
+
+    /**
+     * @param outputFile        The apk to create.
+     * @param resourceArchive   The resource package created by aapt.
+     * @param dexFile           The dex file, packaged as classes.dex.
+     * @param key               Key to sign the apk with, or <code>null</code> for an unsigned apk.
+     * @param certificate       Certificate of the key.
+     * @param debugMode         Whether to include gdbserver.
+     * @param threads           Number of threads compressing entries.
+     * @throws IOException if the inputs cannot be read or contain duplicates.
+     */
+    ParallelApkBuilder( File outputFile, File resourceArchive, File dexFile, PrivateKey key,
+                        X509Certificate certificate, boolean debugMode, int threads ) throws IOException
+    {
+        this.outputFile = outputFile;
+        this.key = key;
+        this.certificate = certificate;
+        this.debugMode = debugMode;
+        this.threads = Math.max( 1, threads );
+        try
+        {
+            addArchive( resourceArchive, Collections.<String>emptySet(), false );
+            addFile( dexFile, DEX_NAME );
+        }
+        catch ( IOException e )
+        {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Aligns the uncompressed entries while writing them, so the apk does not need to be zipaligned afterwards.
+     */
+    void setAligner( ZipAligner aligner )
+    {
+        this.aligner = aligner;
+    }
+
+    /**
+     * Reuses the unchanged entries of the apk written by the previous incremental build, if any.
+     */
+    void setIncremental( boolean incremental )
+    {
+        this.incremental = incremental;
+    }
+
+    /**
+     * @return The number of entries {@link #sealApk()} copied from the previous apk.
+     */
+    int getReusedEntries()
+    {
+        return reusedEntries;
+    }
+
+    /**
+     * Adds the java resources of a folder, leaving out sources, classes and version control files.
+     */
+    void addSourceFolder( File folder ) throws IOException
+    {
+        if ( folder.isDirectory() )
+        {
+            addSourceFolder( folder, "" );
+        }
+    }
+
+    private void addSourceFolder( File folder, String path ) throws IOException
+    {
+        final File[] children = folder.listFiles();
+        if ( children == null )
+        {
+            return;
+        }
+        Arrays.sort( children );
+        for ( File child : children )
+        {
+            if ( child.isDirectory() )
+            {
+                if ( isPackagedFolder( child.getName() ) )
+                {
+                    addSourceFolder( child, path + child.getName() + "/" );
+                }
+            }
+            else if ( isPackagedFile( child.getName() ) )
+            {
+                addFile( child, path + child.getName() );
+            }
+        }
+    }
+
+    /**
+     * Adds the java resources of a jar.
+     *
+     * @param jar       The jar.
+     * @param excluded  Names of entries to leave out, e.g. because an earlier jar contains them as well.
+     */
+    void addResourcesFromJar( File jar, Set<String> excluded ) throws IOException
+    {
+        addArchive( jar, excluded, true );
+    }
+
+    /**
+     * Adds the native libraries of a folder holding one sub folder per architecture.
+     */
+    void addNativeLibraries( File nativeFolder ) throws IOException
+    {
+        final File[] architectures = nativeFolder.listFiles();
+        if ( architectures == null )
+        {
+            return;
+        }
+        Arrays.sort( architectures );
+        for ( File architecture : architectures )
+        {
+            final File[] libraries = architecture.listFiles();
+            if ( libraries == null )
+            {
+                continue;
+            }
+            Arrays.sort( libraries );
+            for ( File library : libraries )
+            {
+                if ( library.isFile() && ( NATIVE_LIBRARY.matcher( library.getName() ).matches()
+                        || ( debugMode && GDBSERVER.equals( library.getName() ) ) ) )
+                {
+                    addFile( library, "lib/" + architecture.getName() + "/" + library.getName() );
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a file.
+     *
+     * @param file  The file.
+     * @param path  The path of the file in the apk.
+     */
+    void addFile( File file, String path ) throws IOException
+    {
+        if ( !file.isFile() )
+        {
+            throw new IOException( file + " does not exist or is not a file" );
+        }
+        register( path, file );
+        entries.add( new FileEntry( path, file ) );
+    }
+
+    private void addArchive( File archive, Set<String> excluded, boolean javaResourcesOnly ) throws IOException
+    {
+        final RawZipFile zip = new RawZipFile( archive );
+        inputs.add( zip );
+        ZipFile digestSource = null;
+        for ( RawZipFile.Entry entry : zip.getEntries() )
+        {
+            final String name = entry.getName();
+            // Like ApkBuilder, never take folders or anything from META-INF
+            if ( entry.isDirectory() || name.startsWith( "META-INF/" ) || excluded.contains( name ) )
+            {
+                continue;
+            }
+            if ( javaResourcesOnly && !isPackagedPath( name ) )
+            {
+                continue;
+            }
+            register( name, archive );
+            if ( digestSource == null && key != null )
+            {
+                // Thread safe access to the content, for the digests
+                digestSource = new ZipFile( archive );
+                inputs.add( digestSource );
+            }
+            entries.add( new ArchiveEntry( zip, entry, digestSource ) );
+        }
+    }
+
+    private void register( String path, File origin ) throws ZipException
+    {
+        final File previous = origins.put( path, origin );
+        if ( previous != null )
+        {
+            throw new ZipException( String.format( "Duplicated file: %s, found in archive %s and %s", path,
+                    previous, origin ) );
+        }
+    }
+
+    /**
+     * Writes the apk and releases the inputs.
+     *
+     * @throws IOException if an input cannot be read or the apk cannot be written.
+     */
+    void sealApk() throws IOException
+    {
+        final File manifestFile = new File( outputFile.getPath() + MANIFEST_SUFFIX );
+        final PackagingManifest current = new PackagingManifest();
+        File targetFile = outputFile;
+        final ExecutorService executorService = Executors.newFixedThreadPool( threads );
+        try
+        {
+            if ( incremental )
+            {
+                previous = PackagingManifest.read( manifestFile, outputFile );
+            }
+            manifestFile.delete();
+            if ( previous != null )
+            {
+                previousApk = new RawZipFile( outputFile );
+                inputs.add( previousApk );
+                for ( RawZipFile.Entry entry : previousApk.getEntries() )
+                {
+                    previousEntries.put( entry.getName(), entry );
+                }
+                // The previous apk is read while the new one is written
+                targetFile = new File( outputFile.getPath() + ".tmp" );
+            }
+
+            final ApkSignature signature = key == null ? null : new ApkSignature( key, certificate );
+            final RawZipOutputStream out = new RawZipOutputStream( new FileOutputStream( targetFile ) );
+            try
+            {
+                // Keep a bounded number of compressed entries in memory
+                final int window = threads * 4;
+                final LinkedList<Future<PreparedEntry>> pending = new LinkedList<Future<PreparedEntry>>();
+                int submitted = 0;
+                for ( PendingEntry entry : entries )
+                {
+                    while ( submitted < entries.size() && pending.size() < window )
+                    {
+                        pending.add( executorService.submit( entries.get( submitted ).prepare( signature != null ) ) );
+                        submitted++;
+                    }
+                    final PreparedEntry prepared = get( pending.removeFirst() );
+                    entry.write( out, prepared );
+                    current.put( entry.name, prepared.sourceKey, prepared.sha1 );
+                    if ( signature != null )
+                    {
+                        signature.addEntry( entry.name, prepared.sha1 );
+                    }
+                }
+
+                if ( signature != null )
+                {
+                    final byte[] signatureFile = signature.getSignatureFile();
+                    writeDeflated( out, ApkSignature.MANIFEST_NAME, signature.getManifest() );
+                    writeDeflated( out, ApkSignature.SIGNATURE_FILE_NAME, signatureFile );
+                    writeDeflated( out, signature.getSignatureBlockName(),
+                            signature.getSignatureBlock( signatureFile ) );
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        catch ( GeneralSecurityException e )
+        {
+            throw new IOException( "Could not sign " + outputFile + ": " + e.getMessage(), e );
+        }
+        finally
+        {
+            executorService.shutdownNow();
+            close();
+        }
+
+        if ( targetFile != outputFile && ( !outputFile.delete() || !targetFile.renameTo( outputFile ) ) )
+        {
+            throw new IOException( "Could not move " + targetFile + " to " + outputFile );
+        }
+        if ( incremental )
+        {
+            current.write( manifestFile, outputFile );
+        }
+    }
+
+    /**
+     * Releases the inputs, which {@link #sealApk()} does as well.
+     */
+    void close() throws IOException
+    {
+        for ( Closeable input : inputs )
+        {
+            input.close();
+        }
+        inputs.clear();
+    }
+
+    private static PreparedEntry get( Future<PreparedEntry> future ) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while packaging", e );
+        }
+        catch ( java.util.concurrent.ExecutionException e )
+        {
+            if ( e.getCause() instanceof IOException )
+            {
+                throw ( IOException ) e.getCause();
+            }
+            throw new IOException( e.getCause() );
+        }
+    }
+
+    private static void writeDeflated( RawZipOutputStream out, String name, byte[] content ) throws IOException
+    {
+        final PreparedEntry prepared = PreparedEntry.deflate( null, content, false );
+        out.writeEntry( name, ZipEntry.DEFLATED, RawZipOutputStream.toDosTime( System.currentTimeMillis() ),
+                prepared.crc, prepared.data.length, prepared.size, new ByteArrayInputStream( prepared.data ), 0 );
+    }
+
+    private static boolean isPackagedPath( String path )
+    {
+        final String[] segments = path.split( "/" );
+        for ( int i = 0; i < segments.length - 1; i++ )
+        {
+            if ( !isPackagedFolder( segments[ i ] ) )
+            {
+                return false;
+            }
+        }
+        return isPackagedFile( segments[ segments.length - 1 ] );
+    }
+
+    private static boolean isPackagedFolder( String name )
+    {
+        return !EXCLUDED_FOLDERS.contains( name.toLowerCase( Locale.ENGLISH ) ) && !name.startsWith( "_" );
+    }
+
+    private static boolean isPackagedFile( String name )
+    {
+        if ( name.startsWith( "." ) || name.endsWith( "~" ) )
+        {
+            return false;
+        }
+        final String lowerCaseName = name.toLowerCase( Locale.ENGLISH );
+        final int dot = lowerCaseName.lastIndexOf( '.' );
+        final String extension = dot < 0 ? "" : lowerCaseName.substring( dot + 1 );
+        return !EXCLUDED_EXTENSIONS.contains( extension ) && !EXCLUDED_FILES.contains( lowerCaseName );
+    }
+
+    /**
+     * The data of an entry, ready to be written.
+     */
+    private static final class PreparedEntry
+    {
+        private final String sourceKey;
+        private final byte[] data;
+        private final long crc;
+        private final long size;
+        private final byte[] sha1;
+
+        /**
+         * @param sourceKey Describes the source of the entry for the next incremental build.
+         * @param data      The deflated data, <code>null</code> if the entry is copied from another archive.
+         * @param crc       CRC-32 of the content.
+         * @param size      Size of the content.
+         * @param sha1      SHA-1 digest of the content if signing, <code>null</code> otherwise.
+         */
+        private PreparedEntry( String sourceKey, byte[] data, long crc, long size, byte[] sha1 )
+        {
+            this.sourceKey = sourceKey;
+            this.data = data;
+            this.crc = crc;
+            this.size = size;
+            this.sha1 = sha1;
+        }
+
+        private static PreparedEntry deflate( String sourceKey, byte[] content, boolean digest )
+        {
+            final CRC32 crc = new CRC32();
+            crc.update( content );
+
+            final Deflater deflater = new Deflater( Deflater.BEST_COMPRESSION, true );
+            final ByteArrayOutputStream out = new ByteArrayOutputStream( content.length / 2 + 64 );
+            try
+            {
+                deflater.setInput( content );
+                deflater.finish();
+                final byte[] buffer = new byte[ 64 * 1024 ];
+                while ( !deflater.finished() )
+                {
+                    final int length = deflater.deflate( buffer );
+                    out.write( buffer, 0, length );
+                }
+            }
+            finally
+            {
+                deflater.end();
+            }
+            return new PreparedEntry( sourceKey, out.toByteArray(), crc.getValue(), content.length,
+                    digest ? ApkSignature.sha1( content ) : null );
+        }
+    }
+
+    private abstract class PendingEntry
+    {
+        final String name;
+
+        private PendingEntry( String name )
+        {
+            this.name = name;
+        }
+
+        abstract Callable<PreparedEntry> prepare( boolean digest );
+
+        abstract void write( RawZipOutputStream out, PreparedEntry prepared ) throws IOException;
+
+        /**
+         * @return What the previous incremental build recorded for the same source, <code>null</code> if nothing.
+         */
+        PackagingManifest.Record getPreviousRecord( String sourceKey, boolean digest )
+        {
+            final PackagingManifest.Record record = previous == null ? null : previous.get( name );
+            return record != null && record.matches( sourceKey, digest ) ? record : null;
+        }
+    }
+
+    /**
+     * A loose file, deflated by a task unless the previous apk contains it already.
+     */
+    private final class FileEntry extends PendingEntry
+    {
+        private final File file;
+
+        private FileEntry( String name, File file )
+        {
+            super( name );
+            this.file = file;
+        }
+
+        Callable<PreparedEntry> prepare( final boolean digest )
+        {
+            return new Callable<PreparedEntry>()
+            {
+                public PreparedEntry call() throws IOException
+                {
+                    if ( !incremental )
+                    {
+                        return PreparedEntry.deflate( null, Files.toByteArray( file ), digest );
+                    }
+                    final String sourceKey = "file:" + ChecksumHelper.sha1( file );
+                    final PackagingManifest.Record record = getPreviousRecord( sourceKey, digest );
+                    final RawZipFile.Entry previousEntry = previousEntries.get( name );
+                    if ( record != null && previousEntry != null )
+                    {
+                        return new PreparedEntry( sourceKey, null, previousEntry.getCrc(), previousEntry.getSize(),
+                                record.getSha1() );
+                    }
+                    return PreparedEntry.deflate( sourceKey, Files.toByteArray( file ), digest );
+                }
+            };
+        }
+
+        void write( RawZipOutputStream out, PreparedEntry prepared ) throws IOException
+        {
+            // Deflated entries need no alignment
+            if ( prepared.data == null )
+            {
+                out.copyEntry( previousApk, previousEntries.get( name ), 0 );
+                reusedEntries++;
+            }
+            else
+            {
+                out.writeEntry( name, ZipEntry.DEFLATED, RawZipOutputStream.toDosTime( file.lastModified() ),
+                        prepared.crc, prepared.data.length, prepared.size, new ByteArrayInputStream( prepared.data ),
+                        0 );
+            }
+        }
+    }
+
+    /**
+     * An entry of another archive, copied as it is. Its task only computes the digest, if needed.
+     */
+    private final class ArchiveEntry extends PendingEntry
+    {
+        private final RawZipFile archive;
+        private final RawZipFile.Entry entry;
+        private final ZipFile digestSource;
+
+        private ArchiveEntry( RawZipFile archive, RawZipFile.Entry entry, ZipFile digestSource )
+        {
+            super( entry.getName() );
+            this.archive = archive;
+            this.entry = entry;
+            this.digestSource = digestSource;
+        }
+
+        Callable<PreparedEntry> prepare( final boolean digest )
+        {
+            return new Callable<PreparedEntry>()
+            {
+                public PreparedEntry call() throws IOException
+                {
+                    final String sourceKey = "zip:" + entry.getMethod() + ":" + entry.getCrc() + ":"
+                            + entry.getCompressedSize() + ":" + entry.getSize();
+                    byte[] sha1 = null;
+                    if ( digest )
+                    {
+                        final PackagingManifest.Record record = getPreviousRecord( sourceKey, true );
+                        sha1 = record != null ? record.getSha1() : digest();
+                    }
+                    return new PreparedEntry( sourceKey, null, entry.getCrc(), entry.getSize(), sha1 );
+                }
+            };
+        }
+
+        private byte[] digest() throws IOException
+        {
+            final ZipEntry zipEntry = digestSource.getEntry( entry.getName() );
+            if ( zipEntry == null )
+            {
+                throw new ZipException( "Cannot read " + entry.getName() + " from " + digestSource.getName() );
+            }
+            final MessageDigest sha1 = ApkSignature.newSha1();
+            final InputStream in = digestSource.getInputStream( zipEntry );
+            try
+            {
+                final byte[] buffer = new byte[ 64 * 1024 ];
+                int read;
+                while ( ( read = in.read( buffer ) ) != -1 )
+                {
+                    sha1.update( buffer, 0, read );
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+            return sha1.digest();
+        }
+
+        void write( RawZipOutputStream out, PreparedEntry prepared ) throws IOException
+        {
+            out.copyEntry( archive, entry, aligner == null ? 0 : aligner.getAlignment( name, entry.getMethod() ) );
+        }
+    }
+}
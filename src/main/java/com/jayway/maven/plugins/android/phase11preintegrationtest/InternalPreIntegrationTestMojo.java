@@ -37,8 +37,7 @@ public class InternalPreIntegrationTestMojo extends AbstractInstrumentationMojo
     {
         if ( isEnableIntegrationTest() )
         {
-            deployDependencies();
-            deployBuiltApk();
+            deployDependenciesAndBuiltApk();
         }
     }
 
@@ -0,0 +1,82 @@
+package com.jayway.maven.plugins.android.standalonemojos;
+
+import com.jayway.maven.plugins.android.AbstractEmulatorMojo;
+import com.jayway.maven.plugins.android.config.ConfigHandler;
+import com.jayway.maven.plugins.android.config.PullParameter;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * EmulatorPoolStartMojo starts several Android Emulators at once and waits for all of them to boot, e.g. to run
+ * sharded instrumentation tests on them. Later device goals of the session that do not set
+ * <code>android.devices</code> run on the emulators of the pool. The emulators are stopped with the
+ * emulator-stop-all goal.
+ *
+ * @see com.jayway.maven.plugins.android.EmulatorPool
+ */
+@Mojo( name = "emulator-pool-start", requiresProject = false )
+public class EmulatorPoolStartMojo extends AbstractEmulatorMojo
+{
+    /**
+     * The AVDs to start an emulator of. An AVD can be listed several times to start several emulators of it, which
+     * then run with <code>-read-only</code>. If not set, the pool size number of emulators of the configured AVD are
+     * started. The pool settings are part of the emulator configuration:
+     * <pre>
+     * &lt;emulator&gt;
+     *     &lt;poolAvds&gt;
+     *         &lt;poolAvd&gt;Nexus_5_API_21&lt;/poolAvd&gt;
+     *         &lt;poolAvd&gt;Nexus_5_API_21&lt;/poolAvd&gt;
+     *     &lt;/poolAvds&gt;
+     *     &lt;poolSize&gt;2&lt;/poolSize&gt;
+     *     &lt;poolFirstPort&gt;5554&lt;/poolFirstPort&gt;
+     * &lt;/emulator&gt;
+     * </pre>
+     * or <code>-Dandroid.emulator.pool.avds=Nexus_5_API_21,Nexus_5_API_21</code>.
+     *
+     * @see com.jayway.maven.plugins.android.configuration.Emulator#poolAvds
+     */
+    @Parameter( property = "android.emulator.pool.avds" )
+    private String[] emulatorPoolAvds;
+
+    @PullParameter
+    private String[] parsedPoolAvds;
+
+    /**
+     * The number of emulators of the configured AVD to start if no pool AVDs are set. Defaults to 2.
+     *
+     * @see com.jayway.maven.plugins.android.configuration.Emulator#poolSize
+     */
+    @Parameter( property = "android.emulator.pool.size" )
+    private Integer emulatorPoolSize;
+
+    @PullParameter( defaultValue = "2" )
+    private Integer parsedPoolSize;
+
+    /**
+     * The console port of the first emulator. Each emulator uses an even console port and the next port for adb,
+     * ports that are in use are skipped. adb looks for emulators on console ports up to 5584. Defaults to 5554.
+     *
+     * @see com.jayway.maven.plugins.android.configuration.Emulator#poolFirstPort
+     */
+    @Parameter( property = "android.emulator.pool.firstPort" )
+    private Integer emulatorPoolFirstPort;
+
+    @PullParameter( defaultValue = "5554" )
+    private Integer parsedPoolFirstPort;
+
+    /**
+     * Start the Android Emulators.
+     *
+     * @throws MojoExecutionException
+     * @throws MojoFailureException
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        ConfigHandler configHandler = new ConfigHandler( this, this.session, this.execution );
+        configHandler.parseConfiguration();
+
+        startAndroidEmulatorPool( parsedPoolAvds, parsedPoolSize, parsedPoolFirstPort );
+    }
+}
@@ -26,7 +26,9 @@ import com.android.ddmlib.TimeoutException;
 import com.jayway.maven.plugins.android.AbstractAndroidMojo;
 import com.jayway.maven.plugins.android.DeviceCallback;
 import com.jayway.maven.plugins.android.common.DeviceHelper;
+import com.jayway.maven.plugins.android.common.IncrementalPull;
 import com.jayway.maven.plugins.android.common.LogSyncProgressMonitor;
+import com.jayway.maven.plugins.android.common.RemoteFiles;
 import com.jayway.maven.plugins.android.config.ConfigHandler;
 import com.jayway.maven.plugins.android.config.ConfigPojo;
 import com.jayway.maven.plugins.android.config.PullParameter;
@@ -40,6 +42,7 @@ import org.apache.maven.plugins.annotations.Parameter;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
 
 /**
  * Copy file or directory from all the attached (or specified)
@@ -57,6 +60,9 @@ public class PullMojo extends AbstractAndroidMojo
      * &lt;pull&gt;
      *     &lt;source&gt;path&lt;/source&gt;
      *     &lt;destination&gt;path&lt;/destination&gt;
+     *     &lt;incremental&gt;true|false&lt;/incremental&gt;
+     *     &lt;streams&gt;4&lt;/streams&gt;
+     *     &lt;perDeviceDirectory&gt;true|false&lt;/perDeviceDirectory&gt;
      * &lt;/pull&gt;
      * </pre>
      * <p>The parameters can also be configured as property in the pom or settings file
@@ -101,6 +107,44 @@ public class PullMojo extends AbstractAndroidMojo
     @PullParameter( required = true )
     private String parsedDestination;
 
+    /**
+     * Pull only the files that are missing locally or differ in size or modification time from the local copy.
+     * The remote files are listed once with <code>find</code> and <code>stat</code>; on devices without them,
+     * everything is pulled. Defaults to "false".
+     *
+     * @see com.jayway.maven.plugins.android.configuration.Pull#incremental
+     */
+    @Parameter( property = "android.pull.incremental" )
+    private Boolean pullIncremental;
+
+    @PullParameter( defaultValue = "false" )
+    private Boolean parsedIncremental;
+
+    /**
+     * The number of pulls in flight from each device in incremental mode. Defaults to 4.
+     *
+     * @see com.jayway.maven.plugins.android.configuration.Pull#streams
+     */
+    @Parameter( property = "android.pull.streams" )
+    private Integer pullStreams;
+
+    @PullParameter( defaultValue = "4" )
+    private Integer parsedStreams;
+
+    /**
+     * Pull from each device into a directory of its own, named like the device, that is inserted before the last
+     * segment of the destination: <code>target/shots/</code> becomes <code>target/shots/&lt;device&gt;/</code> and
+     * <code>target/shots</code> becomes <code>target/&lt;device&gt;/shots</code>. Without it, devices pulling the
+     * same files overwrite each other's copies. Defaults to "false".
+     *
+     * @see com.jayway.maven.plugins.android.configuration.Pull#perDeviceDirectory
+     */
+    @Parameter( property = "android.pull.perDeviceDirectory" )
+    private Boolean pullPerDeviceDirectory;
+
+    @PullParameter( defaultValue = "false" )
+    private Boolean parsedPerDeviceDirectory;
+
     public void execute() throws MojoExecutionException, MojoFailureException
     {
 
@@ -112,11 +156,23 @@ public class PullMojo extends AbstractAndroidMojo
             public void doWithDevice( final IDevice device ) throws MojoExecutionException
             {
                 String deviceLogLinePrefix = DeviceHelper.getDeviceLogLinePrefix( device );
+                final String destination = getDestination( device );
 
                 // message will be set later according to the processed files
                 String message = "";
                 try
                 {
+                    if ( parsedIncremental )
+                    {
+                        message = deviceLogLinePrefix + "Incremental pull of " + parsedSource + " to " + destination;
+                        if ( pullIncremental( device, destination ) )
+                        {
+                            getLog().info( message + " successful." );
+                            return;
+                        }
+                    }
+
+                    message = deviceLogLinePrefix + "Pull of " + parsedSource + " to " + destination;
                     SyncService syncService = device.getSyncService();
                     FileListingService fileListingService = device.getFileListingService();
 
@@ -125,7 +181,7 @@ public class PullMojo extends AbstractAndroidMojo
                     if ( sourceFileEntry.isDirectory() )
                     {
                         // pulling directory
-                        File destinationDir = new File( parsedDestination );
+                        File destinationDir = new File( destination );
                         if ( ! destinationDir.exists() )
                         {
                             getLog().info( "Creating destination directory " + destinationDir );
@@ -135,7 +191,7 @@ public class PullMojo extends AbstractAndroidMojo
                         String destinationDirPath = destinationDir.getAbsolutePath();
 
                         FileEntry[] fileEntries;
-                        if ( parsedDestination.endsWith( File.separator ) )
+                        if ( destination.endsWith( File.separator ) )
                         {
                             // pull source directory directly
                             fileEntries = new FileEntry[]{ sourceFileEntry };
@@ -154,7 +210,7 @@ public class PullMojo extends AbstractAndroidMojo
                     else
                     {
                         // pulling file
-                        File parentDir = new File( FilenameUtils.getFullPath( parsedDestination ) );
+                        File parentDir = new File( FilenameUtils.getFullPath( destination ) );
                         if ( ! parentDir.exists() )
                         {
                             getLog().info( deviceLogLinePrefix + "Creating destination directory " + parentDir );
@@ -162,7 +218,7 @@ public class PullMojo extends AbstractAndroidMojo
                         }
 
                         String destinationFileName;
-                        if ( parsedDestination.endsWith( File.separator ) )
+                        if ( destination.endsWith( File.separator ) )
                         {
                             // keep original filename
                             destinationFileName = FilenameUtils.getName( parsedSource );
@@ -170,7 +226,7 @@ public class PullMojo extends AbstractAndroidMojo
                         else
                         {
                             // rename filename
-                            destinationFileName = FilenameUtils.getName( parsedDestination );
+                            destinationFileName = FilenameUtils.getName( destination );
                         }
 
                         File destinationFile = new File( parentDir, destinationFileName );
@@ -204,6 +260,51 @@ public class PullMojo extends AbstractAndroidMojo
         } );
     }
 
+    /**
+     * Pulls only changed files.
+     *
+     * @return false if the source could not be listed on the device.
+     */
+    private boolean pullIncremental( IDevice device, String destination ) throws IOException
+    {
+        final Map<String, RemoteFiles.Entry> remote = RemoteFiles.list( device, parsedSource );
+        if ( remote.isEmpty() )
+        {
+            getLog().info( DeviceHelper.getDeviceLogLinePrefix( device ) + "Cannot list " + parsedSource
+                    + " on the device, pulling everything." );
+            return false;
+        }
+        final File target;
+        if ( destination.endsWith( File.separator ) )
+        {
+            target = new File( destination, FilenameUtils.getName( StringUtils.stripEnd( parsedSource, "/" ) ) );
+        }
+        else
+        {
+            target = new File( destination );
+        }
+        new IncrementalPull( device, getLog(), parsedStreams ).pull( remote, parsedSource, target );
+        return true;
+    }
+
+    /**
+     * @return The destination for the device, in a directory of its own if {@link #pullPerDeviceDirectory} is set.
+     */
+    private String getDestination( IDevice device )
+    {
+        if ( ! parsedPerDeviceDirectory )
+        {
+            return parsedDestination;
+        }
+        final String deviceDirectory = DeviceHelper.getDescriptiveName( device );
+        if ( parsedDestination.endsWith( File.separator ) )
+        {
+            return parsedDestination + deviceDirectory + File.separator;
+        }
+        final File destination = new File( parsedDestination );
+        return new File( new File( destination.getParentFile(), deviceDirectory ), destination.getName() ).getPath();
+    }
+
     /**
      * Retrieves the corresponding {@link FileEntry} on the emulator/device for
      * a given file path.
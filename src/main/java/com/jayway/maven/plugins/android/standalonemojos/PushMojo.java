@@ -24,6 +24,7 @@ import com.android.ddmlib.TimeoutException;
 import com.jayway.maven.plugins.android.AbstractAndroidMojo;
 import com.jayway.maven.plugins.android.DeviceCallback;
 import com.jayway.maven.plugins.android.common.DeviceHelper;
+import com.jayway.maven.plugins.android.common.IncrementalPush;
 import com.jayway.maven.plugins.android.common.LogSyncProgressMonitor;
 import com.jayway.maven.plugins.android.config.ConfigHandler;
 import com.jayway.maven.plugins.android.config.ConfigPojo;
@@ -57,6 +58,9 @@ public class PushMojo extends AbstractAndroidMojo
      * &lt;push&gt;
      *     &lt;source&gt;path&lt;/source&gt;
      *     &lt;destination&gt;path&lt;/destination&gt;
+     *     &lt;incremental&gt;true|false&lt;/incremental&gt;
+     *     &lt;streams&gt;4&lt;/streams&gt;
+     *     &lt;compareChecksums&gt;true|false&lt;/compareChecksums&gt;
      * &lt;/push&gt;
      * </pre>
      * <p>The parameters can also be configured as property in the pom or settings file
@@ -99,6 +103,41 @@ public class PushMojo extends AbstractAndroidMojo
     @PullParameter( required = true )
     private String parsedDestination;
 
+    /**
+     * Push only the files that are missing on the device or differ in size or modification time from those on the
+     * device. Small files are pushed in tar archives that are extracted on the device. Defaults to "false".
+     *
+     * @see com.jayway.maven.plugins.android.configuration.Push#incremental
+     */
+    @Parameter( property = "android.push.incremental" )
+    private Boolean pushIncremental;
+
+    @PullParameter( defaultValue = "false" )
+    private Boolean parsedIncremental;
+
+    /**
+     * The number of pushes in flight to each device in incremental mode. Defaults to 4.
+     *
+     * @see com.jayway.maven.plugins.android.configuration.Push#streams
+     */
+    @Parameter( property = "android.push.streams" )
+    private Integer pushStreams;
+
+    @PullParameter( defaultValue = "4" )
+    private Integer parsedStreams;
+
+    /**
+     * In incremental mode, hash files on the device that have the same size but another modification time than the
+     * local file, e.g. after a fresh checkout, and keep them if their content is the same. Defaults to "false".
+     *
+     * @see com.jayway.maven.plugins.android.configuration.Push#compareChecksums
+     */
+    @Parameter( property = "android.push.compareChecksums" )
+    private Boolean pushCompareChecksums;
+
+    @PullParameter( defaultValue = "false" )
+    private Boolean parsedCompareChecksums;
+
     public void execute() throws MojoExecutionException, MojoFailureException
     {
 
@@ -107,6 +146,12 @@ public class PushMojo extends AbstractAndroidMojo
 
         final Map<String, String> sourceDestinationMap = calculateSourceDestinationMapping();
 
+        if ( parsedIncremental )
+        {
+            pushIncremental( sourceDestinationMap );
+            return;
+        }
+
         doWithDevices( new DeviceCallback()
         {
             public void doWithDevice( final IDevice device ) throws MojoExecutionException
@@ -153,6 +198,41 @@ public class PushMojo extends AbstractAndroidMojo
         } );
     }
 
+    private void pushIncremental( final Map<String, String> sourceDestinationMap )
+            throws MojoExecutionException, MojoFailureException
+    {
+        final String remoteRoot = getDestinationPath();
+        doWithDevices( new DeviceCallback()
+        {
+            public void doWithDevice( final IDevice device ) throws MojoExecutionException
+            {
+                try
+                {
+                    new IncrementalPush( device, getLog(), parsedStreams, parsedCompareChecksums )
+                            .push( sourceDestinationMap, remoteRoot );
+                }
+                catch ( IOException e )
+                {
+                    throw new MojoExecutionException( DeviceHelper.getDeviceLogLinePrefix( device )
+                            + "Incremental push of " + parsedSource + " to " + remoteRoot + " on "
+                            + DeviceHelper.getDescriptiveName( device ) + " failed.", e );
+                }
+            }
+        } );
+    }
+
+    /**
+     * @return The destination of the source file or directory.
+     */
+    private String getDestinationPath()
+    {
+        if ( parsedDestination.endsWith( "/" ) )
+        {
+            return parsedDestination + new File( parsedSource ).getName();
+        }
+        return parsedDestination;
+    }
+
     /**
      * Calculates a map which contains all files to be pushed to the device or
      * emulator. The source filename works as the key while the value is the
@@ -166,15 +246,7 @@ public class PushMojo extends AbstractAndroidMojo
         Map<String, String> result = new HashMap<String, String>();
 
         File sourceFile = new File( parsedSource );
-        final String destinationPath;
-        if ( parsedDestination.endsWith( "/" ) )
-        {
-            destinationPath = parsedDestination + sourceFile.getName();
-        }
-        else
-        {
-            destinationPath = parsedDestination;
-        }
+        final String destinationPath = getDestinationPath();
 
         if ( sourceFile.isFile() )
         {
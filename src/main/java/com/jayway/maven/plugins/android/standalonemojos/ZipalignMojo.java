@@ -3,6 +3,7 @@ package com.jayway.maven.plugins.android.standalonemojos;
 import com.jayway.maven.plugins.android.AbstractAndroidMojo;
 import com.jayway.maven.plugins.android.CommandExecutor;
 import com.jayway.maven.plugins.android.ExecutionException;
+import com.jayway.maven.plugins.android.common.ZipAligner;
 import com.jayway.maven.plugins.android.config.ConfigHandler;
 import com.jayway.maven.plugins.android.config.ConfigPojo;
 import com.jayway.maven.plugins.android.config.PullParameter;
@@ -114,6 +115,30 @@ public class ZipalignMojo extends AbstractAndroidMojo
     @PullParameter( defaultValue = "aligned" )
     private String parsedClassifier;
 
+    /**
+     * Align the apk in process instead of running the zipalign tool of the SDK. Nothing is compressed again, and an
+     * apk that is aligned already, e.g. by the apk goal, is left as it is if it is aligned in place. Defaults to
+     * "false".
+     *
+     * @see com.jayway.maven.plugins.android.configuration.Zipalign#inProcess
+     */
+    @Parameter( property = "android.zipalign.inProcess" )
+    private Boolean zipalignInProcess;
+
+    @PullParameter( defaultValue = "false" )
+    private Boolean parsedInProcess;
+
+    /**
+     * Align uncompressed shared libraries to 4096 bytes, like <code>zipalign -p</code>. Defaults to "false".
+     *
+     * @see com.jayway.maven.plugins.android.configuration.Zipalign#pageAlignSharedLibraries
+     */
+    @Parameter( property = "android.zipalign.pageAlignSharedLibraries" )
+    private Boolean zipalignPageAlignSharedLibraries;
+
+    @PullParameter( defaultValue = "false" )
+    private Boolean parsedPageAlignSharedLibraries;
+
     /**
      * Execute the mojo by parsing the confign and actually doing the zipalign.
      *
@@ -141,11 +166,17 @@ public class ZipalignMojo extends AbstractAndroidMojo
         getLog().debug( "inputApk:" + parsedInputApk );
         getLog().debug( "outputApk:" + parsedOutputApk );
         getLog().debug( "classifier:" + parsedClassifier );
+        getLog().debug( "inProcess:" + parsedInProcess );
+        getLog().debug( "pageAlignSharedLibraries:" + parsedPageAlignSharedLibraries );
 
         if ( parsedSkip )
         {
             getLog().info( "Skipping zipalign" );
         }
+        else if ( parsedInProcess )
+        {
+            alignInProcess();
+        }
         else
         {
             boolean outputToSameFile = sameOutputAsInput();
@@ -161,6 +192,10 @@ public class ZipalignMojo extends AbstractAndroidMojo
                 parameters.add( "-v" );
             }
             parameters.add( "-f" ); // force overwriting existing output file
+            if ( parsedPageAlignSharedLibraries )
+            {
+                parameters.add( "-p" );
+            }
             parameters.add( "4" ); // byte alignment has to be 4!
             parameters.add( parsedInputApk );
             String outputApk = outputToSameFile ? getTemporaryOutputApkFilename() : parsedOutputApk;
@@ -210,6 +245,38 @@ public class ZipalignMojo extends AbstractAndroidMojo
         }
     }
 
+    private void alignInProcess() throws MojoExecutionException
+    {
+        final ZipAligner aligner = new ZipAligner( ZipAligner.DEFAULT_ALIGNMENT, parsedPageAlignSharedLibraries );
+        final File inputApk = new File( parsedInputApk );
+        final File outputApk = new File( parsedOutputApk );
+        try
+        {
+            if ( sameOutputAsInput() )
+            {
+                if ( aligner.alignInPlace( inputApk ) )
+                {
+                    getLog().info( "Aligned " + inputApk );
+                }
+                else
+                {
+                    getLog().info( inputApk + " is aligned already" );
+                }
+            }
+            else
+            {
+                aligner.align( inputApk, outputApk );
+                projectHelper.attachArtifact( project, APK, parsedClassifier, outputApk );
+                getLog().info( "Attach " + getFullPathWithName( parsedOutputApk ) + " as '"
+                        + parsedClassifier + "' to the project" );
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not align " + inputApk, e );
+        }
+    }
+
     private String getFullPathWithName( String filename )
     {
         return FilenameUtils.getFullPath( filename ) + FilenameUtils.getName( filename );
@@ -0,0 +1,107 @@
+package com.jayway.maven.plugins.android;
+
+import org.apache.commons.io.FileUtils;
+import org.codehaus.plexus.util.Os;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Aapt2DaemonWorkerTest {
+
+    /**
+     * Answers like aapt2 daemon, printing the options of each command and its own process id, and the options once
+     * more on the standard output.
+     */
+    private static final String FAKE_DAEMON = "echo Ready\n"
+            + "while IFS= read -r first; do\n"
+            + "  [ -z \"$first\" ] && continue\n"
+            + "  [ \"$first\" = quit ] && exit 0\n"
+            + "  args=$first\n"
+            + "  while IFS= read -r line && [ -n \"$line\" ]; do args=\"$args $line\"; done\n"
+            + "  echo \"$$ $args\" >&2\n"
+            + "  echo \"out $args\"\n"
+            + "  case \"$args\" in *broken*) echo Error >&2;; esac\n"
+            + "  echo Done >&2\n"
+            + "done\n";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private Aapt2DaemonWorker worker;
+
+    @Before
+    public void startFakeDaemon() throws Exception {
+        Assume.assumeFalse(Os.isFamily(Os.FAMILY_WINDOWS));
+        final File script = temp.newFile("aapt2-daemon.sh");
+        FileUtils.writeStringToFile(script, FAKE_DAEMON);
+        worker = new Aapt2DaemonWorker(Arrays.asList("sh", script.getAbsolutePath()), temp.getRoot());
+    }
+
+    @After
+    public void stopFakeDaemon() {
+        if (worker != null) {
+            worker.close();
+        }
+    }
+
+    @Test
+    public void commandsRunInTheSameProcess() throws Exception {
+        final Lines first = new Lines();
+        final Lines second = new Lines();
+
+        assertEquals(0, worker.execute(Arrays.asList("compile", "-o", "out", "values.xml"), new Lines(), first));
+        assertEquals(0, worker.execute(Arrays.asList("link", "-o", "app.apk"), new Lines(), second));
+
+        assertEquals(1, first.lines.size());
+        assertTrue(first.lines.get(0).endsWith(" compile -o out values.xml"));
+        final String pid = first.lines.get(0).split(" ")[0];
+        assertEquals(pid + " link -o app.apk", second.lines.get(0));
+    }
+
+    @Test
+    public void standardOutputOfACommandIsDeliveredBeforeItReturns() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            final Lines stdOut = new Lines();
+            assertEquals(0, worker.execute(Arrays.asList("compile", "values" + i + ".xml"), stdOut, new Lines()));
+            assertEquals(Collections.singletonList("out compile values" + i + ".xml"), stdOut.lines);
+        }
+    }
+
+    @Test
+    public void failedCommandHasAnErrorResult() throws Exception {
+        assertEquals(1, worker.execute(Arrays.asList("compile", "broken.xml"), new Lines(), new Lines()));
+        assertEquals(0, worker.execute(Arrays.asList("compile", "values.xml"), new Lines(), new Lines()));
+    }
+
+    @Test
+    public void onlyDaemonCommandsAreSupported() {
+        final ToolWorkers.ToolWorkerProvider provider = Aapt2DaemonWorker.PROVIDER;
+        assertTrue(provider.supports("/sdk/build-tools/28.0.3/aapt2", Arrays.asList("link", "-o", "app.apk")));
+        assertFalse(provider.supports("/sdk/build-tools/28.0.3/aapt", Arrays.asList("package", "-f")));
+        assertFalse(provider.supports("/sdk/build-tools/28.0.3/aapt2", Arrays.asList("dump", "app.apk")));
+        assertFalse(provider.supports("/sdk/build-tools/28.0.3/aapt2", Arrays.asList("link", "")));
+        assertFalse(provider.supports("/sdk/build-tools/28.0.3/aapt2", Collections.<String>emptyList()));
+    }
+
+    private static final class Lines implements StreamConsumer {
+        private final List<String> lines = new ArrayList<String>();
+
+        public void consumeLine(String line) {
+            lines.add(line);
+        }
+    }
+}
@@ -24,6 +24,9 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.android.ddmlib.DdmPreferences;
+import com.android.ddmlib.IDevice;
+import org.easymock.IAnswer;
+
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -31,6 +34,18 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
 
 /**
  * @author hugo.josefson@jayway.com
@@ -114,6 +129,93 @@ public class AbstractAndroidMojoTest {
         Assert.assertEquals(DdmPreferences.getTimeOut(), expectedTimeout);
     }
 
+    @Test
+    public void eachDeviceInstallsTheApksInOrder() throws Exception {
+        final List<String> installs = Collections.synchronizedList(new ArrayList<String>());
+        final IDevice first = installingDevice("first", installs, null);
+        final IDevice second = installingDevice("second", installs, null);
+
+        new DevicesTestAndroidMojo(first, second).deployApks(Arrays.asList(
+                new File("dependency1.apk"), new File("dependency2.apk"), new File("app.apk")));
+
+        Assert.assertEquals(Arrays.asList("first dependency1.apk", "first dependency2.apk", "first app.apk"),
+                installsOn("first", installs));
+        Assert.assertEquals(Arrays.asList("second dependency1.apk", "second dependency2.apk", "second app.apk"),
+                installsOn("second", installs));
+        verify(first, second);
+    }
+
+    @Test
+    public void failedInstallOnlyStopsItsOwnDevice() throws Exception {
+        final List<String> installs = Collections.synchronizedList(new ArrayList<String>());
+        final IDevice working = installingDevice("working", installs, null);
+        final IDevice failing = installingDevice("failing", installs, "dependency2.apk");
+
+        try {
+            new DevicesTestAndroidMojo(working, failing).deployApks(Arrays.asList(
+                    new File("dependency1.apk"), new File("dependency2.apk"), new File("app.apk")));
+            Assert.fail();
+        } catch (MojoExecutionException e) {
+            Assert.assertTrue(e.getMessage().contains("dependency2.apk"));
+        }
+
+        Assert.assertEquals(Arrays.asList("working dependency1.apk", "working dependency2.apk", "working app.apk"),
+                installsOn("working", installs));
+        Assert.assertEquals(Arrays.asList("failing dependency1.apk", "failing dependency2.apk"),
+                installsOn("failing", installs));
+    }
+
+    private IDevice installingDevice(final String serialNumber, final List<String> installs, final String failingApk)
+            throws Exception {
+        final IDevice device = createNiceMock(IDevice.class);
+        expect(device.getSerialNumber()).andReturn(serialNumber).anyTimes();
+        expect(device.installPackage(anyObject(String.class), eq(true))).andAnswer(new IAnswer<String>() {
+            public String answer() {
+                final String apk = new File((String) getCurrentArguments()[0]).getName();
+                installs.add(serialNumber + " " + apk);
+                return apk.equals(failingApk) ? "INSTALL_FAILED_INVALID_APK" : null;
+            }
+        }).anyTimes();
+        replay(device);
+        return device;
+    }
+
+    private List<String> installsOn(String serialNumber, List<String> installs) {
+        final List<String> deviceInstalls = new ArrayList<String>();
+        synchronized (installs) {
+            for (String install : installs) {
+                if (install.startsWith(serialNumber + " ")) {
+                    deviceInstalls.add(install);
+                }
+            }
+        }
+        return deviceInstalls;
+    }
+
+    /**
+     * Runs the device callbacks on the given devices instead of those of the Android Debug Bridge.
+     */
+    private class DevicesTestAndroidMojo extends AbstractAndroidMojo {
+        private final IDevice[] devices;
+
+        DevicesTestAndroidMojo(IDevice... devices) {
+            this.devices = devices;
+        }
+
+        @Override
+        protected void doWithDevices(DeviceCallback deviceCallback)
+                throws MojoExecutionException, MojoFailureException {
+            final DeviceTaskRunner runner = new DeviceTaskRunner(devices.length, 0, getLog());
+            for (IDevice device : devices) {
+                runner.submit(device, deviceCallback);
+            }
+            runner.await();
+        }
+
+        public void execute() throws MojoExecutionException, MojoFailureException {
+        }
+    }
+
     private class DefaultTestAndroidMojo extends AbstractAndroidMojo {
 
         @Override
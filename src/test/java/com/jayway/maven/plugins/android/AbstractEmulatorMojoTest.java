@@ -1,7 +1,10 @@
 package com.jayway.maven.plugins.android;
 
 import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
 import static org.easymock.EasyMock.isNull;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
@@ -10,10 +13,12 @@ import static org.powermock.api.easymock.PowerMock.createMock;
 import static org.powermock.api.easymock.PowerMock.mockStatic;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.easymock.IAnswer;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -24,6 +29,7 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import com.android.ddmlib.AdbCommandRejectedException;
 import com.android.ddmlib.AndroidDebugBridge;
 import com.android.ddmlib.IDevice;
+import com.android.ddmlib.IShellOutputReceiver;
 import com.android.ddmlib.ShellCommandUnresponsiveException;
 import com.android.ddmlib.TimeoutException;
 
@@ -127,6 +133,33 @@ public class AbstractEmulatorMojoTest
         }
     }
 
+    @Test
+    public void testStartAndroidEmulatorPoolAddsRunningEmulators() throws MojoExecutionException
+    {
+        IDevice first = withRunningEmulator( "emulator-5554" );
+        IDevice second = withRunningEmulator( "emulator-5556" );
+        expect( mockAndroidDebugBridge.isConnected() ).andReturn( true );
+        expect( mockAndroidDebugBridge.hasInitialDeviceList() ).andReturn( true );
+        expect( mockAndroidDebugBridge.getDevices() ).andReturn( new IDevice[]
+        { first, second } ).atLeastOnce();
+        replay( mockAndroidDebugBridge );
+
+        // neither started nor waited for, which would ask the emulators whether they are online
+        abstractEmulatorMojo.startAndroidEmulatorPool( null, 2, 5554 );
+
+        verify( first, second );
+    }
+
+    private IDevice withRunningEmulator( String serialNumber )
+    {
+        IDevice emulatorDevice = createMock( IDevice.class );
+        expect( emulatorDevice.getAvdName() ).andReturn( AVD_NAME ).anyTimes();
+        expect( emulatorDevice.isEmulator() ).andReturn( true ).anyTimes();
+        expect( emulatorDevice.getSerialNumber() ).andReturn( serialNumber ).atLeastOnce();
+        replay( emulatorDevice );
+        return emulatorDevice;
+    }
+
     /**
      * @param onlineAtSecondTry
      * @param extraBootStatusPollCycles < 0 to simulate 'stuck in boot animation'
@@ -143,66 +176,25 @@ public class AbstractEmulatorMojoTest
             {
                 expect( emulatorDevice.isOnline() ).andReturn( false ).andReturn( true );
 
+                emulatorDevice.executeShellCommand( eq( EmulatorBootWatcher.BOOT_WATCH_COMMAND ),
+                        anyObject( IShellOutputReceiver.class ) );
                 if ( extraBootStatusPollCycles < 0 )
                 {
                     //Simulate 'stuck in boot animation'
-                    expect( emulatorDevice.getPropertySync( "dev.bootcomplete" ) )
-                            .andReturn( null ).atLeastOnce();
-                    expect( emulatorDevice.getPropertySync( "sys.boot_completed" ) )
-                            .andReturn( null ).atLeastOnce();
-                    expect( emulatorDevice.getPropertySync( "init.svc.bootanim" ) )
-                            .andReturn( null ).once()
-                            .andReturn( "running" ).atLeastOnce(); //never changes to "stopped"
+                    expectLastCall().andAnswer( bootWatchOutput( "boot:::running" ) ).atLeastOnce();
                 }
                 else if ( extraBootStatusPollCycles == 0 )
                 {
                     //Simulate 'already booted'
-                    expect( emulatorDevice.getPropertySync( "dev.bootcomplete" ) )
-                            .andReturn( "1" ).once(); //to be cached
-                    expect( emulatorDevice.getPropertySync( "sys.boot_completed" ) )
-                            .andReturn( "1" ).once(); //to be cached
-                    expect( emulatorDevice.getPropertySync( "init.svc.bootanim" ) )
-                            .andReturn( "stopped" ).once(); //to be cached
+                    expectLastCall().andAnswer( bootWatchOutput( "boot:1:1:stopped" ) ).once();
                 }
-                else if ( extraBootStatusPollCycles == 1 )
+                else
                 {
-                    //Simulate 'almost booted (1 extra poll)'
-                    expect( emulatorDevice.getPropertySync( "dev.bootcomplete" ) )
-                            .andReturn( null ).once()
-                            .andReturn( "1" ).once(); //to be cached
-                    expect( emulatorDevice.getPropertySync( "sys.boot_completed" ) )
-                            .andReturn( null ).once()
-                            .andReturn( "1" ).once(); //to be cached
-                    expect( emulatorDevice.getPropertySync( "init.svc.bootanim" ) )
-                            .andReturn( "running" ).once()
-                            .andReturn( "stopped" ).once(); //to be cached
-                }
-                else if( extraBootStatusPollCycles >=3 )
-                {
-                    //Simulate 'almost booted (>=3 extra polls)'
-                    expect( emulatorDevice.getPropertySync( "dev.bootcomplete" ) )
-                            .andReturn( null ).times( extraBootStatusPollCycles - 1 )
-                            .andReturn( "1" ).once(); //to be cached
-                    expect( emulatorDevice.getPropertySync( "sys.boot_completed" ) )
-                            .andReturn( null ).times( extraBootStatusPollCycles - 1 )
-                            .andReturn( "1" ).once(); //to be cached
-                    expect( emulatorDevice.getPropertySync( "init.svc.bootanim" ) )
-                            .andReturn( null ).times( extraBootStatusPollCycles / 2 )
-                            .andReturn( "running" ).times( extraBootStatusPollCycles / 2 + extraBootStatusPollCycles % 2 )
-                            .andReturn( "stopped" ).once(); //to be cached
-                }
-                else if( extraBootStatusPollCycles >=2 )
-                {
-                    //Simulate 'almost booted (>=2 extra polls)'
-                    expect( emulatorDevice.getPropertySync( "dev.bootcomplete" ) )
-                            .andReturn( null ).times( extraBootStatusPollCycles - 1 )
-                            .andReturn( "1" ).once(); //to be cached
-                    expect( emulatorDevice.getPropertySync( "sys.boot_completed" ) )
-                            .andReturn( null ).times( extraBootStatusPollCycles - 1 )
-                            .andReturn( "1" ).once(); //to be cached
-                    expect( emulatorDevice.getPropertySync( "init.svc.bootanim" ) )
-                            .andReturn( "running" ).times( extraBootStatusPollCycles -1 )
-                            .andReturn( "stopped" ).once(); //to be cached
+                    //Simulate 'almost booted'
+                    String[] lines = new String[ extraBootStatusPollCycles + 1 ];
+                    Arrays.fill( lines, "boot:::running" );
+                    lines[ extraBootStatusPollCycles ] = "boot:1:1:stopped";
+                    expectLastCall().andAnswer( bootWatchOutput( lines ) ).once();
                 }
             }
             catch ( TimeoutException e)
@@ -230,6 +222,35 @@ public class AbstractEmulatorMojoTest
         return emulatorDevice;
     }
 
+    /**
+     * Prints the lines like the boot watch command does, repeating the last one until the watch is cancelled if the
+     * boot does not complete.
+     */
+    private IAnswer<Object> bootWatchOutput( final String... lines )
+    {
+        return new IAnswer<Object>()
+        {
+            public Object answer() throws Throwable
+            {
+                IShellOutputReceiver receiver = ( IShellOutputReceiver ) getCurrentArguments()[ 1 ];
+                for ( String line : lines )
+                {
+                    byte[] bytes = ( line + "\n" ).getBytes();
+                    receiver.addOutput( bytes, 0, bytes.length );
+                }
+                String last = lines[ lines.length - 1 ];
+                while ( !last.endsWith( "stopped" ) && !receiver.isCancelled() )
+                {
+                    Thread.sleep( 50 );
+                    byte[] bytes = ( last + "\n" ).getBytes();
+                    receiver.addOutput( bytes, 0, bytes.length );
+                }
+                receiver.flush();
+                return null;
+            }
+        };
+    }
+
     private void withConnectedDebugBridge( IDevice emulatorDevice )
     {
         expect( mockAndroidDebugBridge.isConnected() ).andReturn( true );
@@ -0,0 +1,50 @@
+package com.jayway.maven.plugins.android;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Excercises the {@link AndroidSdkRegistry} class.
+ */
+public class AndroidSdkRegistryTest {
+
+    private SdkTestSupport sdkTestSupport;
+
+    @Before
+    public void setUp(){
+        sdkTestSupport = new SdkTestSupport();
+    }
+
+    @Test
+    public void givenSameSdkAndPlatformThenParsedOnlyOnce() {
+        final AndroidSdkRegistry registry = AndroidSdkRegistry.forSession( null );
+        final File sdkPath = new File( sdkTestSupport.getEnv_ANDROID_HOME() );
+
+        final AndroidSdk first = registry.getSdk( sdkPath, "19", null );
+        final AndroidSdk second = registry.getSdk( sdkPath, "19", null );
+
+        Assert.assertSame( first, second );
+        Assert.assertEquals( 1, registry.getMisses() );
+        Assert.assertEquals( 1, registry.getHits() );
+    }
+
+    @Test
+    public void givenDifferentPlatformsThenSeparateEntries() {
+        final AndroidSdkRegistry registry = AndroidSdkRegistry.forSession( null );
+        final File sdkPath = new File( sdkTestSupport.getEnv_ANDROID_HOME() );
+
+        registry.getSdk( sdkPath, "19", null );
+        registry.getSdk( sdkPath, null, null );
+
+        Assert.assertEquals( 2, registry.getMisses() );
+        Assert.assertEquals( 0, registry.getHits() );
+    }
+
+    @Test(expected = InvalidSdkException.class)
+    public void givenInvalidPlatformThenException() {
+        AndroidSdkRegistry.forSession( null ).getSdk( new File( sdkTestSupport.getEnv_ANDROID_HOME() ), "invalid", null );
+    }
+}
@@ -0,0 +1,100 @@
+package com.jayway.maven.plugins.android;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BuildTimingsTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void reportAndTraceContainTheRecords() throws Exception {
+        final File directory = temp.newFolder("timings");
+        final BuildTimings timings = new BuildTimings(directory, new SystemStreamLog(), 1000000L);
+        final Thread thread = Thread.currentThread();
+        timings.add(new BuildTimings.Record("goal", "android-maven-plugin:dex (default-dex)", "app",
+                "android-maven-plugin:dex (default-dex)", null, 1000500L, 2000L, 1500L, 0, thread));
+        timings.add(new BuildTimings.Record("tool", "dx", "app", "android-maven-plugin:dex (default-dex)", "dx",
+                1000600L, 1800L, 3000L, 0, thread));
+
+        timings.write();
+
+        final String report = FileUtils.readFileToString(new File(directory, BuildTimings.REPORT_FILE));
+        assertTrue(report.contains("\"category\": \"goal\", \"module\": \"app\", "
+                + "\"goal\": \"android-maven-plugin:dex (default-dex)\", \"tool\": null, \"start\": 1000500, "
+                + "\"wallMillis\": 2000, \"cpuMillis\": 1500, \"exitCode\": 0"));
+        assertTrue(report.contains("\"tool\": \"dx\""));
+
+        final String trace = FileUtils.readFileToString(new File(directory, BuildTimings.TRACE_FILE));
+        assertTrue(trace.contains("{\"name\": \"dx\", \"cat\": \"tool\", \"ph\": \"X\", \"pid\": 1, \"tid\": "
+                + thread.getId() + ", \"ts\": 600000, \"dur\": 1800000"));
+        assertTrue(trace.contains("\"name\": \"thread_name\""));
+    }
+
+    @Test
+    public void toolsAreNotTimedOutsideOfARecordedBuild() {
+        assertNull(BuildTimings.startTool("/sdk/build-tools/21.1.2/aapt"));
+    }
+
+    @Test
+    public void overlappingToolsLeaveOutTheirCpuTime() throws Exception {
+        final File directory = temp.newFolder("timings");
+        final BuildTimings timings = new BuildTimings(directory, new SystemStreamLog(), System.currentTimeMillis());
+        timings.goalStarted(null, null);
+        final BuildTimings.ToolTimer aapt = BuildTimings.startTool("/sdk/build-tools/21.1.2/aapt");
+        final BuildTimings.ToolTimer aidl = BuildTimings.startTool("/sdk/build-tools/21.1.2/aidl");
+        aidl.stop(0);
+        aapt.stop(0);
+        BuildTimings.startTool("/sdk/build-tools/21.1.2/zipalign").stop(0);
+        timings.goalFinished(true);
+
+        timings.write();
+
+        final String report = FileUtils.readFileToString(new File(directory, BuildTimings.REPORT_FILE));
+        assertTrue(report.matches("(?s).*\"tool\": \"aapt\", [^}]*\"cpuMillis\": -1,.*"));
+        assertTrue(report.matches("(?s).*\"tool\": \"aidl\", [^}]*\"cpuMillis\": -1,.*"));
+        if (new File("/proc/self/stat").isFile()) {
+            assertTrue(report.matches("(?s).*\"tool\": \"zipalign\", [^}]*\"cpuMillis\": \\d+,.*"));
+        }
+    }
+
+    @Test
+    public void goalIsOnlyKnownInTheTasksItHandsItTo() throws Exception {
+        final BuildTimings timings = new BuildTimings(temp.newFolder("timings"), new SystemStreamLog(), 0L);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final Callable<Boolean> timesTools = new Callable<Boolean>() {
+            public Boolean call() {
+                return BuildTimings.startTool("aapt") != null;
+            }
+        };
+        try {
+            timings.goalStarted(null, null);
+            assertTrue(executor.submit(BuildTimings.inCurrentGoal(timesTools)).get());
+            assertFalse(executor.submit(timesTools).get());
+            timings.goalFinished(true);
+            assertFalse(executor.submit(timesTools).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void valuesAreQuotedForJson() {
+        assertEquals("\"C:\\\\sdk \\\"tools\\\"\\u000a\"", BuildTimings.quote("C:\\sdk \"tools\"\n"));
+        assertEquals("null", BuildTimings.quote(null));
+    }
+}
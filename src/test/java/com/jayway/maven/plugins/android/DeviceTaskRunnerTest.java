@@ -0,0 +1,81 @@
+package com.jayway.maven.plugins.android;
+
+import com.android.ddmlib.IDevice;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DeviceTaskRunnerTest {
+
+    @Test
+    public void allDevicesCompleteWhenOneFails() throws Exception {
+        final AtomicInteger completed = new AtomicInteger();
+        final DeviceTaskRunner runner = new DeviceTaskRunner(2, 0, new SystemStreamLog());
+        runner.submit(device("failing"), new DeviceCallback() {
+            public void doWithDevice(IDevice device) throws MojoExecutionException, MojoFailureException {
+                throw new MojoFailureException("tests failed");
+            }
+        });
+        runner.submit(device("broken"), new DeviceCallback() {
+            public void doWithDevice(IDevice device) throws MojoExecutionException, MojoFailureException {
+                throw new MojoExecutionException("install failed");
+            }
+        });
+        runner.submit(device("working"), new DeviceCallback() {
+            public void doWithDevice(IDevice device) {
+                completed.incrementAndGet();
+            }
+        });
+
+        try {
+            runner.await();
+            fail();
+        } catch (MojoFailureException e) {
+            assertTrue(e.getMessage().contains("tests failed"));
+            assertTrue(e.getMessage().contains("install failed"));
+        }
+        assertEquals(1, completed.get());
+    }
+
+    @Test
+    public void devicesAreInterruptedAfterTheTimeout() throws Exception {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final DeviceTaskRunner runner = new DeviceTaskRunner(1, 100, new SystemStreamLog());
+        runner.submit(device("hanging"), new DeviceCallback() {
+            public void doWithDevice(IDevice device) {
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+        });
+
+        try {
+            runner.await();
+            fail();
+        } catch (MojoExecutionException e) {
+            assertTrue(e.getMessage().contains("Did not complete within 100 ms"));
+        }
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+    }
+
+    private IDevice device(String serialNumber) {
+        final IDevice device = createNiceMock(IDevice.class);
+        expect(device.getSerialNumber()).andReturn(serialNumber).anyTimes();
+        replay(device);
+        return device;
+    }
+}
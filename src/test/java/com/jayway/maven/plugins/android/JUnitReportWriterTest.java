@@ -0,0 +1,78 @@
+package com.jayway.maven.plugins.android;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class JUnitReportWriterTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void reportIsCompleteAfterEveryTestCase() throws Exception {
+        final File file = new File(temp.getRoot(), "TEST-device.xml");
+        final JUnitReportWriter report = new JUnitReportWriter(file);
+        report.start("run", "device", Collections.singletonMap("ro.build", "<x>"));
+        report.startTestCase("a.A", "testOne");
+        report.endTestCase(0.5);
+
+        Document document = parse(file);
+        assertEquals(1, document.getElementsByTagName("testcase").getLength());
+        assertEquals("1", ((Element) document.getElementsByTagName("testsuite").item(0)).getAttribute("tests"));
+        assertEquals("<x>", ((Element) document.getElementsByTagName("property").item(0)).getAttribute("value"));
+
+        report.startTestCase("a.A", "testTwo");
+        report.addProblem(JUnitReportWriter.TAG_FAILURE, "boom", "junit.framework.AssertionFailedError",
+                "junit.framework.AssertionFailedError: boom & more");
+        report.endTestCase(1.25);
+        report.end(2, 1, 0, 0, 1.75);
+
+        document = parse(file);
+        final Element suite = (Element) document.getElementsByTagName("testsuite").item(0);
+        assertEquals("run", suite.getAttribute("name"));
+        assertEquals("2", suite.getAttribute("tests"));
+        assertEquals("1", suite.getAttribute("failures"));
+        assertEquals("0", suite.getAttribute("errors"));
+        assertEquals(2, document.getElementsByTagName("testcase").getLength());
+        assertEquals("junit.framework.AssertionFailedError: boom & more",
+                document.getElementsByTagName("failure").item(0).getTextContent());
+    }
+
+    @Test
+    public void reportOfARunThatDidNotEndOnlyCountsTheWrittenTestCases() throws Exception {
+        final File file = new File(temp.getRoot(), "TEST-device.xml");
+        final JUnitReportWriter report = new JUnitReportWriter(file);
+        report.start("run", "device", Collections.<String, String>emptyMap());
+
+        Element suite = (Element) parse(file).getElementsByTagName("testsuite").item(0);
+        assertEquals("0", suite.getAttribute("tests"));
+
+        report.startTestCase("a.A", "testOne");
+        report.addProblem(JUnitReportWriter.TAG_FAILURE, "boom", "junit.framework.AssertionFailedError", null);
+        report.endTestCase(0.5);
+        report.startTestCase("a.A", "testTwo");
+        report.addProblem(JUnitReportWriter.TAG_ERROR, "crash", "java.lang.NullPointerException", null);
+        report.endTestCase(0.25);
+        report.startTestCase("a.A", "testThree");
+        report.close();
+
+        suite = (Element) parse(file).getElementsByTagName("testsuite").item(0);
+        assertEquals("2", suite.getAttribute("tests"));
+        assertEquals("1", suite.getAttribute("failures"));
+        assertEquals("1", suite.getAttribute("errors"));
+        assertEquals("0.7500", suite.getAttribute("time"));
+    }
+
+    private Document parse(File file) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+    }
+}
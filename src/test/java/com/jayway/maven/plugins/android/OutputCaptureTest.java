@@ -0,0 +1,66 @@
+package com.jayway.maven.plugins.android;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.Os;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OutputCaptureTest {
+
+    @Test
+    public void linesKeepTheirNewlines() {
+        final OutputCapture capture = new OutputCapture(100, false);
+        capture.add("N: android=http://schemas.android.com/apk/res/android");
+        capture.add("  E: manifest (line=2)");
+
+        assertEquals("N: android=http://schemas.android.com/apk/res/android\n  E: manifest (line=2)\n",
+                capture.toString());
+        assertFalse(capture.isTruncated());
+    }
+
+    @Test
+    public void oldestLinesAreDroppedBeyondTheLimit() {
+        final OutputCapture capture = new OutputCapture(10, false);
+        capture.add("first");
+        capture.add("second");
+        capture.add("third");
+
+        assertEquals("third\n", capture.toString());
+        assertTrue(capture.isTruncated());
+    }
+
+    @Test
+    public void spilledOutputIsKeptInFull() {
+        final OutputCapture capture = new OutputCapture(10, true);
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            capture.add("line " + i);
+            expected.append("line ").append(i).append('\n');
+        }
+
+        assertEquals(expected.toString(), capture.toString());
+        assertFalse(capture.isTruncated());
+        capture.close();
+    }
+
+    @Test
+    public void executorReportsTruncatedStandardOut() throws Exception {
+        Assume.assumeFalse(Os.isFamily(Os.FAMILY_WINDOWS));
+        final CommandExecutor executor = CommandExecutor.Factory.createDefaultCommmandExecutor();
+        executor.setLogger(new SystemStreamLog());
+        executor.setCaptureStdOut(true);
+        executor.setCaptureStdErr(true);
+        executor.setCaptureLimit(10);
+        executor.executeCommand("sh", Arrays.asList("-c", "echo first; echo second; echo third"), false);
+
+        assertEquals("third\n", executor.getStandardOut());
+        assertTrue(executor.isStdOutTruncated());
+        assertFalse(executor.isStdErrTruncated());
+    }
+}
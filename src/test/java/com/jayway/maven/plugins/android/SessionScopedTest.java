@@ -0,0 +1,41 @@
+package com.jayway.maven.plugins.android;
+
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class SessionScopedTest {
+
+    private final SessionScoped<Object> scoped = new SessionScoped<Object>() {
+        @Override
+        protected Object create() {
+            return new Object();
+        }
+    };
+
+    @Test
+    public void sessionsOfTheSameRequestShareTheInstance() {
+        final MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+
+        assertSame(scoped.get(session(request)), scoped.get(session(request)));
+        assertNotSame(scoped.get(session(request)), scoped.get(session(new DefaultMavenExecutionRequest())));
+    }
+
+    @Test
+    public void withoutASessionEveryCallGetsANewInstance() {
+        assertNotSame(scoped.get(null), scoped.get(null));
+    }
+
+    @SuppressWarnings("deprecation")
+    private static MavenSession session(MavenExecutionRequest request) {
+        return new MavenSession(null, request, new DefaultMavenExecutionResult(), new ArrayList<MavenProject>());
+    }
+}
@@ -0,0 +1,59 @@
+package com.jayway.maven.plugins.android;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+
+public class ShardedTestReportTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void shardReportsAreMergedIntoOneSuite() throws Exception {
+        final ShardedTestReport report = new ShardedTestReport();
+        report.add(shardReport("TEST-device1-shard1.xml", "device1", "1.5000",
+                "<testcase classname=\"a.A\" name=\"testOne\" time=\"1.0000\"/>"
+                + "<testcase classname=\"a.A\" name=\"testTwo\" time=\"0,5000\">"
+                + "<failure message=\"boom\" type=\"junit.framework.AssertionFailedError\">trace &amp; more"
+                + "</failure></testcase>"));
+        report.add(shardReport("TEST-device2-shard2.xml", "device2", "2.0000",
+                "<testcase classname=\"b.B\" name=\"testThree\" time=\"2.0000\"/>"));
+
+        final File merged = new File(temp.getRoot(), "TEST-merged.xml");
+        report.write(merged, "com.foo.test");
+
+        final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(merged);
+        final Element suite = (Element) document.getElementsByTagName("testsuite").item(0);
+        assertEquals("com.foo.test", suite.getAttribute("name"));
+        assertEquals("device1,device2", suite.getAttribute("hostname"));
+        assertEquals("3", suite.getAttribute("tests"));
+        assertEquals("1", suite.getAttribute("failures"));
+        assertEquals("3.5000", suite.getAttribute("time"));
+        assertEquals(3, document.getElementsByTagName("testcase").getLength());
+        assertEquals("trace & more", document.getElementsByTagName("failure").item(0).getTextContent());
+
+        assertEquals(Long.valueOf(1500), report.getClassDurations().get("a.A"));
+        assertEquals(Long.valueOf(2000), report.getClassDurations().get("b.B"));
+    }
+
+    private File shardReport(String name, String hostname, String time, String testCases) throws Exception {
+        final int tests = testCases.split("<testcase ").length - 1;
+        final int failures = testCases.split("<failure ").length - 1;
+        final File file = new File(temp.getRoot(), name);
+        FileUtils.writeStringToFile(file, "<?xml version=\"1.0\" encoding=\"UTF-8\"?><testsuites>"
+                + "<testsuite name=\"run\" hostname=\"" + hostname + "\" tests=\"" + tests + "\" failures=\""
+                + failures + "\" errors=\"0\" ignored=\"0\" time=\"" + time + "\">"
+                + "<properties><property name=\"ro.build\" value=\"x\"/></properties>"
+                + testCases + "</testsuite></testsuites>", "UTF-8");
+        return file;
+    }
+}
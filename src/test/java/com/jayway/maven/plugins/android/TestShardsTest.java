@@ -0,0 +1,71 @@
+package com.jayway.maven.plugins.android;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestShardsTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void shardsAreBalancedByKnownDurations() {
+        final Map<String, Long> durations = new HashMap<String, Long>();
+        durations.put("A", 100L);
+        durations.put("B", 60L);
+        durations.put("C", 50L);
+        durations.put("D", 40L);
+        durations.put("E", 10L);
+
+        final List<List<String>> shards = TestShards.plan(Arrays.asList("A", "B", "C", "D", "E"), durations, 2);
+
+        assertEquals(2, shards.size());
+        assertEquals(Arrays.asList("A", "D"), shards.get(0));
+        assertEquals(Arrays.asList("B", "C", "E"), shards.get(1));
+    }
+
+    @Test
+    public void classesWithoutDurationAreEstimatedByTheAverage() {
+        final Map<String, Long> durations = new HashMap<String, Long>();
+        durations.put("A", 100L);
+        durations.put("B", 100L);
+
+        final List<List<String>> shards = TestShards.plan(Arrays.asList("A", "B", "New"), durations, 3);
+
+        assertEquals(3, shards.size());
+        for (List<String> shard : shards) {
+            assertEquals(1, shard.size());
+        }
+    }
+
+    @Test
+    public void thereAreNoEmptyShards() {
+        final List<List<String>> shards = TestShards.plan(Arrays.asList("A", "B"),
+                Collections.<String, Long>emptyMap(), 8);
+        assertEquals(2, shards.size());
+    }
+
+    @Test
+    public void durationsAreUpdatedKeepingClassesThatDidNotRun() throws Exception {
+        final File file = new File(temp.getRoot(), "durations.properties");
+        assertTrue(TestShards.readDurations(file).isEmpty());
+
+        TestShards.updateDurations(file, Collections.singletonMap("A", 10L));
+        TestShards.updateDurations(file, Collections.singletonMap("B", 20L));
+
+        final Map<String, Long> durations = TestShards.readDurations(file);
+        assertEquals(Long.valueOf(10), durations.get("A"));
+        assertEquals(Long.valueOf(20), durations.get("B"));
+    }
+}
@@ -0,0 +1,108 @@
+package com.jayway.maven.plugins.android;
+
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ToolWorkersTest {
+
+    @Test
+    public void workersOfAnExecutableAreCapped() throws Exception {
+        final String executable = "capped-tool";
+        final FakeProvider provider = new FakeProvider(executable);
+        ToolWorkers.register(provider);
+
+        final List<ToolWorkers.ToolWorker> workers = new ArrayList<ToolWorkers.ToolWorker>();
+        for (int i = 0; i < ToolWorkers.MAX_WORKERS_PER_EXECUTABLE; i++) {
+            workers.add(ToolWorkers.acquire(executable, command(), null));
+        }
+        assertEquals(ToolWorkers.MAX_WORKERS_PER_EXECUTABLE, provider.started.get());
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<ToolWorkers.ToolWorker> waiting = executor.submit(new Callable<ToolWorkers.ToolWorker>() {
+                public ToolWorkers.ToolWorker call() {
+                    return ToolWorkers.acquire(executable, command(), null);
+                }
+            });
+            try {
+                waiting.get(200, TimeUnit.MILLISECONDS);
+                fail();
+            } catch (TimeoutException e) {
+                // all workers are busy
+            }
+
+            ToolWorkers.release(workers.get(0));
+            assertSame(workers.get(0), waiting.get(10, TimeUnit.SECONDS));
+            assertEquals(ToolWorkers.MAX_WORKERS_PER_EXECUTABLE, provider.started.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void idleWorkerOfAnotherDirectoryMakesRoom() throws Exception {
+        final String executable = "moving-tool";
+        final FakeProvider provider = new FakeProvider(executable);
+        ToolWorkers.register(provider);
+
+        final List<ToolWorkers.ToolWorker> workers = new ArrayList<ToolWorkers.ToolWorker>();
+        for (int i = 0; i < ToolWorkers.MAX_WORKERS_PER_EXECUTABLE; i++) {
+            workers.add(ToolWorkers.acquire(executable, command(), new File("first")));
+        }
+        ToolWorkers.release(workers.get(0));
+
+        final ToolWorkers.ToolWorker worker = ToolWorkers.acquire(executable, command(), new File("second"));
+
+        assertEquals(ToolWorkers.MAX_WORKERS_PER_EXECUTABLE + 1, provider.started.get());
+        assertEquals(1, provider.closed.get());
+        assertFalse(workers.contains(worker));
+    }
+
+    private static List<String> command() {
+        return Collections.singletonList("run");
+    }
+
+    private static final class FakeProvider implements ToolWorkers.ToolWorkerProvider {
+        private final String executable;
+        private final AtomicInteger started = new AtomicInteger();
+        private final AtomicInteger closed = new AtomicInteger();
+
+        private FakeProvider(String executable) {
+            this.executable = executable;
+        }
+
+        public boolean supports(String executable, List<String> commands) {
+            return this.executable.equals(executable);
+        }
+
+        public ToolWorkers.ToolWorker start(String executable, File workingDirectory) {
+            started.incrementAndGet();
+            return new ToolWorkers.ToolWorker() {
+                public int execute(List<String> commands, StreamConsumer stdOut, StreamConsumer stdErr) {
+                    return 0;
+                }
+
+                public void close() {
+                    closed.incrementAndGet();
+                }
+            };
+        }
+    }
+}
@@ -20,6 +20,8 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Exercises the {@link com.jayway.maven.plugins.android.asm.AndroidTestFinder} class.
@@ -37,5 +39,11 @@ public class AndroidTestFinderTest {
         final boolean result = AndroidTestFinder.containsAndroidTests(new File("target/test-classes/com/jayway/maven/plugins/android/asm/withtests"));
         Assert.assertTrue("'withtests' should contain tests.", result);
     }
+    @Test
+    public void givenDirectoryWithTestsThenTheTestClassesAreFound() throws MojoExecutionException {
+        final List<String> result = AndroidTestFinder.findTestClasses(new File("target/test-classes/com/jayway/maven/plugins/android/asm/withtests"));
+        Assert.assertEquals(Arrays.asList("com.jayway.maven.plugins.android.asm.withtests.TestClassA",
+                "com.jayway.maven.plugins.android.asm.withtests.TestClassB"), result);
+    }
 
 }
@@ -0,0 +1,97 @@
+package com.jayway.maven.plugins.android.common;
+
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.IShellOutputReceiver;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.easymock.IAnswer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ApkInstallCacheTest {
+
+    private static final String INSTALLED_PATH = "/data/app/com.foo-1/base.apk";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void apkIsInstalledWhenTheDigestOnTheDeviceMatches() throws Exception {
+        final File apk = createApk();
+        final Map<String, String> shell = installed();
+        shell.put("sha1sum '" + INSTALLED_PATH + "'", ChecksumHelper.sha1(apk) + "  " + INSTALLED_PATH + "\n");
+
+        assertTrue(new ApkInstallCache(new SystemStreamLog()).isInstalled(device(shell), "com.foo", apk));
+    }
+
+    @Test
+    public void apkIsNotInstalledWhenTheDigestOnTheDeviceDiffers() throws Exception {
+        final File apk = createApk();
+        final Map<String, String> shell = installed();
+        shell.put("sha1sum '" + INSTALLED_PATH + "'", "0123456789012345678901234567890123456789  x\n");
+
+        assertFalse(new ApkInstallCache(new SystemStreamLog()).isInstalled(device(shell), "com.foo", apk));
+    }
+
+    @Test
+    public void apkIsNotInstalledWhenThePackageIsMissing() throws Exception {
+        final File apk = createApk();
+        final Map<String, String> shell = new TreeMap<String, String>();
+
+        assertFalse(new ApkInstallCache(new SystemStreamLog()).isInstalled(device(shell), "com.foo", apk));
+    }
+
+    @Test
+    public void markerIsUsedWhenTheDeviceCannotComputeDigests() throws Exception {
+        final File apk = createApk();
+        final Map<String, String> shell = installed();
+        shell.put("sha1sum '" + INSTALLED_PATH + "'", "/system/bin/sh: sha1sum: not found\n");
+        shell.put("cat '/data/local/tmp/android-maven-plugin/com.foo.installed'",
+                ChecksumHelper.sha1(apk) + " " + INSTALLED_PATH + "\n");
+
+        assertTrue(new ApkInstallCache(new SystemStreamLog()).isInstalled(device(shell), "com.foo", apk));
+    }
+
+    private Map<String, String> installed() {
+        final Map<String, String> shell = new TreeMap<String, String>();
+        shell.put("pm path com.foo", "package:" + INSTALLED_PATH + "\r\n");
+        return shell;
+    }
+
+    private File createApk() throws Exception {
+        final File apk = temp.newFile("app.apk");
+        FileUtils.writeStringToFile(apk, "apk");
+        return apk;
+    }
+
+    private IDevice device(final Map<String, String> shell) throws Exception {
+        final IDevice device = createNiceMock(IDevice.class);
+        device.executeShellCommand((String) anyObject(), (IShellOutputReceiver) anyObject());
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+            public Object answer() {
+                final String output = shell.get(getCurrentArguments()[0]);
+                if (output != null) {
+                    final byte[] bytes = output.getBytes();
+                    ((IShellOutputReceiver) getCurrentArguments()[1]).addOutput(bytes, 0, bytes.length);
+                }
+                ((IShellOutputReceiver) getCurrentArguments()[1]).flush();
+                return null;
+            }
+        }).anyTimes();
+        replay(device);
+        return device;
+    }
+}
@@ -0,0 +1,50 @@
+package com.jayway.maven.plugins.android.common;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class IncrementalPullTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void onlyMissingAndModifiedFilesArePulled() throws Exception {
+        final File target = temp.newFolder("shots");
+        final File same = new File(target, "a/same.png");
+        FileUtils.writeStringToFile(same, "same");
+        same.setLastModified(1400000000000L);
+        final File older = new File(target, "older.png");
+        FileUtils.writeStringToFile(older, "older");
+        older.setLastModified(1300000000000L);
+
+        final Map<String, RemoteFiles.Entry> remote = RemoteFiles.parseListing(
+                "4 1400000000 /sdcard/shots/a/same.png\n"
+                + "5 1400000000 /sdcard/shots/older.png\n"
+                + "6 1400000000 /sdcard/shots/b/new.png\n"
+                + "6 1400000000 /sdcard/shotsmore/other.png\n");
+
+        final Map<String, File> changed = IncrementalPull.selectChanged(remote, "/sdcard/shots/", target);
+
+        assertEquals(2, changed.size());
+        assertEquals(new File(target, "older.png"), changed.get("/sdcard/shots/older.png"));
+        assertEquals(new File(new File(target, "b"), "new.png"), changed.get("/sdcard/shots/b/new.png"));
+    }
+
+    @Test
+    public void singleFileIsPulledToTheTarget() throws Exception {
+        final File target = new File(temp.getRoot(), "trace.txt");
+        final Map<String, RemoteFiles.Entry> remote = RemoteFiles.parseListing("10 1400000000 /data/local/trace.txt\n");
+
+        final Map<String, File> changed = IncrementalPull.selectChanged(remote, "/data/local/trace.txt", target);
+
+        assertEquals(target, changed.get("/data/local/trace.txt"));
+    }
+}
@@ -0,0 +1,112 @@
+package com.jayway.maven.plugins.android.common;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalPushTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void onlyMissingAndModifiedFilesArePushed() throws Exception {
+        final File same = createFile("same.txt", "same", 1400000000000L);
+        final File touched = createFile("touched.txt", "touched", 1400000000000L);
+        final File resized = createFile("resized.txt", "resized", 1400000000000L);
+        final File missing = createFile("missing.txt", "missing", 1400000000000L);
+        final Map<String, String> files = new HashMap<String, String>();
+        files.put(same.getAbsolutePath(), "/sdcard/same.txt");
+        files.put(touched.getAbsolutePath(), "/sdcard/touched.txt");
+        files.put(resized.getAbsolutePath(), "/sdcard/resized.txt");
+        files.put(missing.getAbsolutePath(), "/sdcard/missing.txt");
+
+        final Map<String, RemoteFiles.Entry> remote = RemoteFiles.parseListing(
+                "4 1400000000 /sdcard/same.txt\r\n"
+                + "7 1300000000 /sdcard/touched.txt\r\n"
+                + "3 1400000000 /sdcard/resized.txt\r\n"
+                + "find: /sdcard/other: Permission denied\r\n");
+
+        assertEquals(Arrays.asList(missing.getAbsolutePath(), resized.getAbsolutePath(), touched.getAbsolutePath()),
+                new ArrayList<String>(IncrementalPush.selectChanged(files, remote, null).keySet()));
+
+        final List<String> sameSize = new ArrayList<String>();
+        assertEquals(Arrays.asList(missing.getAbsolutePath(), resized.getAbsolutePath()),
+                new ArrayList<String>(IncrementalPush.selectChanged(files, remote, sameSize).keySet()));
+        assertEquals(Arrays.asList(touched.getAbsolutePath()), sameSize);
+    }
+
+    @Test
+    public void smallFilesAreBundled() throws Exception {
+        final Map<String, String> files = new TreeMap<String, String>();
+        files.put(createFile("a", "a", 0).getAbsolutePath(), "/sdcard/a");
+        files.put(createFile("b", "b", 0).getAbsolutePath(), "/sdcard/b");
+        files.put(createFile("c", "c", 0).getAbsolutePath(), "relative/c");
+        final File large = temp.newFile("large");
+        FileUtils.writeByteArrayToFile(large, new byte[(int) IncrementalPush.SMALL_FILE + 1]);
+        files.put(large.getAbsolutePath(), "/sdcard/large");
+
+        final List<Map<String, String>> bundles = IncrementalPush.plan(files);
+
+        assertEquals(1, bundles.size());
+        assertEquals(Arrays.asList("/sdcard/a", "/sdcard/b"), new ArrayList<String>(bundles.get(0).values()));
+    }
+
+    @Test
+    public void remoteDigestsAreParsed() {
+        final Map<String, String> digests = RemoteFiles.parseSha1(
+                "0123456789ABCDEF0123456789abcdef01234567  /sdcard/a b.txt\r\n"
+                + "sha1sum: /sdcard/missing: No such file or directory\r\n");
+
+        assertEquals(1, digests.size());
+        assertEquals("0123456789abcdef0123456789abcdef01234567", digests.get("/sdcard/a b.txt"));
+    }
+
+    @Test
+    public void longPathsAreSplitIntoPrefixAndName() throws Exception {
+        final String directory = repeat('d', 120);
+        final String name = repeat('n', 90);
+        final byte[] header = TarWriter.header(directory + "/" + name, 5, 1400000000L);
+
+        assertEquals(name, new String(header, 0, 90, "UTF-8"));
+        assertEquals(directory, new String(header, 345, 120, "UTF-8"));
+        assertEquals("00000000005", new String(header, 124, 11, "UTF-8"));
+        assertEquals("ustar", new String(header, 257, 5, "UTF-8"));
+
+        long checksum = 0;
+        for (int i = 0; i < header.length; i++) {
+            checksum += i >= 148 && i < 156 ? ' ' : header[i] & 0xff;
+        }
+        assertEquals(checksum, Long.parseLong(new String(header, 148, 6, "UTF-8"), 8));
+
+        assertTrue(TarWriter.canStore(directory + "/" + name));
+        assertFalse(TarWriter.canStore(directory + "/" + repeat('n', 101)));
+        assertFalse(TarWriter.canStore(repeat('n', 101)));
+    }
+
+    private File createFile(String name, String content, long modified) throws Exception {
+        final File file = temp.newFile(name);
+        FileUtils.writeStringToFile(file, content);
+        file.setLastModified(modified);
+        return file;
+    }
+
+    private static String repeat(char c, int count) {
+        final char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
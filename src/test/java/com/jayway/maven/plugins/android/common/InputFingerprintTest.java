@@ -0,0 +1,53 @@
+package com.jayway.maven.plugins.android.common;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InputFingerprintTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void givenUnchangedInputsThenFingerprintMatches() throws Exception {
+        final File classes = temp.newFolder("classes");
+        FileUtils.writeStringToFile(new File(classes, "com/foo/A.class"), "A");
+        final File manifest = new File(temp.getRoot(), "out.jar.inputs");
+
+        new InputFingerprint().addValue("options", "-dontwarn").addFile(classes).write(manifest);
+
+        assertTrue(new InputFingerprint().addValue("options", "-dontwarn").addFile(classes).matches(manifest));
+    }
+
+    @Test
+    public void givenChangedFileContentThenFingerprintDiffers() throws Exception {
+        final File classes = temp.newFolder("classes");
+        final File classFile = new File(classes, "com/foo/A.class");
+        FileUtils.writeStringToFile(classFile, "A");
+        final File manifest = new File(temp.getRoot(), "out.jar.inputs");
+        new InputFingerprint().addFile(classes).write(manifest);
+
+        FileUtils.writeStringToFile(classFile, "B");
+        classFile.setLastModified(classFile.lastModified() + 2000);
+
+        assertFalse(new InputFingerprint().addFile(classes).matches(manifest));
+    }
+
+    @Test
+    public void givenChangedValueOrMissingManifestThenFingerprintDiffers() throws Exception {
+        final File manifest = new File(temp.getRoot(), "out.jar.inputs");
+
+        assertFalse(new InputFingerprint().addValue("options", "-dontwarn").matches(manifest));
+
+        new InputFingerprint().addValue("options", "-dontwarn").write(manifest);
+
+        assertFalse(new InputFingerprint().addValue("options", "-dontobfuscate").matches(manifest));
+    }
+}
@@ -0,0 +1,102 @@
+package com.jayway.maven.plugins.android.common;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RawZipOutputStreamTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static final byte[] TEXT = "Lorem ipsum dolor sit amet, lorem ipsum dolor sit amet".getBytes();
+    private static final byte[] NATIVE = new byte[] { 1, 2, 3, 4, 5, 6, 7 };
+
+    @Test
+    public void copiedEntriesAreReadableWithoutRecompression() throws Exception {
+        final File source = createZip();
+        final File copy = temp.newFile("copy.zip");
+
+        final RawZipFile zip = new RawZipFile(source);
+        final RawZipOutputStream out = new RawZipOutputStream(new FileOutputStream(copy));
+        for (RawZipFile.Entry entry : zip.getEntries()) {
+            out.copyEntry(zip, entry, 0);
+        }
+        out.close();
+        zip.close();
+
+        final ZipFile result = new ZipFile(copy);
+        assertArrayEquals(TEXT, IOUtils.toByteArray(result.getInputStream(result.getEntry("res/text.txt"))));
+        assertArrayEquals(NATIVE, IOUtils.toByteArray(result.getInputStream(result.getEntry("lib/x86/libfoo.so"))));
+        assertEquals(ZipEntry.DEFLATED, result.getEntry("res/text.txt").getMethod());
+        result.close();
+    }
+
+    @Test
+    public void storedEntriesCanBeAligned() throws Exception {
+        final File source = createZip();
+        final File copy = temp.newFile("aligned.zip");
+
+        final RawZipFile zip = new RawZipFile(source);
+        final RawZipOutputStream out = new RawZipOutputStream(new FileOutputStream(copy));
+        for (RawZipFile.Entry entry : zip.getEntries()) {
+            out.copyEntry(zip, entry, entry.getMethod() == ZipEntry.STORED ? 4096 : 0);
+        }
+        out.close();
+        zip.close();
+
+        final byte[] bytes = IOUtils.toByteArray(new java.io.FileInputStream(copy));
+        final RawZipFile aligned = new RawZipFile(copy);
+        for (RawZipFile.Entry entry : aligned.getEntries()) {
+            if (entry.getMethod() == ZipEntry.STORED) {
+                final int dataOffset = indexOf(bytes, NATIVE);
+                assertEquals(0, dataOffset % 4096);
+            }
+        }
+        assertArrayEquals(TEXT, IOUtils.toByteArray(aligned.openInflated(aligned.getEntries().get(0))));
+        aligned.close();
+    }
+
+    private File createZip() throws IOException {
+        final File file = temp.newFile("source.zip");
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        // deflated entries are written with a data descriptor by ZipOutputStream
+        out.putNextEntry(new ZipEntry("res/text.txt"));
+        out.write(TEXT);
+        out.closeEntry();
+
+        final ZipEntry stored = new ZipEntry("lib/x86/libfoo.so");
+        stored.setMethod(ZipEntry.STORED);
+        stored.setSize(NATIVE.length);
+        final CRC32 crc = new CRC32();
+        crc.update(NATIVE);
+        stored.setCrc(crc.getValue());
+        out.putNextEntry(stored);
+        out.write(NATIVE);
+        out.closeEntry();
+        out.close();
+        return file;
+    }
+
+    private static int indexOf(byte[] haystack, byte[] needle) {
+        for (int i = 0; i <= haystack.length - needle.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(haystack, i, i + needle.length), needle)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,84 @@
+package com.jayway.maven.plugins.android.common;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UnpackedLibCacheTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File archive;
+    private UnpackedLibCache cache;
+    private final AtomicInteger extractions = new AtomicInteger();
+
+    private final UnpackedLibCache.Extractor extractor = new UnpackedLibCache.Extractor() {
+        @Override
+        public void extract(File archive, File targetFolder) throws MojoExecutionException {
+            extractions.incrementAndGet();
+            try {
+                FileUtils.writeStringToFile(new File(targetFolder, "AndroidManifest.xml"), "<manifest/>");
+            } catch (IOException e) {
+                throw new MojoExecutionException("", e);
+            }
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        archive = temp.newFile("lib.aar");
+        FileUtils.writeStringToFile(archive, "some aar content");
+        cache = new UnpackedLibCache(temp.newFolder("cache"), Long.MAX_VALUE, new ConsoleLogger(Logger.LEVEL_DISABLED, "test"));
+    }
+
+    @Test
+    public void givenTwoModulesThenArchiveExtractedOnce() throws Exception {
+        final File moduleA = new File(temp.getRoot(), "a/unpacked-libs/lib");
+        final File moduleB = new File(temp.getRoot(), "b/unpacked-libs/lib");
+
+        cache.unpack(archive, moduleA, extractor);
+        cache.unpack(archive, moduleB, extractor);
+
+        assertEquals(1, extractions.get());
+        assertTrue(new File(moduleA, "AndroidManifest.xml").exists());
+        assertTrue(new File(moduleB, "AndroidManifest.xml").exists());
+    }
+
+    @Test
+    public void givenUpToDateModuleFolderThenNothingCopied() throws Exception {
+        final File module = new File(temp.getRoot(), "a/unpacked-libs/lib");
+        cache.unpack(archive, module, extractor);
+        final File manifest = new File(module, "AndroidManifest.xml");
+        manifest.delete();
+
+        cache.unpack(archive, module, extractor);
+
+        assertEquals(1, extractions.get());
+        assertTrue(!manifest.exists());
+    }
+
+    @Test
+    public void givenChangedArchiveThenExtractedAgain() throws Exception {
+        final File module = new File(temp.getRoot(), "a/unpacked-libs/lib");
+        cache.unpack(archive, module, extractor);
+
+        FileUtils.writeStringToFile(archive, "some other aar content");
+        archive.setLastModified(archive.lastModified() + 2000);
+        cache.unpack(archive, module, extractor);
+
+        assertEquals(2, extractions.get());
+    }
+}
@@ -0,0 +1,73 @@
+package com.jayway.maven.plugins.android.common;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ZipAlignerTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void storedEntriesAreAlignedInPlaceOnce() throws Exception {
+        final File apk = createZip();
+        final ZipAligner aligner = new ZipAligner(ZipAligner.DEFAULT_ALIGNMENT, true);
+
+        assertFalse(aligner.isAligned(apk));
+        assertTrue(aligner.alignInPlace(apk));
+        assertTrue(aligner.isAligned(apk));
+        assertFalse(aligner.alignInPlace(apk));
+
+        final RawZipFile aligned = new RawZipFile(apk);
+        for (RawZipFile.Entry entry : aligned.getEntries()) {
+            final long offset = aligned.getDataOffset(entry);
+            if (entry.getName().endsWith(".so")) {
+                assertEquals(0, offset % ZipAligner.PAGE_ALIGNMENT);
+            } else if (entry.getMethod() == ZipEntry.STORED) {
+                assertEquals(0, offset % ZipAligner.DEFAULT_ALIGNMENT);
+            }
+        }
+        aligned.close();
+
+        final ZipFile result = new ZipFile(apk);
+        assertEquals("a.png", IOUtils.toString(result.getInputStream(result.getEntry("a.png"))));
+        assertEquals("classes.dex", IOUtils.toString(result.getInputStream(result.getEntry("classes.dex"))));
+        assertEquals("lib/x86/libfoo.so",
+                IOUtils.toString(result.getInputStream(result.getEntry("lib/x86/libfoo.so"))));
+        result.close();
+    }
+
+    private File createZip() throws Exception {
+        final File zip = temp.newFile("app.apk");
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        for (String name : new String[] { "a.png", "classes.dex", "res/raw/bb.bin", "lib/x86/libfoo.so" }) {
+            final byte[] content = name.getBytes();
+            final ZipEntry entry = new ZipEntry(name);
+            if (!name.equals("classes.dex")) {
+                final CRC32 crc = new CRC32();
+                crc.update(content);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(content.length);
+                entry.setCrc(crc.getValue());
+            }
+            out.putNextEntry(entry);
+            out.write(content);
+            out.closeEntry();
+        }
+        out.close();
+        return zip;
+    }
+}
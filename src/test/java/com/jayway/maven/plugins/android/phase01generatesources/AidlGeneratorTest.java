@@ -0,0 +1,36 @@
+package com.jayway.maven.plugins.android.phase01generatesources;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class AidlGeneratorTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void readDependenciesListsAidlFileAndImports() throws Exception {
+        final File dependencyFile = temp.newFile("IService.d");
+        FileUtils.writeStringToFile(dependencyFile,
+                "/gen/com/foo/IService.java: \\\n"
+                + "  /src/com/foo/IService.aidl \\\n"
+                + "  /src/com/foo/Parcel.aidl\n"
+                + "\n"
+                + "/src/com/foo/IService.aidl :\n"
+                + "/src/com/foo/Parcel.aidl :\n");
+
+        final List<File> inputs = AidlGenerator.readDependencies(dependencyFile);
+
+        assertEquals(Arrays.asList(
+                new File("/src/com/foo/IService.aidl").getAbsoluteFile(),
+                new File("/src/com/foo/Parcel.aidl").getAbsoluteFile()), inputs);
+    }
+}
@@ -0,0 +1,21 @@
+package com.jayway.maven.plugins.android.phase08preparepackage;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DexMojoTest {
+
+    @Test
+    public void parseMaxHeapHandlesUnitsAndMissingDash() {
+        assertEquals(1024L * 1024 * 1024, DexMojo.parseMaxHeap(new String[] { "-Xms256m", "-Xmx1024M" }));
+        assertEquals(2L * 1024 * 1024 * 1024, DexMojo.parseMaxHeap(new String[] { "Xmx2g" }));
+        assertEquals(512L * 1024, DexMojo.parseMaxHeap(new String[] { "-Xmx512k" }));
+    }
+
+    @Test
+    public void parseMaxHeapWithoutXmxIsZero() {
+        assertEquals(0, DexMojo.parseMaxHeap(new String[] { "-Xms256m" }));
+        assertEquals(0, DexMojo.parseMaxHeap(null));
+    }
+}
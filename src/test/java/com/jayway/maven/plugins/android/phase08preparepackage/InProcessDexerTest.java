@@ -0,0 +1,73 @@
+package com.jayway.maven.plugins.android.phase08preparepackage;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class InProcessDexerTest {
+
+    private final File dxJar = new File("dx.jar");
+    private final List<FakeDx> loaded = new ArrayList<FakeDx>();
+
+    private final InProcessDexer dexer = new InProcessDexer(new InProcessDexer.DxLoader() {
+        public InProcessDexer.Dx load(File jar) {
+            final FakeDx dx = new FakeDx();
+            loaded.add(dx);
+            return dx;
+        }
+    });
+
+    @Test
+    public void successfulRunIsReused() throws Exception {
+        dexer.dex(dxJar, Collections.singletonList("ok"));
+        dexer.dex(dxJar, Collections.singletonList("ok"));
+
+        assertEquals(1, loaded.size());
+        assertEquals(2, loaded.get(0).runs);
+    }
+
+    @Test
+    public void runWithErrorResultIsNotReused() throws Exception {
+        assertEquals(1, dexer.dex(dxJar, Collections.singletonList("fail")));
+        dexer.dex(dxJar, Collections.singletonList("ok"));
+
+        assertEquals(2, loaded.size());
+        assertNotSame(loaded.get(0), loaded.get(1));
+        assertEquals(1, loaded.get(1).runs);
+    }
+
+    @Test
+    public void runThrowingAnExceptionIsNotReused() throws Exception {
+        try {
+            dexer.dex(dxJar, Collections.singletonList("throw"));
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(loaded.get(0).thrown, e);
+        }
+        dexer.dex(dxJar, Collections.singletonList("ok"));
+
+        assertEquals(2, loaded.size());
+    }
+
+    private static final class FakeDx implements InProcessDexer.Dx {
+        private int runs;
+        private IllegalStateException thrown;
+
+        public int run(String[] arguments) {
+            runs++;
+            if ("throw".equals(arguments[0])) {
+                thrown = new IllegalStateException("dx failed");
+                throw thrown;
+            }
+            return "fail".equals(arguments[0]) ? 1 : 0;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.jayway.maven.plugins.android.phase08preparepackage;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PreDexCacheTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File dxJar;
+
+    @Before
+    public void setUp() throws Exception {
+        dxJar = temp.newFile("dx.jar");
+        FileUtils.writeStringToFile(dxJar, "dx");
+    }
+
+    @Test
+    public void givenSameNamedJarsWithDifferentContentThenEntriesDiffer() throws Exception {
+        final File first = new File(temp.newFolder("aar1"), "classes.jar");
+        final File second = new File(temp.newFolder("aar2"), "classes.jar");
+        FileUtils.writeStringToFile(first, "first");
+        FileUtils.writeStringToFile(second, "second");
+
+        final PreDexCache cache = new PreDexCache(temp.newFolder("cache"), dxJar, Collections.<String>emptyList());
+
+        assertFalse(cache.getEntry(first).equals(cache.getEntry(second)));
+    }
+
+    @Test
+    public void givenSameContentInDifferentLocationsThenEntriesAreShared() throws Exception {
+        final File first = new File(temp.newFolder("module1"), "lib.jar");
+        final File second = new File(temp.newFolder("module2"), "lib.jar");
+        FileUtils.writeStringToFile(first, "content");
+        FileUtils.writeStringToFile(second, "content");
+
+        final PreDexCache cache = new PreDexCache(temp.newFolder("cache"), dxJar, Collections.<String>emptyList());
+
+        assertEquals(cache.getEntry(first), cache.getEntry(second));
+    }
+
+    @Test
+    public void keyDependsOnDxAndFlags() {
+        final String key = PreDexCache.key("jar", "dx", Collections.<String>emptyList());
+
+        assertFalse(key.equals(PreDexCache.key("jar", "other-dx", Collections.<String>emptyList())));
+        assertFalse(key.equals(PreDexCache.key("jar", "dx", Arrays.asList("--no-locals"))));
+    }
+
+    @Test
+    public void commitMovesTemporaryFileIntoPlace() throws Exception {
+        final File jar = temp.newFile("lib.jar");
+        final PreDexCache cache = new PreDexCache(temp.newFolder("cache"), dxJar, Collections.<String>emptyList());
+        final File entry = cache.getEntry(jar);
+        final File temporaryFile = cache.newTemporaryFile();
+        FileUtils.writeStringToFile(temporaryFile, "dexed");
+
+        cache.commit(temporaryFile, entry);
+
+        assertTrue(entry.isFile());
+        assertFalse(temporaryFile.exists());
+    }
+}
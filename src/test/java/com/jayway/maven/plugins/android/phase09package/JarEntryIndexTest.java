@@ -0,0 +1,70 @@
+package com.jayway.maven.plugins.android.phase09package;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class JarEntryIndexTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void entriesAreIndexedWithoutFolders() throws Exception {
+        final File jar = createJar("lib.jar", "com/", "com/foo/A.class", "config.properties");
+        final File indexFolder = new File(temp.getRoot(), "index");
+
+        assertEquals(Arrays.asList("com/foo/A.class", "config.properties"),
+                new JarEntryIndex(indexFolder).getEntries(jar));
+        assertEquals(1, indexFolder.list().length);
+        assertEquals(Arrays.asList("com/foo/A.class", "config.properties"),
+                new JarEntryIndex(indexFolder).getEntries(jar));
+    }
+
+    @Test
+    public void jarWithoutDuplicatesIsCreatedOnce() throws Exception {
+        final File jar = createJar("lib.jar", "com/foo/A.class", "config.properties");
+        final JarEntryIndex index = new JarEntryIndex(new File(temp.getRoot(), "index"));
+
+        final File filtered = index.getJarWithout(jar, Collections.singleton("config.properties"));
+        final long lastModified = filtered.lastModified();
+
+        assertEquals("lib.jar", filtered.getName());
+        final ZipFile result = new ZipFile(filtered);
+        assertNotNull(result.getEntry("com/foo/A.class"));
+        assertNull(result.getEntry("config.properties"));
+        result.close();
+
+        final File again = index.getJarWithout(jar, Collections.singleton("config.properties"));
+        assertEquals(filtered, again);
+        assertEquals(lastModified, again.lastModified());
+        assertFalse(filtered.equals(index.getJarWithout(jar, Collections.singleton("com/foo/A.class"))));
+    }
+
+    private File createJar(String name, String... entries) throws Exception {
+        final File jar = temp.newFile(name);
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        for (String entry : entries) {
+            out.putNextEntry(new ZipEntry(entry));
+            if (!entry.endsWith("/")) {
+                out.write(entry.getBytes());
+            }
+            out.closeEntry();
+        }
+        out.close();
+        return jar;
+    }
+}
@@ -0,0 +1,199 @@
+package com.jayway.maven.plugins.android.phase09package;
+
+import com.google.common.io.BaseEncoding;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.security.CodeSigner;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class ParallelApkBuilderTest {
+
+    private static final String DISABLED_JAR_ALGORITHMS = "jdk.jar.disabledAlgorithms";
+
+    private static String disabledJarAlgorithms;
+
+    /**
+     * The apk is signed with SHA-1 like ApkBuilder does, which newer JDKs no longer accept for jars by default.
+     */
+    @BeforeClass
+    public static void allowSha1SignedJars() {
+        disabledJarAlgorithms = Security.getProperty(DISABLED_JAR_ALGORITHMS);
+        Security.setProperty(DISABLED_JAR_ALGORITHMS, "");
+    }
+
+    @AfterClass
+    public static void restoreDisabledJarAlgorithms() {
+        if (disabledJarAlgorithms != null) {
+            Security.setProperty(DISABLED_JAR_ALGORITHMS, disabledJarAlgorithms);
+        }
+    }
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void entriesArePackagedInOrderWithApkBuilderFiltering() throws Exception {
+        final File resources = createZip("app.ap_", "AndroidManifest.xml", "res/layout/main.xml", "resources.arsc");
+        final File dex = temp.newFile("classes.dex");
+        FileUtils.writeStringToFile(dex, "dex");
+        final File classes = temp.newFolder("classes");
+        FileUtils.writeStringToFile(new File(classes, "com/foo/A.class"), "A");
+        FileUtils.writeStringToFile(new File(classes, "com/foo/b.properties"), "b");
+        FileUtils.writeStringToFile(new File(classes, ".svn/entries"), "svn");
+        final File jar = createZip("lib.jar", "META-INF/MANIFEST.MF", "org/bar/C.class", "org/bar/c.properties",
+                "org/bar/d.properties");
+        final File libs = temp.newFolder("libs");
+        FileUtils.writeStringToFile(new File(libs, "armeabi/libfoo.so"), "so");
+        FileUtils.writeStringToFile(new File(libs, "armeabi/gdbserver"), "gdb");
+
+        final File apk = new File(temp.getRoot(), "app.apk");
+        final ParallelApkBuilder builder = new ParallelApkBuilder(apk, resources, dex, null, null, false, 2);
+        builder.addSourceFolder(classes);
+        builder.addResourcesFromJar(jar, Collections.singleton("org/bar/d.properties"));
+        builder.addNativeLibraries(libs);
+        builder.sealApk();
+
+        final ZipFile result = new ZipFile(apk);
+        final List<String> names = new ArrayList<String>();
+        for (Enumeration<? extends ZipEntry> entries = result.entries(); entries.hasMoreElements();) {
+            names.add(entries.nextElement().getName());
+        }
+        assertEquals(Arrays.asList("AndroidManifest.xml", "res/layout/main.xml", "resources.arsc", "classes.dex",
+                "com/foo/b.properties", "org/bar/c.properties", "lib/armeabi/libfoo.so"), names);
+        assertEquals("dex", IOUtils.toString(result.getInputStream(result.getEntry("classes.dex"))));
+        assertEquals("org/bar/c.properties",
+                IOUtils.toString(result.getInputStream(result.getEntry("org/bar/c.properties"))));
+        result.close();
+    }
+
+    @Test
+    public void incrementalBuildCopiesUnchangedFilesFromPreviousApk() throws Exception {
+        final File resources = createZip("app.ap_", "AndroidManifest.xml");
+        final File dex = temp.newFile("classes.dex");
+        FileUtils.writeStringToFile(dex, "dex");
+        final File classes = temp.newFolder("classes");
+        FileUtils.writeStringToFile(new File(classes, "a.properties"), "a");
+        final File apk = new File(temp.getRoot(), "app.apk");
+
+        assertEquals(0, packageIncrementally(apk, resources, dex, classes));
+        assertEquals(2, packageIncrementally(apk, resources, dex, classes));
+
+        FileUtils.writeStringToFile(dex, "changed dex");
+        assertEquals(1, packageIncrementally(apk, resources, dex, classes));
+
+        final ZipFile result = new ZipFile(apk);
+        assertEquals("changed dex", IOUtils.toString(result.getInputStream(result.getEntry("classes.dex"))));
+        assertEquals("a", IOUtils.toString(result.getInputStream(result.getEntry("a.properties"))));
+        result.close();
+    }
+
+    private int packageIncrementally(File apk, File resources, File dex, File classes) throws Exception {
+        final ParallelApkBuilder builder = new ParallelApkBuilder(apk, resources, dex, null, null, false, 2);
+        builder.setIncremental(true);
+        builder.addSourceFolder(classes);
+        builder.sealApk();
+        return builder.getReusedEntries();
+    }
+
+    @Test
+    public void signedApkVerifiesWithJarFile() throws Exception {
+        final KeyStore keyStore = KeyStore.getInstance("JKS");
+        final InputStream keyStoreIn = getClass().getResourceAsStream("test.keystore");
+        keyStore.load(keyStoreIn, "android".toCharArray());
+        keyStoreIn.close();
+        final PrivateKey key = (PrivateKey) keyStore.getKey("androiddebugkey", "android".toCharArray());
+        final X509Certificate certificate = (X509Certificate) keyStore.getCertificate("androiddebugkey");
+
+        final File resources = createZip("app.ap_", "AndroidManifest.xml", "res/layout/main.xml", "resources.arsc");
+        final File dex = temp.newFile("classes.dex");
+        FileUtils.writeStringToFile(dex, "dex");
+        final File classes = temp.newFolder("classes");
+        // long enough for the manifest to wrap the name
+        FileUtils.writeStringToFile(new File(classes, "com/example/with/a/rather/long/path/to/some/resource.properties"),
+                "a");
+        final File apk = new File(temp.getRoot(), "signed.apk");
+        final ParallelApkBuilder builder = new ParallelApkBuilder(apk, resources, dex, key, certificate, false, 2);
+        builder.addSourceFolder(classes);
+        builder.sealApk();
+
+        final JarFile jar = new JarFile(apk, true);
+        int verified = 0;
+        for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+            final JarEntry entry = entries.nextElement();
+            // the signers are only known once the entry has been read completely
+            IOUtils.toByteArray(jar.getInputStream(entry));
+            if (entry.isDirectory() || entry.getName().startsWith("META-INF/")) {
+                continue;
+            }
+            final CodeSigner[] signers = entry.getCodeSigners();
+            assertNotNull(entry.getName() + " is not signed", signers);
+            assertEquals(certificate, signers[0].getSignerCertPath().getCertificates().get(0));
+            verified++;
+        }
+        assertEquals(5, verified);
+
+        final byte[] manifest = IOUtils.toByteArray(jar.getInputStream(jar.getEntry("META-INF/MANIFEST.MF")));
+        final String manifestText = new String(manifest, "UTF-8");
+        final byte[] mainAttributes = Arrays.copyOf(manifest, manifestText.indexOf("\r\n\r\n") + 4);
+        final Manifest signatureFile = new Manifest(jar.getInputStream(jar.getEntry("META-INF/CERT.SF")));
+        assertEquals(BaseEncoding.base64().encode(MessageDigest.getInstance("SHA1").digest(mainAttributes)),
+                signatureFile.getMainAttributes().getValue("SHA1-Digest-Manifest-Main-Attributes"));
+        assertEquals(BaseEncoding.base64().encode(MessageDigest.getInstance("SHA1").digest(manifest)),
+                signatureFile.getMainAttributes().getValue("SHA1-Digest-Manifest"));
+        jar.close();
+    }
+
+    @Test(expected = java.util.zip.ZipException.class)
+    public void duplicateEntriesAreRejected() throws Exception {
+        final File resources = createZip("app.ap_", "AndroidManifest.xml");
+        final File dex = temp.newFile("classes.dex");
+        final File jar = createZip("lib.jar", "classes.dex");
+
+        final ParallelApkBuilder builder = new ParallelApkBuilder(new File(temp.getRoot(), "app.apk"), resources,
+                dex, null, null, false, 1);
+        try {
+            builder.addResourcesFromJar(jar, Collections.<String>emptySet());
+        } finally {
+            builder.close();
+        }
+    }
+
+    private File createZip(String name, String... entries) throws Exception {
+        final File zip = temp.newFile(name);
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        for (String entry : entries) {
+            out.putNextEntry(new ZipEntry(entry));
+            out.write(entry.getBytes());
+            out.closeEntry();
+        }
+        out.close();
+        return zip;
+    }
+}
@@ -0,0 +1,45 @@
+package com.jayway.maven.plugins.android.phase09package;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class UnsignedApkCopyTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void signatureFilesAreRemovedAndEverythingElseKept() throws Exception {
+        final File signed = temp.newFile("app.apk");
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(signed));
+        for (String name : new String[] { "AndroidManifest.xml", "classes.dex", "META-INF/services/foo",
+                "META-INF/MANIFEST.MF", "META-INF/CERT.SF", "META-INF/CERT.RSA" }) {
+            out.putNextEntry(new ZipEntry(name));
+            out.write(name.getBytes());
+            out.closeEntry();
+        }
+        out.close();
+
+        final File unsigned = temp.newFile("app-unsigned.apk");
+        ApkMojo.copyWithoutDebugSignature(signed, unsigned, null);
+
+        final ZipFile result = new ZipFile(unsigned);
+        assertNotNull(result.getEntry("AndroidManifest.xml"));
+        assertNotNull(result.getEntry("classes.dex"));
+        assertNotNull(result.getEntry("META-INF/services/foo"));
+        assertNull(result.getEntry("META-INF/MANIFEST.MF"));
+        assertNull(result.getEntry("META-INF/CERT.SF"));
+        assertNull(result.getEntry("META-INF/CERT.RSA"));
+        result.close();
+    }
+}